@@ -57,12 +57,15 @@ import com.android.settings.backup.BackupSettingsActivity;
 import com.android.settings.core.gateway.SettingsGateway;
 import com.android.settings.core.instrumentation.MetricsFeatureProvider;
 import com.android.settings.core.instrumentation.SharedPreferencesLogger;
+import com.android.settings.core.instrumentation.StartupTracer;
+import com.android.settings.core.navigation.FragmentPrewarmer;
 import com.android.settings.dashboard.DashboardFeatureProvider;
 import com.android.settings.dashboard.DashboardSummary;
 import com.android.settings.development.DevelopmentSettings;
 import com.android.settings.overlay.FeatureFactory;
 import com.android.settings.search.DynamicIndexableContentMonitor;
 import com.android.settings.search2.SearchFeatureProvider;
+import com.android.settings.utils.CacheRegistry;
 import com.android.settings.wfd.WifiDisplaySettings;
 import com.android.settings.widget.SwitchBar;
 import com.android.settingslib.drawer.DashboardCategory;
@@ -276,6 +279,7 @@ public class SettingsActivity extends SettingsDrawerActivity
 
     @Override
     protected void onCreate(Bundle savedState) {
+        final int traceToken = StartupTracer.beginSection(StartupTracer.SPAN_ACTIVITY_CREATE);
         super.onCreate(savedState);
         long startTime = System.currentTimeMillis();
 
@@ -284,6 +288,7 @@ public class SettingsActivity extends SettingsDrawerActivity
         mDashboardFeatureProvider = factory.getDashboardFeatureProvider(this);
         mSearchFeatureProvider = factory.getSearchFeatureProvider();
         mMetricsFeatureProvider = factory.getMetricsFeatureProvider();
+        CacheRegistry.get().attach(this);
 
         // Should happen before any call to getIntent()
         getMetaData();
@@ -412,6 +417,7 @@ public class SettingsActivity extends SettingsDrawerActivity
         if (DEBUG_TIMING) {
             Log.d(LOG_TAG, "onCreate took " + (System.currentTimeMillis() - startTime) + " ms");
         }
+        StartupTracer.endSection(traceToken);
     }
 
     @VisibleForTesting
@@ -585,10 +591,7 @@ public class SettingsActivity extends SettingsDrawerActivity
     protected boolean isValidFragment(String fragmentName) {
         // Almost all fragments are wrapped in this,
         // except for a few that have their own activities.
-        for (int i = 0; i < SettingsGateway.ENTRY_FRAGMENTS.length; i++) {
-            if (SettingsGateway.ENTRY_FRAGMENTS[i].equals(fragmentName)) return true;
-        }
-        return false;
+        return SettingsGateway.isEntryFragment(fragmentName);
     }
 
     @Override
@@ -750,7 +753,8 @@ public class SettingsActivity extends SettingsDrawerActivity
             throw new IllegalArgumentException("Invalid fragment for this activity: "
                     + fragmentName);
         }
-        Fragment f = Fragment.instantiate(this, fragmentName, args);
+        final FragmentPrewarmer prewarmer = FragmentPrewarmer.get(this);
+        Fragment f = prewarmer.obtainFragment(this, fragmentName, args);
         FragmentTransaction transaction = getFragmentManager().beginTransaction();
         transaction.replace(R.id.main_content, f);
         if (withTransition) {
@@ -766,6 +770,7 @@ public class SettingsActivity extends SettingsDrawerActivity
         }
         transaction.commitAllowingStateLoss();
         getFragmentManager().executePendingTransactions();
+        prewarmer.onFragmentLaunched(fragmentName);
         return f;
     }
 
@@ -28,7 +28,12 @@ import android.telephony.SubscriptionInfo;
 import android.telephony.SubscriptionManager;
 import android.telephony.TelephonyManager;
 import com.android.internal.annotations.VisibleForTesting;
+import com.android.settings.applications.AppStateBaseBridge;
 import com.android.settings.applications.ProcStatsData;
+import com.android.settings.core.instrumentation.MainThreadWatchdog;
+import com.android.settings.core.instrumentation.StartupTracer;
+import com.android.settings.utils.CacheRegistry;
+import com.android.settings.utils.TaskScheduler;
 import com.android.settingslib.net.DataUsageController;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -44,6 +49,11 @@ public class SettingsDumpService extends Service {
     @VisibleForTesting static final String KEY_DATAUSAGE = "datausage";
     @VisibleForTesting static final String KEY_MEMORY = "memory";
     @VisibleForTesting static final String KEY_DEFAULT_BROWSER_APP = "default_browser_app";
+    @VisibleForTesting static final String KEY_STARTUP_TRACE = "startup_trace";
+    @VisibleForTesting static final String KEY_SCHEDULER = "scheduler";
+    @VisibleForTesting static final String KEY_CACHES = "caches";
+    @VisibleForTesting static final String KEY_MAIN_THREAD_WATCHDOG = "main_thread_watchdog";
+    @VisibleForTesting static final String KEY_APP_STATE_BRIDGES = "app_state_bridges";
     @VisibleForTesting static final Intent BROWSER_INTENT =
             new Intent("android.intent.action.VIEW", Uri.parse("http://"));
 
@@ -62,6 +72,11 @@ public class SettingsDumpService extends Service {
             dump.put(KEY_DATAUSAGE, dumpDataUsage());
             dump.put(KEY_MEMORY, dumpMemory());
             dump.put(KEY_DEFAULT_BROWSER_APP, dumpDefaultBrowser());
+            dump.put(KEY_STARTUP_TRACE, StartupTracer.dumpJson());
+            dump.put(KEY_SCHEDULER, TaskScheduler.get().dumpJson());
+            dump.put(KEY_CACHES, CacheRegistry.get().dumpJson());
+            dump.put(KEY_MAIN_THREAD_WATCHDOG, MainThreadWatchdog.get().dumpJson());
+            dump.put(KEY_APP_STATE_BRIDGES, AppStateBaseBridge.dumpLoadStatsJson());
         } catch (Exception e) {
             e.printStackTrace();
         }
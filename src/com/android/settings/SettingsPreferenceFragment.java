@@ -47,6 +47,7 @@ import android.widget.Button;
 
 import com.android.settings.applications.LayoutPreference;
 import com.android.settings.core.InstrumentedPreferenceFragment;
+import com.android.settings.core.PreferenceTreeInflater;
 import com.android.settings.core.instrumentation.Instrumentable;
 import com.android.settings.core.instrumentation.InstrumentedDialogFragment;
 import com.android.settings.widget.FooterPreferenceMixin;
@@ -170,7 +171,13 @@ public abstract class SettingsPreferenceFragment extends InstrumentedPreferenceF
 
     @Override
     public void addPreferencesFromResource(@XmlRes int preferencesResId) {
-        super.addPreferencesFromResource(preferencesResId);
+        final PreferenceScreen screen = PreferenceTreeInflater.get().inflate(getPrefContext(),
+                getPreferenceManager(), preferencesResId, getPreferenceScreen());
+        if (screen != null) {
+            setPreferenceScreen(screen);
+        } else {
+            super.addPreferencesFromResource(preferencesResId);
+        }
         checkAvailablePrefs(getPreferenceScreen());
     }
 
@@ -32,6 +32,7 @@ import android.app.IActivityManager;
 import android.app.KeyguardManager;
 import android.app.admin.DevicePolicyManager;
 import android.content.ActivityNotFoundException;
+import android.content.ComponentCallbacks2;
 import android.content.ComponentName;
 import android.content.ContentResolver;
 import android.content.Context;
@@ -107,6 +108,7 @@ import com.android.internal.util.UserIcons;
 import com.android.internal.widget.LockPatternUtils;
 import com.android.settings.password.FingerprintManagerWrapper;
 import com.android.settings.password.IFingerprintManager;
+import com.android.settings.utils.CacheRegistry;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -148,6 +150,35 @@ public final class Utils extends com.android.settingslib.Utils {
     public static final String OS_PKG = "os";
 
     private static SparseArray<Bitmap> sDarkDefaultUserBitmapCache = new SparseArray<Bitmap>();
+    private static final CacheRegistry.Cache sDarkDefaultUserBitmapCacheEntry =
+            CacheRegistry.get().register(new CacheRegistry.Cache(
+                    "default_user_bitmaps", ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+                @Override
+                public int getEntryCount() {
+                    synchronized (sDarkDefaultUserBitmapCache) {
+                        return sDarkDefaultUserBitmapCache.size();
+                    }
+                }
+
+                @Override
+                public long getSizeEstimateBytes() {
+                    long bytes = 0;
+                    synchronized (sDarkDefaultUserBitmapCache) {
+                        for (int i = 0; i < sDarkDefaultUserBitmapCache.size(); i++) {
+                            bytes += CacheRegistry.estimateSize(
+                                    sDarkDefaultUserBitmapCache.valueAt(i));
+                        }
+                    }
+                    return bytes;
+                }
+
+                @Override
+                protected void clear() {
+                    synchronized (sDarkDefaultUserBitmapCache) {
+                        sDarkDefaultUserBitmapCache.clear();
+                    }
+                }
+            });
 
     /**
      * Finds a matching activity for a preference's intent. If a matching
@@ -901,11 +932,18 @@ public final class Utils extends com.android.settingslib.Utils {
     public static Bitmap getDefaultUserIconAsBitmap(int userId) {
         Bitmap bitmap = null;
         // Try finding the corresponding bitmap in the dark bitmap cache
-        bitmap = sDarkDefaultUserBitmapCache.get(userId);
+        synchronized (sDarkDefaultUserBitmapCache) {
+            bitmap = sDarkDefaultUserBitmapCache.get(userId);
+        }
         if (bitmap == null) {
+            sDarkDefaultUserBitmapCacheEntry.recordMiss();
             bitmap = UserIcons.convertToBitmap(UserIcons.getDefaultUserIcon(userId, false));
             // Save it to cache
-            sDarkDefaultUserBitmapCache.put(userId, bitmap);
+            synchronized (sDarkDefaultUserBitmapCache) {
+                sDarkDefaultUserBitmapCache.put(userId, bitmap);
+            }
+        } else {
+            sDarkDefaultUserBitmapCacheEntry.recordHit();
         }
         return bitmap;
     }
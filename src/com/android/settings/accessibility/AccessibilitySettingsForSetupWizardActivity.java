@@ -31,6 +31,7 @@ import android.widget.LinearLayout;
 import com.android.settings.R;
 import com.android.settings.SettingsActivity;
 import com.android.settings.SettingsPreferenceFragment;
+import com.android.settings.core.gateway.SettingsGateway;
 import com.android.setupwizardlib.util.SystemBarHelper;
 import com.android.setupwizardlib.view.NavigationBar;
 
@@ -95,7 +96,8 @@ public class AccessibilitySettingsForSetupWizardActivity extends SettingsActivit
 
         // Start the new Fragment.
         args.putInt(SettingsPreferenceFragment.HELP_URI_RESOURCE_KEY, 0);
-        startPreferenceFragment(Fragment.instantiate(this, fragmentClass, args), true);
+        startPreferenceFragment(
+                SettingsGateway.instantiateFragment(this, fragmentClass, args), true);
         mSendExtraWindowStateChanged = true;
     }
 
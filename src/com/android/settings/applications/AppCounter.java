@@ -17,8 +17,6 @@ package com.android.settings.applications;
 import android.app.AppGlobals;
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageManager;
-import android.content.pm.UserInfo;
 import android.os.AsyncTask;
 import android.os.UserHandle;
 import android.os.UserManager;
@@ -29,30 +27,33 @@ public abstract class AppCounter extends AsyncTask<Void, Void, Integer> {
 
     protected final PackageManagerWrapper mPm;
     protected final UserManager mUm;
+    private final UserAppsCache mCache;
 
     public AppCounter(Context context, PackageManagerWrapper packageManager) {
         mPm = packageManager;
         mUm = (UserManager) context.getSystemService(Context.USER_SERVICE);
+        mCache = UserAppsCache.get(context);
     }
 
     @Override
     protected Integer doInBackground(Void... params) {
         int count = 0;
-        for (UserInfo user : mUm.getProfiles(UserHandle.myUserId())) {
-            final List<ApplicationInfo> list =
-                    mPm.getInstalledApplicationsAsUser(PackageManager.GET_DISABLED_COMPONENTS
-                            | PackageManager.GET_DISABLED_UNTIL_USED_COMPONENTS
-                            | (user.isAdmin() ? PackageManager.MATCH_ANY_USER : 0),
-                            user.id);
-            for (ApplicationInfo info : list) {
-                if (includeInCount(info)) {
-                    count++;
-                }
-            }
+        for (List<ApplicationInfo> apps : UserAppsCache.filterApps(mCache, mPm,
+                mUm.getProfiles(UserHandle.myUserId()), getFilterKey(), this::includeInCount)) {
+            count += apps.size();
         }
         return count;
     }
 
+    /**
+     * Returns a key naming the criteria of {@link #includeInCount}, equal for counters and
+     * listers including the same apps so their results are shared, or null if the apps it
+     * includes must be looked up on every count.
+     */
+    protected String getFilterKey() {
+        return null;
+    }
+
     @Override
     protected void onPostExecute(Integer count) {
         onCountComplete(count);
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
+import android.util.ArrayMap;
+
+import com.android.settings.utils.CacheRegistry;
+import com.android.settings.utils.TaskScheduler;
+
+import java.util.ArrayList;
+
+/**
+ * Loads the sections of an app info page, such as {@link InstalledAppDetails}, that need binder
+ * calls to be summarized.
+ *
+ * <p>The sections requested are fetched at the same time on the workers of the visible content
+ * lane of the shared {@link TaskScheduler}, and each is handed to the page on the main thread as
+ * soon as it completes, rather than one after the other. Results are cached per package and user
+ * for {@link #CACHE_TTL_MS}, so going back to the page of an app that was just shown renders it
+ * without fetching again.
+ */
+class AppInfoSectionLoader {
+
+    @VisibleForTesting
+    static final long CACHE_TTL_MS = 10 * 1000;
+
+    // "<package>:<user>:<section>" -> last fetched result of the section.
+    private static final ArrayMap<String, CachedSection> sCache = new ArrayMap<>();
+    // Incremented by invalidate(), so sections fetched before are not cached. Guarded by sCache.
+    private static int sGeneration;
+    private static final CacheRegistry.Cache sCacheEntry = CacheRegistry.get().register(
+            new CacheRegistry.Cache("app_info_sections", TRIM_MEMORY_UI_HIDDEN) {
+                @Override
+                public int getEntryCount() {
+                    synchronized (sCache) {
+                        return sCache.size();
+                    }
+                }
+
+                @Override
+                protected void clear() {
+                    synchronized (sCache) {
+                        sCache.clear();
+                    }
+                }
+            });
+
+    /**
+     * Fetches a section, called on a background thread.
+     */
+    interface Fetcher<T> {
+        T fetch();
+    }
+
+    /**
+     * Renders a fetched section, called on the main thread. The result may be null if the
+     * fetcher returned null.
+     */
+    interface Callback<T> {
+        void onSectionLoaded(T result);
+    }
+
+    private final String mKeyPrefix;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final TaskScheduler.CancellationToken mToken = new TaskScheduler.CancellationToken();
+    // Section being fetched -> callbacks waiting for it, a request for one of them waits for the
+    // fetch already running.
+    private final ArrayMap<String, ArrayList<Callback<?>>> mFetching = new ArrayMap<>();
+
+    AppInfoSectionLoader(String packageName, int userId) {
+        mKeyPrefix = packageName + ":" + userId + ":";
+    }
+
+    /**
+     * Renders {@code section} with {@code callback}, right away if it was fetched less than
+     * {@link #CACHE_TTL_MS} ago, otherwise once {@code fetcher} returns. If the section is already
+     * being fetched, {@code callback} is given the result of that fetch along with the others.
+     */
+    <T> void load(String section, Fetcher<T> fetcher, Callback<T> callback) {
+        final String key = mKeyPrefix + section;
+        final CachedSection cached = getCached(key);
+        if (cached != null) {
+            deliver(cached, callback);
+            return;
+        }
+        ArrayList<Callback<?>> callbacks = mFetching.get(section);
+        if (callbacks != null) {
+            callbacks.add(callback);
+            return;
+        }
+        final ArrayList<Callback<?>> waiting = new ArrayList<>();
+        waiting.add(callback);
+        mFetching.put(section, waiting);
+        final int generation;
+        synchronized (sCache) {
+            generation = sGeneration;
+        }
+        // The lane has several workers, so the sections are fetched at the same time.
+        TaskScheduler.get().post(TaskScheduler.LANE_VISIBLE_CONTENT, mToken, () -> {
+            final CachedSection result =
+                    new CachedSection(fetcher.fetch(), SystemClock.elapsedRealtime());
+            synchronized (sCache) {
+                // Fetched before the sections were invalidated, it may be out of date already.
+                if (generation == sGeneration) {
+                    sCache.put(key, result);
+                }
+            }
+            mHandler.post(() -> {
+                if (mToken.isCancelled()) {
+                    return;
+                }
+                if (mFetching.get(section) == waiting) {
+                    mFetching.remove(section);
+                }
+                for (int i = 0, size = waiting.size(); i < size; i++) {
+                    deliver(result, waiting.get(i));
+                }
+            });
+        });
+    }
+
+    /**
+     * Drops the cached sections of the package, for when the page opens a screen that may
+     * change them. Sections being fetched are not cached once fetched, and are fetched again when
+     * next requested.
+     */
+    void invalidate() {
+        mFetching.clear();
+        synchronized (sCache) {
+            sGeneration++;
+            for (int i = sCache.size() - 1; i >= 0; i--) {
+                if (sCache.keyAt(i).startsWith(mKeyPrefix)) {
+                    sCache.removeAt(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the fetches that have not started yet and drops the results still to be delivered.
+     * The loader cannot be used afterwards.
+     */
+    void release() {
+        mToken.cancel();
+        mHandler.removeCallbacksAndMessages(null);
+        mFetching.clear();
+    }
+
+    @VisibleForTesting
+    static void clearCache() {
+        synchronized (sCache) {
+            sCache.clear();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void deliver(CachedSection section, Callback<?> callback) {
+        ((Callback<Object>) callback).onSectionLoaded(section.result);
+    }
+
+    private static CachedSection getCached(String key) {
+        synchronized (sCache) {
+            final CachedSection cached = sCache.get(key);
+            if (cached == null) {
+                sCacheEntry.recordMiss();
+                return null;
+            }
+            if (SystemClock.elapsedRealtime() - cached.fetchTimeMs > CACHE_TTL_MS) {
+                sCache.remove(key);
+                sCacheEntry.recordMiss();
+                return null;
+            }
+            sCacheEntry.recordHit();
+            return cached;
+        }
+    }
+
+    private static class CachedSection {
+        final Object result;
+        final long fetchTimeMs;
+
+        CachedSection(Object result, long fetchTimeMs) {
+            this.result = result;
+            this.fetchTimeMs = fetchTimeMs;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.support.annotation.VisibleForTesting;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+import android.view.View;
+import android.widget.SectionIndexer;
+
+/**
+ * Fast scroller of the RecyclerView app list of {@link ManageApplications}, with the section
+ * index the fast scroller of the ListView app list shows.
+ *
+ * <p>The thumb is drawn along the end edge of the list while it is scrollable. Dragging it
+ * jumps to the section under the finger, and shows the label of that section next to it.
+ */
+class AppListFastScroller extends RecyclerView.ItemDecoration
+        implements RecyclerView.OnItemTouchListener {
+
+    private static final int THUMB_WIDTH_DP = 6;
+    private static final int THUMB_HEIGHT_DP = 48;
+    private static final int TOUCH_WIDTH_DP = 48;
+    private static final int LABEL_SIZE_DP = 88;
+    private static final int LABEL_TEXT_SIZE_SP = 44;
+
+    private final RecyclerView mRecyclerView;
+    private final SectionIndexer mSectionIndexer;
+    private final int mThumbWidth;
+    private final int mThumbHeight;
+    private final int mTouchWidth;
+    private final int mLabelSize;
+    private final Paint mThumbPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final RectF mRect = new RectF();
+
+    private boolean mEnabled;
+    private boolean mDragging;
+    // Label of the section last scrolled to while dragging.
+    private String mLabel;
+
+    AppListFastScroller(RecyclerView recyclerView, SectionIndexer sectionIndexer) {
+        mRecyclerView = recyclerView;
+        mSectionIndexer = sectionIndexer;
+        final Context context = recyclerView.getContext();
+        mThumbWidth = dpToPx(context, THUMB_WIDTH_DP);
+        mThumbHeight = dpToPx(context, THUMB_HEIGHT_DP);
+        mTouchWidth = dpToPx(context, TOUCH_WIDTH_DP);
+        mLabelSize = dpToPx(context, LABEL_SIZE_DP);
+        final TypedArray ta = context.obtainStyledAttributes(
+                new int[] {android.R.attr.colorAccent});
+        mThumbPaint.setColor(ta.getColor(0, Color.GRAY));
+        ta.recycle();
+        mTextPaint.setColor(Color.WHITE);
+        mTextPaint.setTextAlign(Paint.Align.CENTER);
+        mTextPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP,
+                LABEL_TEXT_SIZE_SP, context.getResources().getDisplayMetrics()));
+        recyclerView.addItemDecoration(this);
+        recyclerView.addOnItemTouchListener(this);
+    }
+
+    /**
+     * Shows or hides the scroller, like {@link android.widget.AbsListView#setFastScrollEnabled}.
+     */
+    void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+        mDragging = false;
+        mLabel = null;
+        mRecyclerView.invalidate();
+    }
+
+    @Override
+    public void onDrawOver(Canvas c, RecyclerView parent, RecyclerView.State state) {
+        if (!isShown()) {
+            return;
+        }
+        final float thumbTop = getThumbTop();
+        final float thumbStart = isRtl() ? 0 : parent.getWidth() - mThumbWidth;
+        mRect.set(thumbStart, thumbTop, thumbStart + mThumbWidth, thumbTop + mThumbHeight);
+        c.drawRoundRect(mRect, mThumbWidth / 2f, mThumbWidth / 2f, mThumbPaint);
+
+        if (mDragging && mLabel != null) {
+            final float labelStart = isRtl()
+                    ? mTouchWidth : parent.getWidth() - mTouchWidth - mLabelSize;
+            final float labelTop = Math.max(0, Math.min(thumbTop + mThumbHeight / 2f
+                    - mLabelSize / 2f, parent.getHeight() - mLabelSize));
+            mRect.set(labelStart, labelTop, labelStart + mLabelSize, labelTop + mLabelSize);
+            c.drawOval(mRect, mThumbPaint);
+            final float baseline = mRect.centerY()
+                    - (mTextPaint.descent() + mTextPaint.ascent()) / 2f;
+            c.drawText(mLabel, mRect.centerX(), baseline, mTextPaint);
+        }
+    }
+
+    @Override
+    public boolean onInterceptTouchEvent(RecyclerView rv, MotionEvent e) {
+        if (e.getActionMasked() == MotionEvent.ACTION_DOWN && isShown()
+                && isInTouchArea(e.getX())) {
+            mDragging = true;
+            scrollToY(e.getY());
+        }
+        return mDragging;
+    }
+
+    @Override
+    public void onTouchEvent(RecyclerView rv, MotionEvent e) {
+        switch (e.getActionMasked()) {
+            case MotionEvent.ACTION_MOVE:
+                scrollToY(e.getY());
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                mDragging = false;
+                mLabel = null;
+                mRecyclerView.invalidate();
+                break;
+        }
+    }
+
+    @Override
+    public void onRequestDisallowInterceptTouchEvent(boolean disallowIntercept) {
+    }
+
+    @VisibleForTesting
+    void scrollToY(float y) {
+        final Object[] sections = mSectionIndexer.getSections();
+        if (sections == null || sections.length == 0) {
+            return;
+        }
+        final float fraction = Math.max(0f, Math.min(1f, y / mRecyclerView.getHeight()));
+        final int section = Math.min((int) (fraction * sections.length), sections.length - 1);
+        // The sections may be ahead of the rows while a new list is being diffed.
+        final int position = Math.min(mSectionIndexer.getPositionForSection(section),
+                mRecyclerView.getAdapter().getItemCount() - 1);
+        if (position >= 0) {
+            ((LinearLayoutManager) mRecyclerView.getLayoutManager())
+                    .scrollToPositionWithOffset(position, 0);
+        }
+        mLabel = sections[section].toString();
+        mRecyclerView.invalidate();
+    }
+
+    private boolean isShown() {
+        final Object[] sections = mSectionIndexer.getSections();
+        return mEnabled && sections != null && sections.length > 0
+                && mRecyclerView.computeVerticalScrollRange() > mRecyclerView.getHeight();
+    }
+
+    private boolean isInTouchArea(float x) {
+        return isRtl() ? x <= mTouchWidth : x >= mRecyclerView.getWidth() - mTouchWidth;
+    }
+
+    private float getThumbTop() {
+        final int range = mRecyclerView.computeVerticalScrollRange()
+                - mRecyclerView.computeVerticalScrollExtent();
+        final float fraction = range > 0
+                ? (float) mRecyclerView.computeVerticalScrollOffset() / range : 0f;
+        return fraction * (mRecyclerView.getHeight() - mThumbHeight);
+    }
+
+    private boolean isRtl() {
+        return mRecyclerView.getLayoutDirection() == View.LAYOUT_DIRECTION_RTL;
+    }
+
+    private static int dpToPx(Context context, int dp) {
+        return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, dp,
+                context.getResources().getDisplayMetrics());
+    }
+}
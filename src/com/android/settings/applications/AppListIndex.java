@@ -0,0 +1,400 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.support.annotation.VisibleForTesting;
+import android.text.TextUtils;
+
+import com.android.settingslib.applications.ApplicationsState.AppEntry;
+import com.android.settingslib.applications.ApplicationsState.AppFilter;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maintained index over the app entries of {@link ManageApplications}, answering its filtered
+ * and sorted lists without filtering and sorting the whole app list on every rebuild.
+ *
+ * <p>Entries are kept sorted by label, using collation keys computed once per label, and by
+ * size, using the sizes seen at the last {@link #update(List)}. {@link #update(List)} compares
+ * the app list with the indexed one and only moves the entries that were added, removed,
+ * relabeled or resized, using a binary search each. Filter results are kept as one bitset per
+ * {@link AppFilter}, updated for changed entries only, so a filter switch only evaluates the
+ * filters not seen before and intersects the bitsets. Only the results of the
+ * {@link #MAX_CACHED_FILTERS} last queried filters are kept.
+ *
+ * <p>Not thread safe, only use it from the background thread of ApplicationsState.
+ */
+class AppListIndex {
+
+    static final int ORDER_LABEL = 0;
+    static final int ORDER_SIZE_TOTAL = 1;
+    static final int ORDER_SIZE_INTERNAL = 2;
+    static final int ORDER_SIZE_EXTERNAL = 3;
+
+    // Filters whose results are kept, the least recently queried ones are dropped past this.
+    @VisibleForTesting
+    static final int MAX_CACHED_FILTERS = 8;
+
+    // Below this many moved entries, entries are moved one by one rather than resorted.
+    private static final int MIN_BULK_UPDATE = 16;
+
+    private static final int CHANGED_LABEL = 1 << 0;
+    private static final int CHANGED_SIZE = 1 << 1;
+    private static final int CHANGED_STATE = 1 << 2;
+
+    private static final Comparator<Slot> LABEL_ORDER = (lhs, rhs) -> {
+        // Same order as ApplicationsState.ALPHA_COMPARATOR, ties broken by slot id.
+        int result = lhs.labelKey.compareTo(rhs.labelKey);
+        if (result != 0) {
+            return result;
+        }
+        result = lhs.packageKey.compareTo(rhs.packageKey);
+        if (result != 0) {
+            return result;
+        }
+        if (lhs.uid != rhs.uid) {
+            return lhs.uid - rhs.uid;
+        }
+        return lhs.id - rhs.id;
+    };
+
+    private static final Comparator<Slot> SIZE_ORDER = (lhs, rhs) -> {
+        // Same order as ApplicationsState.SIZE_COMPARATOR, largest first.
+        if (lhs.size < rhs.size) {
+            return 1;
+        }
+        if (lhs.size > rhs.size) {
+            return -1;
+        }
+        return LABEL_ORDER.compare(lhs, rhs);
+    };
+
+    private final Context mContext;
+    private final Collator mCollator = Collator.getInstance();
+
+    private final HashMap<AppEntry, Slot> mSlots = new HashMap<>();
+    // Slot ids in use, a slot id is the bit of its entry in the filter results.
+    private final BitSet mIds = new BitSet();
+    private final ArrayList<Slot> mByLabel = new ArrayList<>();
+    private final ArrayList<Slot> mBySize = new ArrayList<>();
+    // Size order mBySize is sorted by, ORDER_LABEL while no size order was queried.
+    private int mSizeOrder = ORDER_LABEL;
+    // Filter -> ids of the entries it accepts, least recently queried first.
+    private final LinkedHashMap<AppFilter, BitSet> mFilterResults =
+            new LinkedHashMap<AppFilter, BitSet>(MAX_CACHED_FILTERS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<AppFilter, BitSet> eldest) {
+                    return size() > MAX_CACHED_FILTERS;
+                }
+            };
+
+    AppListIndex(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Syncs the index with {@code entries}, the complete current app list.
+     */
+    void update(List<AppEntry> entries) {
+        final BitSet seen = new BitSet(mIds.length());
+        final ArrayList<Slot> added = new ArrayList<>();
+        final ArrayList<Slot> changed = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            final AppEntry entry = entries.get(i);
+            entry.ensureLabel(mContext);
+            Slot slot = mSlots.get(entry);
+            if (slot == null) {
+                final int id = mIds.nextClearBit(0);
+                mIds.set(id);
+                slot = new Slot(entry, id);
+                mSlots.put(entry, slot);
+                added.add(slot);
+            } else {
+                slot.changes = getChanges(slot);
+                if (slot.changes != 0) {
+                    changed.add(slot);
+                }
+            }
+            seen.set(slot.id);
+        }
+        if (mSlots.size() > seen.cardinality()) {
+            removeUnseen(seen);
+        }
+
+        if (added.size() + changed.size() > Math.max(MIN_BULK_UPDATE, mSlots.size() / 4)) {
+            // Cheaper to resort everything, typically on the first load.
+            for (int i = 0; i < changed.size(); i++) {
+                snapshot(changed.get(i));
+            }
+            for (int i = 0; i < added.size(); i++) {
+                snapshot(added.get(i));
+            }
+            mByLabel.addAll(added);
+            Collections.sort(mByLabel, LABEL_ORDER);
+            if (mSizeOrder != ORDER_LABEL) {
+                mBySize.addAll(added);
+                Collections.sort(mBySize, SIZE_ORDER);
+            }
+        } else {
+            for (int i = 0; i < changed.size(); i++) {
+                move(changed.get(i));
+            }
+            for (int i = 0; i < added.size(); i++) {
+                final Slot slot = added.get(i);
+                snapshot(slot);
+                insert(mByLabel, slot, LABEL_ORDER);
+                if (mSizeOrder != ORDER_LABEL) {
+                    insert(mBySize, slot, SIZE_ORDER);
+                }
+            }
+        }
+
+        final ArrayList<Slot> reevaluated = new ArrayList<>(added);
+        for (int i = 0; i < changed.size(); i++) {
+            final Slot slot = changed.get(i);
+            if ((slot.changes & CHANGED_STATE) != 0) {
+                reevaluated.add(slot);
+            }
+        }
+        if (reevaluated.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<AppFilter, BitSet> filterResults : mFilterResults.entrySet()) {
+            final AppFilter filter = filterResults.getKey();
+            final BitSet results = filterResults.getValue();
+            // Filters read the state they depend on in init(), like a rebuild of
+            // ApplicationsState does before filtering.
+            filter.init();
+            for (int i = 0; i < reevaluated.size(); i++) {
+                final Slot slot = reevaluated.get(i);
+                results.set(slot.id, filter.filterApp(slot.entry));
+            }
+        }
+    }
+
+    /**
+     * Drops the cached filter results, for when the data the filters look at changed outside
+     * of the app entries, like the extra info loaded by an {@link AppStateBaseBridge}.
+     */
+    void invalidateFilters() {
+        mFilterResults.clear();
+    }
+
+    /**
+     * Returns the entries accepted by all non-null {@code filters}, in the given order.
+     *
+     * @param order one of the ORDER_* constants.
+     */
+    ArrayList<AppEntry> query(AppFilter[] filters, int order) {
+        BitSet matches = null;
+        for (AppFilter filter : filters) {
+            if (filter == null) {
+                continue;
+            }
+            final BitSet results = getFilterResults(filter);
+            if (matches == null) {
+                matches = (BitSet) results.clone();
+            } else {
+                matches.and(results);
+            }
+        }
+        final List<Slot> sorted = getSorted(order);
+        final ArrayList<AppEntry> entries =
+                new ArrayList<>(matches != null ? matches.cardinality() : sorted.size());
+        for (int i = 0; i < sorted.size(); i++) {
+            final Slot slot = sorted.get(i);
+            if (matches == null || matches.get(slot.id)) {
+                entries.add(slot.entry);
+            }
+        }
+        return entries;
+    }
+
+    private BitSet getFilterResults(AppFilter filter) {
+        BitSet results = mFilterResults.get(filter);
+        if (results == null) {
+            filter.init();
+            results = new BitSet(mIds.length());
+            for (Slot slot : mSlots.values()) {
+                if (filter.filterApp(slot.entry)) {
+                    results.set(slot.id);
+                }
+            }
+            mFilterResults.put(filter, results);
+        }
+        return results;
+    }
+
+    private List<Slot> getSorted(int order) {
+        if (order == ORDER_LABEL) {
+            return mByLabel;
+        }
+        if (order != mSizeOrder) {
+            mSizeOrder = order;
+            mBySize.clear();
+            mBySize.addAll(mByLabel);
+            for (int i = 0; i < mBySize.size(); i++) {
+                final Slot slot = mBySize.get(i);
+                slot.size = getSize(slot.entry, order);
+            }
+            Collections.sort(mBySize, SIZE_ORDER);
+        }
+        return mBySize;
+    }
+
+    private void removeUnseen(BitSet seen) {
+        final Iterator<Slot> it = mSlots.values().iterator();
+        while (it.hasNext()) {
+            final Slot slot = it.next();
+            if (seen.get(slot.id)) {
+                continue;
+            }
+            it.remove();
+            remove(mByLabel, slot, LABEL_ORDER);
+            if (mSizeOrder != ORDER_LABEL) {
+                remove(mBySize, slot, SIZE_ORDER);
+            }
+            for (BitSet results : mFilterResults.values()) {
+                results.clear(slot.id);
+            }
+            mIds.clear(slot.id);
+        }
+    }
+
+    private void move(Slot slot) {
+        final boolean moveByLabel = (slot.changes & CHANGED_LABEL) != 0;
+        final boolean moveBySize = mSizeOrder != ORDER_LABEL
+                && (slot.changes & (CHANGED_LABEL | CHANGED_SIZE)) != 0;
+        // Find the slot with its old keys before updating them.
+        if (moveByLabel) {
+            remove(mByLabel, slot, LABEL_ORDER);
+        }
+        if (moveBySize) {
+            remove(mBySize, slot, SIZE_ORDER);
+        }
+        snapshot(slot);
+        if (moveByLabel) {
+            insert(mByLabel, slot, LABEL_ORDER);
+        }
+        if (moveBySize) {
+            insert(mBySize, slot, SIZE_ORDER);
+        }
+    }
+
+    private int getChanges(Slot slot) {
+        final AppEntry entry = slot.entry;
+        int changes = 0;
+        if (entry.info != slot.info || !TextUtils.equals(entry.label, slot.label)) {
+            changes |= CHANGED_LABEL | CHANGED_STATE;
+        }
+        if (mSizeOrder != ORDER_LABEL && getSize(entry, mSizeOrder) != slot.size) {
+            changes |= CHANGED_SIZE;
+        }
+        if (entry.extraInfo != slot.extraInfo || entry.mounted != slot.mounted
+                || entry.hasLauncherEntry != slot.hasLauncherEntry
+                || entry.isHomeApp != slot.isHomeApp) {
+            changes |= CHANGED_STATE;
+        }
+        return changes;
+    }
+
+    private void snapshot(Slot slot) {
+        final AppEntry entry = slot.entry;
+        final ApplicationInfo info = entry.info;
+        if (slot.labelKey == null || !TextUtils.equals(entry.label, slot.label)) {
+            slot.label = entry.label;
+            slot.labelKey = mCollator.getCollationKey(entry.label != null ? entry.label : "");
+        }
+        if (slot.packageKey == null || info != slot.info) {
+            slot.packageKey = mCollator.getCollationKey(
+                    info != null && info.packageName != null ? info.packageName : "");
+        }
+        slot.info = info;
+        slot.uid = info != null ? info.uid : 0;
+        slot.size = getSize(entry, mSizeOrder);
+        slot.extraInfo = entry.extraInfo;
+        slot.mounted = entry.mounted;
+        slot.hasLauncherEntry = entry.hasLauncherEntry;
+        slot.isHomeApp = entry.isHomeApp;
+        slot.changes = 0;
+    }
+
+    private static long getSize(AppEntry entry, int order) {
+        synchronized (entry) {
+            switch (order) {
+                case ORDER_SIZE_TOTAL:
+                    return entry.size;
+                case ORDER_SIZE_INTERNAL:
+                    return entry.internalSize;
+                case ORDER_SIZE_EXTERNAL:
+                    return entry.externalSize;
+                default:
+                    return 0;
+            }
+        }
+    }
+
+    private static void insert(List<Slot> sorted, Slot slot, Comparator<Slot> order) {
+        final int pos = Collections.binarySearch(sorted, slot, order);
+        sorted.add(pos < 0 ? -pos - 1 : pos, slot);
+    }
+
+    private static void remove(List<Slot> sorted, Slot slot, Comparator<Slot> order) {
+        final int pos = Collections.binarySearch(sorted, slot, order);
+        if (pos >= 0) {
+            sorted.remove(pos);
+        }
+    }
+
+    /**
+     * An indexed entry, with a snapshot of the fields its position and filter results depend on.
+     */
+    private static class Slot {
+        final AppEntry entry;
+        final int id;
+
+        ApplicationInfo info;
+        String label;
+        CollationKey labelKey;
+        CollationKey packageKey;
+        int uid;
+        long size;
+        Object extraInfo;
+        boolean mounted;
+        boolean hasLauncherEntry;
+        boolean isHomeApp;
+        // CHANGED_* flags pending during an update.
+        int changes;
+
+        Slot(AppEntry entry, int id) {
+            this.entry = entry;
+            this.id = id;
+        }
+    }
+}
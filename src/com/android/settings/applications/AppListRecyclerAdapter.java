@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import android.content.pm.ApplicationInfo;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.support.annotation.VisibleForTesting;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.android.settingslib.applications.ApplicationsState;
+import com.android.settingslib.applications.ApplicationsState.AppEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * RecyclerView adapter for the app list of {@link ManageApplications}, used instead of the
+ * ListView for smoother scrolling through long lists.
+ *
+ * <p>Rows have stable ids, and list changes are applied as {@link DiffUtil} updates computed on
+ * the background thread of {@link ApplicationsState}. App entries are updated in place, so the
+ * diff compares what each kept row showed when the last list was set, and only rebinds the rows
+ * whose label, icon, sizes or state changed since. The icons of the rows about to scroll
+ * into view are loaded ahead on that thread, so binding a row rarely decodes an icon. Rows are
+ * bound by {@link ManageApplications.ApplicationsAdapter}, which keeps filtering and sorting.
+ */
+class AppListRecyclerAdapter extends RecyclerView.Adapter<AppListRecyclerAdapter.ViewHolder> {
+
+    @VisibleForTesting
+    static final int PREFETCH_ROWS = 8;
+    // Payload of the rebind of a kept row whose contents changed, skips the change animation.
+    private static final Object PAYLOAD_REFRESH = new Object();
+
+    private final ManageApplications mManageApplications;
+    private final ManageApplications.ApplicationsAdapter mApplications;
+    private final ApplicationsState mState;
+    private final View mEmptyView;
+    private final Handler mBgHandler;
+    private final Handler mFgHandler = new Handler();
+
+    // Shown rows, the app entries followed by null for the extra view, if shown.
+    private List<AppEntry> mRows = Collections.emptyList();
+    // What the shown rows showed when they were set, null for the extra view.
+    private List<RowState> mRowStates = Collections.emptyList();
+    // Incremented for each new list, so diffs against outdated rows are dropped.
+    private int mGeneration;
+    // Last range of rows whose icons were prefetched.
+    private int mPrefetchStart = -1;
+    private int mPrefetchEnd = -1;
+
+    private final RecyclerView.OnScrollListener mScrollListener =
+            new RecyclerView.OnScrollListener() {
+                @Override
+                public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                    final LinearLayoutManager layoutManager =
+                            (LinearLayoutManager) recyclerView.getLayoutManager();
+                    if (dy >= 0) {
+                        final int start = layoutManager.findLastVisibleItemPosition() + 1;
+                        prefetchIcons(start, start + PREFETCH_ROWS);
+                    } else {
+                        final int end = layoutManager.findFirstVisibleItemPosition();
+                        prefetchIcons(end - PREFETCH_ROWS, end);
+                    }
+                }
+            };
+
+    AppListRecyclerAdapter(ManageApplications manageApplications,
+            ManageApplications.ApplicationsAdapter applications, ApplicationsState state,
+            View emptyView) {
+        mManageApplications = manageApplications;
+        mApplications = applications;
+        mState = state;
+        mEmptyView = emptyView;
+        mBgHandler = new Handler(state.getBackgroundLooper());
+        setHasStableIds(true);
+        if (mEmptyView != null) {
+            mEmptyView.setVisibility(View.GONE);
+        }
+    }
+
+    /**
+     * Shows {@code entries}, followed by the extra view if {@code showExtraView}. The rows are
+     * updated once the difference with the shown rows is computed.
+     */
+    void setEntries(List<AppEntry> entries, boolean showExtraView) {
+        final List<AppEntry> oldRows = mRows;
+        final List<RowState> oldRowStates = mRowStates;
+        final int generation = ++mGeneration;
+        mBgHandler.post(() -> {
+            final ArrayList<AppEntry> newRows =
+                    new ArrayList<>(entries != null ? entries.size() + 1 : 1);
+            if (entries != null) {
+                newRows.addAll(entries);
+            }
+            if (showExtraView) {
+                newRows.add(null);
+            }
+            final ArrayList<RowState> newRowStates = new ArrayList<>(newRows.size());
+            for (int i = 0; i < newRows.size(); i++) {
+                final AppEntry entry = newRows.get(i);
+                newRowStates.add(entry != null ? new RowState(entry) : null);
+            }
+            // Moves only happen when the sort order changes, not worth the quadratic detection.
+            final DiffUtil.DiffResult diff = DiffUtil.calculateDiff(
+                    new RowDiffCallback(oldRows, oldRowStates, newRows, newRowStates), false);
+            mFgHandler.post(() -> {
+                if (generation != mGeneration) {
+                    // A newer list is being diffed against the rows still shown.
+                    return;
+                }
+                mRows = newRows;
+                mRowStates = newRowStates;
+                diff.dispatchUpdatesTo(this);
+                mPrefetchStart = mPrefetchEnd = -1;
+                if (mEmptyView != null) {
+                    mEmptyView.setVisibility(newRows.isEmpty() ? View.VISIBLE : View.GONE);
+                }
+            });
+        });
+    }
+
+    @VisibleForTesting
+    void prefetchIcons(int start, int end) {
+        start = Math.max(start, 0);
+        end = Math.min(end, mRows.size());
+        if (start >= end || (start == mPrefetchStart && end == mPrefetchEnd)) {
+            return;
+        }
+        mPrefetchStart = start;
+        mPrefetchEnd = end;
+        final ArrayList<AppEntry> entries = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+            final AppEntry entry = mRows.get(i);
+            if (entry != null && entry.icon == null) {
+                entries.add(entry);
+            }
+        }
+        if (!entries.isEmpty()) {
+            mBgHandler.post(() -> {
+                for (int i = 0; i < entries.size(); i++) {
+                    mState.ensureIcon(entries.get(i));
+                }
+            });
+        }
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(RecyclerView recyclerView) {
+        recyclerView.addOnScrollListener(mScrollListener);
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+        recyclerView.removeOnScrollListener(mScrollListener);
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        final AppViewHolder holder = AppViewHolder.createOrRecycle(
+                LayoutInflater.from(parent.getContext()), null);
+        holder.rootView.setLayoutParams(new RecyclerView.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+        return new ViewHolder(holder);
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        final AppEntry entry = mRows.get(position);
+        if (entry == null) {
+            mApplications.bindExtraView(holder.mAppViewHolder);
+        } else {
+            mApplications.bindEntry(holder.mAppViewHolder, entry);
+        }
+    }
+
+    @Override
+    public void onViewRecycled(ViewHolder holder) {
+        mApplications.onMovedToScrapHeap(holder.itemView);
+    }
+
+    @Override
+    public int getItemCount() {
+        return mRows.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        final AppEntry entry = mRows.get(position);
+        return entry != null ? entry.id : -1;
+    }
+
+    class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+        final AppViewHolder mAppViewHolder;
+
+        ViewHolder(AppViewHolder appViewHolder) {
+            super(appViewHolder.rootView);
+            mAppViewHolder = appViewHolder;
+            itemView.setOnClickListener(this);
+        }
+
+        @Override
+        public void onClick(View v) {
+            final int position = getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                mManageApplications.onListItemClick(mRows.get(position));
+            }
+        }
+    }
+
+    private static class RowDiffCallback extends DiffUtil.Callback {
+        private final List<AppEntry> mOldRows;
+        private final List<RowState> mOldRowStates;
+        private final List<AppEntry> mNewRows;
+        private final List<RowState> mNewRowStates;
+
+        RowDiffCallback(List<AppEntry> oldRows, List<RowState> oldRowStates,
+                List<AppEntry> newRows, List<RowState> newRowStates) {
+            mOldRows = oldRows;
+            mOldRowStates = oldRowStates;
+            mNewRows = newRows;
+            mNewRowStates = newRowStates;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldRows.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewRows.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            // ApplicationsState replaces the entry of a package when the package changes.
+            return mOldRows.get(oldItemPosition) == mNewRows.get(newItemPosition);
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            final RowState oldState = mOldRowStates.get(oldItemPosition);
+            final RowState newState = mNewRowStates.get(newItemPosition);
+            // The extra view tracks its own contents, rebind it with every list.
+            return oldState != null && newState != null && oldState.isSameAs(newState);
+        }
+
+        @Override
+        public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+            return PAYLOAD_REFRESH;
+        }
+    }
+
+    /**
+     * The fields of an app entry its row shows, as of when the row was set.
+     */
+    private static class RowState {
+        private final String mLabel;
+        private final Drawable mIcon;
+        private final String mSizeStr;
+        private final String mInternalSizeStr;
+        private final String mExternalSizeStr;
+        private final Object mExtraInfo;
+        private final ApplicationInfo mInfo;
+        private final boolean mEnabled;
+        private final int mEnabledSetting;
+        private final int mFlags;
+
+        RowState(AppEntry entry) {
+            synchronized (entry) {
+                mLabel = entry.label;
+                mIcon = entry.icon;
+                mSizeStr = entry.sizeStr;
+                mInternalSizeStr = entry.internalSizeStr;
+                mExternalSizeStr = entry.externalSizeStr;
+                mExtraInfo = entry.extraInfo;
+                mInfo = entry.info;
+                mEnabled = mInfo != null && mInfo.enabled;
+                mEnabledSetting = mInfo != null ? mInfo.enabledSetting : 0;
+                mFlags = mInfo != null ? mInfo.flags : 0;
+            }
+        }
+
+        boolean isSameAs(RowState other) {
+            return TextUtils.equals(mLabel, other.mLabel)
+                    && mIcon == other.mIcon
+                    && TextUtils.equals(mSizeStr, other.mSizeStr)
+                    && TextUtils.equals(mInternalSizeStr, other.mInternalSizeStr)
+                    && TextUtils.equals(mExternalSizeStr, other.mExternalSizeStr)
+                    && mExtraInfo == other.mExtraInfo
+                    && mInfo == other.mInfo
+                    && mEnabled == other.mEnabled
+                    && mEnabledSetting == other.mEnabledSetting
+                    && mFlags == other.mFlags;
+        }
+    }
+}
@@ -16,8 +16,8 @@
 
 package com.android.settings.applications;
 
+import android.content.Context;
 import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageManager;
 import android.content.pm.UserInfo;
 import android.os.AsyncTask;
 import android.os.UserHandle;
@@ -35,30 +35,45 @@ import java.util.List;
 public abstract class AppLister extends AsyncTask<Void, Void, List<UserAppInfo>> {
     protected final PackageManagerWrapper mPm;
     protected final UserManager mUm;
+    private final UserAppsCache mCache;
 
     public AppLister(PackageManagerWrapper packageManager, UserManager userManager) {
+        this(null /* context */, packageManager, userManager);
+    }
+
+    /**
+     * @param context context to share the installed apps through {@link UserAppsCache} with,
+     *         may be null to look them all up.
+     */
+    public AppLister(Context context, PackageManagerWrapper packageManager,
+            UserManager userManager) {
         mPm = packageManager;
         mUm = userManager;
+        mCache = UserAppsCache.get(context);
     }
 
     @Override
     protected List<UserAppInfo> doInBackground(Void... params) {
         final List<UserAppInfo> result = new ArrayList<>();
-        for (UserInfo user : mUm.getProfiles(UserHandle.myUserId())) {
-            final List<ApplicationInfo> list =
-                    mPm.getInstalledApplicationsAsUser(PackageManager.GET_DISABLED_COMPONENTS
-                            | PackageManager.GET_DISABLED_UNTIL_USED_COMPONENTS
-                            | (user.isAdmin() ? PackageManager.MATCH_ANY_USER : 0),
-                            user.id);
-            for (ApplicationInfo info : list) {
-                if (includeInCount(info)) {
-                    result.add(new UserAppInfo(user, info));
-                }
+        final List<UserInfo> profiles = mUm.getProfiles(UserHandle.myUserId());
+        final List<List<ApplicationInfo>> apps = UserAppsCache.filterApps(mCache, mPm, profiles,
+                getFilterKey(), this::includeInCount);
+        for (int i = 0; i < profiles.size(); i++) {
+            for (ApplicationInfo info : apps.get(i)) {
+                result.add(new UserAppInfo(profiles.get(i), info));
             }
         }
         return result;
     }
 
+    /**
+     * Returns a key naming the criteria of {@link #includeInCount}, like
+     * {@link AppCounter#getFilterKey()}.
+     */
+    protected String getFilterKey() {
+        return null;
+    }
+
     @Override
     protected void onPostExecute(List<UserAppInfo> list) {
         onAppListBuilt(list);
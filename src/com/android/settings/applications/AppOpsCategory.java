@@ -114,6 +114,7 @@ public class AppOpsCategory extends ListFragment implements
 
         @Override public void onReceive(Context context, Intent intent) {
             // Tell the loader about the change.
+            AppOpsState.invalidateIndex();
             mLoader.onContentChanged();
         }
     }
@@ -376,6 +377,7 @@ public class AppOpsCategory extends ListFragment implements
                         entry.getAppEntry().getApplicationInfo().uid,
                         entry.getAppEntry().getApplicationInfo().packageName,
                         mode);
+                AppOpsState.invalidateIndex();
                 entry.overridePrimaryOpMode(mode);
             } else {
                 mCurrentPkgName = entry.getAppEntry().getApplicationInfo().packageName;
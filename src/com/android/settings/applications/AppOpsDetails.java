@@ -138,6 +138,7 @@ public class AppOpsDetails extends InstrumentedPreferenceFragment {
                         mAppOps.setMode(switchOp, entry.getPackageOps().getUid(),
                                 entry.getPackageOps().getPackageName(), isChecked
                                 ? AppOpsManager.MODE_ALLOWED : AppOpsManager.MODE_IGNORED);
+                        AppOpsState.invalidateIndex();
                     }
                 });
             }
@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import android.Manifest;
+import android.app.AppOpsManager;
+import android.app.AppOpsManager.OpEntry;
+import android.app.AppOpsManager.PackageOps;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ParceledListSlice;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.os.UserHandle;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Permission and app op state of the installed packages for the app ops of the special access
+ * screens: draw over other apps, modify system settings, usage access and install unknown apps.
+ *
+ * <p>All of it is fetched with one package manager call per profile and one app ops call, and
+ * the snapshot is shared by the bridges of these screens for {@link #TTL_MS}, so switching
+ * between the screens does not query every package again. Screens changing one of the app ops
+ * call {@link #invalidate()}.
+ */
+class AppOpsPermissionSnapshot {
+
+    private static final String TAG = "AppOpsPermissionSnapshot";
+
+    private static final long TTL_MS = 5000;
+
+    // The app ops covered by the snapshot, and the permission each of them guards.
+    private static final int[] OPS = {
+            AppOpsManager.OP_SYSTEM_ALERT_WINDOW,
+            AppOpsManager.OP_WRITE_SETTINGS,
+            AppOpsManager.OP_GET_USAGE_STATS,
+            AppOpsManager.OP_REQUEST_INSTALL_PACKAGES,
+    };
+    private static final String[] PERMISSIONS = {
+            Manifest.permission.SYSTEM_ALERT_WINDOW,
+            Manifest.permission.WRITE_SETTINGS,
+            Manifest.permission.PACKAGE_USAGE_STATS,
+            Manifest.permission.REQUEST_INSTALL_PACKAGES,
+    };
+
+    private static final Object sLock = new Object();
+    private static AppOpsPermissionSnapshot sSnapshot;
+
+    private final int[] mProfileIds;
+    private final long mCreatedMs;
+    // States of the packages by uid, chained through PackageState.next for shared uids.
+    private final SparseArray<PackageState> mStates = new SparseArray<>();
+
+    /**
+     * Returns whether the snapshot covers {@code op} guarding {@code permissions}, so it can be
+     * used instead of querying the package manager and app ops for them.
+     */
+    static boolean isSupported(int op, String[] permissions) {
+        final int index = indexOf(op);
+        return index >= 0 && permissions.length == 1 && PERMISSIONS[index].equals(permissions[0]);
+    }
+
+    /**
+     * Returns the snapshot of {@code profiles}, fetching a new one if the last one is older than
+     * {@link #TTL_MS} or was taken of other profiles. Must not be called on the main thread.
+     */
+    static AppOpsPermissionSnapshot get(IPackageManagerWrapper packageManager,
+            AppOpsManager appOpsManager, List<UserHandle> profiles) {
+        final int[] profileIds = new int[profiles.size()];
+        for (int i = 0; i < profileIds.length; i++) {
+            profileIds[i] = profiles.get(i).getIdentifier();
+        }
+        synchronized (sLock) {
+            if (sSnapshot != null && sSnapshot.isValidFor(profileIds)) {
+                return sSnapshot;
+            }
+        }
+        final AppOpsPermissionSnapshot snapshot = new AppOpsPermissionSnapshot(profileIds);
+        snapshot.load(packageManager, appOpsManager);
+        synchronized (sLock) {
+            sSnapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Drops the shared snapshot, so the next {@link #get} fetches the current state.
+     */
+    static void invalidate() {
+        synchronized (sLock) {
+            sSnapshot = null;
+        }
+    }
+
+    private AppOpsPermissionSnapshot(int[] profileIds) {
+        mProfileIds = profileIds;
+        mCreatedMs = SystemClock.elapsedRealtime();
+    }
+
+    private boolean isValidFor(int[] profileIds) {
+        if (SystemClock.elapsedRealtime() - mCreatedMs > TTL_MS
+                || profileIds.length != mProfileIds.length) {
+            return false;
+        }
+        for (int i = 0; i < profileIds.length; i++) {
+            if (profileIds[i] != mProfileIds[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void load(IPackageManagerWrapper packageManager, AppOpsManager appOpsManager) {
+        // App op modes first, packages may have one set without requesting the permission.
+        final List<PackageOps> packageOps = appOpsManager.getPackagesForOps(OPS);
+        final int packageOpsCount = packageOps != null ? packageOps.size() : 0;
+        for (int i = 0; i < packageOpsCount; i++) {
+            final PackageOps ops = packageOps.get(i);
+            if (!isProfile(UserHandle.getUserId(ops.getUid()))) {
+                continue;
+            }
+            final PackageState state = getOrCreate(ops.getUid(), ops.getPackageName());
+            final List<OpEntry> entries = ops.getOps();
+            for (int j = 0; j < entries.size(); j++) {
+                final int index = indexOf(entries.get(j).getOp());
+                if (index >= 0) {
+                    state.modes[index] = entries.get(j).getMode();
+                }
+            }
+        }
+
+        // Installed packages with their requested and granted permissions, per profile.
+        for (int profileId : mProfileIds) {
+            final List<PackageInfo> packageInfos;
+            try {
+                final ParceledListSlice<PackageInfo> slice = packageManager.getInstalledPackages(
+                        PackageManager.GET_PERMISSIONS, profileId);
+                packageInfos = slice != null ? slice.getList() : null;
+            } catch (RemoteException e) {
+                Log.w(TAG, "PackageManager is dead. Can't get packages of user " + profileId, e);
+                continue;
+            }
+            final int packageCount = packageInfos != null ? packageInfos.size() : 0;
+            for (int i = 0; i < packageCount; i++) {
+                final PackageInfo packageInfo = packageInfos.get(i);
+                final String[] requestedPermissions = packageInfo.requestedPermissions;
+                if (requestedPermissions == null || packageInfo.applicationInfo == null) {
+                    continue;
+                }
+                int requested = 0;
+                int granted = 0;
+                for (int j = 0; j < requestedPermissions.length; j++) {
+                    final int index = indexOf(requestedPermissions[j]);
+                    if (index < 0) {
+                        continue;
+                    }
+                    requested |= 1 << index;
+                    if ((packageInfo.requestedPermissionsFlags[j]
+                            & PackageInfo.REQUESTED_PERMISSION_GRANTED) != 0) {
+                        granted |= 1 << index;
+                    }
+                }
+                if (requested != 0) {
+                    final PackageState state = getOrCreate(packageInfo.applicationInfo.uid,
+                            packageInfo.packageName);
+                    state.packageInfo = packageInfo;
+                    state.requested = requested;
+                    state.granted = granted;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether the package requests the permission guarded by {@code op}.
+     */
+    boolean isRequested(int uid, String packageName, int op) {
+        final PackageState state = find(uid, packageName);
+        return state != null && (state.requested & (1 << indexOf(op))) != 0;
+    }
+
+    /**
+     * Returns whether the package was granted the permission guarded by {@code op}.
+     */
+    boolean isGranted(int uid, String packageName, int op) {
+        final PackageState state = find(uid, packageName);
+        return state != null && (state.granted & (1 << indexOf(op))) != 0;
+    }
+
+    /**
+     * Returns the mode of {@code op} for the package, {@link AppOpsManager#MODE_DEFAULT} if none
+     * was set.
+     */
+    int getMode(int uid, String packageName, int op) {
+        final PackageState state = find(uid, packageName);
+        return state != null ? state.modes[indexOf(op)] : AppOpsManager.MODE_DEFAULT;
+    }
+
+    /**
+     * Returns the package info of the package if it requests any of the covered permissions.
+     */
+    PackageInfo getPackageInfo(int uid, String packageName) {
+        final PackageState state = find(uid, packageName);
+        return state != null ? state.packageInfo : null;
+    }
+
+    /**
+     * Returns the packages of {@code userId} requesting the permission guarded by {@code op}.
+     */
+    List<PackageInfo> getRequestingPackages(int userId, int op) {
+        final int mask = 1 << indexOf(op);
+        final ArrayList<PackageInfo> packages = new ArrayList<>();
+        for (int i = 0; i < mStates.size(); i++) {
+            if (UserHandle.getUserId(mStates.keyAt(i)) != userId) {
+                continue;
+            }
+            for (PackageState state = mStates.valueAt(i); state != null; state = state.next) {
+                if ((state.requested & mask) != 0) {
+                    packages.add(state.packageInfo);
+                }
+            }
+        }
+        return packages;
+    }
+
+    private boolean isProfile(int userId) {
+        for (int profileId : mProfileIds) {
+            if (profileId == userId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private PackageState find(int uid, String packageName) {
+        for (PackageState state = mStates.get(uid); state != null; state = state.next) {
+            if (state.packageName.equals(packageName)) {
+                return state;
+            }
+        }
+        return null;
+    }
+
+    private PackageState getOrCreate(int uid, String packageName) {
+        PackageState state = find(uid, packageName);
+        if (state == null) {
+            state = new PackageState(packageName, mStates.get(uid));
+            mStates.put(uid, state);
+        }
+        return state;
+    }
+
+    private static int indexOf(int op) {
+        for (int i = 0; i < OPS.length; i++) {
+            if (OPS[i] == op) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(String permission) {
+        for (int i = 0; i < PERMISSIONS.length; i++) {
+            if (PERMISSIONS[i].equals(permission)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static class PackageState {
+        final String packageName;
+        // Next package sharing the uid.
+        final PackageState next;
+        final int[] modes = new int[OPS.length];
+        PackageInfo packageInfo;
+        // Bits of the requested and granted permissions, by index in PERMISSIONS.
+        int requested;
+        int granted;
+
+        PackageState(String packageName, PackageState next) {
+            this.packageName = packageName;
+            this.next = next;
+            for (int i = 0; i < modes.length; i++) {
+                modes[i] = AppOpsManager.MODE_DEFAULT;
+            }
+        }
+    }
+}
@@ -24,8 +24,10 @@ import android.content.pm.PackageManager;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.res.Resources;
 import android.graphics.drawable.Drawable;
+import android.os.LocaleList;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.os.SystemClock;
 import android.text.format.DateUtils;
 import android.util.Log;
 import android.util.SparseArray;
@@ -35,6 +37,7 @@ import com.android.settings.R;
 import java.io.File;
 import java.text.Collator;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -218,6 +221,49 @@ public class AppOpsState {
             MEDIA_TEMPLATE, DEVICE_TEMPLATE, RUN_IN_BACKGROUND_TEMPLATE
     };
 
+    // How long the ops fetched for all templates are shared by their builds.
+    private static final long INDEX_TTL_MS = 10 * 1000;
+
+    // Bits of the templates of ALL_TEMPLATES showing each op, by op code.
+    private static final int[] sOpTemplates = new int[AppOpsManager._NUM_OP];
+    // Ops of all templates, and the permissions they show.
+    private static final int[] sAllOps;
+    private static final String[] sAllPerms;
+
+    static {
+        final ArrayList<String> perms = new ArrayList<String>();
+        int numOps = 0;
+        for (int i = 0; i < ALL_TEMPLATES.length; i++) {
+            final OpsTemplate tpl = ALL_TEMPLATES[i];
+            for (int j = 0; j < tpl.ops.length; j++) {
+                if (sOpTemplates[tpl.ops[j]] == 0) {
+                    numOps++;
+                }
+                sOpTemplates[tpl.ops[j]] |= 1 << i;
+                if (tpl.showPerms[j]) {
+                    String perm = AppOpsManager.opToPermission(tpl.ops[j]);
+                    if (perm != null && !perms.contains(perm)) {
+                        perms.add(perm);
+                    }
+                }
+            }
+        }
+        sAllOps = new int[numOps];
+        for (int op = 0, i = 0; op < sOpTemplates.length; op++) {
+            if (sOpTemplates[op] != 0) {
+                sAllOps[i++] = op;
+            }
+        }
+        sAllPerms = perms.toArray(new String[perms.size()]);
+    }
+
+    private static final Object sIndexLock = new Object();
+    // Shared index of all packages, and of the last package built on its own.
+    private static OpsIndex sIndex;
+    private static OpsIndex sPackageIndex;
+    // Incremented by invalidateIndex(), so indexes fetched before are not published.
+    private static int sIndexGeneration;
+
     /**
      * This class holds the per-item data in our Loader.
      */
@@ -502,10 +548,108 @@ public class AppOpsState {
         return buildState(tpl, 0, null, RECENCY_COMPARATOR);
     }
 
-    private AppEntry getAppEntry(final Context context, final HashMap<String, AppEntry> appEntries,
-            final String packageName, ApplicationInfo appInfo) {
+    /**
+     * Drops the ops shared by the builds of all templates, so the next build fetches them again.
+     * Call after changing the mode of an op.
+     */
+    public static void invalidateIndex() {
+        synchronized (sIndexLock) {
+            sIndex = null;
+            sPackageIndex = null;
+            sIndexGeneration++;
+        }
+    }
+
+    /*
+     * Returns the bit of tpl in the indexed templates, or 0 if it is not one of ALL_TEMPLATES.
+     */
+    private static int getTemplateBit(OpsTemplate tpl) {
+        for (int i = 0; i < ALL_TEMPLATES.length; i++) {
+            // Templates are parceled to the fragments showing them, so compare their ops.
+            if (ALL_TEMPLATES[i] == tpl || Arrays.equals(ALL_TEMPLATES[i].ops, tpl.ops)) {
+                return 1 << i;
+            }
+        }
+        return 0;
+    }
+
+    /*
+     * Returns the index of all packages if packageName is null, otherwise of that package,
+     * fetching it if the shared one is older than INDEX_TTL_MS.
+     */
+    private OpsIndex getIndex(int uid, String packageName) {
+        final LocaleList locales = mContext.getResources().getConfiguration().getLocales();
+        final int generation;
+        synchronized (sIndexLock) {
+            final OpsIndex index = getPublishedIndex(uid, packageName, locales);
+            if (index != null) {
+                return index;
+            }
+            generation = sIndexGeneration;
+        }
+        // Fetched outside the lock, so builds needing an index that is already published
+        // don't wait for the fetch.
+        final OpsIndex index = fetchIndex(uid, packageName, locales);
+        synchronized (sIndexLock) {
+            // Another build may have published one meanwhile, share it with the other builds.
+            final OpsIndex published = getPublishedIndex(uid, packageName, locales);
+            if (published != null) {
+                return published;
+            }
+            // Don't publish ops read before a mode was changed.
+            if (generation == sIndexGeneration) {
+                if (packageName == null) {
+                    sIndex = index;
+                } else {
+                    sPackageIndex = index;
+                }
+            }
+            return index;
+        }
+    }
+
+    /*
+     * Returns the published index for uid and packageName if it is still valid, or null.
+     * Must be called with sIndexLock held.
+     */
+    private static OpsIndex getPublishedIndex(int uid, String packageName, LocaleList locales) {
+        final OpsIndex index = packageName == null ? sIndex : sPackageIndex;
+        return index != null && index.isValidFor(uid, packageName, locales) ? index : null;
+    }
+
+    private OpsIndex fetchIndex(int uid, String packageName, LocaleList locales) {
+        final OpsIndex index = new OpsIndex(uid, packageName, locales);
+        if (packageName == null) {
+            index.mPkgs = mAppOps.getPackagesForOps(sAllOps);
+            index.mHolders = mPm.getPackagesHoldingPermissions(sAllPerms, 0);
+        } else {
+            index.mPkgs = mAppOps.getOpsForPackage(uid, packageName, sAllOps);
+            index.mHolders = new ArrayList<PackageInfo>();
+            try {
+                index.mHolders.add(
+                        mPm.getPackageInfo(packageName, PackageManager.GET_PERMISSIONS));
+            } catch (NameNotFoundException e) {
+            }
+        }
+        final int numPkgs = index.mPkgs != null ? index.mPkgs.size() : 0;
+        index.mPkgTemplates = new int[numPkgs];
+        for (int i = 0; i < numPkgs; i++) {
+            final List<AppOpsManager.OpEntry> ops = index.mPkgs.get(i).getOps();
+            for (int j = 0; j < ops.size(); j++) {
+                index.mPkgTemplates[i] |= sOpTemplates[ops.get(j).getOp()];
+            }
+        }
+        return index;
+    }
+
+    private AppEntry getAppEntry(final Context context, final OpsIndex index,
+            final HashMap<String, AppEntry> appEntries, final String packageName,
+            ApplicationInfo appInfo) {
         AppEntry appEntry = appEntries.get(packageName);
         if (appEntry == null) {
+            if (appInfo == null && index != null) {
+                appInfo = index.getApplicationInfo(packageName);
+            }
             if (appInfo == null) {
                 try {
                     appInfo = mPm.getApplicationInfo(packageName,
@@ -517,7 +661,17 @@ public class AppOpsState {
                 }
             }
             appEntry = new AppEntry(this, appInfo);
-            appEntry.loadLabel(context);
+            final String label = index != null ? index.getLabel(packageName) : null;
+            if (label != null) {
+                appEntry.mLabel = label;
+                appEntry.mMounted = true;
+            } else {
+                appEntry.loadLabel(context);
+                if (index != null) {
+                    index.putAppInfo(packageName, appInfo, appEntry.mMounted
+                            ? appEntry.mLabel : null);
+                }
+            }
             appEntries.put(packageName, appEntry);
         }
         return appEntry;
@@ -548,8 +702,15 @@ public class AppOpsState {
             }
         }
 
+        // The templates of this screen are served from the ops fetched once for all of them,
+        // only reading the packages and ops of the template.
+        final int tplBit = getTemplateBit(tpl);
+        final OpsIndex index = tplBit != 0 ? getIndex(uid, packageName) : null;
+
         List<AppOpsManager.PackageOps> pkgs;
-        if (packageName != null) {
+        if (index != null) {
+            pkgs = index.mPkgs;
+        } else if (packageName != null) {
             pkgs = mAppOps.getOpsForPackage(uid, packageName, tpl.ops);
         } else {
             pkgs = mAppOps.getPackagesForOps(tpl.ops);
@@ -557,13 +718,20 @@ public class AppOpsState {
 
         if (pkgs != null) {
             for (int i=0; i<pkgs.size(); i++) {
+                if (index != null && (index.mPkgTemplates[i] & tplBit) == 0) {
+                    continue;
+                }
                 AppOpsManager.PackageOps pkgOps = pkgs.get(i);
-                AppEntry appEntry = getAppEntry(context, appEntries, pkgOps.getPackageName(), null);
+                AppEntry appEntry = getAppEntry(context, index, appEntries,
+                        pkgOps.getPackageName(), null);
                 if (appEntry == null) {
                     continue;
                 }
                 for (int j=0; j<pkgOps.getOps().size(); j++) {
                     AppOpsManager.OpEntry opEntry = pkgOps.getOps().get(j);
+                    if (index != null && (sOpTemplates[opEntry.getOp()] & tplBit) == 0) {
+                        continue;
+                    }
                     addOp(entries, pkgOps, appEntry, opEntry, packageName == null,
                             packageName == null ? 0 : opToOrder[opEntry.getOp()]);
                 }
@@ -571,7 +739,11 @@ public class AppOpsState {
         }
 
         List<PackageInfo> apps;
-        if (packageName != null) {
+        if (index != null) {
+            // Holders of the permissions of all templates, skipped below unless they hold one
+            // of this template.
+            apps = index.mHolders;
+        } else if (packageName != null) {
             apps = new ArrayList<PackageInfo>();
             try {
                 PackageInfo pi = mPm.getPackageInfo(packageName, PackageManager.GET_PERMISSIONS);
@@ -585,7 +757,10 @@ public class AppOpsState {
         }
         for (int i=0; i<apps.size(); i++) {
             PackageInfo appInfo = apps.get(i);
-            AppEntry appEntry = getAppEntry(context, appEntries, appInfo.packageName,
+            if (index != null && !holdsAny(appInfo, perms)) {
+                continue;
+            }
+            AppEntry appEntry = getAppEntry(context, index, appEntries, appInfo.packageName,
                     appInfo.applicationInfo);
             if (appEntry == null) {
                 continue;
@@ -635,4 +810,71 @@ public class AppOpsState {
         // Done!
         return entries;
     }
+
+    /*
+     * Returns whether the package requests one of perms, as the holders fetched for the
+     * permissions of one template would.
+     */
+    private static boolean holdsAny(PackageInfo appInfo, List<String> perms) {
+        if (appInfo.requestedPermissions == null) {
+            return false;
+        }
+        for (String perm : appInfo.requestedPermissions) {
+            if (perms.contains(perm)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Ops and permission holders for the ops of all templates, of all packages or a single one,
+     * fetched at once and shared by the builds of every template for INDEX_TTL_MS.
+     */
+    private static final class OpsIndex {
+        final long mCreatedMs = SystemClock.elapsedRealtime();
+        final int mUid;
+        final String mPackageName;
+        // Locales of the labels.
+        final LocaleList mLocales;
+        List<AppOpsManager.PackageOps> mPkgs;
+        // Templates with ops of each package of mPkgs, as bits of sOpTemplates.
+        int[] mPkgTemplates;
+        List<PackageInfo> mHolders;
+        // Application info and label by package name, resolved by the first build needing them.
+        private final HashMap<String, ApplicationInfo> mAppInfos =
+                new HashMap<String, ApplicationInfo>();
+        private final HashMap<String, String> mLabels = new HashMap<String, String>();
+
+        OpsIndex(int uid, String packageName, LocaleList locales) {
+            mUid = uid;
+            mPackageName = packageName;
+            mLocales = locales;
+        }
+
+        boolean isValidFor(int uid, String packageName, LocaleList locales) {
+            if (SystemClock.elapsedRealtime() - mCreatedMs > INDEX_TTL_MS
+                    || !mLocales.equals(locales)) {
+                return false;
+            }
+            return packageName == null
+                    ? mPackageName == null
+                    : packageName.equals(mPackageName) && uid == mUid;
+        }
+
+        synchronized ApplicationInfo getApplicationInfo(String packageName) {
+            return mAppInfos.get(packageName);
+        }
+
+        synchronized String getLabel(String packageName) {
+            return mLabels.get(packageName);
+        }
+
+        synchronized void putAppInfo(String packageName, ApplicationInfo info, String label) {
+            mAppInfos.put(packageName, info);
+            if (label != null) {
+                mLabels.put(packageName, label);
+            }
+        }
+    }
 }
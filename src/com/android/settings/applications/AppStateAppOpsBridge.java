@@ -129,8 +129,26 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
         return permissionState;
     }
 
+    @Override
+    public void onPackageListChanged() {
+        // Installed or removed packages are missing from the shared snapshot.
+        AppOpsPermissionSnapshot.invalidate();
+        super.onPackageListChanged();
+    }
+
     @Override
     protected void loadAllExtraInfo() {
+        if (isSnapshotSupported()) {
+            final AppOpsPermissionSnapshot snapshot = getSnapshot();
+            final List<AppEntry> apps = mAppSession.getAllApps();
+            for (int i = 0; i < apps.size(); i++) {
+                final AppEntry app = apps.get(i);
+                app.extraInfo = createPermissionState(snapshot, app.info.packageName,
+                        app.info.uid);
+            }
+            return;
+        }
+
         SparseArray<ArrayMap<String, PermissionState>> entries = getEntries();
 
         // Load state info.
@@ -148,6 +166,53 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
         }
     }
 
+    private boolean isSnapshotSupported() {
+        return AppOpsPermissionSnapshot.isSupported(mAppOpsOpCodes[0], mPermissions);
+    }
+
+    private AppOpsPermissionSnapshot getSnapshot() {
+        return AppOpsPermissionSnapshot.get(mIPackageManager, mAppOpsManager, mProfiles);
+    }
+
+    /*
+     * Creates the PermissionState of a package from the snapshot, or returns null if the package
+     * doesn't request the permission or is ignored.
+     */
+    private PermissionState createPermissionState(AppOpsPermissionSnapshot snapshot,
+            String packageName, int uid) {
+        final int op = mAppOpsOpCodes[0];
+        if (shouldIgnorePackage(packageName) || !snapshot.isRequested(uid, packageName, op)) {
+            return null;
+        }
+        final PermissionState state = new PermissionState(packageName,
+                UserHandle.getUserHandleForUid(uid));
+        state.packageInfo = snapshot.getPackageInfo(uid, packageName);
+        state.permissionDeclared = true;
+        state.staticPermissionGranted = snapshot.isGranted(uid, packageName, op);
+        state.appOpMode = snapshot.getMode(uid, packageName, op);
+        return state;
+    }
+
+    /*
+     * Counts the packages of the current user requesting the permission from the snapshot, only
+     * those allowed to use it if permissibleOnly is true.
+     */
+    private int countPackagesFromSnapshot(boolean permissibleOnly) {
+        final AppOpsPermissionSnapshot snapshot = getSnapshot();
+        final List<PackageInfo> packageInfos = snapshot.getRequestingPackages(
+                mUserManager.getUserHandle(), mAppOpsOpCodes[0]);
+        int result = 0;
+        for (int i = 0; i < packageInfos.size(); i++) {
+            final PackageInfo packageInfo = packageInfos.get(i);
+            final PermissionState state = createPermissionState(snapshot,
+                    packageInfo.packageName, packageInfo.applicationInfo.uid);
+            if (state != null && (!permissibleOnly || state.isPermissible())) {
+                result++;
+            }
+        }
+        return result;
+    }
+
     /*
      * Gets a sparse array that describes every user on the device and all the associated packages
      * of each user, together with the packages available for that user.
@@ -270,6 +335,9 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
     }
 
     public int getNumPackagesDeclaredPermission() {
+        if (isSnapshotSupported()) {
+            return countPackagesFromSnapshot(false /* permissibleOnly */);
+        }
         SparseArray<ArrayMap<String, PermissionState>> entries = getEntries();
         if (entries == null) {
             return 0;
@@ -283,6 +351,9 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
     }
 
     public int getNumPackagesAllowedByAppOps() {
+        if (isSnapshotSupported()) {
+            return countPackagesFromSnapshot(true /* permissibleOnly */);
+        }
         SparseArray<ArrayMap<String, PermissionState>> entries = getEntries();
         if (entries == null) {
             return 0;
@@ -18,24 +18,50 @@ package com.android.settings.applications;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
+import android.os.UserHandle;
+import android.support.annotation.VisibleForTesting;
+import android.util.ArrayMap;
+import android.util.ArraySet;
 
 import com.android.settingslib.applications.ApplicationsState;
 import com.android.settingslib.applications.ApplicationsState.AppEntry;
 import com.android.settingslib.applications.ApplicationsState.Session;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
 import java.util.ArrayList;
+import java.util.HashSet;
 
 /**
  * Common base class for bridging information to ApplicationsState.
+ *
+ * <p>Extra info is loaded for all apps with {@link #loadAllExtraInfo()} on resume and when the
+ * set of users of the apps changes. When the package list changes, only the entries the bridge
+ * has not seen yet (ApplicationsState creates new entries for changed packages) are updated
+ * with {@link #updateExtraInfo(AppEntry, String, int)}. Load times of each bridge are reported
+ * through {@link com.android.settings.SettingsDumpService}.
  */
 public abstract class AppStateBaseBridge implements ApplicationsState.Callbacks {
 
+    // Above this many new entries, reloading everything is cheaper than updating them one by one.
+    @VisibleForTesting
+    static final int MAX_ENTRY_UPDATES = 16;
+
+    // Bridge class name -> its load times.
+    private static final ArrayMap<String, LoadStats> sLoadStats = new ArrayMap<>();
+
     protected final ApplicationsState mAppState;
     protected final Session mAppSession;
     protected final Callback mCallback;
     protected final BackgroundHandler mHandler;
     protected final MainHandler mMainHandler;
 
+    // Entries with loaded extra info and their users, used on the background thread only.
+    private HashSet<AppEntry> mLoadedApps = new HashSet<>();
+    private final ArraySet<Integer> mLoadedUserIds = new ArraySet<>();
+
     public AppStateBaseBridge(ApplicationsState appState, Callback callback) {
         mAppState = appState;
         mAppSession = mAppState != null ? mAppState.newSession(this) : null;
@@ -67,12 +93,12 @@ public abstract class AppStateBaseBridge implements ApplicationsState.Callbacks
 
     @Override
     public void onPackageListChanged() {
-        mHandler.sendEmptyMessage(BackgroundHandler.MSG_LOAD_ALL);
+        mHandler.sendEmptyMessage(BackgroundHandler.MSG_LOAD_CHANGED);
     }
 
     @Override
     public void onLoadEntriesCompleted() {
-        mHandler.sendEmptyMessage(BackgroundHandler.MSG_LOAD_ALL);
+        mHandler.sendEmptyMessage(BackgroundHandler.MSG_LOAD_CHANGED);
     }
 
     @Override
@@ -108,6 +134,121 @@ public abstract class AppStateBaseBridge implements ApplicationsState.Callbacks
     protected abstract void loadAllExtraInfo();
     protected abstract void updateExtraInfo(AppEntry app, String pkg, int uid);
 
+    @VisibleForTesting
+    void loadAll() {
+        final long startMs = SystemClock.elapsedRealtime();
+        loadAllExtraInfo();
+        getLoadStats().recordFullLoad(SystemClock.elapsedRealtime() - startMs);
+        setLoaded(mAppSession.getAllApps());
+        mMainHandler.sendEmptyMessage(MainHandler.MSG_INFO_UPDATED);
+    }
+
+    @VisibleForTesting
+    void loadChanged() {
+        final ArrayList<AppEntry> apps = mAppSession.getAllApps();
+        final ArrayList<AppEntry> changed = new ArrayList<>();
+        final ArraySet<Integer> userIds = new ArraySet<>();
+        for (int i = 0; i < apps.size(); i++) {
+            final AppEntry app = apps.get(i);
+            userIds.add(UserHandle.getUserId(app.info.uid));
+            if (!mLoadedApps.contains(app)) {
+                changed.add(app);
+            }
+        }
+        if (!userIds.equals(mLoadedUserIds) || changed.size() > MAX_ENTRY_UPDATES) {
+            // A user or profile came or went, or most entries are new.
+            loadAll();
+            return;
+        }
+        if (changed.isEmpty()) {
+            if (mLoadedApps.size() != apps.size()) {
+                // Only removed packages.
+                setLoaded(apps);
+            }
+            return;
+        }
+        final long startMs = SystemClock.elapsedRealtime();
+        for (int i = 0; i < changed.size(); i++) {
+            final AppEntry app = changed.get(i);
+            updateExtraInfo(app, app.info.packageName, app.info.uid);
+        }
+        getLoadStats().recordUpdate(changed.size(), SystemClock.elapsedRealtime() - startMs);
+        setLoaded(apps);
+        mMainHandler.sendEmptyMessage(MainHandler.MSG_INFO_UPDATED);
+    }
+
+    private void setLoaded(ArrayList<AppEntry> apps) {
+        mLoadedApps = new HashSet<>(apps);
+        mLoadedUserIds.clear();
+        for (int i = 0; i < apps.size(); i++) {
+            mLoadedUserIds.add(UserHandle.getUserId(apps.get(i).info.uid));
+        }
+    }
+
+    private LoadStats getLoadStats() {
+        final String name = getClass().getName();
+        synchronized (sLoadStats) {
+            LoadStats stats = sLoadStats.get(name);
+            if (stats == null) {
+                stats = new LoadStats();
+                sLoadStats.put(name, stats);
+            }
+            return stats;
+        }
+    }
+
+    /**
+     * Returns the extra info load times of the bridges used so far, keyed by class name.
+     */
+    public static JSONObject dumpLoadStatsJson() throws JSONException {
+        final JSONObject json = new JSONObject();
+        synchronized (sLoadStats) {
+            for (int i = 0; i < sLoadStats.size(); i++) {
+                json.put(sLoadStats.keyAt(i), sLoadStats.valueAt(i).toJson());
+            }
+        }
+        return json;
+    }
+
+    @VisibleForTesting
+    static void clearLoadStats() {
+        synchronized (sLoadStats) {
+            sLoadStats.clear();
+        }
+    }
+
+    private static class LoadStats {
+        private int mFullLoads;
+        private long mFullLoadTotalMs;
+        private long mFullLoadMaxMs;
+        private int mUpdates;
+        private int mUpdatedEntries;
+        private long mUpdateTotalMs;
+
+        synchronized void recordFullLoad(long durationMs) {
+            mFullLoads++;
+            mFullLoadTotalMs += durationMs;
+            mFullLoadMaxMs = Math.max(mFullLoadMaxMs, durationMs);
+        }
+
+        synchronized void recordUpdate(int entries, long durationMs) {
+            mUpdates++;
+            mUpdatedEntries += entries;
+            mUpdateTotalMs += durationMs;
+        }
+
+        synchronized JSONObject toJson() throws JSONException {
+            final JSONObject json = new JSONObject();
+            json.put("full_loads", mFullLoads);
+            json.put("full_load_total_ms", mFullLoadTotalMs);
+            json.put("full_load_max_ms", mFullLoadMaxMs);
+            json.put("updates", mUpdates);
+            json.put("updated_entries", mUpdatedEntries);
+            json.put("update_total_ms", mUpdateTotalMs);
+            return json;
+        }
+    }
+
     private class MainHandler extends Handler {
         private static final int MSG_INFO_UPDATED = 1;
 
@@ -124,6 +265,7 @@ public abstract class AppStateBaseBridge implements ApplicationsState.Callbacks
     private class BackgroundHandler extends Handler {
         private static final int MSG_LOAD_ALL = 1;
         private static final int MSG_FORCE_LOAD_PKG = 2;
+        private static final int MSG_LOAD_CHANGED = 3;
 
         public BackgroundHandler(Looper looper) {
             super(looper);
@@ -133,8 +275,12 @@ public abstract class AppStateBaseBridge implements ApplicationsState.Callbacks
         public void handleMessage(Message msg) {
             switch (msg.what) {
                 case MSG_LOAD_ALL:
-                    loadAllExtraInfo();
-                    mMainHandler.sendEmptyMessage(MainHandler.MSG_INFO_UPDATED);
+                    // Reloading everything covers pending changes.
+                    removeMessages(MSG_LOAD_CHANGED);
+                    loadAll();
+                    break;
+                case MSG_LOAD_CHANGED:
+                    loadChanged();
                     break;
                 case MSG_FORCE_LOAD_PKG:
                     ArrayList<AppEntry> apps = mAppSession.getAllApps();
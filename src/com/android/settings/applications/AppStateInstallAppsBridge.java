@@ -22,6 +22,8 @@ import android.content.Context;
 import android.content.pm.IPackageManager;
 import android.content.pm.PackageManager;
 import android.os.RemoteException;
+import android.os.UserHandle;
+import android.os.UserManager;
 import android.util.Log;
 
 import com.android.internal.util.ArrayUtils;
@@ -43,12 +45,21 @@ public class AppStateInstallAppsBridge extends AppStateBaseBridge {
 
     private final IPackageManager mIpm;
     private final AppOpsManager mAppOpsManager;
+    private final List<UserHandle> mProfiles;
 
     public AppStateInstallAppsBridge(Context context, ApplicationsState appState,
             Callback callback) {
         super(appState, callback);
         mIpm = AppGlobals.getPackageManager();
         mAppOpsManager = (AppOpsManager) context.getSystemService(Context.APP_OPS_SERVICE);
+        mProfiles = UserManager.get(context).getUserProfiles();
+    }
+
+    @Override
+    public void onPackageListChanged() {
+        // Installed or removed packages are missing from the shared snapshot.
+        AppOpsPermissionSnapshot.invalidate();
+        super.onPackageListChanged();
     }
 
     @Override
@@ -58,11 +69,21 @@ public class AppStateInstallAppsBridge extends AppStateBaseBridge {
 
     @Override
     protected void loadAllExtraInfo() {
-        // TODO: consider making this a batch operation with a single binder call
+        final AppOpsPermissionSnapshot snapshot = AppOpsPermissionSnapshot.get(
+                new IPackageManagerWrapperImpl(mIpm), mAppOpsManager, mProfiles);
         final List<AppEntry> allApps = mAppSession.getAllApps();
         for (int i = 0; i < allApps.size(); i++) {
-            AppEntry currentEntry = allApps.get(i);
-            updateExtraInfo(currentEntry, currentEntry.info.packageName, currentEntry.info.uid);
+            final AppEntry currentEntry = allApps.get(i);
+            final String packageName = currentEntry.info.packageName;
+            final int uid = currentEntry.info.uid;
+            final InstallAppsState appState = new InstallAppsState();
+            appState.permissionRequested = snapshot.isRequested(uid, packageName,
+                    AppOpsManager.OP_REQUEST_INSTALL_PACKAGES);
+            appState.permissionGranted = snapshot.isGranted(uid, packageName,
+                    AppOpsManager.OP_REQUEST_INSTALL_PACKAGES);
+            appState.appOpMode = snapshot.getMode(uid, packageName,
+                    AppOpsManager.OP_REQUEST_INSTALL_PACKAGES);
+            currentEntry.extraInfo = appState;
         }
     }
 
@@ -378,6 +378,7 @@ public class AppStorageSettings extends AppInfoWithHeader
         mClearDataButton.setText(R.string.clear_user_data_text);
         if (result == OP_SUCCESSFUL) {
             Log.i(TAG, "Cleared user data for package : "+packageName);
+            FetchPackageStorageAsyncLoader.invalidate(mInfo, UserHandle.of(mUserId));
             updateSize();
         } else {
             mClearDataButton.setEnabled(true);
@@ -579,6 +580,7 @@ public class AppStorageSettings extends AppInfoWithHeader
                 case MSG_CLEAR_CACHE:
                     mCacheCleared = true;
                     // Refresh size info
+                    FetchPackageStorageAsyncLoader.invalidate(mInfo, UserHandle.of(mUserId));
                     updateSize();
                     break;
             }
@@ -21,6 +21,7 @@ import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.RemoteException;
 import android.os.UserHandle;
+import android.text.TextUtils;
 
 import com.android.settings.enterprise.DevicePolicyManagerWrapper;
 
@@ -49,6 +50,15 @@ public abstract class AppWithAdminGrantedPermissionsCounter extends AppCounter {
                 info);
     }
 
+    @Override
+    protected String getFilterKey() {
+        return getFilterKey(mPermissions);
+    }
+
+    static String getFilterKey(String[] permissions) {
+        return "admin_granted:" + TextUtils.join(",", permissions);
+    }
+
     public static boolean includeInCount(String[] permissions,
             DevicePolicyManagerWrapper devicePolicyManager, PackageManagerWrapper packageManager,
             IPackageManagerWrapper packageManagerService, ApplicationInfo info) {
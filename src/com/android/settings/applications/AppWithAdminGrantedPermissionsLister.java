@@ -16,6 +16,7 @@
 
 package com.android.settings.applications;
 
+import android.content.Context;
 import android.content.pm.ApplicationInfo;
 import android.os.UserManager;
 import com.android.settings.enterprise.DevicePolicyManagerWrapper;
@@ -32,7 +33,14 @@ public abstract class AppWithAdminGrantedPermissionsLister extends AppLister {
     public AppWithAdminGrantedPermissionsLister(String[] permissions,
             PackageManagerWrapper packageManager, IPackageManagerWrapper packageManagerService,
             DevicePolicyManagerWrapper devicePolicyManager, UserManager userManager) {
-        super(packageManager, userManager);
+        this(null /* context */, permissions, packageManager, packageManagerService,
+                devicePolicyManager, userManager);
+    }
+
+    public AppWithAdminGrantedPermissionsLister(Context context, String[] permissions,
+            PackageManagerWrapper packageManager, IPackageManagerWrapper packageManagerService,
+            DevicePolicyManagerWrapper devicePolicyManager, UserManager userManager) {
+        super(context, packageManager, userManager);
         mPermissions = permissions;
         mPackageManagerService = packageManagerService;
         mDevicePolicyManager = devicePolicyManager;
@@ -43,4 +51,9 @@ public abstract class AppWithAdminGrantedPermissionsLister extends AppLister {
         return AppWithAdminGrantedPermissionsCounter.includeInCount(mPermissions,
                 mDevicePolicyManager, mPm, mPackageManagerService, info);
     }
+
+    @Override
+    protected String getFilterKey() {
+        return AppWithAdminGrantedPermissionsCounter.getFilterKey(mPermissions);
+    }
 }
@@ -78,7 +78,7 @@ public class ApplicationFeatureProviderImpl implements ApplicationFeatureProvide
     @Override
     public void listPolicyInstalledApps(ListOfAppsCallback callback) {
         final CurrentUserPolicyInstalledAppLister lister =
-                new CurrentUserPolicyInstalledAppLister(mPm, mUm, callback);
+                new CurrentUserPolicyInstalledAppLister(mContext, mPm, mUm, callback);
         lister.execute();
     }
 
@@ -99,8 +99,8 @@ public class ApplicationFeatureProviderImpl implements ApplicationFeatureProvide
     public void listAppsWithAdminGrantedPermissions(String[] permissions,
             ListOfAppsCallback callback) {
         final CurrentUserAppWithAdminGrantedPermissionsLister lister =
-                new CurrentUserAppWithAdminGrantedPermissionsLister(permissions, mPm, mPms, mDpm,
-                        mUm, callback);
+                new CurrentUserAppWithAdminGrantedPermissionsLister(mContext, permissions, mPm,
+                        mPms, mDpm, mUm, callback);
         lister.execute();
     }
 
@@ -177,9 +177,9 @@ public class ApplicationFeatureProviderImpl implements ApplicationFeatureProvide
     private static class CurrentUserPolicyInstalledAppLister extends InstalledAppLister {
         private ListOfAppsCallback mCallback;
 
-        CurrentUserPolicyInstalledAppLister(PackageManagerWrapper packageManager,
+        CurrentUserPolicyInstalledAppLister(Context context, PackageManagerWrapper packageManager,
                 UserManager userManager, ListOfAppsCallback callback) {
-            super(packageManager, userManager);
+            super(context, packageManager, userManager);
             mCallback = callback;
         }
 
@@ -193,12 +193,12 @@ public class ApplicationFeatureProviderImpl implements ApplicationFeatureProvide
             AppWithAdminGrantedPermissionsLister {
         private ListOfAppsCallback mCallback;
 
-        CurrentUserAppWithAdminGrantedPermissionsLister(String[] permissions,
+        CurrentUserAppWithAdminGrantedPermissionsLister(Context context, String[] permissions,
                 PackageManagerWrapper packageManager, IPackageManagerWrapper packageManagerService,
                 DevicePolicyManagerWrapper devicePolicyManager, UserManager userManager,
                 ListOfAppsCallback callback) {
-            super(permissions, packageManager, packageManagerService, devicePolicyManager,
-                    userManager);
+            super(context, permissions, packageManager, packageManagerService,
+                    devicePolicyManager, userManager);
             mCallback = callback;
         }
 
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
+import android.util.ArrayMap;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.android.settings.utils.CacheRegistry;
+import com.android.settingslib.applications.StorageStatsSource;
+import com.android.settingslib.applications.StorageStatsSource.AppStorageStats;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Storage stats of all the apps of a user, fetched together and shared by the screens showing
+ * app sizes, such as sorting {@link ManageApplications} by size and the storage categories.
+ *
+ * <p>Stats are fetched per uid rather than per package: the stats of a uid cover all of its
+ * packages, so each uid is queried once however many packages it has. Fetched stats are kept
+ * with the time they were fetched for {@link #STATS_TTL_MS}. Stats fetched elsewhere for the only
+ * package of a uid, like on the app storage screen, are pushed through {@link #updateStats} so
+ * {@link Listener}s can update what they show without fetching them all again.
+ */
+public class BatchedStorageStatsSource {
+
+    private static final String TAG = "BatchedStorageStats";
+
+    @VisibleForTesting
+    static final long STATS_TTL_MS = 60 * 1000;
+
+    // "<volume uuid>:<uid>" -> last stats of the uid on the volume.
+    private static final ArrayMap<String, UidStats> sCache = new ArrayMap<>();
+    private static final CacheRegistry.Cache sCacheEntry = CacheRegistry.get().register(
+            new CacheRegistry.Cache("storage_stats", TRIM_MEMORY_UI_HIDDEN) {
+                @Override
+                public int getEntryCount() {
+                    synchronized (sCache) {
+                        return sCache.size();
+                    }
+                }
+
+                @Override
+                protected void clear() {
+                    synchronized (sCache) {
+                        sCache.clear();
+                    }
+                }
+            });
+    private static final ArrayList<Listener> sListeners = new ArrayList<>();
+
+    /**
+     * Told when the stats of a uid changed, on the thread they were updated from.
+     */
+    public interface Listener {
+        void onStatsChanged(String volumeUuid, int uid);
+    }
+
+    private final StorageStatsSource mSource;
+
+    public BatchedStorageStatsSource(Context context) {
+        this(new StorageStatsSource(context));
+    }
+
+    public BatchedStorageStatsSource(StorageStatsSource source) {
+        mSource = source;
+    }
+
+    public static void addListener(Listener listener) {
+        synchronized (sListeners) {
+            if (!sListeners.contains(listener)) {
+                sListeners.add(listener);
+            }
+        }
+    }
+
+    public static void removeListener(Listener listener) {
+        synchronized (sListeners) {
+            sListeners.remove(listener);
+        }
+    }
+
+    /**
+     * Returns the stats on {@code volumeUuid} of the uids of {@code apps}, keyed by uid. Only the
+     * uids with no stats fetched in the last {@link #STATS_TTL_MS} are queried, once each. Uids
+     * whose stats could not be fetched are left out. Must not be called on the main thread.
+     */
+    public SparseArray<UidStats> getStats(String volumeUuid, List<ApplicationInfo> apps) {
+        final SparseArray<UidStats> result = new SparseArray<>();
+        final long now = SystemClock.elapsedRealtime();
+        synchronized (sCache) {
+            for (int i = 0, size = apps.size(); i < size; i++) {
+                final int uid = apps.get(i).uid;
+                if (result.indexOfKey(uid) >= 0) {
+                    continue;
+                }
+                final UidStats cached = sCache.get(getKey(volumeUuid, uid));
+                if (cached != null && now - cached.fetchTimeMs <= STATS_TTL_MS) {
+                    sCacheEntry.recordHit();
+                    result.put(uid, cached);
+                } else {
+                    sCacheEntry.recordMiss();
+                    result.put(uid, null);
+                }
+            }
+        }
+        for (int i = result.size() - 1; i >= 0; i--) {
+            if (result.valueAt(i) != null) {
+                continue;
+            }
+            final int uid = result.keyAt(i);
+            final AppStorageStats stats;
+            try {
+                stats = mSource.getStatsForUid(volumeUuid, uid);
+            } catch (IOException e) {
+                // This may happen if the packages of the uid were removed meanwhile.
+                Log.w(TAG, "Failed to get stats of uid " + uid, e);
+                result.removeAt(i);
+                continue;
+            }
+            final UidStats uidStats = new UidStats(stats, SystemClock.elapsedRealtime());
+            put(volumeUuid, uid, uidStats);
+            result.setValueAt(i, uidStats);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the last stats fetched for {@code uid} on {@code volumeUuid}, however old they are,
+     * or null if there are none.
+     */
+    public static UidStats getCachedStats(String volumeUuid, int uid) {
+        synchronized (sCache) {
+            return sCache.get(getKey(volumeUuid, uid));
+        }
+    }
+
+    /**
+     * Replaces the stats of {@code uid} on {@code volumeUuid} with {@code stats}, and tells the
+     * listeners. The stats must cover the whole uid, so stats fetched for a package may only be
+     * pushed if it is the only package of the uid.
+     */
+    public static void updateStats(String volumeUuid, int uid, AppStorageStats stats) {
+        put(volumeUuid, uid, new UidStats(stats, SystemClock.elapsedRealtime()));
+        notifyStatsChanged(volumeUuid, uid);
+    }
+
+    /**
+     * Drops the stats of {@code uid} on {@code volumeUuid}, for when its storage was just
+     * cleared, and tells the listeners.
+     */
+    public static void invalidate(String volumeUuid, int uid) {
+        synchronized (sCache) {
+            sCache.remove(getKey(volumeUuid, uid));
+        }
+        notifyStatsChanged(volumeUuid, uid);
+    }
+
+    @VisibleForTesting
+    public static void clearCache() {
+        synchronized (sCache) {
+            sCache.clear();
+        }
+    }
+
+    private static String getKey(String volumeUuid, int uid) {
+        return volumeUuid + ":" + uid;
+    }
+
+    private static void put(String volumeUuid, int uid, UidStats stats) {
+        synchronized (sCache) {
+            final String key = getKey(volumeUuid, uid);
+            final UidStats cached = sCache.get(key);
+            // Stats fetched in bulk may arrive after newer ones pushed for the package.
+            if (cached == null || cached.fetchTimeMs <= stats.fetchTimeMs) {
+                sCache.put(key, stats);
+            }
+        }
+    }
+
+    private static void notifyStatsChanged(String volumeUuid, int uid) {
+        final Listener[] listeners;
+        synchronized (sListeners) {
+            listeners = sListeners.toArray(new Listener[sListeners.size()]);
+        }
+        for (Listener listener : listeners) {
+            listener.onStatsChanged(volumeUuid, uid);
+        }
+    }
+
+    /**
+     * Storage stats of all the packages of a uid, and the time they were fetched.
+     */
+    public static class UidStats {
+        public final long codeBytes;
+        public final long dataBytes;
+        public final long cacheBytes;
+        public final long fetchTimeMs;
+
+        @VisibleForTesting
+        UidStats(AppStorageStats stats, long fetchTimeMs) {
+            this.codeBytes = stats.getCodeBytes();
+            this.dataBytes = stats.getDataBytes();
+            this.cacheBytes = stats.getCacheBytes();
+            this.fetchTimeMs = fetchTimeMs;
+        }
+
+        public long getTotalBytes() {
+            return codeBytes + dataBytes;
+        }
+    }
+}
@@ -145,6 +145,7 @@ public class DrawOverlayDetails extends AppInfoWithHeader implements OnPreferenc
         mAppOpsManager.setMode(AppOpsManager.OP_SYSTEM_ALERT_WINDOW,
                 mPackageInfo.applicationInfo.uid, mPackageName, newState
                 ? AppOpsManager.MODE_ALLOWED : AppOpsManager.MODE_ERRORED);
+        AppOpsPermissionSnapshot.invalidate();
     }
 
     @VisibleForTesting
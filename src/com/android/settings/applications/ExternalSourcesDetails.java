@@ -105,6 +105,7 @@ public class ExternalSourcesDetails extends AppInfoWithHeader
         mAppOpsManager.setMode(AppOpsManager.OP_REQUEST_INSTALL_PACKAGES,
                 mPackageInfo.applicationInfo.uid, mPackageName,
                 newState ? AppOpsManager.MODE_ALLOWED : AppOpsManager.MODE_ERRORED);
+        AppOpsPermissionSnapshot.invalidate();
     }
 
     @Override
@@ -24,7 +24,7 @@ import android.os.UserHandle;
 import android.util.Log;
 
 import com.android.internal.util.Preconditions;
-import com.android.settings.utils.AsyncLoader;
+import com.android.settings.utils.CachingAsyncLoader;
 import com.android.settingslib.applications.StorageStatsSource;
 import com.android.settingslib.applications.StorageStatsSource.AppStorageStats;
 
@@ -32,8 +32,9 @@ import java.io.IOException;
 
 /**
  * Fetches the storage stats using the StorageStatsManager for a given package and user tuple.
+ * The last stats of the package are shown right away while they are fetched again.
  */
-public class FetchPackageStorageAsyncLoader extends AsyncLoader<AppStorageStats> {
+public class FetchPackageStorageAsyncLoader extends CachingAsyncLoader<AppStorageStats> {
     private static final String TAG = "FetchPackageStorage";
     private final StorageStatsSource mSource;
     private final ApplicationInfo mInfo;
@@ -47,18 +48,46 @@ public class FetchPackageStorageAsyncLoader extends AsyncLoader<AppStorageStats>
         mUser = user;
     }
 
+    /**
+     * Drops the cached stats of the package, for when its storage was just cleared.
+     */
+    public static void invalidate(ApplicationInfo info, UserHandle user) {
+        CachingAsyncLoader.invalidate(getCacheKey(info, user));
+        BatchedStorageStatsSource.invalidate(info.volumeUuid, getUid(info, user));
+    }
+
+    private static int getUid(ApplicationInfo info, UserHandle user) {
+        return UserHandle.getUid(user.getIdentifier(), UserHandle.getAppId(info.uid));
+    }
+
+    private boolean isOnlyPackageOfUid(int uid) {
+        final String[] packages = getContext().getPackageManager().getPackagesForUid(uid);
+        return packages != null && packages.length == 1;
+    }
+
+    private static String getCacheKey(ApplicationInfo info, UserHandle user) {
+        return TAG + ":" + info.volumeUuid + ":" + info.packageName + ":" + user.getIdentifier();
+    }
+
+    @Override
+    protected String getCacheKey() {
+        return getCacheKey(mInfo, mUser);
+    }
+
     @Override
-    public AppStorageStats loadInBackground() {
+    protected AppStorageStats loadUncached() {
         AppStorageStats result = null;
         try {
             result = mSource.getStatsForPackage(mInfo.volumeUuid, mInfo.packageName, mUser);
+            // The stats of a package are those of its uid only if no other package shares it,
+            // let the other screens showing the uid know in that case.
+            final int uid = getUid(mInfo, mUser);
+            if (isOnlyPackageOfUid(uid)) {
+                BatchedStorageStatsSource.updateStats(mInfo.volumeUuid, uid, result);
+            }
         } catch (NameNotFoundException | IOException e) {
             Log.w(TAG, "Package may have been removed during query, failing gracefully", e);
         }
         return result;
     }
-
-    @Override
-    protected void onDiscardResult(AppStorageStats result) {
-    }
 }
@@ -72,4 +72,12 @@ public interface IPackageManagerWrapper {
      */
     ParceledListSlice<PackageInfo> getPackagesHoldingPermissions(
         String[] permissions, int flags, int userId) throws RemoteException;
+
+    /**
+     * Calls {@code IPackageManager.getInstalledPackages()}.
+     *
+     * @see android.content.pm.IPackageManager#getInstalledPackages
+     */
+    ParceledListSlice<PackageInfo> getInstalledPackages(int flags, int userId)
+            throws RemoteException;
 }
@@ -64,4 +64,10 @@ public class IPackageManagerWrapperImpl implements IPackageManagerWrapper {
         return mPms.getPackagesHoldingPermissions(permissions, flags, userId);
     }
 
+    @Override
+    public ParceledListSlice<PackageInfo> getInstalledPackages(int flags, int userId)
+            throws RemoteException {
+        return mPms.getInstalledPackages(flags, userId);
+    }
+
 }
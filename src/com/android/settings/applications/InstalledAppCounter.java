@@ -43,6 +43,15 @@ public abstract class InstalledAppCounter extends AppCounter {
         return includeInCount(mInstallReason, mPm, info);
     }
 
+    @Override
+    protected String getFilterKey() {
+        return getFilterKey(mInstallReason);
+    }
+
+    static String getFilterKey(int installReason) {
+        return "installed:" + installReason;
+    }
+
     public static boolean includeInCount(int installReason, PackageManagerWrapper pm,
             ApplicationInfo info) {
         final int userId = UserHandle.getUserId(info.uid);
@@ -59,6 +59,7 @@ import android.support.v7.preference.PreferenceScreen;
 import android.text.TextUtils;
 import android.text.format.DateUtils;
 import android.text.format.Formatter;
+import android.util.ArrayMap;
 //import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -165,6 +166,25 @@ public class InstalledAppDetails extends AppInfoBase
     private static final String KEY_INSTANT_APP_SUPPORTED_LINKS =
             "instant_app_launch_supported_domain_urls";
 
+    // Sections loaded through mSectionLoader.
+    private static final String SECTION_NOTIFICATION = "notification";
+    private static final String SECTION_LAUNCH = "launch";
+    private static final String SECTION_MEMORY = "memory";
+    private static final String SECTION_DYNAMIC_PREFS = "dynamic_prefs";
+
+    // Keys of the preferences added by addDynamicPrefs() that show a summary.
+    private static final String[] DYNAMIC_PREF_KEYS = {
+            "default_home",
+            "default_browser",
+            "default_phone_app",
+            "default_emergency_app",
+            "default_sms_app",
+            "system_alert_window",
+            "picture_in_picture",
+            "write_settings_apps",
+            "install_other_apps",
+    };
+
     private final HashSet<String> mHomePackages = new HashSet<>();
 
     private boolean mInitialized;
@@ -208,6 +228,8 @@ public class InstalledAppDetails extends AppInfoBase
     private AppStorageStats mLastResult;
     private String mBatteryPercent;
 
+    private AppInfoSectionLoader mSectionLoader;
+
     @VisibleForTesting
     final LoaderCallbacks<BatteryStatsHelper> mBatteryCallbacks =
             new LoaderCallbacks<BatteryStatsHelper>() {
@@ -380,6 +402,7 @@ public class InstalledAppDetails extends AppInfoBase
             return;
         }
 
+        mSectionLoader = new AppInfoSectionLoader(mPackageName, mUserId);
         setHasOptionsMenu(true);
         addPreferencesFromResource(R.xml.installed_app_details_ia);
         addDynamicPrefs();
@@ -418,8 +441,6 @@ public class InstalledAppDetails extends AppInfoBase
             loaderManager.restartLoader(LOADER_STORAGE, Bundle.EMPTY, this);
         }
         restartBatteryStatsLoader();
-        new MemoryUpdater().execute();
-        updateDynamicPrefs();
     }
 
     @VisibleForTesting
@@ -430,12 +451,19 @@ public class InstalledAppDetails extends AppInfoBase
     @Override
     public void onPause() {
         getLoaderManager().destroyLoader(LOADER_CHART_DATA);
+        if (mSectionLoader != null && !isRemoving() && !getActivity().isFinishing()) {
+            // Left for one of the sub-screens, which may change what the sections show.
+            mSectionLoader.invalidate();
+        }
         super.onPause();
     }
 
     @Override
     public void onDestroy() {
         TrafficStats.closeQuietly(mStatsSession);
+        if (mSectionLoader != null) {
+            mSectionLoader.release();
+        }
         super.onDestroy();
     }
 
@@ -486,6 +514,8 @@ public class InstalledAppDetails extends AppInfoBase
         } else {
             mLaunchPreference.setEnabled(false);
         }
+        // Start fetching the sections already, rather than when the page is first refreshed.
+        loadSections();
     }
 
     @Override
@@ -592,7 +622,12 @@ public class InstalledAppDetails extends AppInfoBase
     @Override
     public void onLoadFinished(Loader<AppStorageStats> loader, AppStorageStats result) {
         mLastResult = result;
-        refreshUi();
+        // Only the storage summary changed, don't ask for the other sections again.
+        if (mAppEntry != null && getActivity() != null) {
+            final boolean isExternal =
+                    (mAppEntry.info.flags & ApplicationInfo.FLAG_EXTERNAL_STORAGE) != 0;
+            mStoragePreference.setSummary(getStorageSummary(getActivity(), result, isExternal));
+        }
     }
 
     @Override
@@ -731,10 +766,7 @@ public class InstalledAppDetails extends AppInfoBase
 
         PermissionsSummaryHelper.getPermissionSummary(getContext(),
                 mPackageName, mPermissionCallback);
-        mLaunchPreference.setSummary(AppUtils.getLaunchByDefaultSummary(mAppEntry, mUsbManager,
-                mPm, context));
-        mNotificationPreference.setSummary(getNotificationSummary(mAppEntry, context,
-                mBackend));
+        loadSections();
         if (mDataPreference != null) {
             mDataPreference.setSummary(getDataSummary());
         }
@@ -1254,52 +1286,100 @@ public class InstalledAppDetails extends AppInfoBase
         return false;
     }
 
-    private void updateDynamicPrefs() {
-        final Context context = getContext();
-        Preference pref = findPreference("default_home");
-
-        if (pref != null) {
-            pref.setSummary(DefaultHomePreferenceController.isHomeDefault(mPackageName, context)
-                    ? R.string.yes : R.string.no);
-        }
-        pref = findPreference("default_browser");
-        if (pref != null) {
-            pref.setSummary(new DefaultBrowserPreferenceController(context)
-                    .isBrowserDefault(mPackageName, mUserId)
-                    ? R.string.yes : R.string.no);
-        }
-        pref = findPreference("default_phone_app");
-        if (pref != null) {
-            pref.setSummary(
-                    DefaultPhonePreferenceController.isPhoneDefault(mPackageName, context)
-                    ? R.string.yes : R.string.no);
-        }
-        pref = findPreference("default_emergency_app");
-        if (pref != null) {
-            pref.setSummary(DefaultEmergencyPreferenceController.isEmergencyDefault(mPackageName,
-                    getContext()) ? R.string.yes : R.string.no);
-        }
-        pref = findPreference("default_sms_app");
-        if (pref != null) {
-            pref.setSummary(DefaultSmsPreferenceController.isSmsDefault(mPackageName, context)
-                    ? R.string.yes : R.string.no);
-        }
-        pref = findPreference("system_alert_window");
-        if (pref != null) {
-            pref.setSummary(DrawOverlayDetails.getSummary(getContext(), mAppEntry));
-        }
-        pref = findPreference("picture_in_picture");
-        if (pref != null) {
-            pref.setSummary(PictureInPictureDetails.getPreferenceSummary(getContext(),
-                    mPackageInfo.applicationInfo.uid, mPackageName));
-        }
-        pref = findPreference("write_settings_apps");
-        if (pref != null) {
-            pref.setSummary(WriteSettingsDetails.getSummary(getContext(), mAppEntry));
-        }
-        pref = findPreference("install_other_apps");
-        if (pref != null) {
-            pref.setSummary(ExternalSourcesDetails.getPreferenceSummary(getContext(), mAppEntry));
+    /**
+     * Fetches the summaries needing binder calls on the background, each section rendered as
+     * soon as it is fetched. Sections fetched for the package moments ago are rendered at once.
+     * Storage, battery and data usage keep their own loaders, which already run concurrently and
+     * cache what they fetch, and permissions are summarized by the permission controller.
+     */
+    private void loadSections() {
+        if (mSectionLoader == null || mNotificationPreference == null) {
+            return;
+        }
+        final Context context = getContext().getApplicationContext();
+        final AppEntry appEntry = mAppEntry;
+        final PackageInfo packageInfo = mPackageInfo;
+        mSectionLoader.load(SECTION_NOTIFICATION,
+                () -> getNotificationSummary(appEntry, context, mBackend),
+                summary -> mNotificationPreference.setSummary(summary));
+        mSectionLoader.load(SECTION_LAUNCH,
+                () -> AppUtils.getLaunchByDefaultSummary(appEntry, mUsbManager, mPm, context),
+                summary -> mLaunchPreference.setSummary(summary));
+        mSectionLoader.load(SECTION_MEMORY,
+                () -> loadMemory(context, packageInfo),
+                this::updateMemory);
+
+        final ArrayList<String> keys = new ArrayList<>();
+        for (String key : DYNAMIC_PREF_KEYS) {
+            if (findPreference(key) != null) {
+                keys.add(key);
+            }
+        }
+        if (!keys.isEmpty()) {
+            mSectionLoader.load(SECTION_DYNAMIC_PREFS,
+                    () -> loadDynamicPrefSummaries(context, appEntry, packageInfo, keys),
+                    this::updateDynamicPrefs);
+        }
+    }
+
+    private ArrayMap<String, CharSequence> loadDynamicPrefSummaries(Context context,
+            AppEntry appEntry, PackageInfo packageInfo, List<String> keys) {
+        final ArrayMap<String, CharSequence> summaries = new ArrayMap<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            final String key = keys.get(i);
+            final CharSequence summary;
+            switch (key) {
+                case "default_home":
+                    summary = getYesNo(context, DefaultHomePreferenceController
+                            .isHomeDefault(mPackageName, context));
+                    break;
+                case "default_browser":
+                    summary = getYesNo(context, new DefaultBrowserPreferenceController(context)
+                            .isBrowserDefault(mPackageName, mUserId));
+                    break;
+                case "default_phone_app":
+                    summary = getYesNo(context, DefaultPhonePreferenceController
+                            .isPhoneDefault(mPackageName, context));
+                    break;
+                case "default_emergency_app":
+                    summary = getYesNo(context, DefaultEmergencyPreferenceController
+                            .isEmergencyDefault(mPackageName, context));
+                    break;
+                case "default_sms_app":
+                    summary = getYesNo(context, DefaultSmsPreferenceController
+                            .isSmsDefault(mPackageName, context));
+                    break;
+                case "system_alert_window":
+                    summary = DrawOverlayDetails.getSummary(context, appEntry);
+                    break;
+                case "picture_in_picture":
+                    summary = PictureInPictureDetails.getPreferenceSummary(context,
+                            packageInfo.applicationInfo.uid, mPackageName);
+                    break;
+                case "write_settings_apps":
+                    summary = WriteSettingsDetails.getSummary(context, appEntry);
+                    break;
+                case "install_other_apps":
+                    summary = ExternalSourcesDetails.getPreferenceSummary(context, appEntry);
+                    break;
+                default:
+                    continue;
+            }
+            summaries.put(key, summary);
+        }
+        return summaries;
+    }
+
+    private static CharSequence getYesNo(Context context, boolean yes) {
+        return context.getText(yes ? R.string.yes : R.string.no);
+    }
+
+    private void updateDynamicPrefs(ArrayMap<String, CharSequence> summaries) {
+        for (int i = 0; i < summaries.size(); i++) {
+            final Preference pref = findPreference(summaries.keyAt(i));
+            if (pref != null) {
+                pref.setSummary(summaries.valueAt(i));
+            }
         }
     }
 
@@ -1356,50 +1436,47 @@ public class InstalledAppDetails extends AppInfoBase
         super.onPackageRemoved();
     }
 
-    private class MemoryUpdater extends AsyncTask<Void, Void, ProcStatsPackageEntry> {
-
-        @Override
-        protected ProcStatsPackageEntry doInBackground(Void... params) {
-            if (getActivity() == null) {
-                return null;
-            }
-            if (mPackageInfo == null) {
-                return null;
-            }
-            if (mStatsManager == null) {
-                mStatsManager = new ProcStatsData(getActivity(), false);
-                mStatsManager.setDuration(ProcessStatsBase.sDurations[0]);
-            }
-            mStatsManager.refreshStats(true);
-            for (ProcStatsPackageEntry pkgEntry : mStatsManager.getEntries()) {
-                for (ProcStatsEntry entry : pkgEntry.mEntries) {
-                    if (entry.mUid == mPackageInfo.applicationInfo.uid) {
-                        pkgEntry.updateMetrics();
-                        return pkgEntry;
-                    }
+    private static MemorySection loadMemory(Context context, PackageInfo packageInfo) {
+        final ProcStatsData statsManager = new ProcStatsData(context, false);
+        // Loads the stats, from the cache shared with the memory screens if recent enough.
+        statsManager.setDuration(ProcessStatsBase.sDurations[0]);
+        for (ProcStatsPackageEntry pkgEntry : statsManager.getEntries()) {
+            for (ProcStatsEntry entry : pkgEntry.mEntries) {
+                if (entry.mUid == packageInfo.applicationInfo.uid) {
+                    pkgEntry.updateMetrics();
+                    return new MemorySection(statsManager, pkgEntry);
                 }
             }
-            return null;
         }
+        return new MemorySection(statsManager, null);
+    }
 
-        @Override
-        protected void onPostExecute(ProcStatsPackageEntry entry) {
-            if (getActivity() == null) {
-                return;
-            }
-            if (entry != null) {
-                mStats = entry;
-                mMemoryPreference.setEnabled(true);
-                double amount = Math.max(entry.mRunWeight, entry.mBgWeight)
-                        * mStatsManager.getMemInfo().weightToRam;
-                mMemoryPreference.setSummary(getString(R.string.memory_use_summary,
-                        Formatter.formatShortFileSize(getContext(), (long) amount)));
-            } else {
-                mMemoryPreference.setEnabled(false);
-                mMemoryPreference.setSummary(getString(R.string.no_memory_use_summary));
-            }
+    private void updateMemory(MemorySection section) {
+        mStatsManager = section.statsManager;
+        mStats = section.entry;
+        if (section.entry != null) {
+            mMemoryPreference.setEnabled(true);
+            double amount = Math.max(section.entry.mRunWeight, section.entry.mBgWeight)
+                    * mStatsManager.getMemInfo().weightToRam;
+            mMemoryPreference.setSummary(getString(R.string.memory_use_summary,
+                    Formatter.formatShortFileSize(getContext(), (long) amount)));
+        } else {
+            mMemoryPreference.setEnabled(false);
+            mMemoryPreference.setSummary(getString(R.string.no_memory_use_summary));
         }
+    }
 
+    /**
+     * Memory use of the app, with the process stats it was computed from for the detail page.
+     */
+    private static class MemorySection {
+        final ProcStatsData statsManager;
+        final ProcStatsPackageEntry entry;
+
+        MemorySection(ProcStatsData statsManager, ProcStatsPackageEntry entry) {
+            this.statsManager = statsManager;
+            this.entry = entry;
+        }
     }
 
     /**
@@ -16,6 +16,7 @@
 
 package com.android.settings.applications;
 
+import android.content.Context;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.os.UserManager;
@@ -26,8 +27,18 @@ public abstract class InstalledAppLister extends AppLister {
         super(packageManager, userManager);
     }
 
+    public InstalledAppLister(Context context, PackageManagerWrapper packageManager,
+            UserManager userManager) {
+        super(context, packageManager, userManager);
+    }
+
     @Override
     protected boolean includeInCount(ApplicationInfo info) {
         return InstalledAppCounter.includeInCount(PackageManager.INSTALL_REASON_POLICY, mPm, info);
     }
+
+    @Override
+    protected String getFilterKey() {
+        return InstalledAppCounter.getFilterKey(PackageManager.INSTALL_REASON_POLICY);
+    }
 }
@@ -29,13 +29,20 @@ import android.os.Bundle;
 import android.os.Environment;
 import android.os.Handler;
 import android.os.LocaleList;
+import android.os.SystemProperties;
 import android.os.UserHandle;
 import android.os.UserManager;
 import android.preference.PreferenceFrameLayout;
 import android.support.annotation.VisibleForTesting;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.text.TextUtils;
+import android.text.format.Formatter;
+import android.util.ArrayMap;
 import android.util.ArraySet;
 import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -72,6 +79,7 @@ import com.android.settings.SettingsActivity;
 import com.android.settings.Utils;
 import com.android.settings.applications.AppStateAppOpsBridge.PermissionState;
 import com.android.settings.applications.AppStateUsageBridge.UsageState;
+import com.android.settings.applications.BatchedStorageStatsSource.UidStats;
 import com.android.settings.core.InstrumentedPreferenceFragment;
 import com.android.settings.dashboard.SummaryLoader;
 import com.android.settings.fuelgauge.HighPowerDetail;
@@ -91,7 +99,7 @@ import com.android.settingslib.applications.StorageStatsSource;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Locale;
 import java.util.Set;
 
@@ -119,6 +127,12 @@ public class ManageApplications extends InstrumentedPreferenceFragment
     private static final String EXTRA_HAS_ENTRIES = "hasEntries";
     private static final String EXTRA_HAS_BRIDGE = "hasBridge";
 
+    // Shows the app list in a RecyclerView rather than a ListView when set. The RecyclerView
+    // scrolls long lists more smoothly, and has its own section fast scroller
+    // (AppListFastScroller), but no type-to-filter.
+    @VisibleForTesting
+    static final String PROPERTY_RECYCLER_LIST = "persist.settings.apps_recycler_list";
+
     // attributes used as keys when passing values to InstalledAppDetails activity
     public static final String APP_CHG = "chg";
 
@@ -235,6 +249,11 @@ public class ManageApplications extends InstrumentedPreferenceFragment
     // ListView used to display list
     private ListView mListView;
 
+    // RecyclerView used to display the list instead of mListView, if PROPERTY_RECYCLER_LIST is set
+    private RecyclerView mRecyclerView;
+    // Fast scroller of mRecyclerView, showing the sections of mApplications
+    private AppListFastScroller mFastScroller;
+
     // Size resource used for packages whose size computation failed for some reason
     CharSequence mInvalidSizeStr;
 
@@ -350,7 +369,9 @@ public class ManageApplications extends InstrumentedPreferenceFragment
             // Create adapter and list view here
             View emptyView = mListContainer.findViewById(com.android.internal.R.id.empty);
             ListView lv = (ListView) mListContainer.findViewById(android.R.id.list);
-            if (emptyView != null) {
+            final boolean useRecyclerView =
+                    SystemProperties.getBoolean(PROPERTY_RECYCLER_LIST, false);
+            if (emptyView != null && !useRecyclerView) {
                 lv.setEmptyView(emptyView);
             }
             lv.setOnItemClickListener(this);
@@ -373,11 +394,27 @@ public class ManageApplications extends InstrumentedPreferenceFragment
                         mVolumeUuid,
                         UserHandle.of(UserHandle.getUserId(mCurrentUid))));
             }
-            mListView.setAdapter(mApplications);
-            mListView.setRecyclerListener(mApplications);
-            mListView.setFastScrollEnabled(isFastScrollEnabled());
+            if (useRecyclerView) {
+                mRecyclerView = (RecyclerView) mListContainer.findViewById(
+                        R.id.apps_recycler_view);
+                mRecyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
+                final AppListRecyclerAdapter recyclerAdapter = new AppListRecyclerAdapter(
+                        this, mApplications, mApplicationsState, emptyView);
+                mApplications.setRecyclerAdapter(recyclerAdapter);
+                mRecyclerView.setAdapter(recyclerAdapter);
+                mFastScroller = new AppListFastScroller(mRecyclerView, mApplications);
+                mFastScroller.setEnabled(isFastScrollEnabled());
+                mRecyclerView.setVisibility(View.VISIBLE);
+                mListView.setVisibility(View.GONE);
+
+                Utils.prepareCustomPreferencesList(container, mRootView, mRecyclerView, false);
+            } else {
+                mListView.setAdapter(mApplications);
+                mListView.setRecyclerListener(mApplications);
+                mListView.setFastScrollEnabled(isFastScrollEnabled());
 
-            Utils.prepareCustomPreferencesList(container, mRootView, mListView, false);
+                Utils.prepareCustomPreferencesList(container, mRootView, mListView, false);
+            }
         }
 
         // We have to do this now because PreferenceFrameLayout looks at it
@@ -661,6 +698,9 @@ public class ManageApplications extends InstrumentedPreferenceFragment
             case R.id.sort_order_size:
                 mSortOrder = menuId;
                 mListView.setFastScrollEnabled(isFastScrollEnabled());
+                if (mFastScroller != null) {
+                    mFastScroller.setEnabled(isFastScrollEnabled());
+                }
                 if (mApplications != null) {
                     mApplications.rebuild(mSortOrder);
                 }
@@ -699,7 +739,17 @@ public class ManageApplications extends InstrumentedPreferenceFragment
         }
 
         if (mApplications.getApplicationCount() > position) {
-            ApplicationsState.AppEntry entry = mApplications.getAppEntry(position);
+            onListItemClick(mApplications.getAppEntry(position));
+        } else {
+            onListItemClick(null);
+        }
+    }
+
+    /**
+     * Opens the details of {@code entry}, or the extra view if {@code entry} is null.
+     */
+    void onListItemClick(@Nullable ApplicationsState.AppEntry entry) {
+        if (entry != null) {
             mCurrentPkgName = entry.info.packageName;
             mCurrentUid = entry.info.uid;
             startApplicationDetailsActivity();
@@ -838,6 +888,13 @@ public class ManageApplications extends InstrumentedPreferenceFragment
         private final AppStateBaseBridge mExtraInfoBridge;
         private final Handler mBgHandler;
         private final Handler mFgHandler;
+        // Only used on mBgHandler.
+        private final AppListIndex mAppListIndex;
+        private final BatchedStorageStatsSource mStatsSource;
+        private final BatchedStorageStatsSource.Listener mStatsListener =
+                (volumeUuid, uid) -> mBgHandler.post(() -> onUidStatsChanged(volumeUuid, uid));
+        // Shows the entries instead of the ListView bound to this adapter, if set.
+        private AppListRecyclerAdapter mRecyclerAdapter;
 
         private int mFilterMode;
         private ArrayList<ApplicationsState.AppEntry> mBaseEntries;
@@ -859,6 +916,8 @@ public class ManageApplications extends InstrumentedPreferenceFragment
         private int mLastTop;
 
         private AlphabeticIndex.ImmutableIndex<Locale> mIndex;
+        // Label -> bucket of mIndex, so sections are only looked up for new labels.
+        private final HashMap<String, Integer> mLabelBuckets = new HashMap<>();
         private SectionInfo[] mSections = EMPTY_SECTIONS;
         private int[] mPositionToSectionIndex;
 
@@ -880,6 +939,7 @@ public class ManageApplications extends InstrumentedPreferenceFragment
                 mEntries = (ArrayList<ApplicationsState.AppEntry>) results.values;
                 rebuildSections();
                 notifyDataSetChanged();
+                updateRecyclerAdapter();
             }
         };
 
@@ -892,6 +952,8 @@ public class ManageApplications extends InstrumentedPreferenceFragment
             mManageApplications = manageApplications;
             mContext = manageApplications.getActivity();
             mPm = mContext.getPackageManager();
+            mAppListIndex = new AppListIndex(mContext);
+            mStatsSource = new BatchedStorageStatsSource(mContext);
             mFilterMode = filterMode;
             if (mManageApplications.mListType == LIST_TYPE_NOTIFICATION) {
                 mExtraInfoBridge = new AppStateNotificationBridge(mContext, mState, this,
@@ -911,6 +973,10 @@ public class ManageApplications extends InstrumentedPreferenceFragment
             }
         }
 
+        void setRecyclerAdapter(AppListRecyclerAdapter recyclerAdapter) {
+            mRecyclerAdapter = recyclerAdapter;
+        }
+
         public void setCompositeFilter(AppFilter compositeFilter) {
             mCompositeFilter = compositeFilter;
             rebuild(true);
@@ -936,6 +1002,9 @@ public class ManageApplications extends InstrumentedPreferenceFragment
             if (!mResumed) {
                 mResumed = true;
                 mSession.resume();
+                BatchedStorageStatsSource.addListener(mStatsListener);
+                // Filters may depend on state that changed while paused, like the current user.
+                mBgHandler.post(mAppListIndex::invalidateFilters);
                 mLastSortMode = sort;
                 if (mExtraInfoBridge != null) {
                     mExtraInfoBridge.resume();
@@ -950,10 +1019,15 @@ public class ManageApplications extends InstrumentedPreferenceFragment
             if (mResumed) {
                 mResumed = false;
                 mSession.pause();
+                BatchedStorageStatsSource.removeListener(mStatsListener);
                 if (mExtraInfoBridge != null) {
                     mExtraInfoBridge.pause();
                 }
             }
+            if (mRecyclerAdapter != null) {
+                // RecyclerView keeps its position across the updates of the list by itself.
+                return;
+            }
             // Record the current scroll position before pausing.
             mLastIndex = mManageApplications.mListView.getFirstVisiblePosition();
             View v = mManageApplications.mListView.getChildAt(0);
@@ -981,57 +1055,159 @@ public class ManageApplications extends InstrumentedPreferenceFragment
                 // Don't rebuild the list until all the app entries are loaded.
                 return;
             }
-            ApplicationsState.AppFilter filterObj;
-            Comparator<AppEntry> comparatorObj;
             boolean emulated = Environment.isExternalStorageEmulated();
             if (emulated) {
                 mWhichSize = SIZE_TOTAL;
             } else {
                 mWhichSize = SIZE_INTERNAL;
             }
-            filterObj = FILTERS[mFilterMode];
-            if (mCompositeFilter != null) {
-                filterObj = new CompoundFilter(filterObj, mCompositeFilter);
-            }
+            AppFilter launcherFilter = null;
             if (!mManageApplications.mShowSystem) {
                 if (LIST_TYPES_WITH_INSTANT.contains(mManageApplications.mListType)) {
-                    filterObj = new CompoundFilter(filterObj,
-                            ApplicationsState.FILTER_DOWNLOADED_AND_LAUNCHER_AND_INSTANT);
+                    launcherFilter = ApplicationsState.FILTER_DOWNLOADED_AND_LAUNCHER_AND_INSTANT;
                 } else {
-                    filterObj = new CompoundFilter(filterObj,
-                            ApplicationsState.FILTER_DOWNLOADED_AND_LAUNCHER);
+                    launcherFilter = ApplicationsState.FILTER_DOWNLOADED_AND_LAUNCHER;
                 }
             }
+            // Filters are applied separately so the index can reuse the results of each.
+            final AppFilter[] filters = new AppFilter[] {
+                    FILTERS[mFilterMode],
+                    mCompositeFilter,
+                    launcherFilter,
+                    ApplicationsState.FILTER_NOT_HIDE,
+            };
+            final int order;
             switch (mLastSortMode) {
                 case R.id.sort_order_size:
                     switch (mWhichSize) {
                         case SIZE_INTERNAL:
-                            comparatorObj = ApplicationsState.INTERNAL_SIZE_COMPARATOR;
+                            order = AppListIndex.ORDER_SIZE_INTERNAL;
                             break;
                         case SIZE_EXTERNAL:
-                            comparatorObj = ApplicationsState.EXTERNAL_SIZE_COMPARATOR;
+                            order = AppListIndex.ORDER_SIZE_EXTERNAL;
                             break;
                         default:
-                            comparatorObj = ApplicationsState.SIZE_COMPARATOR;
+                            order = AppListIndex.ORDER_SIZE_TOTAL;
                             break;
                     }
                     break;
                 default:
-                    comparatorObj = ApplicationsState.ALPHA_COMPARATOR;
+                    order = AppListIndex.ORDER_LABEL;
                     break;
             }
+            final boolean removeDuplicates = mFilterMode == FILTER_APPS_POWER_WHITELIST
+                    || mFilterMode == FILTER_APPS_POWER_WHITELIST_ALL;
 
-            filterObj = new CompoundFilter(filterObj, ApplicationsState.FILTER_NOT_HIDE);
-            AppFilter finalFilterObj = filterObj;
             mBgHandler.post(() -> {
-                final ArrayList<AppEntry> entries = mSession.rebuild(finalFilterObj,
-                        comparatorObj, false);
-                if (entries != null) {
-                    mFgHandler.post(() -> onRebuildComplete(entries));
+                final ArrayList<AppEntry> allApps = mSession.getAllApps();
+                if (order != AppListIndex.ORDER_LABEL) {
+                    fillUnknownSizes(allApps);
                 }
+                mAppListIndex.update(allApps);
+                final ArrayList<AppEntry> entries = mAppListIndex.query(filters, order);
+                final ArrayList<AppEntry> result = removeDuplicates
+                        ? removeDuplicateIgnoringUser(entries) : entries;
+                mFgHandler.post(() -> onRebuildComplete(result));
             });
         }
 
+        /**
+         * Gives the entries ApplicationsState has not measured yet the stats of their uid, fetched
+         * for all of them at once, so sorting by size does not wait for every app to be measured
+         * one after the other. ApplicationsState still measures them and refines their sizes.
+         * Packages sharing their uid are left to ApplicationsState, as the stats of the uid are
+         * not theirs alone. Only called on mBgHandler.
+         */
+        private void fillUnknownSizes(ArrayList<AppEntry> allApps) {
+            final SparseIntArray packagesPerUid = countPackagesPerUid(allApps);
+            final ArrayList<AppEntry> unknown = new ArrayList<>();
+            final ArrayMap<String, ArrayList<ApplicationInfo>> appsByVolume = new ArrayMap<>();
+            for (int i = 0, size = allApps.size(); i < size; i++) {
+                final AppEntry entry = allApps.get(i);
+                if (packagesPerUid.get(entry.info.uid) != 1) {
+                    continue;
+                }
+                synchronized (entry) {
+                    if (entry.size != ApplicationsState.SIZE_UNKNOWN) {
+                        continue;
+                    }
+                }
+                unknown.add(entry);
+                ArrayList<ApplicationInfo> apps = appsByVolume.get(entry.info.volumeUuid);
+                if (apps == null) {
+                    apps = new ArrayList<>();
+                    appsByVolume.put(entry.info.volumeUuid, apps);
+                }
+                apps.add(entry.info);
+            }
+            if (unknown.isEmpty()) {
+                return;
+            }
+            final ArrayMap<String, SparseArray<UidStats>> statsByVolume = new ArrayMap<>();
+            for (int i = 0; i < appsByVolume.size(); i++) {
+                statsByVolume.put(appsByVolume.keyAt(i),
+                        mStatsSource.getStats(appsByVolume.keyAt(i), appsByVolume.valueAt(i)));
+            }
+            for (int i = 0, size = unknown.size(); i < size; i++) {
+                final AppEntry entry = unknown.get(i);
+                final UidStats stats =
+                        statsByVolume.get(entry.info.volumeUuid).get(entry.info.uid);
+                if (stats != null) {
+                    setUnknownSize(entry, stats);
+                }
+            }
+        }
+
+        private static SparseIntArray countPackagesPerUid(ArrayList<AppEntry> allApps) {
+            final SparseIntArray counts = new SparseIntArray();
+            for (int i = 0, size = allApps.size(); i < size; i++) {
+                final int uid = allApps.get(i).info.uid;
+                counts.put(uid, counts.get(uid) + 1);
+            }
+            return counts;
+        }
+
+        /**
+         * Gives the entry of {@code uid} the stats just pushed for it, such as by the storage
+         * screen of its package, if ApplicationsState has not measured it yet. Only called on
+         * mBgHandler.
+         */
+        private void onUidStatsChanged(String volumeUuid, int uid) {
+            final UidStats stats = BatchedStorageStatsSource.getCachedStats(volumeUuid, uid);
+            if (stats == null) {
+                // Dropped, ApplicationsState measures the packages again when they change.
+                return;
+            }
+            final ArrayList<AppEntry> allApps = mSession.getAllApps();
+            if (countPackagesPerUid(allApps).get(uid) != 1) {
+                return;
+            }
+            for (int i = 0, size = allApps.size(); i < size; i++) {
+                final AppEntry entry = allApps.get(i);
+                if (entry.info.uid == uid && TextUtils.equals(entry.info.volumeUuid, volumeUuid)
+                        && setUnknownSize(entry, stats)) {
+                    final String packageName = entry.info.packageName;
+                    mFgHandler.post(() -> onPackageSizeChanged(packageName));
+                }
+            }
+        }
+
+        /**
+         * Sets the total size of {@code entry} from the stats of its uid if ApplicationsState has
+         * not measured it yet, returning whether it changed. The internal and external sizes are
+         * left for ApplicationsState to measure.
+         */
+        private boolean setUnknownSize(AppEntry entry, UidStats stats) {
+            final long size = stats.getTotalBytes();
+            synchronized (entry) {
+                if (entry.size != ApplicationsState.SIZE_UNKNOWN) {
+                    return false;
+                }
+                entry.size = size;
+                entry.sizeStr = Formatter.formatFileSize(mContext, size);
+                return true;
+            }
+        }
 
         static private boolean packageNameEquals(PackageItemInfo info1, PackageItemInfo info2) {
             if (info1 == null || info2 == null) {
@@ -1067,10 +1243,6 @@ public class ManageApplications extends InstrumentedPreferenceFragment
 
         @Override
         public void onRebuildComplete(ArrayList<AppEntry> entries) {
-            if (mFilterMode == FILTER_APPS_POWER_WHITELIST ||
-                    mFilterMode == FILTER_APPS_POWER_WHITELIST_ALL) {
-                entries = removeDuplicateIgnoringUser(entries);
-            }
             mBaseEntries = entries;
             if (mBaseEntries != null) {
                 mEntries = applyPrefixFilter(mCurFilterPrefix, mBaseEntries);
@@ -1082,6 +1254,7 @@ public class ManageApplications extends InstrumentedPreferenceFragment
             }
 
             notifyDataSetChanged();
+            updateRecyclerAdapter();
             // Restore the last scroll position if the number of entries added so far is bigger than
             // it.
             if (mLastIndex != -1 && getCount() > mLastIndex) {
@@ -1103,8 +1276,15 @@ public class ManageApplications extends InstrumentedPreferenceFragment
             mManageApplications.setHasInstant(mState.haveInstantApps());
         }
 
+        private void updateRecyclerAdapter() {
+            if (mRecyclerAdapter != null) {
+                mRecyclerAdapter.setEntries(mEntries,
+                        mExtraViewController != null && mExtraViewController.shouldShow());
+            }
+        }
+
         private void rebuildSections() {
-            if (mEntries!= null && mManageApplications.isFastScrollEnabled()) {
+            if (mEntries != null && mManageApplications.isFastScrollEnabled()) {
                 // Rebuild sections
                 if (mIndex == null) {
                     LocaleList locales = mContext.getResources().getConfiguration().getLocales();
@@ -1127,8 +1307,7 @@ public class ManageApplications extends InstrumentedPreferenceFragment
                 mPositionToSectionIndex = new int[totalEntries];
 
                 for (int pos = 0; pos < totalEntries; pos++) {
-                    String label = mEntries.get(pos).label;
-                    int secId = mIndex.getBucketIndex(TextUtils.isEmpty(label) ? "" : label);
+                    int secId = getBucketIndex(mEntries.get(pos).label);
                     if (secId != lastSecId) {
                         lastSecId = secId;
                         sections.add(new SectionInfo(mIndex.getBucket(secId).getLabel(), pos));
@@ -1142,6 +1321,16 @@ public class ManageApplications extends InstrumentedPreferenceFragment
             }
         }
 
+        private int getBucketIndex(String label) {
+            final String key = TextUtils.isEmpty(label) ? "" : label;
+            Integer bucket = mLabelBuckets.get(key);
+            if (bucket == null) {
+                bucket = mIndex.getBucketIndex(key);
+                mLabelBuckets.put(key, bucket);
+            }
+            return bucket;
+        }
+
         private void updateLoading() {
             Utils.handleLoadingContainer(mManageApplications.mLoadingContainer,
                     mManageApplications.mListContainer,
@@ -1171,6 +1360,7 @@ public class ManageApplications extends InstrumentedPreferenceFragment
         @Override
         public void onExtraInfoUpdated() {
             mHasReceivedBridgeCallback = true;
+            mBgHandler.post(mAppListIndex::invalidateFilters);
             rebuild(false);
         }
 
@@ -1299,10 +1489,13 @@ public class ManageApplications extends InstrumentedPreferenceFragment
                 return true;
             }
 
+            return isEnabled(mEntries.get(position));
+        }
+
+        private boolean isEnabled(ApplicationsState.AppEntry entry) {
             if (mManageApplications.mListType != LIST_TYPE_HIGH_POWER) {
                 return true;
             }
-            ApplicationsState.AppEntry entry = mEntries.get(position);
             return !PowerWhitelistBackend.getInstance().isSysWhitelisted(entry.info.packageName);
         }
 
@@ -1315,29 +1508,40 @@ public class ManageApplications extends InstrumentedPreferenceFragment
 
             // Handle the extra view if it is the last entry.
             if (mEntries != null && mExtraViewController != null && position == mEntries.size()) {
-                mExtraViewController.setupView(holder);
-                convertView.setEnabled(true);
+                bindExtraView(holder);
             } else {
-                // Bind the data efficiently with the holder
-                ApplicationsState.AppEntry entry = mEntries.get(position);
-                synchronized (entry) {
-                    holder.entry = entry;
-                    if (entry.label != null) {
-                        holder.appName.setText(entry.label);
-                    }
-                    mState.ensureIcon(entry);
-                    if (entry.icon != null) {
-                        holder.appIcon.setImageDrawable(entry.icon);
-                    }
-                    updateSummary(holder);
-                    updateDisableView(holder.disabled, entry.info);
+                bindEntry(holder, mEntries.get(position));
+            }
+            return convertView;
+        }
+
+        void bindExtraView(AppViewHolder holder) {
+            mExtraViewController.setupView(holder);
+            holder.rootView.setEnabled(true);
+            setActive(holder.rootView);
+        }
+
+        void bindEntry(AppViewHolder holder, ApplicationsState.AppEntry entry) {
+            // Bind the data efficiently with the holder
+            synchronized (entry) {
+                holder.entry = entry;
+                if (entry.label != null) {
+                    holder.appName.setText(entry.label);
                 }
-                convertView.setEnabled(isEnabled(position));
+                mState.ensureIcon(entry);
+                if (entry.icon != null) {
+                    holder.appIcon.setImageDrawable(entry.icon);
+                }
+                updateSummary(holder);
+                updateDisableView(holder.disabled, entry.info);
             }
+            holder.rootView.setEnabled(isEnabled(entry));
+            setActive(holder.rootView);
+        }
 
-            mActive.remove(convertView);
-            mActive.add(convertView);
-            return convertView;
+        private void setActive(View view) {
+            mActive.remove(view);
+            mActive.add(view);
         }
 
         @VisibleForTesting
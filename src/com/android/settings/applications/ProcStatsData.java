@@ -17,12 +17,14 @@
 package com.android.settings.applications;
 
 import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.os.ParcelFileDescriptor;
 import android.os.RemoteException;
 import android.os.ServiceManager;
 import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
 import android.text.format.Formatter;
 import android.util.ArrayMap;
 import android.util.Log;
@@ -39,6 +41,8 @@ import com.android.internal.app.procstats.ServiceState;
 import com.android.internal.util.MemInfoReader;
 import com.android.settings.R;
 import com.android.settings.Utils;
+import com.android.settings.utils.CacheRegistry;
+import com.android.settings.utils.TaskScheduler;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -54,6 +58,31 @@ public class ProcStatsData {
 
     private static ProcessStats sStatsXfer;
 
+    // How long parsed stats are reused, they only grow by what ran since.
+    @VisibleForTesting
+    static final long STATS_CACHE_TTL_MS = 60 * 1000;
+
+    // Parsed stats by duration, shared by all instances so switching the duration or reopening
+    // the memory screens doesn't fetch and parse them again.
+    @VisibleForTesting
+    static final ArrayMap<Long, CachedStats> sStatsCache = new ArrayMap<>();
+    private static final CacheRegistry.Cache sStatsCacheEntry = CacheRegistry.get().register(
+            new CacheRegistry.Cache("proc_stats", ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+                @Override
+                public int getEntryCount() {
+                    synchronized (sStatsCache) {
+                        return sStatsCache.size();
+                    }
+                }
+
+                @Override
+                protected void clear() {
+                    synchronized (sStatsCache) {
+                        sStatsCache.clear();
+                    }
+                }
+            });
+
     private PackageManager mPm;
     private Context mContext;
     private long memTotalTime;
@@ -72,6 +101,14 @@ public class ProcStatsData {
 
     private ArrayList<ProcStatsPackageEntry> pkgEntries;
 
+    // Guards the computed results and the states they are computed for, which the preloading
+    // of durations reads in the background. Results are computed without holding it.
+    private final Object mComputeLock = new Object();
+    // Results computed by duration, for the stats they were computed from.
+    private final ArrayMap<Long, Computed> mComputed = new ArrayMap<>();
+    // Incremented when the states change, so results computed for the old ones are dropped.
+    private int mComputeGeneration;
+
     public ProcStatsData(Context context, boolean useXfer) {
         mContext = context;
         mPm = context.getPackageManager();
@@ -93,12 +130,20 @@ public class ProcStatsData {
     }
 
     public void setMemStates(int[] memStates) {
-        mMemStates = memStates;
+        synchronized (mComputeLock) {
+            mMemStates = memStates;
+            mComputed.clear();
+            mComputeGeneration++;
+        }
         refreshStats(false);
     }
 
     public void setStats(int[] stats) {
-        this.mStates = stats;
+        synchronized (mComputeLock) {
+            this.mStates = stats;
+            mComputed.clear();
+            mComputeGeneration++;
+        }
         refreshStats(false);
     }
 
@@ -124,7 +169,9 @@ public class ProcStatsData {
     public void setDuration(long duration) {
         if (duration != mDuration) {
             mDuration = duration;
-            refreshStats(true);
+            // Switching durations may use the stats preloaded or cached for the new one.
+            load(false /* forceLoad */);
+            refreshStats(false);
         }
     }
 
@@ -136,97 +183,173 @@ public class ProcStatsData {
         return pkgEntries;
     }
 
+    /**
+     * Computes the results of the current duration. With {@code forceLoad}, or if no stats were
+     * loaded yet, fetches the stats first, bypassing the shared cache if {@code forceLoad}.
+     */
     public void refreshStats(boolean forceLoad) {
         if (mStats == null || forceLoad) {
-            load();
+            load(forceLoad);
+        }
+
+        final Computed computed = getComputed(mDuration, mStats);
+        memTotalTime = computed.memTotalTime;
+        mMemInfo = computed.memInfo;
+        // The computed entries may be handed out again for the same stats, don't share them.
+        pkgEntries = new ArrayList<>(computed.entries);
+    }
+
+    /**
+     * Fetches and computes the stats of all {@code durations} in the background, so switching to
+     * any of them later is instant. Stops once {@code token} is cancelled.
+     */
+    public void preloadDurations(long[] durations, TaskScheduler.CancellationToken token) {
+        final long[] toLoad = durations.clone();
+        TaskScheduler.get().post(TaskScheduler.LANE_PREFETCH, token, () -> {
+            for (long duration : toLoad) {
+                if (token.isCancelled()) {
+                    return;
+                }
+                final ProcessStats stats = getStats(mProcessStats, duration,
+                        false /* forceLoad */);
+                if (stats != null) {
+                    getComputed(duration, stats);
+                }
+            }
+        });
+    }
+
+    /*
+     * Returns the results of stats for duration, computing them if they were not yet. They are
+     * computed without holding mComputeLock, so the main thread never waits for the preloading
+     * of another duration to compute.
+     */
+    private Computed getComputed(long duration, ProcessStats stats) {
+        final int[] memStates;
+        final int[] states;
+        final int generation;
+        synchronized (mComputeLock) {
+            final Computed cached = mComputed.get(duration);
+            if (cached != null && cached.stats == stats) {
+                return cached;
+            }
+            memStates = mMemStates;
+            states = mStates;
+            generation = mComputeGeneration;
+        }
+        final Computed computed = compute(stats, memStates, states);
+        synchronized (mComputeLock) {
+            // Computed for states changed since, it is only good for this caller.
+            if (generation == mComputeGeneration) {
+                final Computed cached = mComputed.get(duration);
+                if (cached != null && cached.stats == stats) {
+                    // Computed meanwhile by the other thread, share a single result.
+                    return cached;
+                }
+                mComputed.put(duration, computed);
+            }
         }
+        return computed;
+    }
 
-        pkgEntries = new ArrayList<>();
+    /*
+     * Computes the memory info and package entries of stats. Only reads the instance
+     * configuration, so it can run off the main thread.
+     */
+    private Computed compute(ProcessStats stats, int[] memStates, int[] states) {
+        final Computed computed = new Computed(stats);
 
         long now = SystemClock.uptimeMillis();
 
-        memTotalTime = DumpUtils.dumpSingleTime(null, null, mStats.mMemFactorDurations,
-                mStats.mMemFactor, mStats.mStartTime, now);
+        computed.memTotalTime = DumpUtils.dumpSingleTime(null, null, stats.mMemFactorDurations,
+                stats.mMemFactor, stats.mStartTime, now);
 
         ProcessStats.TotalMemoryUseCollection totalMem = new ProcessStats.TotalMemoryUseCollection(
-                ProcessStats.ALL_SCREEN_ADJ, mMemStates);
-        mStats.computeTotalMemoryUse(totalMem, now);
+                ProcessStats.ALL_SCREEN_ADJ, memStates);
+        stats.computeTotalMemoryUse(totalMem, now);
 
-        mMemInfo = new MemInfo(mContext, totalMem, memTotalTime);
+        computed.memInfo = new MemInfo(mContext, totalMem, computed.memTotalTime);
 
         ProcessDataCollection bgTotals = new ProcessDataCollection(
-                ProcessStats.ALL_SCREEN_ADJ, mMemStates, mStates);
+                ProcessStats.ALL_SCREEN_ADJ, memStates, states);
         ProcessDataCollection runTotals = new ProcessDataCollection(
-                ProcessStats.ALL_SCREEN_ADJ, mMemStates, ProcessStats.NON_CACHED_PROC_STATES);
+                ProcessStats.ALL_SCREEN_ADJ, memStates, ProcessStats.NON_CACHED_PROC_STATES);
 
-        createPkgMap(getProcs(bgTotals, runTotals), bgTotals, runTotals);
+        createPkgMap(computed, getProcs(stats, computed.memTotalTime, bgTotals, runTotals),
+                bgTotals, runTotals);
         if (totalMem.sysMemZRamWeight > 0 && !totalMem.hasSwappedOutPss) {
-            distributeZRam(totalMem.sysMemZRamWeight);
+            distributeZRam(computed, totalMem.sysMemZRamWeight);
         }
 
-        ProcStatsPackageEntry osPkg = createOsEntry(bgTotals, runTotals, totalMem,
-                mMemInfo.baseCacheRam);
-        pkgEntries.add(osPkg);
+        ProcStatsPackageEntry osPkg = createOsEntry(computed, bgTotals, runTotals, totalMem,
+                computed.memInfo.baseCacheRam);
+        computed.entries.add(osPkg);
+        return computed;
     }
 
-    private void createPkgMap(ArrayList<ProcStatsEntry> procEntries, ProcessDataCollection bgTotals,
-            ProcessDataCollection runTotals) {
+    private void createPkgMap(Computed computed, ArrayList<ProcStatsEntry> procEntries,
+            ProcessDataCollection bgTotals, ProcessDataCollection runTotals) {
         // Combine processes into packages.
         ArrayMap<String, ProcStatsPackageEntry> pkgMap = new ArrayMap<>();
         for (int i = procEntries.size() - 1; i >= 0; i--) {
             ProcStatsEntry proc = procEntries.get(i);
-            proc.evaluateTargetPackage(mPm, mStats, bgTotals, runTotals, sEntryCompare, mUseUss);
+            proc.evaluateTargetPackage(mPm, computed.stats, bgTotals, runTotals, sEntryCompare,
+                    mUseUss);
             ProcStatsPackageEntry pkg = pkgMap.get(proc.mBestTargetPackage);
             if (pkg == null) {
-                pkg = new ProcStatsPackageEntry(proc.mBestTargetPackage, memTotalTime);
+                pkg = new ProcStatsPackageEntry(proc.mBestTargetPackage, computed.memTotalTime);
                 pkgMap.put(proc.mBestTargetPackage, pkg);
-                pkgEntries.add(pkg);
+                computed.entries.add(pkg);
             }
             pkg.addEntry(proc);
         }
     }
 
-    private void distributeZRam(double zramWeight) {
+    private void distributeZRam(Computed computed, double zramWeight) {
         // Distribute kernel's Z-Ram across processes, based on how much they have been running.
         // The idea is that the memory used by the kernel for this is not really the kernel's
         // responsibility, but that of whoever got swapped in to it...  and we will take how
         // much a process runs for as a sign of the proportion of Z-Ram it is responsible for.
 
+        final ArrayList<ProcStatsPackageEntry> pkgEntries = computed.entries;
+        final long memTotalTime = computed.memTotalTime;
         long zramMem = (long) (zramWeight / memTotalTime);
+        // Run times of the packages, summed up once instead of on each pass.
+        final long[] pkgRunTimes = new long[pkgEntries.size()];
+        final long[] pkgMaxRunTimes = new long[pkgEntries.size()];
         long totalTime = 0;
         for (int i = pkgEntries.size() - 1; i >= 0; i--) {
             ProcStatsPackageEntry entry = pkgEntries.get(i);
             for (int j = entry.mEntries.size() - 1; j >= 0; j--) {
-                ProcStatsEntry proc = entry.mEntries.get(j);
-                totalTime += proc.mRunDuration;
+                long runDuration = entry.mEntries.get(j).mRunDuration;
+                pkgRunTimes[i] += runDuration;
+                if (runDuration > pkgMaxRunTimes[i]) {
+                    pkgMaxRunTimes[i] = runDuration;
+                }
             }
+            totalTime += pkgRunTimes[i];
         }
         for (int i = pkgEntries.size() - 1; i >= 0 && totalTime > 0; i--) {
             ProcStatsPackageEntry entry = pkgEntries.get(i);
-            long pkgRunTime = 0;
-            long maxRunTime = 0;
-            for (int j = entry.mEntries.size() - 1; j >= 0; j--) {
-                ProcStatsEntry proc = entry.mEntries.get(j);
-                pkgRunTime += proc.mRunDuration;
-                if (proc.mRunDuration > maxRunTime) {
-                    maxRunTime = proc.mRunDuration;
-                }
-            }
+            long pkgRunTime = pkgRunTimes[i];
             long pkgZRam = (zramMem*pkgRunTime)/totalTime;
             if (pkgZRam > 0) {
                 zramMem -= pkgZRam;
                 totalTime -= pkgRunTime;
                 ProcStatsEntry procEntry = new ProcStatsEntry(entry.mPackage, 0,
-                        mContext.getString(R.string.process_stats_os_zram), maxRunTime,
+                        mContext.getString(R.string.process_stats_os_zram), pkgMaxRunTimes[i],
                         pkgZRam, memTotalTime);
-                procEntry.evaluateTargetPackage(mPm, mStats, null, null, sEntryCompare, mUseUss);
+                procEntry.evaluateTargetPackage(mPm, computed.stats, null, null, sEntryCompare,
+                        mUseUss);
                 entry.addEntry(procEntry);
             }
         }
     }
 
-    private ProcStatsPackageEntry createOsEntry(ProcessDataCollection bgTotals,
+    private ProcStatsPackageEntry createOsEntry(Computed computed, ProcessDataCollection bgTotals,
             ProcessDataCollection runTotals, TotalMemoryUseCollection totalMem, long baseCacheRam) {
+        final ProcessStats stats = computed.stats;
+        final long memTotalTime = computed.memTotalTime;
         // Add in fake entry representing the OS itself.
         ProcStatsPackageEntry osPkg = new ProcStatsPackageEntry("os", memTotalTime);
         ProcStatsEntry osEntry;
@@ -234,14 +357,14 @@ public class ProcStatsData {
             osEntry = new ProcStatsEntry(Utils.OS_PKG, 0,
                     mContext.getString(R.string.process_stats_os_native), memTotalTime,
                     (long) (totalMem.sysMemNativeWeight / memTotalTime), memTotalTime);
-            osEntry.evaluateTargetPackage(mPm, mStats, bgTotals, runTotals, sEntryCompare, mUseUss);
+            osEntry.evaluateTargetPackage(mPm, stats, bgTotals, runTotals, sEntryCompare, mUseUss);
             osPkg.addEntry(osEntry);
         }
         if (totalMem.sysMemKernelWeight > 0) {
             osEntry = new ProcStatsEntry(Utils.OS_PKG, 0,
                     mContext.getString(R.string.process_stats_os_kernel), memTotalTime,
                     (long) (totalMem.sysMemKernelWeight / memTotalTime), memTotalTime);
-            osEntry.evaluateTargetPackage(mPm, mStats, bgTotals, runTotals, sEntryCompare, mUseUss);
+            osEntry.evaluateTargetPackage(mPm, stats, bgTotals, runTotals, sEntryCompare, mUseUss);
             osPkg.addEntry(osEntry);
         }
         /*  Turned off now -- zram is being distributed across running apps.
@@ -249,7 +372,7 @@ public class ProcStatsData {
             osEntry = new ProcStatsEntry(Utils.OS_PKG, 0,
                     mContext.getString(R.string.process_stats_os_zram), memTotalTime,
                     (long) (totalMem.sysMemZRamWeight / memTotalTime));
-            osEntry.evaluateTargetPackage(mPm, mStats, bgTotals, runTotals, sEntryCompare, mUseUss);
+            osEntry.evaluateTargetPackage(mPm, stats, bgTotals, runTotals, sEntryCompare, mUseUss);
             osPkg.addEntry(osEntry);
         }
         */
@@ -257,20 +380,20 @@ public class ProcStatsData {
             osEntry = new ProcStatsEntry(Utils.OS_PKG, 0,
                     mContext.getString(R.string.process_stats_os_cache), memTotalTime,
                     baseCacheRam / 1024, memTotalTime);
-            osEntry.evaluateTargetPackage(mPm, mStats, bgTotals, runTotals, sEntryCompare, mUseUss);
+            osEntry.evaluateTargetPackage(mPm, stats, bgTotals, runTotals, sEntryCompare, mUseUss);
             osPkg.addEntry(osEntry);
         }
         return osPkg;
     }
 
-    private ArrayList<ProcStatsEntry> getProcs(ProcessDataCollection bgTotals,
-            ProcessDataCollection runTotals) {
+    private ArrayList<ProcStatsEntry> getProcs(ProcessStats stats, long memTotalTime,
+            ProcessDataCollection bgTotals, ProcessDataCollection runTotals) {
         final ArrayList<ProcStatsEntry> procEntries = new ArrayList<>();
         if (DEBUG) Log.d(TAG, "-------------------- PULLING PROCESSES");
 
         final ProcessMap<ProcStatsEntry> entriesMap = new ProcessMap<ProcStatsEntry>();
-        for (int ipkg = 0, N = mStats.mPackages.getMap().size(); ipkg < N; ipkg++) {
-            final SparseArray<SparseArray<ProcessStats.PackageState>> pkgUids = mStats.mPackages
+        for (int ipkg = 0, N = stats.mPackages.getMap().size(); ipkg < N; ipkg++) {
+            final SparseArray<SparseArray<ProcessStats.PackageState>> pkgUids = stats.mPackages
                     .getMap().valueAt(ipkg);
             for (int iu = 0; iu < pkgUids.size(); iu++) {
                 final SparseArray<ProcessStats.PackageState> vpkgs = pkgUids.valueAt(iu);
@@ -278,7 +401,7 @@ public class ProcStatsData {
                     final ProcessStats.PackageState st = vpkgs.valueAt(iv);
                     for (int iproc = 0; iproc < st.mProcesses.size(); iproc++) {
                         final ProcessState pkgProc = st.mProcesses.valueAt(iproc);
-                        final ProcessState proc = mStats.mProcesses.get(pkgProc.getName(),
+                        final ProcessState proc = stats.mProcesses.get(pkgProc.getName(),
                                 pkgProc.getUid());
                         if (proc == null) {
                             Log.w(TAG, "No process found for pkg " + st.mPackageName
@@ -310,8 +433,8 @@ public class ProcStatsData {
         if (DEBUG) Log.d(TAG, "-------------------- MAPPING SERVICES");
 
         // Add in service info.
-        for (int ip = 0, N = mStats.mPackages.getMap().size(); ip < N; ip++) {
-            SparseArray<SparseArray<ProcessStats.PackageState>> uids = mStats.mPackages.getMap()
+        for (int ip = 0, N = stats.mPackages.getMap().size(); ip < N; ip++) {
+            SparseArray<SparseArray<ProcessStats.PackageState>> uids = stats.mPackages.getMap()
                     .valueAt(ip);
             for (int iu = 0; iu < uids.size(); iu++) {
                 SparseArray<ProcessStats.PackageState> vpkgs = uids.valueAt(iu);
@@ -340,21 +463,80 @@ public class ProcStatsData {
         return procEntries;
     }
 
-    private void load() {
+    private void load(boolean forceLoad) {
+        final ProcessStats stats = getStats(mProcessStats, mDuration, forceLoad);
+        if (stats != null) {
+            mStats = stats;
+        }
+    }
+
+    /*
+     * Returns the parsed stats over duration, from the shared cache if they were fetched less
+     * than STATS_CACHE_TTL_MS ago and not forceLoad, or null if the process stats service is
+     * dead. Freshly fetched stats replace the cached ones.
+     */
+    @VisibleForTesting
+    static ProcessStats getStats(IProcessStats service, long duration, boolean forceLoad) {
+        if (!forceLoad) {
+            synchronized (sStatsCache) {
+                final CachedStats cached = sStatsCache.get(duration);
+                if (cached != null && SystemClock.elapsedRealtime() - cached.loadTimeMs
+                        <= STATS_CACHE_TTL_MS) {
+                    sStatsCacheEntry.recordHit();
+                    return cached.stats;
+                }
+            }
+            sStatsCacheEntry.recordMiss();
+        }
         try {
-            ParcelFileDescriptor pfd = mProcessStats.getStatsOverTime(mDuration);
-            mStats = new ProcessStats(false);
+            ParcelFileDescriptor pfd = service.getStatsOverTime(duration);
+            if (pfd == null) {
+                Log.w(TAG, "No process stats over " + duration);
+                return null;
+            }
+            final ProcessStats stats = new ProcessStats(false);
             InputStream is = new ParcelFileDescriptor.AutoCloseInputStream(pfd);
-            mStats.read(is);
+            stats.read(is);
             try {
                 is.close();
             } catch (IOException e) {
             }
-            if (mStats.mReadError != null) {
-                Log.w(TAG, "Failure reading process stats: " + mStats.mReadError);
+            if (stats.mReadError != null) {
+                Log.w(TAG, "Failure reading process stats: " + stats.mReadError);
+                return stats;
+            }
+            synchronized (sStatsCache) {
+                sStatsCache.put(duration, new CachedStats(stats, SystemClock.elapsedRealtime()));
             }
+            return stats;
         } catch (RemoteException e) {
             Log.e(TAG, "RemoteException:", e);
+            return null;
+        }
+    }
+
+    @VisibleForTesting
+    static class CachedStats {
+        final ProcessStats stats;
+        final long loadTimeMs;
+
+        CachedStats(ProcessStats stats, long loadTimeMs) {
+            this.stats = stats;
+            this.loadTimeMs = loadTimeMs;
+        }
+    }
+
+    /*
+     * Memory info and package entries computed from the stats over one duration.
+     */
+    private static class Computed {
+        final ProcessStats stats;
+        final ArrayList<ProcStatsPackageEntry> entries = new ArrayList<>();
+        long memTotalTime;
+        MemInfo memInfo;
+
+        Computed(ProcessStats stats) {
+            this.stats = stats;
         }
     }
 
@@ -29,6 +29,7 @@ import com.android.settings.R;
 import com.android.settings.SettingsActivity;
 import com.android.settings.SettingsPreferenceFragment;
 import com.android.settings.applications.ProcStatsData.MemInfo;
+import com.android.settings.utils.TaskScheduler;
 
 public abstract class ProcessStatsBase extends SettingsPreferenceFragment
         implements OnItemSelectedListener {
@@ -60,6 +61,8 @@ public abstract class ProcessStatsBase extends SettingsPreferenceFragment
 
     protected ProcStatsData mStatsManager;
     protected int mDurationIndex;
+    private final TaskScheduler.CancellationToken mPreloadToken =
+            new TaskScheduler.CancellationToken();
 
     @Override
     public void onCreate(Bundle icicle) {
@@ -74,6 +77,9 @@ public abstract class ProcessStatsBase extends SettingsPreferenceFragment
                 : args != null ? args.getInt(ARG_DURATION_INDEX) : 0;
         mStatsManager.setDuration(icicle != null
                 ? icicle.getLong(DURATION, sDurations[0]) : sDurations[0]);
+        // Get the other durations ready while the user looks at this one.
+        getLifecycle().addObserver(mPreloadToken);
+        mStatsManager.preloadDurations(sDurations, mPreloadToken);
     }
 
     @Override
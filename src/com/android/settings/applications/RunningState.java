@@ -33,17 +33,18 @@ import android.content.res.Resources;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.Drawable.ConstantState;
 import android.os.Handler;
-import android.os.HandlerThread;
-import android.os.Looper;
 import android.os.Message;
 import android.os.RemoteException;
 import android.os.UserHandle;
 import android.os.UserManager;
+import android.support.annotation.VisibleForTesting;
+import android.text.TextUtils;
 import android.text.format.Formatter;
 import android.util.Log;
 import android.util.SparseArray;
 
 import com.android.settings.R;
+import com.android.settings.utils.TaskScheduler;
 import com.android.settingslib.Utils;
 import com.android.settingslib.applications.InterestingConfigChanges;
 
@@ -53,6 +54,7 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * Singleton for retrieving and monitoring the state about all running
@@ -125,18 +127,33 @@ public class RunningState {
     final SparseArray<MergedItem> mOtherUserBackgroundItems = new SparseArray<MergedItem>();
 
     static class AppProcessInfo {
-        final ActivityManager.RunningAppProcessInfo info;
+        ActivityManager.RunningAppProcessInfo info;
         boolean hasServices;
         boolean hasForegroundServices;
 
-        AppProcessInfo(ActivityManager.RunningAppProcessInfo _info) {
+        void set(ActivityManager.RunningAppProcessInfo _info) {
             info = _info;
+            hasServices = false;
+            hasForegroundServices = false;
         }
     }
 
     // Temporary structure used when updating above information.
     final SparseArray<AppProcessInfo> mTmpAppProcesses = new SparseArray<AppProcessInfo>();
 
+    // Reused by every update for the entries of mTmpAppProcesses, as the
+    // update runs every couple of seconds while the UI is shown.
+    final ArrayList<AppProcessInfo> mAppProcessInfoPool = new ArrayList<AppProcessInfo>();
+
+    // Temporary list used when sorting the service processes.
+    final ArrayList<ProcessItem> mTmpSortedProcesses = new ArrayList<ProcessItem>();
+
+    // Services and processes the items were last built from, see update().
+    final ArrayList<ActivityManager.RunningServiceInfo> mLastServices
+            = new ArrayList<ActivityManager.RunningServiceInfo>();
+    final ArrayList<ActivityManager.RunningAppProcessInfo> mLastProcesses
+            = new ArrayList<ActivityManager.RunningAppProcessInfo>();
+
     int mSequence = 0;
 
     final Comparator<RunningState.MergedItem> mBackgroundComparator
@@ -220,10 +237,9 @@ public class RunningState {
 
     // ----- BACKGROUND MONITORING THREAD -----
 
-    final HandlerThread mBackgroundThread;
-    final class BackgroundHandler extends Handler {
-        public BackgroundHandler(Looper looper) {
-            super(looper);
+    final class BackgroundHandler extends TaskScheduler.LaneHandler {
+        public BackgroundHandler() {
+            super(TaskScheduler.LANE_VISIBLE_CONTENT);
         }
 
         @Override
@@ -258,9 +274,13 @@ public class RunningState {
         public void handleMessage(Message msg) {
             switch (msg.what) {
                 case MSG_REFRESH_UI:
-                    mNextUpdate = msg.arg1 != 0
-                            ? OnRefreshUiListener.REFRESH_STRUCTURE
-                            : OnRefreshUiListener.REFRESH_DATA;
+                    // Keep a structure change that the UI has not been told about
+                    // yet, even if the next update only changed data.
+                    if (msg.arg1 != 0) {
+                        mNextUpdate = OnRefreshUiListener.REFRESH_STRUCTURE;
+                    } else if (mNextUpdate == OnRefreshUiListener.REFRESH_TIME) {
+                        mNextUpdate = OnRefreshUiListener.REFRESH_DATA;
+                    }
                     break;
                 case MSG_UPDATE_TIME:
                     synchronized (mLock) {
@@ -397,6 +417,8 @@ public class RunningState {
         ActivityManager.RunningAppProcessInfo mRunningProcessInfo;
         
         MergedItem mMergedItem;
+        // Item of the process in the background list, kept apart from mMergedItem.
+        MergedItem mBackgroundMergedItem;
 
         boolean mInteresting;
 
@@ -783,9 +805,7 @@ public class RunningState {
         UserInfo userInfo = mUm.getUserInfo(mMyUserId);
         mHideManagedProfiles = userInfo == null || !userInfo.canHaveProfile();
         mResumed = false;
-        mBackgroundThread = new HandlerThread("RunningState:Background");
-        mBackgroundThread.start();
-        mBackgroundHandler = new BackgroundHandler(mBackgroundThread.getLooper());
+        mBackgroundHandler = new BackgroundHandler();
         mUmBroadcastReceiver.register(mApplicationContext);
     }
 
@@ -862,6 +882,84 @@ public class RunningState {
         mRunningProcesses.clear();
         mProcessItems.clear();
         mAllProcessItems.clear();
+        // Users may have changed, drop the per-user items along with their user info.
+        mOtherUserMergedItems.clear();
+        mOtherUserBackgroundItems.clear();
+        mLastServices.clear();
+        mLastProcesses.clear();
+    }
+
+    /**
+     * Returns whether the running {@code services} are the same as {@code last}, in
+     * the same order and in the same state as far as the items are concerned.
+     */
+    @VisibleForTesting
+    static boolean isSameServices(List<ActivityManager.RunningServiceInfo> last,
+            List<ActivityManager.RunningServiceInfo> services) {
+        final int size = services != null ? services.size() : 0;
+        if (size != last.size()) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            final ActivityManager.RunningServiceInfo a = last.get(i);
+            final ActivityManager.RunningServiceInfo b = services.get(i);
+            if (a.pid != b.pid || a.uid != b.uid || a.restarting != b.restarting
+                    || a.started != b.started || a.foreground != b.foreground
+                    || a.flags != b.flags || a.clientLabel != b.clientLabel
+                    || a.clientCount != b.clientCount || a.activeSince != b.activeSince
+                    || !Objects.equals(a.service, b.service)
+                    || !TextUtils.equals(a.process, b.process)
+                    || !TextUtils.equals(a.clientPackage, b.clientPackage)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether the running {@code processes} are the same as {@code last}, in
+     * the same order and in the same state as far as the items are concerned.
+     */
+    @VisibleForTesting
+    static boolean isSameProcesses(List<ActivityManager.RunningAppProcessInfo> last,
+            List<ActivityManager.RunningAppProcessInfo> processes) {
+        final int size = processes != null ? processes.size() : 0;
+        if (size != last.size()) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            final ActivityManager.RunningAppProcessInfo a = last.get(i);
+            final ActivityManager.RunningAppProcessInfo b = processes.get(i);
+            if (a.pid != b.pid || a.uid != b.uid || a.importance != b.importance
+                    || a.importanceReasonPid != b.importanceReasonPid
+                    || a.importanceReasonCode != b.importanceReasonCode
+                    || a.flags != b.flags
+                    || !TextUtils.equals(a.processName, b.processName)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the merged item showing only {@code proc} in the background list if
+     * {@code background}, or in the interesting list otherwise, creating it the first
+     * time. Each list has its own item, as a process moving between the lists may
+     * still be shown by the UI in the list it left.
+     */
+    @VisibleForTesting
+    static MergedItem obtainProcessMergedItem(ProcessItem proc, boolean background) {
+        MergedItem item = background ? proc.mBackgroundMergedItem : proc.mMergedItem;
+        if (item == null) {
+            item = new MergedItem(proc.mUserId);
+            item.mProcess = proc;
+            if (background) {
+                proc.mBackgroundMergedItem = item;
+            } else {
+                proc.mMergedItem = item;
+            }
+        }
+        return item;
     }
 
     private void addOtherUserItem(Context context, ArrayList<MergedItem> newMergedItems,
@@ -869,37 +967,33 @@ public class RunningState {
         MergedItem userItem = userItems.get(newItem.mUserId);
         boolean first = userItem == null || userItem.mCurSeq != mSequence;
         if (first) {
-            UserInfo info = mUm.getUserInfo(newItem.mUserId);
-            if (info == null) {
-                // The user no longer exists, skip
-                return;
-            }
-            if (mHideManagedProfiles && info.isManagedProfile()) {
-                return;
-            }
             if (userItem == null) {
+                UserInfo info = mUm.getUserInfo(newItem.mUserId);
+                if (info == null) {
+                    // The user no longer exists, skip
+                    return;
+                }
+                if (mHideManagedProfiles && info.isManagedProfile()) {
+                    return;
+                }
+                // The user info is kept until the users change and reset() drops
+                // the item, rather than loading the user icon on every update.
                 userItem = new MergedItem(newItem.mUserId);
+                userItem.mUser = new UserState();
+                userItem.mUser.mInfo = info;
+                userItem.mUser.mIcon = Utils.getUserIcon(context, mUm, info);
+                userItem.mUser.mLabel = Utils.getUserLabel(context, info);
                 userItems.put(newItem.mUserId, userItem);
             } else {
                 userItem.mChildren.clear();
             }
             userItem.mCurSeq = mSequence;
-            userItem.mUser = new UserState();
-            userItem.mUser.mInfo = info;
-            userItem.mUser.mIcon = Utils.getUserIcon(context, mUm, info);
-            userItem.mUser.mLabel = Utils.getUserLabel(context, info);
             newMergedItems.add(userItem);
         }
         userItem.mChildren.add(newItem);
     }
 
     private boolean update(Context context, ActivityManager am) {
-        final PackageManager pm = context.getPackageManager();
-
-        mSequence++;
-        
-        boolean changed = false;
-
         // Retrieve list of services, filtering out anything that definitely
         // won't be shown in the UI.
         List<ActivityManager.RunningServiceInfo> services 
@@ -927,15 +1021,209 @@ public class RunningState {
             }
         }
 
-        // Retrieve list of running processes, organizing them into a sparse
-        // array for easy retrieval.
+        // Retrieve list of running processes.
         List<ActivityManager.RunningAppProcessInfo> processes
                 = am.getRunningAppProcesses();
+
+        boolean changed = false;
+        // The items are only built from the services and processes compared here, so
+        // while none came, went or changed state since the last update, only their
+        // sizes need refreshing.
+        if (!isSameServices(mLastServices, services)
+                || !isSameProcesses(mLastProcesses, processes)) {
+            changed = updateItems(context, services, processes);
+            mLastServices.clear();
+            if (services != null) {
+                mLastServices.addAll(services);
+            }
+            mLastProcesses.clear();
+            if (processes != null) {
+                mLastProcesses.addAll(processes);
+            }
+        }
+
+        // Count number of interesting other (non-active) processes, and
+        // build a list of all processes we will retrieve memory for.
+        mAllProcessItems.clear();
+        mAllProcessItems.addAll(mProcessItems);
+        int numBackgroundProcesses = 0;
+        int numForegroundProcesses = 0;
+        int numServiceProcesses = 0;
+        final int NRP = mRunningProcesses.size();
+        for (int i=0; i<NRP; i++) {
+            ProcessItem proc = mRunningProcesses.valueAt(i);
+            if (proc.mCurSeq != mSequence) {
+                // We didn't hit this process as a dependency on one
+                // of our active ones, so add it up if needed.
+                if (proc.mRunningProcessInfo.importance >=
+                        ActivityManager.RunningAppProcessInfo.IMPORTANCE_BACKGROUND) {
+                    numBackgroundProcesses++;
+                    mAllProcessItems.add(proc);
+                } else if (proc.mRunningProcessInfo.importance <=
+                        ActivityManager.RunningAppProcessInfo.IMPORTANCE_VISIBLE) {
+                    numForegroundProcesses++;
+                    mAllProcessItems.add(proc);
+                } else {
+                    Log.i("RunningState", "Unknown non-service process: "
+                            + proc.mProcessName + " #" + proc.mPid);
+                }
+            } else {
+                numServiceProcesses++;
+            }
+        }
+        
+        long backgroundProcessMemory = 0;
+        long foregroundProcessMemory = 0;
+        long serviceProcessMemory = 0;
+        ArrayList<MergedItem> newBackgroundItems = null;
+        ArrayList<MergedItem> newUserBackgroundItems = null;
+        boolean diffUsers = false;
+        try {
+            final int numProc = mAllProcessItems.size();
+            int[] pids = new int[numProc];
+            for (int i=0; i<numProc; i++) {
+                pids[i] = mAllProcessItems.get(i).mPid;
+            }
+            long[] pss = ActivityManager.getService()
+                    .getProcessPss(pids);
+            int bgIndex = 0;
+            for (int i=0; i<pids.length; i++) {
+                ProcessItem proc = mAllProcessItems.get(i);
+                changed |= proc.updateSize(context, pss[i], mSequence);
+                if (proc.mCurSeq == mSequence) {
+                    serviceProcessMemory += proc.mSize;
+                } else if (proc.mRunningProcessInfo.importance >=
+                        ActivityManager.RunningAppProcessInfo.IMPORTANCE_BACKGROUND) {
+                    backgroundProcessMemory += proc.mSize;
+                    MergedItem mergedItem;
+                    if (newBackgroundItems != null) {
+                        mergedItem = obtainProcessMergedItem(proc, true);
+                        diffUsers |= mergedItem.mUserId != mMyUserId;
+                        newBackgroundItems.add(mergedItem);
+                    } else {
+                        if (bgIndex >= mBackgroundItems.size()
+                                || mBackgroundItems.get(bgIndex).mProcess != proc) {
+                            newBackgroundItems = new ArrayList<MergedItem>(numBackgroundProcesses);
+                            for (int bgi=0; bgi<bgIndex; bgi++) {
+                                mergedItem = mBackgroundItems.get(bgi);
+                                diffUsers |= mergedItem.mUserId != mMyUserId;
+                                newBackgroundItems.add(mergedItem);
+                            }
+                            mergedItem = obtainProcessMergedItem(proc, true);
+                            diffUsers |= mergedItem.mUserId != mMyUserId;
+                            newBackgroundItems.add(mergedItem);
+                        } else {
+                            mergedItem = mBackgroundItems.get(bgIndex);
+                        }
+                    }
+                    mergedItem.update(context, true);
+                    mergedItem.updateSize(context);
+                    bgIndex++;
+                } else if (proc.mRunningProcessInfo.importance <=
+                        ActivityManager.RunningAppProcessInfo.IMPORTANCE_VISIBLE) {
+                    foregroundProcessMemory += proc.mSize;
+                }
+            }
+        } catch (RemoteException e) {
+        }
+        
+        if (newBackgroundItems == null) {
+            // One or more at the bottom may no longer exist.
+            if (mBackgroundItems.size() > numBackgroundProcesses) {
+                newBackgroundItems = new ArrayList<MergedItem>(numBackgroundProcesses);
+                for (int bgi=0; bgi<numBackgroundProcesses; bgi++) {
+                    MergedItem mergedItem = mBackgroundItems.get(bgi);
+                    diffUsers |= mergedItem.mUserId != mMyUserId;
+                    newBackgroundItems.add(mergedItem);
+                }
+            }
+        }
+
+        if (newBackgroundItems != null) {
+            // The background items have changed; we need to re-build the
+            // per-user items.
+            if (!diffUsers) {
+                // Easy: there are no other users, we can just use the same array.
+                newUserBackgroundItems = newBackgroundItems;
+            } else {
+                // We now need to re-build the per-user list so that background
+                // items for users are collapsed together.
+                newUserBackgroundItems = new ArrayList<MergedItem>();
+                final int NB = newBackgroundItems.size();
+                for (int i=0; i<NB; i++) {
+                    MergedItem mergedItem = newBackgroundItems.get(i);
+                    if (mergedItem.mUserId != mMyUserId) {
+                        addOtherUserItem(context, newUserBackgroundItems,
+                                mOtherUserBackgroundItems, mergedItem);
+                    } else {
+                        newUserBackgroundItems.add(mergedItem);
+                    }
+                }
+                // And user aggregated merged items need to be
+                // updated now that they have all of their children.
+                final int NU = mOtherUserBackgroundItems.size();
+                for (int i=0; i<NU; i++) {
+                    MergedItem user = mOtherUserBackgroundItems.valueAt(i);
+                    if (user.mCurSeq == mSequence) {
+                        user.update(context, true);
+                        user.updateSize(context);
+                    }
+                }
+            }
+        }
+
+        for (int i=0; i<mMergedItems.size(); i++) {
+            mMergedItems.get(i).updateSize(context);
+        }
+        
+        synchronized (mLock) {
+            mNumBackgroundProcesses = numBackgroundProcesses;
+            mNumForegroundProcesses = numForegroundProcesses;
+            mNumServiceProcesses = numServiceProcesses;
+            mBackgroundProcessMemory = backgroundProcessMemory;
+            mForegroundProcessMemory = foregroundProcessMemory;
+            mServiceProcessMemory = serviceProcessMemory;
+            if (newBackgroundItems != null) {
+                mBackgroundItems = newBackgroundItems;
+                mUserBackgroundItems = newUserBackgroundItems;
+                if (mWatchingBackgroundItems) {
+                    changed = true;
+                }
+            }
+            if (!mHaveData) {
+                mHaveData = true;
+                mLock.notifyAll();
+            }
+        }
+        
+        return changed;
+    }
+
+    /**
+     * Rebuilds the items from the running {@code services} and {@code processes},
+     * returning whether their structure changed.
+     */
+    private boolean updateItems(Context context,
+            List<ActivityManager.RunningServiceInfo> services,
+            List<ActivityManager.RunningAppProcessInfo> processes) {
+        final PackageManager pm = context.getPackageManager();
+        final int NS = services != null ? services.size() : 0;
         final int NP = processes != null ? processes.size() : 0;
+
+        mSequence++;
+
+        boolean changed = false;
+
+        // Organize the running processes into a sparse array for easy retrieval.
         mTmpAppProcesses.clear();
         for (int i=0; i<NP; i++) {
             ActivityManager.RunningAppProcessInfo pi = processes.get(i);
-            mTmpAppProcesses.put(pi.pid, new AppProcessInfo(pi));
+            if (i == mAppProcessInfoPool.size()) {
+                mAppProcessInfoPool.add(new AppProcessInfo());
+            }
+            AppProcessInfo ainfo = mAppProcessInfoPool.get(i);
+            ainfo.set(pi);
+            mTmpAppProcesses.put(pi.pid, ainfo);
         }
 
         // Initial iteration through running services to collect per-process
@@ -1157,7 +1445,7 @@ public class RunningState {
 
         if (changed) {
             // First determine an order for the services.
-            ArrayList<ProcessItem> sortedProcesses = new ArrayList<ProcessItem>();
+            final ArrayList<ProcessItem> sortedProcesses = mTmpSortedProcesses;
             for (int i=0; i<mServiceProcessesByName.size(); i++) {
                 for (ProcessItem pi : mServiceProcessesByName.valueAt(i).values()) {
                     pi.mIsSystem = false;
@@ -1199,7 +1487,9 @@ public class RunningState {
                     mProcessItems.add(pi);
                 }
                 
-                // Now add the services running in it.
+                // Now add the services running in it.  Items already shown are read by the
+                // UI, so a structural change builds a new MergedItem for every service
+                // process; unchanged lists skip this rebuild altogether in update().
                 MergedItem mergedItem = null;
                 boolean haveAllMerged = false;
                 boolean needDivider = false;
@@ -1240,17 +1530,15 @@ public class RunningState {
                 }
             }
 
+            sortedProcesses.clear();
+
             // Finally, interesting processes need to be shown and will
             // go at the top.
             NHP = mInterestingProcesses.size();
             for (int i=0; i<NHP; i++) {
                 ProcessItem proc = mInterestingProcesses.get(i);
                 if (proc.mClient == null && proc.mServices.size() <= 0) {
-                    if (proc.mMergedItem == null) {
-                        proc.mMergedItem = new MergedItem(proc.mUserId);
-                        proc.mMergedItem.mProcess = proc;
-                    }
-                    proc.mMergedItem.update(context, false);
+                    obtainProcessMergedItem(proc, false).update(context, false);
                     if (proc.mMergedItem.mUserId != mMyUserId) {
                         addOtherUserItem(context, newMergedItems, mOtherUserMergedItems,
                                 proc.mMergedItem);
@@ -1276,163 +1564,7 @@ public class RunningState {
                 mMergedItems = newMergedItems;
             }
         }
-        
-        // Count number of interesting other (non-active) processes, and
-        // build a list of all processes we will retrieve memory for.
-        mAllProcessItems.clear();
-        mAllProcessItems.addAll(mProcessItems);
-        int numBackgroundProcesses = 0;
-        int numForegroundProcesses = 0;
-        int numServiceProcesses = 0;
-        NRP = mRunningProcesses.size();
-        for (int i=0; i<NRP; i++) {
-            ProcessItem proc = mRunningProcesses.valueAt(i);
-            if (proc.mCurSeq != mSequence) {
-                // We didn't hit this process as a dependency on one
-                // of our active ones, so add it up if needed.
-                if (proc.mRunningProcessInfo.importance >=
-                        ActivityManager.RunningAppProcessInfo.IMPORTANCE_BACKGROUND) {
-                    numBackgroundProcesses++;
-                    mAllProcessItems.add(proc);
-                } else if (proc.mRunningProcessInfo.importance <=
-                        ActivityManager.RunningAppProcessInfo.IMPORTANCE_VISIBLE) {
-                    numForegroundProcesses++;
-                    mAllProcessItems.add(proc);
-                } else {
-                    Log.i("RunningState", "Unknown non-service process: "
-                            + proc.mProcessName + " #" + proc.mPid);
-                }
-            } else {
-                numServiceProcesses++;
-            }
-        }
-        
-        long backgroundProcessMemory = 0;
-        long foregroundProcessMemory = 0;
-        long serviceProcessMemory = 0;
-        ArrayList<MergedItem> newBackgroundItems = null;
-        ArrayList<MergedItem> newUserBackgroundItems = null;
-        boolean diffUsers = false;
-        try {
-            final int numProc = mAllProcessItems.size();
-            int[] pids = new int[numProc];
-            for (int i=0; i<numProc; i++) {
-                pids[i] = mAllProcessItems.get(i).mPid;
-            }
-            long[] pss = ActivityManager.getService()
-                    .getProcessPss(pids);
-            int bgIndex = 0;
-            for (int i=0; i<pids.length; i++) {
-                ProcessItem proc = mAllProcessItems.get(i);
-                changed |= proc.updateSize(context, pss[i], mSequence);
-                if (proc.mCurSeq == mSequence) {
-                    serviceProcessMemory += proc.mSize;
-                } else if (proc.mRunningProcessInfo.importance >=
-                        ActivityManager.RunningAppProcessInfo.IMPORTANCE_BACKGROUND) {
-                    backgroundProcessMemory += proc.mSize;
-                    MergedItem mergedItem;
-                    if (newBackgroundItems != null) {
-                        mergedItem = proc.mMergedItem = new MergedItem(proc.mUserId);
-                        proc.mMergedItem.mProcess = proc;
-                        diffUsers |= mergedItem.mUserId != mMyUserId;
-                        newBackgroundItems.add(mergedItem);
-                    } else {
-                        if (bgIndex >= mBackgroundItems.size()
-                                || mBackgroundItems.get(bgIndex).mProcess != proc) {
-                            newBackgroundItems = new ArrayList<MergedItem>(numBackgroundProcesses);
-                            for (int bgi=0; bgi<bgIndex; bgi++) {
-                                mergedItem = mBackgroundItems.get(bgi);
-                                diffUsers |= mergedItem.mUserId != mMyUserId;
-                                newBackgroundItems.add(mergedItem);
-                            }
-                            mergedItem = proc.mMergedItem = new MergedItem(proc.mUserId);
-                            proc.mMergedItem.mProcess = proc;
-                            diffUsers |= mergedItem.mUserId != mMyUserId;
-                            newBackgroundItems.add(mergedItem);
-                        } else {
-                            mergedItem = mBackgroundItems.get(bgIndex);
-                        }
-                    }
-                    mergedItem.update(context, true);
-                    mergedItem.updateSize(context);
-                    bgIndex++;
-                } else if (proc.mRunningProcessInfo.importance <=
-                        ActivityManager.RunningAppProcessInfo.IMPORTANCE_VISIBLE) {
-                    foregroundProcessMemory += proc.mSize;
-                }
-            }
-        } catch (RemoteException e) {
-        }
-        
-        if (newBackgroundItems == null) {
-            // One or more at the bottom may no longer exist.
-            if (mBackgroundItems.size() > numBackgroundProcesses) {
-                newBackgroundItems = new ArrayList<MergedItem>(numBackgroundProcesses);
-                for (int bgi=0; bgi<numBackgroundProcesses; bgi++) {
-                    MergedItem mergedItem = mBackgroundItems.get(bgi);
-                    diffUsers |= mergedItem.mUserId != mMyUserId;
-                    newBackgroundItems.add(mergedItem);
-                }
-            }
-        }
 
-        if (newBackgroundItems != null) {
-            // The background items have changed; we need to re-build the
-            // per-user items.
-            if (!diffUsers) {
-                // Easy: there are no other users, we can just use the same array.
-                newUserBackgroundItems = newBackgroundItems;
-            } else {
-                // We now need to re-build the per-user list so that background
-                // items for users are collapsed together.
-                newUserBackgroundItems = new ArrayList<MergedItem>();
-                final int NB = newBackgroundItems.size();
-                for (int i=0; i<NB; i++) {
-                    MergedItem mergedItem = newBackgroundItems.get(i);
-                    if (mergedItem.mUserId != mMyUserId) {
-                        addOtherUserItem(context, newUserBackgroundItems,
-                                mOtherUserBackgroundItems, mergedItem);
-                    } else {
-                        newUserBackgroundItems.add(mergedItem);
-                    }
-                }
-                // And user aggregated merged items need to be
-                // updated now that they have all of their children.
-                final int NU = mOtherUserBackgroundItems.size();
-                for (int i=0; i<NU; i++) {
-                    MergedItem user = mOtherUserBackgroundItems.valueAt(i);
-                    if (user.mCurSeq == mSequence) {
-                        user.update(context, true);
-                        user.updateSize(context);
-                    }
-                }
-            }
-        }
-
-        for (int i=0; i<mMergedItems.size(); i++) {
-            mMergedItems.get(i).updateSize(context);
-        }
-        
-        synchronized (mLock) {
-            mNumBackgroundProcesses = numBackgroundProcesses;
-            mNumForegroundProcesses = numForegroundProcesses;
-            mNumServiceProcesses = numServiceProcesses;
-            mBackgroundProcessMemory = backgroundProcessMemory;
-            mForegroundProcessMemory = foregroundProcessMemory;
-            mServiceProcessMemory = serviceProcessMemory;
-            if (newBackgroundItems != null) {
-                mBackgroundItems = newBackgroundItems;
-                mUserBackgroundItems = newUserBackgroundItems;
-                if (mWatchingBackgroundItems) {
-                    changed = true;
-                }
-            }
-            if (!mHaveData) {
-                mHaveData = true;
-                mLock.notifyAll();
-            }
-        }
-        
         return changed;
     }
     
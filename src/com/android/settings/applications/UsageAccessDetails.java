@@ -125,6 +125,7 @@ public class UsageAccessDetails extends AppInfoWithHeader implements OnPreferenc
         logSpecialPermissionChange(newState, mPackageName);
         mAppOpsManager.setMode(AppOpsManager.OP_GET_USAGE_STATS, mPackageInfo.applicationInfo.uid,
                 mPackageName, newState ? AppOpsManager.MODE_ALLOWED : AppOpsManager.MODE_IGNORED);
+        AppOpsPermissionSnapshot.invalidate();
     }
 
     @VisibleForTesting
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.UserInfo;
+import android.os.AsyncTask;
+import android.os.SystemClock;
+import android.os.UserHandle;
+import android.support.annotation.VisibleForTesting;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import com.android.settings.utils.CacheRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Installed apps of each user, shared by {@link AppCounter} and {@link AppLister}.
+ *
+ * <p>The apps of a user are fetched once and kept until a package is added, removed or changed.
+ * The apps a counter or lister includes are kept as well when it names its criteria with a
+ * filter key, so dashboard summaries such as the number of installed apps are answered without
+ * going through every app again. Those results may also depend on state no package broadcast
+ * reports, like permissions granted by the admin, so they expire after {@link #FILTER_TTL_MS}.
+ */
+class UserAppsCache {
+
+    private static final String TAG = "UserAppsCache";
+
+    @VisibleForTesting
+    static final long FILTER_TTL_MS = 60 * 1000;
+
+    private static UserAppsCache sInstance;
+
+    /**
+     * Decides whether an app is included, like {@link AppCounter#includeInCount}.
+     */
+    interface AppFilter {
+        boolean include(ApplicationInfo info);
+    }
+
+    // "<user>:<flags>" -> installed apps of the user.
+    private final ArrayMap<String, List<ApplicationInfo>> mApps = new ArrayMap<>();
+    // "<filter key>:<user>" -> included apps of the user.
+    private final ArrayMap<String, FilteredApps> mFiltered = new ArrayMap<>();
+    private final CacheRegistry.Cache mCacheEntry;
+    // Incremented on each invalidation, so apps fetched before it are not kept.
+    private int mGeneration;
+
+    private final BroadcastReceiver mPackageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            invalidate();
+        }
+    };
+
+    /**
+     * Returns the cache, or null if {@code context} gives no application context to listen to
+     * package changes on, in which case nothing may be cached.
+     */
+    static synchronized UserAppsCache get(Context context) {
+        final Context appContext = context != null ? context.getApplicationContext() : null;
+        if (appContext == null) {
+            return null;
+        }
+        if (sInstance == null) {
+            sInstance = new UserAppsCache();
+            final IntentFilter filter = new IntentFilter(Intent.ACTION_PACKAGE_ADDED);
+            filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+            filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+            filter.addDataScheme("package");
+            appContext.registerReceiverAsUser(sInstance.mPackageReceiver, UserHandle.ALL, filter,
+                    null /* broadcastPermission */, null /* scheduler */);
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    static synchronized void clear() {
+        if (sInstance != null) {
+            sInstance.invalidate();
+        }
+    }
+
+    private UserAppsCache() {
+        mCacheEntry = CacheRegistry.get().register(
+                new CacheRegistry.Cache("user_apps", TRIM_MEMORY_UI_HIDDEN) {
+                    @Override
+                    public int getEntryCount() {
+                        synchronized (UserAppsCache.this) {
+                            return mApps.size() + mFiltered.size();
+                        }
+                    }
+
+                    @Override
+                    protected void clear() {
+                        invalidate();
+                    }
+                });
+    }
+
+    synchronized void invalidate() {
+        mGeneration++;
+        mApps.clear();
+        mFiltered.clear();
+    }
+
+    /**
+     * Returns the apps of each of {@code profiles} that {@code filter} includes, in the order of
+     * the profiles. The first profile is filtered on the calling thread and the others in
+     * parallel.
+     *
+     * @param cache cache to share the apps through, or null to fetch them all.
+     * @param filterKey key naming the criteria of {@code filter}, equal for filters including the
+     *         same apps, or null if the included apps must not be cached.
+     */
+    static List<List<ApplicationInfo>> filterApps(UserAppsCache cache,
+            PackageManagerWrapper pm, List<UserInfo> profiles, String filterKey,
+            AppFilter filter) {
+        final int count = profiles.size();
+        final ArrayList<FutureTask<List<ApplicationInfo>>> others = new ArrayList<>(count);
+        for (int i = 1; i < count; i++) {
+            final UserInfo user = profiles.get(i);
+            final FutureTask<List<ApplicationInfo>> task = new FutureTask<>(
+                    () -> filterApps(cache, pm, user, filterKey, filter));
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(task);
+            others.add(task);
+        }
+        final List<List<ApplicationInfo>> result = new ArrayList<>(count);
+        if (count > 0) {
+            result.add(filterApps(cache, pm, profiles.get(0), filterKey, filter));
+        }
+        for (int i = 0; i < others.size(); i++) {
+            try {
+                result.add(others.get(i).get());
+            } catch (InterruptedException | ExecutionException e) {
+                Log.w(TAG, "Failed to filter apps of user " + profiles.get(i + 1).id, e);
+                result.add(new ArrayList<>());
+            }
+        }
+        return result;
+    }
+
+    private static List<ApplicationInfo> filterApps(UserAppsCache cache,
+            PackageManagerWrapper pm, UserInfo user, String filterKey, AppFilter filter) {
+        final String key = filterKey != null ? filterKey + ":" + user.id : null;
+        final int generation = cache != null ? cache.getGeneration() : 0;
+        if (cache != null && key != null) {
+            final List<ApplicationInfo> filtered = cache.getFiltered(key);
+            if (filtered != null) {
+                return filtered;
+            }
+        }
+        final List<ApplicationInfo> apps = getInstalledApps(cache, pm, user);
+        final ArrayList<ApplicationInfo> filtered = new ArrayList<>();
+        for (int i = 0; i < apps.size(); i++) {
+            if (filter.include(apps.get(i))) {
+                filtered.add(apps.get(i));
+            }
+        }
+        if (cache != null && key != null) {
+            cache.putFiltered(key, filtered, generation);
+        }
+        return filtered;
+    }
+
+    private static List<ApplicationInfo> getInstalledApps(UserAppsCache cache,
+            PackageManagerWrapper pm, UserInfo user) {
+        final int flags = PackageManager.GET_DISABLED_COMPONENTS
+                | PackageManager.GET_DISABLED_UNTIL_USED_COMPONENTS
+                | (user.isAdmin() ? PackageManager.MATCH_ANY_USER : 0);
+        if (cache == null) {
+            return pm.getInstalledApplicationsAsUser(flags, user.id);
+        }
+        final String key = user.id + ":" + flags;
+        final int generation;
+        synchronized (cache) {
+            generation = cache.mGeneration;
+            final List<ApplicationInfo> apps = cache.mApps.get(key);
+            if (apps != null) {
+                cache.mCacheEntry.recordHit();
+                return apps;
+            }
+        }
+        cache.mCacheEntry.recordMiss();
+        final List<ApplicationInfo> apps = pm.getInstalledApplicationsAsUser(flags, user.id);
+        synchronized (cache) {
+            if (generation == cache.mGeneration) {
+                cache.mApps.put(key, apps);
+            }
+        }
+        return apps;
+    }
+
+    private synchronized List<ApplicationInfo> getFiltered(String key) {
+        final FilteredApps filtered = mFiltered.get(key);
+        if (filtered == null) {
+            mCacheEntry.recordMiss();
+            return null;
+        }
+        if (SystemClock.elapsedRealtime() - filtered.filterTimeMs > FILTER_TTL_MS) {
+            mFiltered.remove(key);
+            mCacheEntry.recordMiss();
+            return null;
+        }
+        mCacheEntry.recordHit();
+        return filtered.apps;
+    }
+
+    private synchronized int getGeneration() {
+        return mGeneration;
+    }
+
+    private synchronized void putFiltered(String key, List<ApplicationInfo> apps,
+            int generation) {
+        if (generation == mGeneration) {
+            mFiltered.put(key, new FilteredApps(apps, SystemClock.elapsedRealtime()));
+        }
+    }
+
+    private static class FilteredApps {
+        final List<ApplicationInfo> apps;
+        final long filterTimeMs;
+
+        FilteredApps(List<ApplicationInfo> apps, long filterTimeMs) {
+            this.apps = apps;
+            this.filterTimeMs = filterTimeMs;
+        }
+    }
+}
@@ -122,6 +122,7 @@ public class WriteSettingsDetails extends AppInfoWithHeader implements OnPrefere
         mAppOpsManager.setMode(AppOpsManager.OP_WRITE_SETTINGS,
                 mPackageInfo.applicationInfo.uid, mPackageName, newState
                 ? AppOpsManager.MODE_ALLOWED : AppOpsManager.MODE_ERRORED);
+        AppOpsPermissionSnapshot.invalidate();
     }
 
     void logSpecialPermissionChange(boolean newState, String packageName) {
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.settings.core;
+
+import android.support.v7.preference.Preference;
+
+/**
+ * Opt-in contract for {@link PreferenceController}s whose state needs binder calls or disk access.
+ *
+ * <p>When hosted in a {@link com.android.settings.dashboard.DashboardFragment}, the state is
+ * refreshed in two phases instead of through {@code updateState}: {@link #loadState()} runs on a
+ * background thread, in parallel with other controllers, and {@link #applyState} then binds the
+ * result on the main thread. The preference keeps its previous state until the load completes.
+ *
+ * @param <T> Type of the state snapshot. It is handed across threads, so it should be immutable.
+ */
+public interface AsyncStatePreferenceController<T> {
+
+    /**
+     * Loads the state of the preference. Called on a background thread, must not touch the
+     * preference or any other UI object.
+     */
+    T loadState();
+
+    /**
+     * Binds a state returned by {@link #loadState()} to the preference. Called on the main thread
+     * and should be cheap.
+     */
+    void applyState(Preference preference, T state);
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core;
+
+import android.content.ComponentName;
+import android.content.Intent;
+import android.content.res.Resources;
+import android.content.res.XmlResourceParser;
+import android.net.Uri;
+import android.support.annotation.XmlRes;
+import android.text.TextUtils;
+import android.util.Log;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Flat, pre-resolved form of a preference XML resource: one entry per preference holding its
+ * type, parent, key, and attributes already resolved to resource ids or literal values.
+ *
+ * <p>Only the plain preference types and the attributes they read are supported. Anything else
+ * (custom preference classes, settings namespace attributes, theme references, intent extras...)
+ * makes {@link #compile} return null, and the resource must be inflated from XML instead.
+ */
+final class CompiledPreferenceTree {
+
+    private static final String TAG = "CompiledPreferenceTree";
+
+    private static final String NS_ANDROID = "http://schemas.android.com/apk/res/android";
+    // Settings namespace attribute that is only read by search indexing.
+    private static final String ATTR_KEYWORDS = "keywords";
+    private static final String TAG_INTENT = "intent";
+
+    static final int TYPE_SCREEN = 0;
+    static final int TYPE_CATEGORY = 1;
+    static final int TYPE_PREFERENCE = 2;
+    static final int TYPE_SWITCH = 3;
+
+    static final int FLAG_HAS_ORDER = 1;
+    static final int FLAG_HAS_SELECTABLE = 1 << 1;
+    static final int FLAG_SELECTABLE = 1 << 2;
+    static final int FLAG_HAS_ENABLED = 1 << 3;
+    static final int FLAG_ENABLED = 1 << 4;
+    static final int FLAG_HAS_PERSISTENT = 1 << 5;
+    static final int FLAG_PERSISTENT = 1 << 6;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Node attributes, in document order so a parent always comes before its children. Node 0 is
+    // the root screen. Resource id fields are 0 when unset, literal fields are used only then.
+    int size;
+    int[] types = new int[INITIAL_CAPACITY];
+    int[] parents = new int[INITIAL_CAPACITY];
+    int[] flags = new int[INITIAL_CAPACITY];
+    int[] orders = new int[INITIAL_CAPACITY];
+    int[] titleResIds = new int[INITIAL_CAPACITY];
+    int[] summaryResIds = new int[INITIAL_CAPACITY];
+    int[] iconResIds = new int[INITIAL_CAPACITY];
+    int[] layoutResIds = new int[INITIAL_CAPACITY];
+    int[] widgetLayoutResIds = new int[INITIAL_CAPACITY];
+    String[] keys = new String[INITIAL_CAPACITY];
+    String[] titles = new String[INITIAL_CAPACITY];
+    String[] summaries = new String[INITIAL_CAPACITY];
+    String[] fragments = new String[INITIAL_CAPACITY];
+    // Template intents, copied for every inflation.
+    Intent[] intents = new Intent[INITIAL_CAPACITY];
+
+    private CompiledPreferenceTree() {
+    }
+
+    static boolean isGroup(int type) {
+        return type == TYPE_SCREEN || type == TYPE_CATEGORY;
+    }
+
+    /**
+     * Compiles the preference XML {@code xmlResId}, or returns null when it uses anything the
+     * compiled form cannot represent.
+     */
+    static CompiledPreferenceTree compile(Resources res, @XmlRes int xmlResId) {
+        XmlResourceParser parser = null;
+        try {
+            parser = res.getXml(xmlResId);
+            final CompiledPreferenceTree tree = new CompiledPreferenceTree();
+            // Node index of the element open at each depth.
+            int[] openNodes = new int[INITIAL_CAPACITY];
+            int type;
+            while ((type = parser.next()) != XmlPullParser.END_DOCUMENT) {
+                if (type != XmlPullParser.START_TAG) {
+                    continue;
+                }
+                final int depth = parser.getDepth();
+                final String tag = parser.getName();
+                if (TAG_INTENT.equals(tag)) {
+                    if (depth < 2 || !tree.parseIntent(parser, openNodes[depth - 2])) {
+                        return null;
+                    }
+                    continue;
+                }
+                final int nodeType = typeOf(tag);
+                if (nodeType < 0 || (depth == 1) != (nodeType == TYPE_SCREEN)) {
+                    return null;
+                }
+                final int parent = depth == 1 ? -1 : openNodes[depth - 2];
+                if (parent >= 0 && !isGroup(tree.types[parent])) {
+                    return null;
+                }
+                final int node = tree.addNode(nodeType, parent);
+                if (!tree.parseAttributes(parser, node)) {
+                    return null;
+                }
+                if (depth > openNodes.length) {
+                    openNodes = Arrays.copyOf(openNodes, openNodes.length * 2);
+                }
+                openNodes[depth - 1] = node;
+            }
+            return tree.size > 0 ? tree : null;
+        } catch (XmlPullParserException | IOException | Resources.NotFoundException e) {
+            Log.w(TAG, "Failed to compile xml " + xmlResId, e);
+            return null;
+        } finally {
+            if (parser != null) {
+                parser.close();
+            }
+        }
+    }
+
+    private static int typeOf(String tag) {
+        switch (tag) {
+            case "PreferenceScreen":
+                return TYPE_SCREEN;
+            case "PreferenceCategory":
+                return TYPE_CATEGORY;
+            case "Preference":
+                return TYPE_PREFERENCE;
+            case "SwitchPreference":
+                return TYPE_SWITCH;
+            default:
+                return -1;
+        }
+    }
+
+    private int addNode(int type, int parent) {
+        if (size == types.length) {
+            final int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+            orders = Arrays.copyOf(orders, capacity);
+            titleResIds = Arrays.copyOf(titleResIds, capacity);
+            summaryResIds = Arrays.copyOf(summaryResIds, capacity);
+            iconResIds = Arrays.copyOf(iconResIds, capacity);
+            layoutResIds = Arrays.copyOf(layoutResIds, capacity);
+            widgetLayoutResIds = Arrays.copyOf(widgetLayoutResIds, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            titles = Arrays.copyOf(titles, capacity);
+            summaries = Arrays.copyOf(summaries, capacity);
+            fragments = Arrays.copyOf(fragments, capacity);
+            intents = Arrays.copyOf(intents, capacity);
+        }
+        types[size] = type;
+        parents[size] = parent;
+        return size++;
+    }
+
+    private boolean parseAttributes(XmlResourceParser parser, int node) {
+        for (int i = 0; i < parser.getAttributeCount(); i++) {
+            final String name = parser.getAttributeName(i);
+            final String value = parser.getAttributeValue(i);
+            if (!NS_ANDROID.equals(parser.getAttributeNamespace(i))) {
+                if (ATTR_KEYWORDS.equals(name)) {
+                    continue;
+                }
+                return false;
+            }
+            if (value == null || value.startsWith("?")) {
+                // Theme attributes can only be resolved against the inflating context.
+                return false;
+            }
+            final boolean isReference = value.startsWith("@");
+            switch (name) {
+                case "key":
+                    if (isReference) {
+                        return false;
+                    }
+                    keys[node] = value;
+                    break;
+                case "title":
+                    titleResIds[node] = parser.getAttributeResourceValue(i, 0);
+                    titles[node] = isReference ? null : value;
+                    break;
+                case "summary":
+                    summaryResIds[node] = parser.getAttributeResourceValue(i, 0);
+                    summaries[node] = isReference ? null : value;
+                    break;
+                case "icon":
+                    iconResIds[node] = parser.getAttributeResourceValue(i, 0);
+                    if (iconResIds[node] == 0) {
+                        return false;
+                    }
+                    break;
+                case "layout":
+                    layoutResIds[node] = parser.getAttributeResourceValue(i, 0);
+                    if (layoutResIds[node] == 0) {
+                        return false;
+                    }
+                    break;
+                case "widgetLayout":
+                    widgetLayoutResIds[node] = parser.getAttributeResourceValue(i, 0);
+                    if (widgetLayoutResIds[node] == 0) {
+                        return false;
+                    }
+                    break;
+                case "fragment":
+                    if (isReference) {
+                        return false;
+                    }
+                    fragments[node] = value;
+                    break;
+                case "order":
+                    if (isReference) {
+                        return false;
+                    }
+                    orders[node] = parser.getAttributeIntValue(i, 0);
+                    flags[node] |= FLAG_HAS_ORDER;
+                    break;
+                case "selectable":
+                    if (!parseBoolean(parser, i, node, FLAG_HAS_SELECTABLE, FLAG_SELECTABLE)) {
+                        return false;
+                    }
+                    break;
+                case "enabled":
+                    if (!parseBoolean(parser, i, node, FLAG_HAS_ENABLED, FLAG_ENABLED)) {
+                        return false;
+                    }
+                    break;
+                case "persistent":
+                    if (!parseBoolean(parser, i, node, FLAG_HAS_PERSISTENT, FLAG_PERSISTENT)) {
+                        return false;
+                    }
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean parseBoolean(XmlResourceParser parser, int index, int node, int hasFlag,
+            int valueFlag) {
+        if (parser.getAttributeValue(index).startsWith("@")) {
+            return false;
+        }
+        flags[node] |= hasFlag;
+        if (parser.getAttributeBooleanValue(index, false)) {
+            flags[node] |= valueFlag;
+        }
+        return true;
+    }
+
+    /**
+     * Reads an {@code <intent>} element the way {@link Intent#parseIntent} does, for the subset
+     * of attributes used by preference XML. Extras and categories are not supported.
+     */
+    private boolean parseIntent(XmlResourceParser parser, int node) {
+        if (isGroup(types[node])) {
+            return false;
+        }
+        String action = null;
+        String targetPackage = null;
+        String targetClass = null;
+        String data = null;
+        String mimeType = null;
+        for (int i = 0; i < parser.getAttributeCount(); i++) {
+            final String value = parser.getAttributeValue(i);
+            if (!NS_ANDROID.equals(parser.getAttributeNamespace(i)) || value == null
+                    || value.startsWith("@") || value.startsWith("?")) {
+                return false;
+            }
+            switch (parser.getAttributeName(i)) {
+                case "action":
+                    action = value;
+                    break;
+                case "targetPackage":
+                    targetPackage = value;
+                    break;
+                case "targetClass":
+                    targetClass = value;
+                    break;
+                case "data":
+                    data = value;
+                    break;
+                case "mimeType":
+                    mimeType = value;
+                    break;
+                default:
+                    return false;
+            }
+        }
+        final Intent intent = new Intent(action);
+        if (!TextUtils.isEmpty(targetPackage) && !TextUtils.isEmpty(targetClass)) {
+            if (targetClass.charAt(0) == '.') {
+                targetClass = targetPackage + targetClass;
+            }
+            intent.setComponent(new ComponentName(targetPackage, targetClass));
+        }
+        if (data != null || mimeType != null) {
+            intent.setDataAndType(data != null ? Uri.parse(data) : null, mimeType);
+        }
+        intents[node] = intent;
+        return true;
+    }
+}
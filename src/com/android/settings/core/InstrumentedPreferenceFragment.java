@@ -20,6 +20,7 @@ import android.content.Context;
 import android.os.Bundle;
 
 import com.android.settings.core.instrumentation.Instrumentable;
+import com.android.settings.core.instrumentation.MainThreadWatchdog;
 import com.android.settings.core.instrumentation.MetricsFeatureProvider;
 import com.android.settings.core.instrumentation.VisibilityLoggerMixin;
 import com.android.settings.core.lifecycle.ObservablePreferenceFragment;
@@ -38,6 +39,9 @@ public abstract class InstrumentedPreferenceFragment extends ObservablePreferenc
     protected final int PLACEHOLDER_METRIC = 10000;
 
     private final VisibilityLoggerMixin mVisibilityLoggerMixin;
+    // Measures the callbacks below, including the lifecycle observers and the preference
+    // inflation they run, on debug builds.
+    private final MainThreadWatchdog mWatchdog = MainThreadWatchdog.get();
 
     public InstrumentedPreferenceFragment() {
         // Mixin that logs visibility change for activity.
@@ -52,10 +56,40 @@ public abstract class InstrumentedPreferenceFragment extends ObservablePreferenc
         mMetricsFeatureProvider = FeatureFactory.getFactory(context).getMetricsFeatureProvider();
     }
 
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        mWatchdog.begin();
+        super.onCreate(savedInstanceState);
+        mWatchdog.end(this, "onCreate");
+    }
+
+    @Override
+    public void onStart() {
+        mWatchdog.begin();
+        super.onStart();
+        mWatchdog.end(this, "onStart");
+    }
+
     @Override
     public void onResume() {
         mVisibilityLoggerMixin.setSourceMetricsCategory(getActivity());
+        mWatchdog.begin();
         super.onResume();
+        mWatchdog.end(this, "onResume");
+    }
+
+    @Override
+    public void onPause() {
+        mWatchdog.begin();
+        super.onPause();
+        mWatchdog.end(this, "onPause");
+    }
+
+    @Override
+    public void onStop() {
+        mWatchdog.begin();
+        super.onStop();
+        mWatchdog.end(this, "onStop");
     }
 
     @Override
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.settings.core;
+
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
+import android.support.v7.preference.Preference;
+import android.util.Log;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Runs the load phase of {@link AsyncStatePreferenceController}s in parallel on background
+ * threads and applies each result on the main thread as soon as it is ready.
+ *
+ * <p>Updates are grouped in rounds: starting a new round or cancelling drops the results of
+ * loads still running from the previous one. Loads slower than {@link #SLOW_LOAD_THRESHOLD_MS}
+ * are reported to logcat.
+ */
+public class PreferenceStateUpdater {
+
+    private static final String TAG = "PreferenceStateUpdater";
+
+    @VisibleForTesting
+    static final long SLOW_LOAD_THRESHOLD_MS = 50;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Executor mExecutor;
+    private final String mHostTag;
+
+    // Incremented on every round, results of older rounds are dropped. Main thread only.
+    private int mGeneration;
+
+    public PreferenceStateUpdater(String hostTag) {
+        this(hostTag, AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    @VisibleForTesting
+    PreferenceStateUpdater(String hostTag, Executor executor) {
+        mHostTag = hostTag;
+        mExecutor = executor;
+    }
+
+    /**
+     * Starts a new round of updates, dropping any pending result of the previous round.
+     */
+    public void startRound() {
+        mGeneration++;
+    }
+
+    /**
+     * Drops all pending results.
+     */
+    public void cancel() {
+        mGeneration++;
+    }
+
+    /**
+     * Loads the controller state in the background and applies it to the preference on the main
+     * thread, unless a new round was started in between.
+     */
+    public <T> void update(final AsyncStatePreferenceController<T> controller,
+            final Preference preference) {
+        final int generation = mGeneration;
+        mExecutor.execute(() -> {
+            final long startTime = SystemClock.elapsedRealtime();
+            final T state;
+            try {
+                state = controller.loadState();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to load state of " + controller.getClass().getName(), e);
+                return;
+            }
+            final long duration = SystemClock.elapsedRealtime() - startTime;
+            if (duration > SLOW_LOAD_THRESHOLD_MS) {
+                Log.w(TAG, mHostTag + ": " + controller.getClass().getSimpleName()
+                        + " took " + duration + " ms to load state");
+            }
+            mHandler.post(() -> {
+                if (generation == mGeneration) {
+                    controller.applyState(preference, state);
+                }
+            });
+        });
+    }
+
+    /**
+     * Convenience for controllers that may or may not implement
+     * {@link AsyncStatePreferenceController}.
+     *
+     * @return true if the update was scheduled, false if the controller should be updated
+     * synchronously instead.
+     */
+    @SuppressWarnings("unchecked")
+    public boolean updateIfAsync(PreferenceController controller, Preference preference) {
+        if (!(controller instanceof AsyncStatePreferenceController)) {
+            return false;
+        }
+        update((AsyncStatePreferenceController<Object>) controller, preference);
+        return true;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core;
+
+import android.content.Context;
+import android.content.Intent;
+import android.support.annotation.VisibleForTesting;
+import android.support.annotation.XmlRes;
+import android.support.v14.preference.SwitchPreference;
+import android.support.v7.preference.Preference;
+import android.support.v7.preference.PreferenceCategory;
+import android.support.v7.preference.PreferenceGroup;
+import android.support.v7.preference.PreferenceManager;
+import android.support.v7.preference.PreferenceScreen;
+import android.util.SparseArray;
+
+/**
+ * Inflates preference XML resources from their {@link CompiledPreferenceTree}, creating the
+ * preferences directly instead of parsing XML and instantiating classes through reflection.
+ *
+ * <p>Each resource is compiled the first time it is inflated or prewarmed, and the compiled tree
+ * is kept for the life of the process. Resources that cannot be compiled are remembered too, so
+ * callers fall back to {@link PreferenceManager#inflateFromResource} without parsing twice.
+ * Must be used on the main thread.
+ *
+ * <p>Only public preference APIs are used: the root comes from
+ * {@link PreferenceManager#createPreferenceScreen}, and every other preference is attached to the
+ * hierarchy when it is added to its parent, after its attributes are set like the XML inflater
+ * does.
+ */
+public class PreferenceTreeInflater {
+
+    private static PreferenceTreeInflater sInstance;
+
+    // Resource id -> compiled tree, or null when the resource is not compilable.
+    private final SparseArray<CompiledPreferenceTree> mTrees = new SparseArray<>();
+
+    public static PreferenceTreeInflater get() {
+        if (sInstance == null) {
+            sInstance = new PreferenceTreeInflater();
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    PreferenceTreeInflater() {
+    }
+
+    /**
+     * Compiles {@code xmlResId} ahead of its first inflation.
+     *
+     * @return whether the resource can be inflated from its compiled tree.
+     */
+    public boolean precompile(Context context, @XmlRes int xmlResId) {
+        return getTree(context, xmlResId) != null;
+    }
+
+    /**
+     * Inflates {@code xmlResId} into {@code rootPreferences}, or into a new screen when it is
+     * null, like {@link PreferenceManager#inflateFromResource} does.
+     *
+     * @return the root screen, or null if the resource must be inflated from XML instead.
+     */
+    public PreferenceScreen inflate(Context context, PreferenceManager manager,
+            @XmlRes int xmlResId, PreferenceScreen rootPreferences) {
+        final CompiledPreferenceTree tree = getTree(context, xmlResId);
+        if (tree == null) {
+            return null;
+        }
+        final PreferenceScreen root;
+        if (rootPreferences == null) {
+            // Attached to the manager when created.
+            root = manager.createPreferenceScreen(context);
+            applyAttributes(tree, 0, root);
+        } else {
+            // Attributes of the XML root are ignored when merging into an existing screen.
+            root = rootPreferences;
+        }
+        final Preference[] created = new Preference[tree.size];
+        created[0] = root;
+        // Nodes come parent first, so each preference is added to a group already attached,
+        // which attaches it in turn once its attributes are set.
+        for (int node = 1; node < tree.size; node++) {
+            final Preference preference = createPreference(context, manager, tree.types[node]);
+            applyAttributes(tree, node, preference);
+            ((PreferenceGroup) created[tree.parents[node]]).addPreference(preference);
+            created[node] = preference;
+        }
+        return root;
+    }
+
+    private CompiledPreferenceTree getTree(Context context, int xmlResId) {
+        final int index = mTrees.indexOfKey(xmlResId);
+        if (index >= 0) {
+            return mTrees.valueAt(index);
+        }
+        final CompiledPreferenceTree tree =
+                CompiledPreferenceTree.compile(context.getResources(), xmlResId);
+        mTrees.put(xmlResId, tree);
+        return tree;
+    }
+
+    private static Preference createPreference(Context context, PreferenceManager manager,
+            int type) {
+        switch (type) {
+            case CompiledPreferenceTree.TYPE_SCREEN:
+                return manager.createPreferenceScreen(context);
+            case CompiledPreferenceTree.TYPE_CATEGORY:
+                return new PreferenceCategory(context);
+            case CompiledPreferenceTree.TYPE_SWITCH:
+                return new SwitchPreference(context);
+            default:
+                return new Preference(context);
+        }
+    }
+
+    private static void applyAttributes(CompiledPreferenceTree tree, int node,
+            Preference preference) {
+        final int flags = tree.flags[node];
+        if (tree.keys[node] != null) {
+            preference.setKey(tree.keys[node]);
+        }
+        if (tree.titleResIds[node] != 0) {
+            preference.setTitle(tree.titleResIds[node]);
+        } else if (tree.titles[node] != null) {
+            preference.setTitle(tree.titles[node]);
+        }
+        if (tree.summaryResIds[node] != 0) {
+            preference.setSummary(tree.summaryResIds[node]);
+        } else if (tree.summaries[node] != null) {
+            preference.setSummary(tree.summaries[node]);
+        }
+        if (tree.iconResIds[node] != 0) {
+            preference.setIcon(tree.iconResIds[node]);
+        }
+        if (tree.layoutResIds[node] != 0) {
+            preference.setLayoutResource(tree.layoutResIds[node]);
+        }
+        if (tree.widgetLayoutResIds[node] != 0) {
+            preference.setWidgetLayoutResource(tree.widgetLayoutResIds[node]);
+        }
+        if (tree.fragments[node] != null) {
+            preference.setFragment(tree.fragments[node]);
+        }
+        if ((flags & CompiledPreferenceTree.FLAG_HAS_ORDER) != 0) {
+            preference.setOrder(tree.orders[node]);
+        }
+        if ((flags & CompiledPreferenceTree.FLAG_HAS_SELECTABLE) != 0) {
+            preference.setSelectable((flags & CompiledPreferenceTree.FLAG_SELECTABLE) != 0);
+        }
+        if ((flags & CompiledPreferenceTree.FLAG_HAS_ENABLED) != 0) {
+            preference.setEnabled((flags & CompiledPreferenceTree.FLAG_ENABLED) != 0);
+        }
+        if ((flags & CompiledPreferenceTree.FLAG_HAS_PERSISTENT) != 0) {
+            preference.setPersistent((flags & CompiledPreferenceTree.FLAG_PERSISTENT) != 0);
+        }
+        if (tree.intents[node] != null) {
+            preference.setIntent(new Intent(tree.intents[node]));
+        }
+    }
+}
@@ -16,6 +16,12 @@
 
 package com.android.settings.core.gateway;
 
+import android.app.Fragment;
+import android.content.Context;
+import android.os.Bundle;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+
 import com.android.settings.ApnEditor;
 import com.android.settings.ApnSettings;
 import com.android.settings.ChooseLockPassword;
@@ -130,6 +136,9 @@ import com.android.settings.wifi.p2p.WifiP2pSettings;
 
 import com.xenonhd.settings.XenonSettings;
 
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
 public class SettingsGateway {
 
     /**
@@ -289,4 +298,74 @@ public class SettingsGateway {
             Settings.EnterprisePrivacySettingsActivity.class.getName(),
             Settings.XenonHDSettingsActivity.class.getName(),
     };
+
+    // ENTRY_FRAGMENTS as a set, built on first use.
+    private static ArraySet<String> sEntryFragments;
+    // Fragment class name -> public no-argument constructor, filled on first instantiation.
+    private static final ArrayMap<String, Constructor<? extends Fragment>> sFragmentConstructors =
+            new ArrayMap<>();
+
+    /**
+     * Returns whether {@code fragmentName} is in {@link #ENTRY_FRAGMENTS}.
+     */
+    public static synchronized boolean isEntryFragment(String fragmentName) {
+        if (sEntryFragments == null) {
+            sEntryFragments = new ArraySet<>(ENTRY_FRAGMENTS.length);
+            for (String entryFragment : ENTRY_FRAGMENTS) {
+                sEntryFragments.add(entryFragment);
+            }
+        }
+        return sEntryFragments.contains(fragmentName);
+    }
+
+    /**
+     * Same as {@link Fragment#instantiate(Context, String, Bundle)}, but keeps the fragment
+     * constructor around so later launches of the same fragment skip the reflective lookup.
+     */
+    public static Fragment instantiateFragment(Context context, String fragmentName,
+            Bundle args) {
+        final Constructor<? extends Fragment> constructor =
+                getFragmentConstructor(context, fragmentName);
+        try {
+            final Fragment fragment = constructor.newInstance();
+            if (args != null) {
+                args.setClassLoader(fragment.getClass().getClassLoader());
+                fragment.setArguments(args);
+            }
+            return fragment;
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new Fragment.InstantiationException("Unable to instantiate fragment "
+                    + fragmentName + ": make sure class name exists, is public, and has an"
+                    + " empty constructor that is public", e);
+        } catch (InvocationTargetException e) {
+            throw new Fragment.InstantiationException("Unable to instantiate fragment "
+                    + fragmentName + ": calling Fragment constructor caused an exception", e);
+        }
+    }
+
+    private static Constructor<? extends Fragment> getFragmentConstructor(Context context,
+            String fragmentName) {
+        synchronized (sFragmentConstructors) {
+            Constructor<? extends Fragment> constructor = sFragmentConstructors.get(fragmentName);
+            if (constructor != null) {
+                return constructor;
+            }
+            try {
+                final Class<?> clazz = Class.forName(fragmentName, false /* initialize */,
+                        context.getClassLoader());
+                if (!Fragment.class.isAssignableFrom(clazz)) {
+                    throw new Fragment.InstantiationException("Trying to instantiate a class "
+                            + fragmentName + " that is not a Fragment",
+                            new ClassCastException());
+                }
+                constructor = clazz.asSubclass(Fragment.class).getConstructor();
+            } catch (ClassNotFoundException | NoSuchMethodException e) {
+                throw new Fragment.InstantiationException("Unable to instantiate fragment "
+                        + fragmentName + ": make sure class name exists, is public, and has an"
+                        + " empty constructor that is public", e);
+            }
+            sFragmentConstructors.put(fragmentName, constructor);
+            return constructor;
+        }
+    }
 }
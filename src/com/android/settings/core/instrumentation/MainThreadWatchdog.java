@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core.instrumentation;
+
+import android.os.Build;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
+import android.util.ArrayMap;
+
+import dalvik.system.BlockGuard;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Debug build instrumentation measuring fragment and controller callbacks on the main thread,
+ * and collecting the classes whose callbacks are slow or touch the disk.
+ *
+ * <p>Callers bracket a callback with {@link #begin()} and {@link #end(Object, String)}. Each
+ * measured call records its wall time, its blocked time (wall time not spent on the CPU,
+ * typically binder calls and lock waits) and the disk reads and writes seen by
+ * {@link BlockGuard}. Nested calls are included in the measurement of the enclosing one.
+ * The report is dumped through {@link com.android.settings.SettingsDumpService}.
+ *
+ * <p>All methods are no-ops on user builds and off the main thread.
+ */
+public class MainThreadWatchdog {
+
+    @VisibleForTesting
+    static final long SLOW_CALL_THRESHOLD_MS = 16;
+    // Deeper nested calls are not measured.
+    private static final int MAX_DEPTH = 16;
+
+    private static MainThreadWatchdog sInstance;
+
+    private final boolean mEnabled;
+
+    // Stack of calls being measured, main thread only.
+    private final long[] mStartWallMs = new long[MAX_DEPTH];
+    private final long[] mStartCpuMs = new long[MAX_DEPTH];
+    private final int[] mStartReads = new int[MAX_DEPTH];
+    private final int[] mStartWrites = new int[MAX_DEPTH];
+    private int mDepth;
+    private final CountingPolicy mPolicy = new CountingPolicy();
+
+    // Class name -> offences of its callbacks.
+    private final ArrayMap<String, Offender> mOffenders = new ArrayMap<>();
+
+    public static synchronized MainThreadWatchdog get() {
+        if (sInstance == null) {
+            sInstance = new MainThreadWatchdog(Build.IS_DEBUGGABLE);
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    MainThreadWatchdog(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Starts measuring a callback, to be followed by {@link #end(Object, String)} on the same
+     * thread.
+     */
+    public void begin() {
+        if (!mEnabled || Looper.myLooper() != Looper.getMainLooper()) {
+            return;
+        }
+        if (mDepth == 0) {
+            mPolicy.install();
+        }
+        if (mDepth < MAX_DEPTH) {
+            mStartWallMs[mDepth] = SystemClock.uptimeMillis();
+            mStartCpuMs[mDepth] = SystemClock.currentThreadTimeMillis();
+            mStartReads[mDepth] = mPolicy.mReads;
+            mStartWrites[mDepth] = mPolicy.mWrites;
+        }
+        mDepth++;
+    }
+
+    /**
+     * Ends the measurement started by the matching {@link #begin()}, attributing it to the class
+     * of {@code owner}.
+     */
+    public void end(Object owner, String callback) {
+        if (!mEnabled || mDepth == 0 || Looper.myLooper() != Looper.getMainLooper()) {
+            return;
+        }
+        mDepth--;
+        if (mDepth < MAX_DEPTH) {
+            final long wallMs = SystemClock.uptimeMillis() - mStartWallMs[mDepth];
+            final long cpuMs = SystemClock.currentThreadTimeMillis() - mStartCpuMs[mDepth];
+            final int reads = mPolicy.mReads - mStartReads[mDepth];
+            final int writes = mPolicy.mWrites - mStartWrites[mDepth];
+            if (wallMs >= SLOW_CALL_THRESHOLD_MS || reads > 0 || writes > 0) {
+                record(owner.getClass().getName(), callback, wallMs,
+                        Math.max(wallMs - cpuMs, 0), reads, writes);
+            }
+        }
+        if (mDepth == 0) {
+            mPolicy.uninstall();
+        }
+    }
+
+    private void record(String className, String callback, long wallMs, long blockedMs,
+            int reads, int writes) {
+        synchronized (mOffenders) {
+            Offender offender = mOffenders.get(className);
+            if (offender == null) {
+                offender = new Offender();
+                mOffenders.put(className, offender);
+            }
+            offender.calls++;
+            offender.totalMs += wallMs;
+            offender.blockedMs += blockedMs;
+            offender.diskReads += reads;
+            offender.diskWrites += writes;
+            if (wallMs >= offender.maxMs) {
+                offender.maxMs = wallMs;
+                offender.worstCallback = callback;
+            }
+        }
+    }
+
+    /**
+     * Returns the offending classes, keyed by class name.
+     */
+    public JSONObject dumpJson() throws JSONException {
+        final JSONObject json = new JSONObject();
+        json.put("enabled", mEnabled);
+        final JSONObject offenders = new JSONObject();
+        synchronized (mOffenders) {
+            for (int i = 0; i < mOffenders.size(); i++) {
+                offenders.put(mOffenders.keyAt(i), mOffenders.valueAt(i).toJson());
+            }
+        }
+        json.put("offenders", offenders);
+        return json;
+    }
+
+    private static class Offender {
+        int calls;
+        long totalMs;
+        long maxMs;
+        long blockedMs;
+        int diskReads;
+        int diskWrites;
+        String worstCallback;
+
+        JSONObject toJson() throws JSONException {
+            final JSONObject json = new JSONObject();
+            json.put("calls", calls);
+            json.put("total_ms", totalMs);
+            json.put("max_ms", maxMs);
+            json.put("blocked_ms", blockedMs);
+            json.put("disk_reads", diskReads);
+            json.put("disk_writes", diskWrites);
+            json.put("worst_callback", worstCallback);
+            return json;
+        }
+    }
+
+    /**
+     * Counts disk accesses of the main thread, forwarding them to the policy it replaces so
+     * StrictMode keeps working.
+     */
+    private static class CountingPolicy implements BlockGuard.Policy {
+        private BlockGuard.Policy mDelegate = BlockGuard.LAX_POLICY;
+        int mReads;
+        int mWrites;
+
+        void install() {
+            final BlockGuard.Policy current = BlockGuard.getThreadPolicy();
+            if (current != this) {
+                mDelegate = current;
+                BlockGuard.setThreadPolicy(this);
+            }
+        }
+
+        void uninstall() {
+            // StrictMode may have replaced the policy in the meantime, keep its policy then.
+            if (BlockGuard.getThreadPolicy() == this) {
+                BlockGuard.setThreadPolicy(mDelegate);
+            }
+        }
+
+        @Override
+        public void onWriteToDisk() {
+            mWrites++;
+            mDelegate.onWriteToDisk();
+        }
+
+        @Override
+        public void onReadFromDisk() {
+            mReads++;
+            mDelegate.onReadFromDisk();
+        }
+
+        @Override
+        public void onNetwork() {
+            mDelegate.onNetwork();
+        }
+
+        @Override
+        public void onUnbufferedIO() {
+            mDelegate.onUnbufferedIO();
+        }
+
+        @Override
+        public int getPolicyMask() {
+            return mDelegate.getPolicyMask();
+        }
+    }
+}
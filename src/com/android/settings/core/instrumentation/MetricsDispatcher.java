@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core.instrumentation;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+import android.util.Pair;
+
+import com.android.settings.utils.TaskScheduler;
+
+/**
+ * Queues metrics events in a fixed size ring buffer and hands them over in batches to a
+ * {@link Consumer} on a background thread, so logging never blocks the calling thread.
+ *
+ * <p>Enqueueing only stores the event arguments into preallocated slots. When the buffer is full
+ * new events are dropped and counted, see {@link #getDroppedCount()}. Events keep the application
+ * context of the context they were logged with, so a queued event does not hold on to an activity.
+ */
+class MetricsDispatcher implements Handler.Callback {
+
+    private static final String TAG = "MetricsDispatcher";
+
+    static final int EVENT_VISIBLE = 0;
+    static final int EVENT_HIDDEN = 1;
+    static final int EVENT_ACTION_WITH_SOURCE = 2;
+    static final int EVENT_ACTION_TAGGED = 3;
+    static final int EVENT_ACTION_INT = 4;
+    static final int EVENT_ACTION_BOOLEAN = 5;
+    static final int EVENT_ACTION_PACKAGE = 6;
+    static final int EVENT_COUNT = 7;
+    static final int EVENT_HISTOGRAM = 8;
+
+    @VisibleForTesting
+    static final int CAPACITY = 256;
+    // Events handed to the consumer per batch.
+    private static final int BATCH_SIZE = 32;
+
+    private static final int MSG_DRAIN = 1;
+
+    /**
+     * Receives the queued events on the background thread, in order.
+     */
+    interface Consumer {
+        void onEvent(int type, Context context, int category, int arg, String text,
+                Pair<Integer, Object>[] taggedData);
+    }
+
+    private final Consumer mConsumer;
+    private final int mCapacity;
+
+    // Ring buffer, one parallel array per event field.
+    private final int[] mTypes;
+    private final Context[] mContexts;
+    private final int[] mCategories;
+    private final int[] mArgs;
+    private final String[] mTexts;
+    private final Pair<Integer, Object>[][] mTaggedData;
+    private int mHead;
+    private int mSize;
+    private long mDroppedCount;
+
+    // Batch copied out of the ring buffer, guarded by the mBatchTypes lock so producers never
+    // wait on the consumer.
+    private final int[] mBatchTypes = new int[BATCH_SIZE];
+    private final Context[] mBatchContexts = new Context[BATCH_SIZE];
+    private final int[] mBatchCategories = new int[BATCH_SIZE];
+    private final int[] mBatchArgs = new int[BATCH_SIZE];
+    private final String[] mBatchTexts = new String[BATCH_SIZE];
+    private final Pair<Integer, Object>[][] mBatchTaggedData = new Pair[BATCH_SIZE][];
+
+    // Looper to drain on, the maintenance lane of the TaskScheduler when null.
+    private final Looper mLooper;
+    private Handler mHandler;
+
+    MetricsDispatcher(Consumer consumer) {
+        this(consumer, CAPACITY, null /* looper */);
+    }
+
+    @VisibleForTesting
+    MetricsDispatcher(Consumer consumer, int capacity, Looper looper) {
+        mConsumer = consumer;
+        mCapacity = capacity;
+        mLooper = looper;
+        mTypes = new int[capacity];
+        mContexts = new Context[capacity];
+        mCategories = new int[capacity];
+        mArgs = new int[capacity];
+        mTexts = new String[capacity];
+        mTaggedData = new Pair[capacity][];
+    }
+
+    /**
+     * Queues an event for the consumer. Never blocks on the consumer.
+     */
+    void enqueue(int type, Context context, int category, int arg, String text,
+            Pair<Integer, Object>[] taggedData) {
+        final Context appContext = context != null ? context.getApplicationContext() : null;
+        synchronized (this) {
+            if (mSize == mCapacity) {
+                if (mDroppedCount++ == 0) {
+                    Log.w(TAG, "Metrics buffer full, dropping events");
+                }
+                return;
+            }
+            final int slot = (mHead + mSize) % mCapacity;
+            mTypes[slot] = type;
+            mContexts[slot] = appContext != null ? appContext : context;
+            mCategories[slot] = category;
+            mArgs[slot] = arg;
+            mTexts[slot] = text;
+            mTaggedData[slot] = taggedData;
+            if (mSize++ > 0) {
+                // A drain is already pending.
+                return;
+            }
+            if (mHandler == null) {
+                mHandler = mLooper != null ? new Handler(mLooper, this)
+                        : new TaskScheduler.LaneHandler(TaskScheduler.LANE_MAINTENANCE, this);
+            }
+        }
+        mHandler.sendEmptyMessage(MSG_DRAIN);
+    }
+
+    @Override
+    public boolean handleMessage(Message msg) {
+        if (msg.what == MSG_DRAIN) {
+            flush();
+        }
+        return true;
+    }
+
+    /**
+     * Hands all queued events to the consumer on the calling thread.
+     */
+    @VisibleForTesting
+    void flush() {
+        synchronized (mBatchTypes) {
+            int count;
+            while ((count = takeBatch()) > 0) {
+                for (int i = 0; i < count; i++) {
+                    mConsumer.onEvent(mBatchTypes[i], mBatchContexts[i], mBatchCategories[i],
+                            mBatchArgs[i], mBatchTexts[i], mBatchTaggedData[i]);
+                    mBatchContexts[i] = null;
+                    mBatchTexts[i] = null;
+                    mBatchTaggedData[i] = null;
+                }
+            }
+        }
+    }
+
+    private int takeBatch() {
+        synchronized (this) {
+            final int count = Math.min(mSize, BATCH_SIZE);
+            for (int i = 0; i < count; i++) {
+                final int slot = (mHead + i) % mCapacity;
+                mBatchTypes[i] = mTypes[slot];
+                mBatchContexts[i] = mContexts[slot];
+                mBatchCategories[i] = mCategories[slot];
+                mBatchArgs[i] = mArgs[slot];
+                mBatchTexts[i] = mTexts[slot];
+                mBatchTaggedData[i] = mTaggedData[slot];
+                mContexts[slot] = null;
+                mTexts[slot] = null;
+                mTaggedData[slot] = null;
+            }
+            mHead = (mHead + count) % mCapacity;
+            mSize -= count;
+            return count;
+        }
+    }
+
+    /**
+     * Returns the number of events dropped because the buffer was full.
+     */
+    synchronized long getDroppedCount() {
+        return mDroppedCount;
+    }
+}
@@ -18,6 +18,7 @@ package com.android.settings.core.instrumentation;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.support.annotation.VisibleForTesting;
 import android.text.TextUtils;
 import android.util.Pair;
 
@@ -28,12 +29,17 @@ import java.util.List;
 
 /**
  * FeatureProvider for metrics.
+ *
+ * <p>Events are queued by a {@link MetricsDispatcher} and written to the {@link LogWriter}s on a
+ * background thread, in the order they were logged.
  */
-public class MetricsFeatureProvider {
+public class MetricsFeatureProvider implements MetricsDispatcher.Consumer {
     private List<LogWriter> mLoggerWriters;
+    private final MetricsDispatcher mDispatcher;
 
     public MetricsFeatureProvider() {
         mLoggerWriters = new ArrayList<>();
+        mDispatcher = new MetricsDispatcher(this);
         installLogWriters();
     }
 
@@ -43,57 +49,99 @@ public class MetricsFeatureProvider {
     }
 
     public void visible(Context context, int source, int category) {
-        for (LogWriter writer : mLoggerWriters) {
-            writer.visible(context, source, category);
-        }
+        mDispatcher.enqueue(MetricsDispatcher.EVENT_VISIBLE, context, category, source,
+                null /* text */, null /* taggedData */);
     }
 
     public void hidden(Context context, int category) {
-        for (LogWriter writer : mLoggerWriters) {
-            writer.hidden(context, category);
-        }
+        mDispatcher.enqueue(MetricsDispatcher.EVENT_HIDDEN, context, category, 0 /* arg */,
+                null /* text */, null /* taggedData */);
     }
 
     public void actionWithSource(Context context, int source, int category) {
-        for (LogWriter writer : mLoggerWriters) {
-            writer.actionWithSource(context, source, category);
-        }
+        mDispatcher.enqueue(MetricsDispatcher.EVENT_ACTION_WITH_SOURCE, context, category, source,
+                null /* text */, null /* taggedData */);
     }
 
     public void action(Context context, int category, Pair<Integer, Object>... taggedData) {
-        for (LogWriter writer : mLoggerWriters) {
-            writer.action(context, category, taggedData);
-        }
+        mDispatcher.enqueue(MetricsDispatcher.EVENT_ACTION_TAGGED, context, category, 0 /* arg */,
+                null /* text */, taggedData);
     }
 
     public void action(Context context, int category, int value) {
-        for (LogWriter writer : mLoggerWriters) {
-            writer.action(context, category, value);
-        }
+        mDispatcher.enqueue(MetricsDispatcher.EVENT_ACTION_INT, context, category, value,
+                null /* text */, null /* taggedData */);
     }
 
     public void action(Context context, int category, boolean value) {
-        for (LogWriter writer : mLoggerWriters) {
-            writer.action(context, category, value);
-        }
+        mDispatcher.enqueue(MetricsDispatcher.EVENT_ACTION_BOOLEAN, context, category,
+                value ? 1 : 0, null /* text */, null /* taggedData */);
     }
 
     public void action(Context context, int category, String pkg,
             Pair<Integer, Object>... taggedData) {
-        for (LogWriter writer : mLoggerWriters) {
-            writer.action(context, category, pkg, taggedData);
-        }
+        mDispatcher.enqueue(MetricsDispatcher.EVENT_ACTION_PACKAGE, context, category, 0 /* arg */,
+                pkg, taggedData);
     }
 
     public void count(Context context, String name, int value) {
-        for (LogWriter writer : mLoggerWriters) {
-            writer.count(context, name, value);
-        }
+        mDispatcher.enqueue(MetricsDispatcher.EVENT_COUNT, context, 0 /* category */, value, name,
+                null /* taggedData */);
     }
 
     public void histogram(Context context, String name, int bucket) {
+        mDispatcher.enqueue(MetricsDispatcher.EVENT_HISTOGRAM, context, 0 /* category */, bucket,
+                name, null /* taggedData */);
+    }
+
+    /**
+     * Returns the number of events dropped because they were logged faster than written.
+     */
+    public long getDroppedEventCount() {
+        return mDispatcher.getDroppedCount();
+    }
+
+    /**
+     * Writes all queued events on the calling thread.
+     */
+    @VisibleForTesting
+    void flush() {
+        mDispatcher.flush();
+    }
+
+    @Override
+    public void onEvent(int type, Context context, int category, int arg, String text,
+            Pair<Integer, Object>[] taggedData) {
         for (LogWriter writer : mLoggerWriters) {
-            writer.histogram(context, name, bucket);
+            switch (type) {
+                case MetricsDispatcher.EVENT_VISIBLE:
+                    writer.visible(context, arg, category);
+                    break;
+                case MetricsDispatcher.EVENT_HIDDEN:
+                    writer.hidden(context, category);
+                    break;
+                case MetricsDispatcher.EVENT_ACTION_WITH_SOURCE:
+                    writer.actionWithSource(context, arg, category);
+                    break;
+                case MetricsDispatcher.EVENT_ACTION_TAGGED:
+                    writer.action(context, category, taggedData);
+                    break;
+                case MetricsDispatcher.EVENT_ACTION_INT:
+                    writer.action(context, category, arg);
+                    break;
+                case MetricsDispatcher.EVENT_ACTION_BOOLEAN:
+                    writer.action(context, category, arg != 0);
+                    break;
+                case MetricsDispatcher.EVENT_ACTION_PACKAGE:
+                    writer.action(context, category, text, taggedData);
+                    break;
+                case MetricsDispatcher.EVENT_COUNT:
+                    writer.count(context, text, arg);
+                    break;
+                case MetricsDispatcher.EVENT_HISTOGRAM:
+                    writer.histogram(context, text, arg);
+                    break;
+            }
         }
     }
 
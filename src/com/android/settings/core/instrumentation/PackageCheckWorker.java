@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core.instrumentation;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
+import android.util.ArrayMap;
+
+import com.android.settings.utils.TaskScheduler;
+
+/**
+ * Single background worker checking whether string preference values logged by
+ * {@link SharedPreferencesLogger} are package names.
+ *
+ * <p>Values are collected for {@link #BATCH_WINDOW_MS} and checked in one pass, keeping only the
+ * last value of each preference key. Package lookups are cached for
+ * {@link #PACKAGE_CACHE_TTL_MS}.
+ */
+class PackageCheckWorker {
+
+    @VisibleForTesting
+    static final long BATCH_WINDOW_MS = 500;
+    @VisibleForTesting
+    static final long PACKAGE_CACHE_TTL_MS = 60 * 1000;
+
+    /**
+     * Receives the result of a check on the worker thread.
+     */
+    interface Callback {
+        void onPackageChecked(String key, String value, boolean isPackage);
+    }
+
+    private static PackageCheckWorker sInstance;
+
+    private final Handler mHandler;
+    // Logger tag and key -> last pending check for it.
+    private final ArrayMap<String, PendingCheck> mPending = new ArrayMap<>();
+    // Package name -> whether it is installed, only used on the worker thread.
+    private final ArrayMap<String, Boolean> mPackageCache = new ArrayMap<>();
+    private long mPackageCacheTime;
+
+    private final Runnable mCheckRunnable = this::checkPending;
+
+    static synchronized PackageCheckWorker get() {
+        if (sInstance == null) {
+            sInstance = new PackageCheckWorker(
+                    new TaskScheduler.LaneHandler(TaskScheduler.LANE_MAINTENANCE));
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    PackageCheckWorker(Looper looper) {
+        this(new Handler(looper));
+    }
+
+    private PackageCheckWorker(Handler handler) {
+        mHandler = handler;
+    }
+
+    /**
+     * Schedules a check of {@code value}, replacing any pending check for the same
+     * {@code tag} and {@code key}.
+     */
+    void check(Context context, String tag, String key, String value, Callback callback) {
+        final PendingCheck check = new PendingCheck(context, key, value, callback);
+        synchronized (mPending) {
+            mPending.put(tag + "/" + key, check);
+            if (mPending.size() == 1) {
+                mHandler.postDelayed(mCheckRunnable, BATCH_WINDOW_MS);
+            }
+        }
+    }
+
+    private void checkPending() {
+        final PendingCheck[] checks;
+        synchronized (mPending) {
+            checks = new PendingCheck[mPending.size()];
+            for (int i = 0; i < checks.length; i++) {
+                checks[i] = mPending.valueAt(i);
+            }
+            mPending.clear();
+        }
+        final long now = SystemClock.elapsedRealtime();
+        if (now - mPackageCacheTime > PACKAGE_CACHE_TTL_MS) {
+            mPackageCache.clear();
+            mPackageCacheTime = now;
+        }
+        for (PendingCheck check : checks) {
+            String value = check.value;
+            if (value != null) {
+                // Check if this might be a component.
+                final ComponentName name = ComponentName.unflattenFromString(value);
+                if (name != null) {
+                    value = name.getPackageName();
+                }
+            }
+            check.callback.onPackageChecked(check.key, value,
+                    isInstalledPackage(check.context, value));
+        }
+    }
+
+    private boolean isInstalledPackage(Context context, String packageName) {
+        if (packageName == null) {
+            return false;
+        }
+        Boolean installed = mPackageCache.get(packageName);
+        if (installed == null) {
+            try {
+                context.getPackageManager().getPackageInfo(packageName,
+                        PackageManager.MATCH_ANY_USER);
+                installed = true;
+            } catch (PackageManager.NameNotFoundException e) {
+                installed = false;
+            }
+            mPackageCache.put(packageName, installed);
+        }
+        return installed;
+    }
+
+    private static class PendingCheck {
+        final Context context;
+        final String key;
+        final String value;
+        final Callback callback;
+
+        PendingCheck(Context context, String key, String value, Callback callback) {
+            this.context = context;
+            this.key = key;
+            this.value = value;
+            this.callback = callback;
+        }
+    }
+}
@@ -15,11 +15,9 @@
 package com.android.settings.core.instrumentation;
 
 import android.annotation.Nullable;
-import android.content.ComponentName;
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.content.pm.PackageManager;
-import android.os.AsyncTask;
+import android.support.annotation.VisibleForTesting;
 import android.text.TextUtils;
 import android.util.Pair;
 
@@ -30,18 +28,33 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentSkipListSet;
 
-public class SharedPreferencesLogger implements SharedPreferences {
+/**
+ * Logs the preference changes written through it instead of storing them.
+ *
+ * <p>String values are checked for package names on the {@link PackageCheckWorker}, which
+ * collects them for {@link PackageCheckWorker#BATCH_WINDOW_MS}: when a key is written several
+ * times within that window, only its last value is logged and the earlier ones are dropped.
+ */
+public class SharedPreferencesLogger implements SharedPreferences,
+        PackageCheckWorker.Callback {
 
     private final String mTag;
     private final Context mContext;
     private final MetricsFeatureProvider mMetricsFeature;
     private final Set<String> mPreferenceKeySet;
+    private final PackageCheckWorker mPackageCheckWorker;
 
     public SharedPreferencesLogger(Context context, String tag) {
+        this(context, tag, PackageCheckWorker.get());
+    }
+
+    @VisibleForTesting
+    SharedPreferencesLogger(Context context, String tag, PackageCheckWorker packageCheckWorker) {
         mContext = context;
         mTag = tag;
         mMetricsFeature = FeatureFactory.getFactory(context).getMetricsFeatureProvider();
         mPreferenceKeySet = new ConcurrentSkipListSet<>();
+        mPackageCheckWorker = packageCheckWorker;
     }
 
     @Override
@@ -99,18 +112,19 @@ public class SharedPreferencesLogger implements SharedPreferences {
             OnSharedPreferenceChangeListener listener) {
     }
 
-    private void logValue(String key, String value) {
-        logValue(key, value, false /* forceLog */);
-    }
-
-    private void logValue(String key, String value, boolean forceLog) {
+    private void logValue(String key, Object value) {
         final String prefKey = mTag + "/" + key;
-        if (!forceLog && !mPreferenceKeySet.contains(prefKey)) {
+        if (!mPreferenceKeySet.contains(prefKey)) {
             // Pref key doesn't exist in set, this is initial display so we skip metrics but
             // keeps track of this key.
             mPreferenceKeySet.add(prefKey);
             return;
         }
+        // Only formatted once the change is logged.
+        logChange(prefKey, String.valueOf(value));
+    }
+
+    private void logChange(String prefKey, String value) {
         // TODO: Remove count logging to save some resource.
         mMetricsFeature.count(mContext, prefKey + "|" + value, 1);
 
@@ -129,32 +143,17 @@ public class SharedPreferencesLogger implements SharedPreferences {
     }
 
     private void safeLogValue(String key, String value) {
-        new AsyncPackageCheck().executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, key, value);
+        mPackageCheckWorker.check(mContext, mTag, key, value, this);
     }
 
-    private class AsyncPackageCheck extends AsyncTask<String, Void, Void> {
-        @Override
-        protected Void doInBackground(String... params) {
-            String key = params[0];
-            String value = params[1];
-            PackageManager pm = mContext.getPackageManager();
-            try {
-                // Check if this might be a component.
-                ComponentName name = ComponentName.unflattenFromString(value);
-                if (value != null) {
-                    value = name.getPackageName();
-                }
-            } catch (Exception e) {
-            }
-            try {
-                pm.getPackageInfo(value, PackageManager.MATCH_ANY_USER);
-                logPackageName(key, value);
-            } catch (PackageManager.NameNotFoundException e) {
-                // Clearly not a package, and it's unlikely this preference is in prefSet, so
-                // lets force log it.
-                logValue(key, value, true /* forceLog */);
-            }
-            return null;
+    @Override
+    public void onPackageChecked(String key, String value, boolean isPackage) {
+        if (isPackage) {
+            logPackageName(key, value);
+        } else {
+            // Clearly not a package, and it's unlikely this preference is in prefSet, so
+            // lets force log it.
+            logChange(mTag + "/" + key, value);
         }
     }
 
@@ -173,25 +172,25 @@ public class SharedPreferencesLogger implements SharedPreferences {
 
         @Override
         public Editor putInt(String key, int value) {
-            logValue(key, String.valueOf(value));
+            logValue(key, value);
             return this;
         }
 
         @Override
         public Editor putLong(String key, long value) {
-            logValue(key, String.valueOf(value));
+            logValue(key, value);
             return this;
         }
 
         @Override
         public Editor putFloat(String key, float value) {
-            logValue(key, String.valueOf(value));
+            logValue(key, value);
             return this;
         }
 
         @Override
         public Editor putBoolean(String key, boolean value) {
-            logValue(key, String.valueOf(value));
+            logValue(key, value);
             return this;
         }
 
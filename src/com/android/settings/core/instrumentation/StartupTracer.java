@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core.instrumentation;
+
+import android.os.SystemClock;
+import android.os.Trace;
+import android.support.annotation.VisibleForTesting;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Records named spans of the Settings start up path (activity creation, feature factory init,
+ * tile resolution, summary providers, conditions, first draw) into a fixed size ring buffer.
+ *
+ * <p>Every span is also emitted as a {@link Trace} section so it shows up in systrace. The buffer
+ * is dumped through {@link com.android.settings.SettingsDumpService}.
+ *
+ * <pre>
+ *     final int token = StartupTracer.beginSection(StartupTracer.SPAN_...);
+ *     try {
+ *         ...
+ *     } finally {
+ *         StartupTracer.endSection(token);
+ *     }
+ * </pre>
+ */
+public final class StartupTracer {
+
+    public static final String SPAN_ACTIVITY_CREATE = "SettingsActivity#onCreate";
+    public static final String SPAN_FEATURE_FACTORY_INIT = "FeatureFactory#init";
+    public static final String SPAN_DASHBOARD_CREATE = "DashboardSummary#onCreate";
+    public static final String SPAN_TILE_RESOLUTION = "DashboardSummary#resolveTiles";
+    public static final String SPAN_SUMMARY_PROVIDER = "SummaryLoader#makeProvider";
+    public static final String SPAN_CONDITION_LOAD = "ConditionManager#load";
+    public static final String SPAN_FIRST_DRAW = "DashboardSummary#firstDraw";
+
+    @VisibleForTesting
+    static final int CAPACITY = 128;
+
+    private static final String KEY_NAME = "name";
+    private static final String KEY_START = "start_us";
+    private static final String KEY_DURATION = "duration_us";
+    private static final String KEY_THREAD = "thread";
+
+    private static final String[] sNames = new String[CAPACITY];
+    private static final long[] sStartNanos = new long[CAPACITY];
+    private static final long[] sEndNanos = new long[CAPACITY];
+    private static final long[] sThreadIds = new long[CAPACITY];
+    // Token of the span currently owning each slot, used to drop ends of overwritten spans.
+    private static final int[] sTokens = new int[CAPACITY];
+    private static int sNextToken = 1;
+
+    private StartupTracer() {
+    }
+
+    /**
+     * Returns the monotonic clock used for span timestamps.
+     */
+    public static long now() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    /**
+     * Starts a span on the current thread and opens a matching {@link Trace} section.
+     *
+     * @return token to pass to {@link #endSection(int)}, from the same thread.
+     */
+    public static int beginSection(String name) {
+        Trace.beginSection(name);
+        return record(name, now(), 0L);
+    }
+
+    /**
+     * Ends the span started by {@link #beginSection(String)}.
+     */
+    public static void endSection(int token) {
+        final long end = now();
+        Trace.endSection();
+        synchronized (StartupTracer.class) {
+            final int slot = slotOf(token);
+            if (sTokens[slot] == token) {
+                sEndNanos[slot] = end;
+            }
+        }
+    }
+
+    /**
+     * Records an already completed span, for phases that start and end in different callbacks.
+     */
+    public static void recordSpan(String name, long startNanos, long endNanos) {
+        record(name, startNanos, endNanos);
+    }
+
+    private static synchronized int record(String name, long startNanos, long endNanos) {
+        final int token = sNextToken++;
+        if (sNextToken == Integer.MAX_VALUE) {
+            sNextToken = 1;
+        }
+        final int slot = slotOf(token);
+        sTokens[slot] = token;
+        sNames[slot] = name;
+        sStartNanos[slot] = startNanos;
+        sEndNanos[slot] = endNanos;
+        sThreadIds[slot] = Thread.currentThread().getId();
+        return token;
+    }
+
+    private static int slotOf(int token) {
+        return token % CAPACITY;
+    }
+
+    /**
+     * Returns recorded spans, oldest first. Spans that have not ended yet are skipped.
+     */
+    public static synchronized JSONArray dumpJson() throws JSONException {
+        final JSONArray spans = new JSONArray();
+        final int last = sNextToken - 1;
+        for (int token = Math.max(1, last - CAPACITY + 1); token <= last; token++) {
+            final int slot = slotOf(token);
+            if (sTokens[slot] != token || sEndNanos[slot] == 0L) {
+                continue;
+            }
+            final JSONObject span = new JSONObject();
+            span.put(KEY_NAME, sNames[slot]);
+            span.put(KEY_START, sStartNanos[slot] / 1000);
+            span.put(KEY_DURATION, (sEndNanos[slot] - sStartNanos[slot]) / 1000);
+            span.put(KEY_THREAD, sThreadIds[slot]);
+            spans.put(span);
+        }
+        return spans;
+    }
+
+    @VisibleForTesting
+    static synchronized void reset() {
+        for (int i = 0; i < CAPACITY; i++) {
+            sTokens[i] = 0;
+            sNames[i] = null;
+        }
+        sNextToken = 1;
+    }
+}
@@ -18,12 +18,16 @@ package com.android.settings.core.lifecycle;
 import android.annotation.UiThread;
 import android.content.Context;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 import android.support.v7.preference.PreferenceScreen;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 
+import com.android.settings.core.instrumentation.MainThreadWatchdog;
 import com.android.settings.core.lifecycle.events.OnAttach;
 import com.android.settings.core.lifecycle.events.OnCreate;
 import com.android.settings.core.lifecycle.events.OnCreateOptionsMenu;
@@ -39,14 +43,60 @@ import com.android.settings.core.lifecycle.events.SetPreferenceScreen;
 import com.android.settings.utils.ThreadUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * Dispatcher for lifecycle events.
+ *
+ * <p>Observers are sorted into one array per event when they are added, so each dispatch only
+ * visits the observers implementing that event, by index and without allocating. Setting the
+ * {@code Lifecycle} log tag to VERBOSE times every observer callback and logs the slow ones.
  */
 public class Lifecycle {
 
+    private static final String TAG = "Lifecycle";
+
+    private static final int EVENT_ATTACH = 0;
+    private static final int EVENT_CREATE = 1;
+    private static final int EVENT_START = 2;
+    private static final int EVENT_SET_PREFERENCE_SCREEN = 3;
+    private static final int EVENT_RESUME = 4;
+    private static final int EVENT_PAUSE = 5;
+    private static final int EVENT_SAVE_INSTANCE_STATE = 6;
+    private static final int EVENT_STOP = 7;
+    private static final int EVENT_DESTROY = 8;
+    private static final int EVENT_CREATE_OPTIONS_MENU = 9;
+    private static final int EVENT_PREPARE_OPTIONS_MENU = 10;
+    private static final int EVENT_OPTIONS_ITEM_SELECTED = 11;
+    private static final int EVENT_COUNT = 12;
+
+    // Event interface of each EVENT_* index.
+    private static final Class<?>[] EVENT_TYPES = {
+            OnAttach.class,
+            OnCreate.class,
+            OnStart.class,
+            SetPreferenceScreen.class,
+            OnResume.class,
+            OnPause.class,
+            OnSaveInstanceState.class,
+            OnStop.class,
+            OnDestroy.class,
+            OnCreateOptionsMenu.class,
+            OnPrepareOptionsMenu.class,
+            OnOptionsItemSelected.class,
+    };
+
+    @VisibleForTesting
+    static final long SLOW_OBSERVER_THRESHOLD_MS = 16;
+
     protected final List<LifecycleObserver> mObservers = new ArrayList<>();
+    // Observers of each event, in registration order. Only the first mObserverCounts[event]
+    // entries of each array are used.
+    private final LifecycleObserver[][] mEventObservers = new LifecycleObserver[EVENT_COUNT][];
+    private final int[] mObserverCounts = new int[EVENT_COUNT];
+    private boolean mTimingEnabled = Log.isLoggable(TAG, Log.VERBOSE);
+    private final MainThreadWatchdog mWatchdog = MainThreadWatchdog.get();
 
     /**
      * Registers a new observer of lifecycle events.
@@ -55,105 +105,172 @@ public class Lifecycle {
     public <T extends LifecycleObserver> T addObserver(T observer) {
         ThreadUtils.ensureMainThread();
         mObservers.add(observer);
+        for (int event = 0; event < EVENT_COUNT; event++) {
+            if (!EVENT_TYPES[event].isInstance(observer)) {
+                continue;
+            }
+            final int count = mObserverCounts[event];
+            LifecycleObserver[] observers = mEventObservers[event];
+            if (observers == null) {
+                observers = new LifecycleObserver[4];
+            } else if (count == observers.length) {
+                observers = Arrays.copyOf(observers, count * 2);
+            }
+            observers[count] = observer;
+            mEventObservers[event] = observers;
+            mObserverCounts[event] = count + 1;
+        }
         return observer;
     }
 
+    @VisibleForTesting
+    void setTimingEnabled(boolean enabled) {
+        mTimingEnabled = enabled;
+    }
+
     public void onAttach(Context context) {
-        for (LifecycleObserver observer : mObservers) {
-            if (observer instanceof OnAttach) {
-                ((OnAttach) observer).onAttach(context);
-            }
+        final LifecycleObserver[] observers = mEventObservers[EVENT_ATTACH];
+        final int count = mObserverCounts[EVENT_ATTACH];
+        for (int i = 0; i < count; i++) {
+            final long start = startTiming();
+            ((OnAttach) observers[i]).onAttach(context);
+            endTiming(EVENT_ATTACH, observers[i], start);
         }
     }
 
     public void onCreate(Bundle savedInstanceState) {
-        for (LifecycleObserver observer : mObservers) {
-            if (observer instanceof OnCreate) {
-                ((OnCreate) observer).onCreate(savedInstanceState);
-            }
+        final LifecycleObserver[] observers = mEventObservers[EVENT_CREATE];
+        final int count = mObserverCounts[EVENT_CREATE];
+        for (int i = 0; i < count; i++) {
+            final long start = startTiming();
+            ((OnCreate) observers[i]).onCreate(savedInstanceState);
+            endTiming(EVENT_CREATE, observers[i], start);
         }
     }
 
     public void onStart() {
-        for (LifecycleObserver observer : mObservers) {
-            if (observer instanceof OnStart) {
-                ((OnStart) observer).onStart();
-            }
+        final LifecycleObserver[] observers = mEventObservers[EVENT_START];
+        final int count = mObserverCounts[EVENT_START];
+        for (int i = 0; i < count; i++) {
+            final long start = startTiming();
+            ((OnStart) observers[i]).onStart();
+            endTiming(EVENT_START, observers[i], start);
         }
     }
 
     public void setPreferenceScreen(PreferenceScreen preferenceScreen) {
-        for (LifecycleObserver observer : mObservers) {
-            if (observer instanceof SetPreferenceScreen) {
-                ((SetPreferenceScreen) observer).setPreferenceScreen(preferenceScreen);
-            }
+        final LifecycleObserver[] observers = mEventObservers[EVENT_SET_PREFERENCE_SCREEN];
+        final int count = mObserverCounts[EVENT_SET_PREFERENCE_SCREEN];
+        for (int i = 0; i < count; i++) {
+            final long start = startTiming();
+            ((SetPreferenceScreen) observers[i]).setPreferenceScreen(preferenceScreen);
+            endTiming(EVENT_SET_PREFERENCE_SCREEN, observers[i], start);
         }
     }
 
     public void onResume() {
-        for (LifecycleObserver observer : mObservers) {
-            if (observer instanceof OnResume) {
-                ((OnResume) observer).onResume();
-            }
+        final LifecycleObserver[] observers = mEventObservers[EVENT_RESUME];
+        final int count = mObserverCounts[EVENT_RESUME];
+        for (int i = 0; i < count; i++) {
+            final long start = startTiming();
+            ((OnResume) observers[i]).onResume();
+            endTiming(EVENT_RESUME, observers[i], start);
         }
     }
 
     public void onPause() {
-        for (LifecycleObserver observer : mObservers) {
-            if (observer instanceof OnPause) {
-                ((OnPause) observer).onPause();
-            }
+        final LifecycleObserver[] observers = mEventObservers[EVENT_PAUSE];
+        final int count = mObserverCounts[EVENT_PAUSE];
+        for (int i = 0; i < count; i++) {
+            final long start = startTiming();
+            ((OnPause) observers[i]).onPause();
+            endTiming(EVENT_PAUSE, observers[i], start);
         }
     }
 
     public void onSaveInstanceState(Bundle outState) {
-        for (LifecycleObserver observer : mObservers) {
-            if (observer instanceof OnSaveInstanceState) {
-                ((OnSaveInstanceState) observer).onSaveInstanceState(outState);
-            }
+        final LifecycleObserver[] observers = mEventObservers[EVENT_SAVE_INSTANCE_STATE];
+        final int count = mObserverCounts[EVENT_SAVE_INSTANCE_STATE];
+        for (int i = 0; i < count; i++) {
+            final long start = startTiming();
+            ((OnSaveInstanceState) observers[i]).onSaveInstanceState(outState);
+            endTiming(EVENT_SAVE_INSTANCE_STATE, observers[i], start);
         }
     }
 
     public void onStop() {
-        for (LifecycleObserver observer : mObservers) {
-            if (observer instanceof OnStop) {
-                ((OnStop) observer).onStop();
-            }
+        final LifecycleObserver[] observers = mEventObservers[EVENT_STOP];
+        final int count = mObserverCounts[EVENT_STOP];
+        for (int i = 0; i < count; i++) {
+            final long start = startTiming();
+            ((OnStop) observers[i]).onStop();
+            endTiming(EVENT_STOP, observers[i], start);
         }
     }
 
     public void onDestroy() {
-        for (LifecycleObserver observer : mObservers) {
-            if (observer instanceof OnDestroy) {
-                ((OnDestroy) observer).onDestroy();
-            }
+        final LifecycleObserver[] observers = mEventObservers[EVENT_DESTROY];
+        final int count = mObserverCounts[EVENT_DESTROY];
+        for (int i = 0; i < count; i++) {
+            final long start = startTiming();
+            ((OnDestroy) observers[i]).onDestroy();
+            endTiming(EVENT_DESTROY, observers[i], start);
         }
     }
 
     public void onCreateOptionsMenu(final Menu menu, final @Nullable MenuInflater inflater) {
-        for (LifecycleObserver observer : mObservers) {
-            if (observer instanceof OnCreateOptionsMenu) {
-                ((OnCreateOptionsMenu) observer).onCreateOptionsMenu(menu, inflater);
-            }
+        final LifecycleObserver[] observers = mEventObservers[EVENT_CREATE_OPTIONS_MENU];
+        final int count = mObserverCounts[EVENT_CREATE_OPTIONS_MENU];
+        for (int i = 0; i < count; i++) {
+            final long start = startTiming();
+            ((OnCreateOptionsMenu) observers[i]).onCreateOptionsMenu(menu, inflater);
+            endTiming(EVENT_CREATE_OPTIONS_MENU, observers[i], start);
         }
     }
 
     public void onPrepareOptionsMenu(final Menu menu) {
-        for (LifecycleObserver observer : mObservers) {
-            if (observer instanceof OnPrepareOptionsMenu) {
-                ((OnPrepareOptionsMenu) observer).onPrepareOptionsMenu(menu);
-            }
+        final LifecycleObserver[] observers = mEventObservers[EVENT_PREPARE_OPTIONS_MENU];
+        final int count = mObserverCounts[EVENT_PREPARE_OPTIONS_MENU];
+        for (int i = 0; i < count; i++) {
+            final long start = startTiming();
+            ((OnPrepareOptionsMenu) observers[i]).onPrepareOptionsMenu(menu);
+            endTiming(EVENT_PREPARE_OPTIONS_MENU, observers[i], start);
         }
     }
 
     public boolean onOptionsItemSelected(final MenuItem menuItem) {
-        for (LifecycleObserver observer : mObservers) {
-            if (observer instanceof OnOptionsItemSelected) {
-                if (((OnOptionsItemSelected) observer).onOptionsItemSelected(menuItem)) {
-                    return true;
-                }
+        final LifecycleObserver[] observers = mEventObservers[EVENT_OPTIONS_ITEM_SELECTED];
+        final int count = mObserverCounts[EVENT_OPTIONS_ITEM_SELECTED];
+        for (int i = 0; i < count; i++) {
+            final long start = startTiming();
+            final boolean handled =
+                    ((OnOptionsItemSelected) observers[i]).onOptionsItemSelected(menuItem);
+            endTiming(EVENT_OPTIONS_ITEM_SELECTED, observers[i], start);
+            if (handled) {
+                return true;
             }
         }
         return false;
     }
+
+    private long startTiming() {
+        if (mWatchdog.isEnabled()) {
+            mWatchdog.begin();
+        }
+        return mTimingEnabled ? SystemClock.elapsedRealtime() : 0L;
+    }
+
+    private void endTiming(int event, LifecycleObserver observer, long start) {
+        if (mWatchdog.isEnabled()) {
+            mWatchdog.end(observer, EVENT_TYPES[event].getSimpleName());
+        }
+        if (!mTimingEnabled) {
+            return;
+        }
+        final long duration = SystemClock.elapsedRealtime() - start;
+        if (duration >= SLOW_OBSERVER_THRESHOLD_MS) {
+            Log.w(TAG, observer.getClass().getName() + " took " + duration + "ms in "
+                    + EVENT_TYPES[event].getSimpleName());
+        }
+    }
 }
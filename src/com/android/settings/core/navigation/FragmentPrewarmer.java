@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core.navigation;
+
+import android.app.ActivityManager;
+import android.app.Fragment;
+import android.content.Context;
+import android.content.res.XmlResourceParser;
+import android.os.Bundle;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.provider.SearchIndexableResource;
+import android.support.annotation.VisibleForTesting;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import com.android.settings.core.PreferenceTreeInflater;
+import com.android.settings.core.gateway.SettingsGateway;
+import com.android.settings.search.Indexable;
+import com.android.settings.search2.DatabaseIndexingUtils;
+
+import org.xmlpull.v1.XmlPullParser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prepares the fragments the user is most likely to open next, as predicted by
+ * {@link NavigationHistory}, while the main thread is idle.
+ *
+ * <p>Prewarming loads and initializes the fragment class, compiles its preference XML with
+ * {@link PreferenceTreeInflater} (or walks it so the resources are parsed and cached when it
+ * cannot be compiled), constructs its search index controllers to load their classes, and keeps
+ * one fresh instance of the fragment that {@link #obtainFragment} hands out on the next launch.
+ */
+public class FragmentPrewarmer {
+
+    private static final String TAG = "FragmentPrewarmer";
+
+    // Number of predicted fragments to prewarm after each launch.
+    @VisibleForTesting
+    static final int MAX_PREWARMED = 2;
+
+    private static FragmentPrewarmer sInstance;
+
+    private final Context mContext;
+    private final NavigationHistory mHistory;
+    private final boolean mEnabled;
+    // Fragment class name -> prewarmed instance, not attached and without arguments.
+    private final ArrayMap<String, Fragment> mPrewarmedFragments = new ArrayMap<>();
+    private final List<String> mPending = new ArrayList<>();
+    private boolean mIdleHandlerAdded;
+
+    private final MessageQueue.IdleHandler mIdleHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            // One fragment per idle pass so input is never blocked for long.
+            if (!mPending.isEmpty()) {
+                prewarm(mPending.remove(0));
+            }
+            mIdleHandlerAdded = !mPending.isEmpty();
+            return mIdleHandlerAdded;
+        }
+    };
+
+    public static FragmentPrewarmer get(Context context) {
+        if (sInstance == null) {
+            final Context appContext = context.getApplicationContext();
+            sInstance = new FragmentPrewarmer(appContext, NavigationHistory.get(appContext),
+                    !appContext.getSystemService(ActivityManager.class).isLowRamDevice());
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    FragmentPrewarmer(Context context, NavigationHistory history, boolean enabled) {
+        mContext = context;
+        mHistory = history;
+        mEnabled = enabled;
+    }
+
+    /**
+     * Records the launch of {@code fragmentName} and schedules prewarming of the fragments most
+     * likely to follow it. Must be called on the main thread.
+     */
+    public void onFragmentLaunched(String fragmentName) {
+        mHistory.recordLaunch(fragmentName);
+        if (!mEnabled) {
+            return;
+        }
+        mPending.clear();
+        final List<String> likelyNext = new ArrayList<>(MAX_PREWARMED);
+        mHistory.getLikelyNext(fragmentName, MAX_PREWARMED, likelyNext);
+        for (String next : likelyNext) {
+            if (!mPrewarmedFragments.containsKey(next)) {
+                mPending.add(next);
+            }
+        }
+        // Drop instances that are no longer predicted.
+        for (int i = mPrewarmedFragments.size() - 1; i >= 0; i--) {
+            if (!likelyNext.contains(mPrewarmedFragments.keyAt(i))) {
+                mPrewarmedFragments.removeAt(i);
+            }
+        }
+        if (!mPending.isEmpty() && !mIdleHandlerAdded) {
+            mIdleHandlerAdded = true;
+            Looper.myQueue().addIdleHandler(mIdleHandler);
+        }
+    }
+
+    /**
+     * Returns a new fragment for {@code fragmentName} with {@code args} set, reusing the
+     * prewarmed instance when there is one.
+     */
+    public Fragment obtainFragment(Context context, String fragmentName, Bundle args) {
+        final Fragment prewarmed = mPrewarmedFragments.remove(fragmentName);
+        if (prewarmed != null) {
+            if (args != null) {
+                args.setClassLoader(prewarmed.getClass().getClassLoader());
+                prewarmed.setArguments(args);
+            }
+            return prewarmed;
+        }
+        return SettingsGateway.instantiateFragment(context, fragmentName, args);
+    }
+
+    @VisibleForTesting
+    void prewarm(String fragmentName) {
+        final Class<?> clazz;
+        try {
+            clazz = Class.forName(fragmentName, true /* initialize */,
+                    mContext.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            Log.w(TAG, "Cannot prewarm missing fragment " + fragmentName);
+            return;
+        }
+        if (!Fragment.class.isAssignableFrom(clazz)) {
+            return;
+        }
+        try {
+            mPrewarmedFragments.put(fragmentName,
+                    SettingsGateway.instantiateFragment(mContext, fragmentName, null /* args */));
+        } catch (Fragment.InstantiationException e) {
+            Log.w(TAG, "Cannot prewarm fragment " + fragmentName, e);
+            return;
+        }
+        if (Indexable.class.isAssignableFrom(clazz)) {
+            prewarmPreferences(clazz);
+        }
+    }
+
+    private void prewarmPreferences(Class<?> clazz) {
+        final Indexable.SearchIndexProvider provider =
+                DatabaseIndexingUtils.getSearchIndexProvider(clazz);
+        if (provider == null) {
+            return;
+        }
+        try {
+            final List<SearchIndexableResource> resources =
+                    provider.getXmlResourcesToIndex(mContext, true /* enabled */);
+            if (resources != null) {
+                for (SearchIndexableResource resource : resources) {
+                    parseXml(resource.xmlResId);
+                }
+            }
+            // Only loads and initializes controller classes, instances are not reusable.
+            provider.getPreferenceControllers(mContext);
+        } catch (RuntimeException e) {
+            // Prewarming is best effort, never crash for it.
+            Log.w(TAG, "Failed to prewarm preferences of " + clazz.getName(), e);
+        }
+    }
+
+    private void parseXml(int xmlResId) {
+        if (xmlResId <= 0) {
+            return;
+        }
+        if (PreferenceTreeInflater.get().precompile(mContext, xmlResId)) {
+            return;
+        }
+        XmlResourceParser parser = null;
+        try {
+            parser = mContext.getResources().getXml(xmlResId);
+            int type;
+            do {
+                type = parser.next();
+            } while (type != XmlPullParser.END_DOCUMENT);
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to parse xml " + xmlResId, e);
+        } finally {
+            if (parser != null) {
+                parser.close();
+            }
+        }
+    }
+
+    @VisibleForTesting
+    boolean isPrewarmed(String fragmentName) {
+        return mPrewarmedFragments.containsKey(fragmentName);
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core.navigation;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.VisibleForTesting;
+import android.text.TextUtils;
+import android.util.ArrayMap;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts how often the user goes from one Settings fragment to another, and predicts the most
+ * likely next fragments from the current one.
+ *
+ * <p>Transitions are recorded whenever a fragment is launched inside a settings activity. Counts
+ * are kept in memory per source fragment and persisted with one SharedPreferences entry per
+ * transition.
+ */
+public class NavigationHistory {
+
+    private static final String PREF_FILE = "navigation_history";
+    private static final String KEY_SEPARATOR = ">";
+
+    // Number of successors kept for each fragment. The least used one is evicted when full.
+    @VisibleForTesting
+    static final int MAX_SUCCESSORS = 8;
+    // Transitions seen fewer times than this are not used for prediction.
+    @VisibleForTesting
+    static final int MIN_TRANSITION_COUNT = 2;
+
+    private static NavigationHistory sInstance;
+
+    private final SharedPreferences mPrefs;
+    // Source fragment -> successors, with parallel arrays of names and counts.
+    private final ArrayMap<String, Successors> mTransitions = new ArrayMap<>();
+    private String mLastFragment;
+
+    public static synchronized NavigationHistory get(Context context) {
+        if (sInstance == null) {
+            sInstance = new NavigationHistory(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    NavigationHistory(Context context) {
+        mPrefs = context.getSharedPreferences(PREF_FILE, Context.MODE_PRIVATE);
+        for (Map.Entry<String, ?> entry : mPrefs.getAll().entrySet()) {
+            final String key = entry.getKey();
+            final int separator = key.indexOf(KEY_SEPARATOR);
+            if (separator <= 0 || !(entry.getValue() instanceof Integer)) {
+                continue;
+            }
+            getSuccessors(key.substring(0, separator)).put(
+                    key.substring(separator + 1), (Integer) entry.getValue());
+        }
+    }
+
+    /**
+     * Records that a fragment was launched, counting a transition from the previously launched
+     * one.
+     */
+    public synchronized void recordLaunch(String fragmentName) {
+        if (TextUtils.isEmpty(fragmentName)) {
+            return;
+        }
+        final String from = mLastFragment;
+        mLastFragment = fragmentName;
+        if (from == null || from.equals(fragmentName)) {
+            return;
+        }
+        final Successors successors = getSuccessors(from);
+        final int count = successors.increment(fragmentName);
+        final SharedPreferences.Editor editor = mPrefs.edit();
+        final String evicted = successors.takeEvicted();
+        if (evicted != null) {
+            editor.remove(from + KEY_SEPARATOR + evicted);
+        }
+        editor.putInt(from + KEY_SEPARATOR + fragmentName, count).apply();
+    }
+
+    /**
+     * Adds to {@code out} up to {@code max} fragments most likely to be opened after
+     * {@code fragmentName}, most likely first.
+     */
+    public synchronized void getLikelyNext(String fragmentName, int max, List<String> out) {
+        final Successors successors = mTransitions.get(fragmentName);
+        if (successors == null) {
+            return;
+        }
+        // Successor lists are tiny, pick the best ones with repeated scans.
+        long picked = 0L;
+        for (int n = 0; n < max; n++) {
+            int best = -1;
+            for (int i = 0; i < successors.size; i++) {
+                if ((picked & (1L << i)) != 0 || successors.counts[i] < MIN_TRANSITION_COUNT) {
+                    continue;
+                }
+                if (best < 0 || successors.counts[i] > successors.counts[best]) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                return;
+            }
+            picked |= 1L << best;
+            out.add(successors.names[best]);
+        }
+    }
+
+    private Successors getSuccessors(String from) {
+        Successors successors = mTransitions.get(from);
+        if (successors == null) {
+            successors = new Successors();
+            mTransitions.put(from, successors);
+        }
+        return successors;
+    }
+
+    private static class Successors {
+        final String[] names = new String[MAX_SUCCESSORS];
+        final int[] counts = new int[MAX_SUCCESSORS];
+        int size;
+        String evicted;
+
+        void put(String name, int count) {
+            final int index = indexOf(name);
+            if (index >= 0) {
+                counts[index] = count;
+            } else if (size < MAX_SUCCESSORS) {
+                names[size] = name;
+                counts[size++] = count;
+            }
+        }
+
+        int increment(String name) {
+            int index = indexOf(name);
+            if (index < 0) {
+                if (size < MAX_SUCCESSORS) {
+                    index = size++;
+                } else {
+                    index = 0;
+                    for (int i = 1; i < size; i++) {
+                        if (counts[i] < counts[index]) {
+                            index = i;
+                        }
+                    }
+                    evicted = names[index];
+                }
+                names[index] = name;
+                counts[index] = 0;
+            }
+            return ++counts[index];
+        }
+
+        String takeEvicted() {
+            final String result = evicted;
+            evicted = null;
+            return result;
+        }
+
+        private int indexOf(String name) {
+            for (int i = 0; i < size; i++) {
+                if (names[i].equals(name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -16,6 +16,7 @@
 package com.android.settings.dashboard;
 
 import android.app.Activity;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.drawable.Drawable;
@@ -42,6 +43,7 @@ import com.android.settings.dashboard.conditional.ConditionAdapterUtils;
 import com.android.settings.dashboard.suggestions.SuggestionDismissController;
 import com.android.settings.dashboard.suggestions.SuggestionFeatureProvider;
 import com.android.settings.overlay.FeatureFactory;
+import com.android.settings.utils.CacheRegistry;
 import com.android.settingslib.drawer.DashboardCategory;
 import com.android.settingslib.drawer.Tile;
 
@@ -432,22 +434,46 @@ public class DashboardAdapter extends RecyclerView.Adapter<DashboardAdapter.Dash
         outState.putStringArrayList(STATE_SUGGESTIONS_SHOWN_LOGGED, mSuggestionsShownLogged);
     }
 
-    private static class IconCache {
+    private static class IconCache extends CacheRegistry.Cache {
         private final Context mContext;
         private final ArrayMap<Icon, Drawable> mMap = new ArrayMap<>();
 
         public IconCache(Context context) {
+            super("dashboard_icons", ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
             mContext = context;
+            CacheRegistry.get().register(this);
         }
 
         public Drawable getIcon(Icon icon) {
             Drawable drawable = mMap.get(icon);
             if (drawable == null) {
+                recordMiss();
                 drawable = icon.loadDrawable(mContext);
                 mMap.put(icon, drawable);
+            } else {
+                recordHit();
             }
             return drawable;
         }
+
+        @Override
+        public int getEntryCount() {
+            return mMap.size();
+        }
+
+        @Override
+        public long getSizeEstimateBytes() {
+            long bytes = 0;
+            for (int i = 0; i < mMap.size(); i++) {
+                bytes += CacheRegistry.estimateSize(mMap.valueAt(i));
+            }
+            return bytes;
+        }
+
+        @Override
+        protected void clear() {
+            mMap.clear();
+        }
     }
 
     public static class DashboardItemHolder extends RecyclerView.ViewHolder {
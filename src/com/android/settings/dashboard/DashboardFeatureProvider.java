@@ -74,6 +74,17 @@ public interface DashboardFeatureProvider {
     void bindPreferenceToTile(Activity activity, int sourceMetricsCategory, Preference pref,
             Tile tile, String key, int baseOrder);
 
+    /**
+     * Returns the order {@link #bindPreferenceToTile} would assign to a preference bound to this
+     * tile, without binding anything.
+     *
+     * @param activity Activity hosting the preference
+     * @param tile The tile to compute order for
+     * @param baseOrder The order offset value, same as in {@link #bindPreferenceToTile}
+     * @return The order, or {@link Preference#DEFAULT_ORDER} if the tile has no priority.
+     */
+    int getOrderForTile(Activity activity, Tile tile, int baseOrder);
+
     /**
      * Returns a {@link ProgressiveDisclosureMixin} for specified fragment.
      */
@@ -148,21 +148,29 @@ public class DashboardFeatureProviderImpl implements DashboardFeatureProvider {
                 return true;
             });
         }
+        if (tile.priority != 0) {
+            pref.setOrder(getOrderForTile(activity, tile, baseOrder));
+        }
+    }
+
+    @Override
+    public int getOrderForTile(Activity activity, Tile tile, int baseOrder) {
+        if (tile.priority == 0) {
+            return Preference.DEFAULT_ORDER;
+        }
         final String skipOffsetPackageName = activity.getPackageName();
         // Use negated priority for order, because tile priority is based on intent-filter
         // (larger value has higher priority). However pref order defines smaller value has
         // higher priority.
-        if (tile.priority != 0) {
-            boolean shouldSkipBaseOrderOffset = false;
-            if (tile.intent != null) {
-                shouldSkipBaseOrderOffset = TextUtils.equals(
-                        skipOffsetPackageName, tile.intent.getComponent().getPackageName());
-            }
-            if (shouldSkipBaseOrderOffset || baseOrder == Preference.DEFAULT_ORDER) {
-                pref.setOrder(-tile.priority);
-            } else {
-                pref.setOrder(-tile.priority + baseOrder);
-            }
+        boolean shouldSkipBaseOrderOffset = false;
+        if (tile.intent != null) {
+            shouldSkipBaseOrderOffset = TextUtils.equals(
+                    skipOffsetPackageName, tile.intent.getComponent().getPackageName());
+        }
+        if (shouldSkipBaseOrderOffset || baseOrder == Preference.DEFAULT_ORDER) {
+            return -tile.priority;
+        } else {
+            return -tile.priority + baseOrder;
         }
     }
 
@@ -19,6 +19,7 @@ import android.app.Activity;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.annotation.VisibleForTesting;
 import android.support.v7.preference.Preference;
 import android.support.v7.preference.PreferenceManager;
@@ -32,7 +33,10 @@ import android.view.View;
 import android.view.ViewGroup;
 
 import com.android.settings.SettingsPreferenceFragment;
+import com.android.settings.core.AsyncStatePreferenceController;
 import com.android.settings.core.PreferenceController;
+import com.android.settings.core.PreferenceStateUpdater;
+import com.android.settings.core.instrumentation.MainThreadWatchdog;
 import com.android.settings.overlay.FeatureFactory;
 import com.android.settings.search.Indexable;
 import com.android.settingslib.drawer.DashboardCategory;
@@ -52,6 +56,9 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
         implements SettingsDrawerActivity.CategoryListener, Indexable,
         SummaryLoader.SummaryConsumer {
     private static final String TAG = "DashboardFragment";
+    // Synchronous updateState calls slower than this are candidates for
+    // AsyncStatePreferenceController.
+    private static final long SLOW_UPDATE_THRESHOLD_MS = 16;
 
     private final Map<Class, PreferenceController> mPreferenceControllers =
             new ArrayMap<>();
@@ -62,15 +69,20 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
     private DashboardTilePlaceholderPreferenceController mPlaceholderPreferenceController;
     private boolean mListeningToCategoryChange;
     private SummaryLoader mSummaryLoader;
+    private PreferenceStateUpdater mPreferenceStateUpdater;
 
     @Override
     public void onAttach(Context context) {
         super.onAttach(context);
+        mPreferenceStateUpdater = new PreferenceStateUpdater(getLogTag());
         mDashboardFeatureProvider =
                 FeatureFactory.getFactory(context).getDashboardFeatureProvider(context);
         mProgressiveDisclosureMixin = mDashboardFeatureProvider
                 .getProgressiveDisclosureMixin(context, this, getArguments());
         getLifecycle().addObserver(mProgressiveDisclosureMixin);
+        // Collapsed preferences skip updateState until they are shown.
+        mProgressiveDisclosureMixin.setOnExpandListener(
+                expandedPrefs -> updatePreferenceStates());
 
         List<PreferenceController> controllers = getPreferenceControllers(context);
         if (controllers == null) {
@@ -137,6 +149,10 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
     @Override
     public void notifySummaryChanged(Tile tile) {
         final String key = mDashboardFeatureProvider.getDashboardKeyForTile(tile);
+        if (mProgressiveDisclosureMixin.isDeferred(key)) {
+            // Summary is read from the tile when the preference is created.
+            return;
+        }
         final Preference pref = mProgressiveDisclosureMixin.findPreference(
                 getPreferenceScreen(), key);
         if (pref == null) {
@@ -154,6 +170,13 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
         updatePreferenceStates();
     }
 
+    @Override
+    public void onPause() {
+        super.onPause();
+        // Results arriving after pause are stale, next resume reloads them.
+        mPreferenceStateUpdater.cancel();
+    }
+
     @Override
     public boolean onPreferenceTreeClick(Preference preference) {
         Collection<PreferenceController> controllers = mPreferenceControllers.values();
@@ -234,23 +257,36 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
         }
         addPreferencesFromResource(resId);
         final PreferenceScreen screen = getPreferenceScreen();
+        final MainThreadWatchdog watchdog = MainThreadWatchdog.get();
         Collection<PreferenceController> controllers = mPreferenceControllers.values();
         for (PreferenceController controller : controllers) {
+            watchdog.begin();
             controller.displayPreference(screen);
+            watchdog.end(controller, "displayPreference");
         }
     }
 
     /**
-     * Update state of each preference managed by PreferenceController.
+     * Update state of each preference managed by PreferenceController. Controllers implementing
+     * {@link AsyncStatePreferenceController} are loaded in parallel in the background.
      */
     protected void updatePreferenceStates() {
         Collection<PreferenceController> controllers = mPreferenceControllers.values();
         final PreferenceScreen screen = getPreferenceScreen();
+        final MainThreadWatchdog watchdog = MainThreadWatchdog.get();
+        mPreferenceStateUpdater.startRound();
         for (PreferenceController controller : controllers) {
-            if (!controller.isAvailable()) {
+            watchdog.begin();
+            final boolean available = controller.isAvailable();
+            watchdog.end(controller, "isAvailable");
+            if (!available) {
                 continue;
             }
             final String key = controller.getPreferenceKey();
+            if (mProgressiveDisclosureMixin.isPreferenceCollapsed(screen, key)) {
+                // Updated once the user expands the collapsed preferences.
+                continue;
+            }
 
             final Preference preference = mProgressiveDisclosureMixin.findPreference(screen, key);
             if (preference == null) {
@@ -258,7 +294,18 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
                         key, controller.getClass().getSimpleName()));
                 continue;
             }
+            if (mPreferenceStateUpdater.updateIfAsync(controller, preference)) {
+                continue;
+            }
+            final long startTime = SystemClock.elapsedRealtime();
+            watchdog.begin();
             controller.updateState(preference);
+            watchdog.end(controller, "updateState");
+            final long duration = SystemClock.elapsedRealtime() - startTime;
+            if (duration > SLOW_UPDATE_THRESHOLD_MS) {
+                Log.w(TAG, String.format("%s.updateState took %d ms on main thread in %s",
+                        controller.getClass().getSimpleName(), duration, getLogTag()));
+            }
         }
     }
 
@@ -328,18 +375,24 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
                 // If this drawable is coming from outside Settings, tint it to match the color.
                 tile.icon.setTint(tintColor);
             }
-            if (mDashboardTilePrefKeys.contains(key)) {
+            if (mDashboardTilePrefKeys.contains(key)
+                    && !mProgressiveDisclosureMixin.isDeferred(key)) {
                 // Have the key already, will rebind.
                 final Preference preference = mProgressiveDisclosureMixin.findPreference(
                         screen, key);
                 mDashboardFeatureProvider.bindPreferenceToTile(getActivity(), getMetricsCategory(),
                         preference, tile, key, mPlaceholderPreferenceController.getOrder());
+            } else if (mProgressiveDisclosureMixin.isCollapsed()) {
+                // Would most likely be hidden, only create it once it's displayed.
+                mProgressiveDisclosureMixin.addDeferredPreference(screen, key, tile.title,
+                        mDashboardFeatureProvider.getOrderForTile(getActivity(), tile,
+                                mPlaceholderPreferenceController.getOrder()),
+                        () -> createTilePreference(tile, key));
+                mDashboardTilePrefKeys.add(key);
             } else {
                 // Don't have this key, add it.
-                final Preference pref = new Preference(getPrefContext());
-                mDashboardFeatureProvider.bindPreferenceToTile(getActivity(), getMetricsCategory(),
-                        pref, tile, key, mPlaceholderPreferenceController.getOrder());
-                mProgressiveDisclosureMixin.addPreference(screen, pref);
+                mProgressiveDisclosureMixin.addPreference(screen,
+                        createTilePreference(tile, key));
                 mDashboardTilePrefKeys.add(key);
             }
             remove.remove(key);
@@ -351,4 +404,11 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
         }
         mSummaryLoader.setListening(true);
     }
+
+    private Preference createTilePreference(Tile tile, String key) {
+        final Preference pref = new Preference(getPrefContext());
+        mDashboardFeatureProvider.bindPreferenceToTile(getActivity(), getMetricsCategory(),
+                pref, tile, key, mPlaceholderPreferenceController.getOrder());
+        return pref;
+    }
 }
@@ -27,10 +27,12 @@ import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 
 import com.android.internal.logging.nano.MetricsProto.MetricsEvent;
 import com.android.settings.R;
 import com.android.settings.core.InstrumentedFragment;
+import com.android.settings.core.instrumentation.StartupTracer;
 import com.android.settings.dashboard.conditional.Condition;
 import com.android.settings.dashboard.conditional.ConditionAdapterUtils;
 import com.android.settings.dashboard.conditional.ConditionManager;
@@ -73,6 +75,7 @@ public class DashboardSummary extends InstrumentedFragment
     private SuggestionFeatureProvider mSuggestionFeatureProvider;
     private boolean isOnCategoriesChangedCalled;
     private SuggestionDismissController mSuggestionDismissHandler;
+    private long mCreateStartNanos;
 
     @Override
     public int getMetricsCategory() {
@@ -82,6 +85,8 @@ public class DashboardSummary extends InstrumentedFragment
     @Override
     public void onCreate(Bundle savedInstanceState) {
         long startTime = System.currentTimeMillis();
+        mCreateStartNanos = StartupTracer.now();
+        final int traceToken = StartupTracer.beginSection(StartupTracer.SPAN_DASHBOARD_CREATE);
         super.onCreate(savedInstanceState);
         final Activity activity = getActivity();
         mDashboardFeatureProvider = FeatureFactory.getFactory(activity)
@@ -96,6 +101,7 @@ public class DashboardSummary extends InstrumentedFragment
         mSuggestionParser = new SuggestionParser(activity,
                 activity.getSharedPreferences(SUGGESTIONS, 0), R.xml.suggestion_ordering);
         mSuggestionsChecks = new SuggestionsChecks(getContext());
+        StartupTracer.endSection(traceToken);
         if (DEBUG_TIMING) {
             Log.d(TAG, "onCreate took " + (System.currentTimeMillis() - startTime)
                     + " ms");
@@ -199,6 +205,7 @@ public class DashboardSummary extends InstrumentedFragment
         mDashboard.setItemAnimator(new DashboardItemAnimator());
         mSummaryLoader.setSummaryConsumer(mAdapter);
         ConditionAdapterUtils.addDismiss(mDashboard);
+        traceFirstDraw();
         if (DEBUG_TIMING) {
             Log.d(TAG, "onViewCreated took "
                     + (System.currentTimeMillis() - startTime) + " ms");
@@ -206,6 +213,27 @@ public class DashboardSummary extends InstrumentedFragment
         rebuildUI();
     }
 
+    /**
+     * Records the time from fragment creation to the first frame drawn by the dashboard list.
+     */
+    private void traceFirstDraw() {
+        final ViewTreeObserver observer = mDashboard.getViewTreeObserver();
+        observer.addOnDrawListener(new ViewTreeObserver.OnDrawListener() {
+            @Override
+            public void onDraw() {
+                StartupTracer.recordSpan(StartupTracer.SPAN_FIRST_DRAW, mCreateStartNanos,
+                        StartupTracer.now());
+                // Listeners cannot be removed from within onDraw.
+                final ViewTreeObserver.OnDrawListener listener = this;
+                mHandler.post(() -> {
+                    if (observer.isAlive()) {
+                        observer.removeOnDrawListener(listener);
+                    }
+                });
+            }
+        });
+    }
+
     @VisibleForTesting
     void rebuildUI() {
         new SuggestionLoader().execute();
@@ -281,8 +309,10 @@ public class DashboardSummary extends InstrumentedFragment
         // Temporary hack to wrap homepage category into a list. Soon we will create adapter
         // API that takes a single category.
         List<DashboardCategory> categories = new ArrayList<>();
+        final int traceToken = StartupTracer.beginSection(StartupTracer.SPAN_TILE_RESOLUTION);
         categories.add(mDashboardFeatureProvider.getTilesForCategory(
                 CategoryKey.CATEGORY_HOMEPAGE));
+        StartupTracer.endSection(traceToken);
         if (suggestions != null) {
             mAdapter.setCategoriesAndSuggestions(categories, suggestions);
         } else {
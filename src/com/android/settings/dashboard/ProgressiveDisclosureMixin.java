@@ -49,12 +49,29 @@ public class ProgressiveDisclosureMixin implements Preference.OnPreferenceClickL
     private final Context mContext;
     // Collapsed preference sorted by order.
     private final List<Preference> mCollapsedPrefs = new ArrayList<>();
+    // Collapsed preferences not created yet, sorted by order.
+    private final List<DeferredPreference> mDeferredPrefs = new ArrayList<>();
     private final MetricsFeatureProvider mMetricsFeatureProvider;
     private final PreferenceFragment mFragment;
     private /* final */ ExpandPreference mExpandButton;
 
     private int mTileLimit = DEFAULT_TILE_LIMIT;
     private boolean mUserExpanded;
+    private OnExpandListener mOnExpandListener;
+
+    /**
+     * Creates a collapsed preference once it is about to be displayed.
+     */
+    public interface PreferenceCreator {
+        Preference createPreference();
+    }
+
+    /**
+     * Callback for when collapsed preferences are added back to screen.
+     */
+    public interface OnExpandListener {
+        void onExpanded(List<Preference> expandedPrefs);
+    }
 
     public ProgressiveDisclosureMixin(Context context,
             PreferenceFragment fragment, boolean keepExpanded) {
@@ -84,10 +101,17 @@ public class ProgressiveDisclosureMixin implements Preference.OnPreferenceClickL
             final PreferenceScreen screen = mFragment.getPreferenceScreen();
             if (screen != null) {
                 screen.removePreference(preference);
-                for (Preference pref : mCollapsedPrefs) {
+                final List<Preference> expandedPrefs =
+                        new ArrayList<>(mCollapsedPrefs.size() + mDeferredPrefs.size());
+                expandedPrefs.addAll(mCollapsedPrefs);
+                for (DeferredPreference deferredPref : mDeferredPrefs) {
+                    expandedPrefs.add(deferredPref.creator.createPreference());
+                }
+                for (Preference pref : expandedPrefs) {
                     screen.addPreference(pref);
                 }
                 mCollapsedPrefs.clear();
+                mDeferredPrefs.clear();
                 mUserExpanded = true;
                 final int metricsCategory;
                 if (mFragment instanceof Instrumentable) {
@@ -97,6 +121,9 @@ public class ProgressiveDisclosureMixin implements Preference.OnPreferenceClickL
                 }
                 mMetricsFeatureProvider.actionWithSource(mContext, metricsCategory,
                         MetricsProto.MetricsEvent.ACTION_SETTINGS_ADVANCED_BUTTON_EXPAND);
+                if (mOnExpandListener != null) {
+                    mOnExpandListener.onExpanded(expandedPrefs);
+                }
             }
         }
         return false;
@@ -109,11 +136,40 @@ public class ProgressiveDisclosureMixin implements Preference.OnPreferenceClickL
         mTileLimit = limit;
     }
 
+    /**
+     * Sets the listener notified when the user expands collapsed preferences.
+     */
+    public void setOnExpandListener(OnExpandListener listener) {
+        mOnExpandListener = listener;
+    }
+
     /**
      * Whether the controller is in collapsed state.
      */
     public boolean isCollapsed() {
-        return !mCollapsedPrefs.isEmpty();
+        return !mCollapsedPrefs.isEmpty() || !mDeferredPrefs.isEmpty();
+    }
+
+    /**
+     * Whether the preference with this key is hidden behind the "More" button, either created
+     * in the collapsed list or not created yet.
+     */
+    public boolean isPreferenceCollapsed(PreferenceScreen screen, String key) {
+        if (!isCollapsed()) {
+            return false;
+        }
+        if (isDeferred(key)) {
+            return true;
+        }
+        return screen.findPreference(key) == null
+                && findCollapsedPreference(key) != null;
+    }
+
+    /**
+     * Whether the preference with this key is collapsed and has not been created yet.
+     */
+    public boolean isDeferred(String key) {
+        return indexOfDeferred(key) >= 0;
     }
 
     /**
@@ -151,9 +207,8 @@ public class ProgressiveDisclosureMixin implements Preference.OnPreferenceClickL
         // Either add to screen, or to collapsed list.
         if (isCollapsed()) {
             // insert the preference to right position.
-            final int lastPreferenceIndex = screen.getPreferenceCount() - 2;
-            if (lastPreferenceIndex >= 0) {
-                final Preference lastPreference = screen.getPreference(lastPreferenceIndex);
+            final Preference lastPreference = getLastPreferenceOnScreen(screen);
+            if (lastPreference != null) {
                 if (lastPreference.getOrder() > pref.getOrder()) {
                     // insert to screen and move the last pref to collapsed list.
                     screen.removePreference(lastPreference);
@@ -177,6 +232,52 @@ public class ProgressiveDisclosureMixin implements Preference.OnPreferenceClickL
         }
     }
 
+    /**
+     * Adds a preference that is only created when it is displayed. If it would end up in the
+     * collapsed list, only its key, title and order are kept until the user expands the screen.
+     * A deferred preference with the same key is replaced.
+     */
+    public void addDeferredPreference(PreferenceScreen screen, String key, CharSequence title,
+            int order, PreferenceCreator creator) {
+        final int existingIndex = indexOfDeferred(key);
+        if (existingIndex >= 0) {
+            mDeferredPrefs.remove(existingIndex);
+        }
+        if (!isCollapsed()) {
+            addPreference(screen, creator.createPreference());
+            return;
+        }
+        final Preference lastPreference = getLastPreferenceOnScreen(screen);
+        if (lastPreference != null && lastPreference.getOrder() > order) {
+            // Belongs on screen, let addPreference() move the last pref to collapsed list.
+            addPreference(screen, creator.createPreference());
+            return;
+        }
+        int insertionIndex = mDeferredPrefs.size();
+        for (int i = 0; i < mDeferredPrefs.size(); i++) {
+            if (mDeferredPrefs.get(i).order > order) {
+                insertionIndex = i;
+                break;
+            }
+        }
+        mDeferredPrefs.add(insertionIndex, new DeferredPreference(key, title, order, creator));
+        updateExpandButtonSummary();
+    }
+
+    /**
+     * Returns the last preference shown on screen other than the expand button, or null if there
+     * is none.
+     */
+    private Preference getLastPreferenceOnScreen(PreferenceScreen screen) {
+        for (int i = screen.getPreferenceCount() - 1; i >= 0; i--) {
+            final Preference preference = screen.getPreference(i);
+            if (preference != null && preference != mExpandButton) {
+                return preference;
+            }
+        }
+        return null;
+    }
+
     /**
      * Removes preference. If the preference is on screen, remove it from screen. If the
      * preference is in collapsed list, remove it from list.
@@ -189,19 +290,31 @@ public class ProgressiveDisclosureMixin implements Preference.OnPreferenceClickL
             return;
         }
         // Didn't find on screen, try removing from collapsed list.
+        boolean removed = false;
         for (int i = 0; i < mCollapsedPrefs.size(); i++) {
             final Preference pref = mCollapsedPrefs.get(i);
             if (TextUtils.equals(key, pref.getKey())) {
                 mCollapsedPrefs.remove(pref);
-                if (mCollapsedPrefs.isEmpty()) {
-                    // Removed last element, remove expand button too.
-                    screen.removePreference(mExpandButton);
-                } else {
-                    updateExpandButtonSummary();
-                }
-                return;
+                removed = true;
+                break;
+            }
+        }
+        if (!removed) {
+            final int deferredIndex = indexOfDeferred(key);
+            if (deferredIndex >= 0) {
+                mDeferredPrefs.remove(deferredIndex);
+                removed = true;
             }
         }
+        if (!removed) {
+            return;
+        }
+        if (!isCollapsed()) {
+            // Removed last element, remove expand button too.
+            screen.removePreference(mExpandButton);
+        } else {
+            updateExpandButtonSummary();
+        }
     }
 
     /**
@@ -212,6 +325,15 @@ public class ProgressiveDisclosureMixin implements Preference.OnPreferenceClickL
         if (preference != null) {
             return preference;
         }
+        preference = findCollapsedPreference(key);
+        if (preference != null) {
+            return preference;
+        }
+        Log.d(TAG, "Cannot find preference with key " + key);
+        return null;
+    }
+
+    private Preference findCollapsedPreference(CharSequence key) {
         for (int i = 0; i < mCollapsedPrefs.size(); i++) {
             final Preference pref = mCollapsedPrefs.get(i);
             if (TextUtils.equals(key, pref.getKey())) {
@@ -224,10 +346,18 @@ public class ProgressiveDisclosureMixin implements Preference.OnPreferenceClickL
                 }
             }
         }
-        Log.d(TAG, "Cannot find preference with key " + key);
         return null;
     }
 
+    private int indexOfDeferred(String key) {
+        for (int i = 0; i < mDeferredPrefs.size(); i++) {
+            if (TextUtils.equals(key, mDeferredPrefs.get(i).key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Add preference to collapsed list.
      */
@@ -247,23 +377,59 @@ public class ProgressiveDisclosureMixin implements Preference.OnPreferenceClickL
         return mCollapsedPrefs;
     }
 
+    @VisibleForTesting
+    List<DeferredPreference> getDeferredPrefs() {
+        return mDeferredPrefs;
+    }
+
     @VisibleForTesting
     void updateExpandButtonSummary() {
-        final int size = mCollapsedPrefs.size();
+        final int collapsedSize = mCollapsedPrefs.size();
+        final int deferredSize = mDeferredPrefs.size();
+        final int size = collapsedSize + deferredSize;
         if (size == 0) {
             mExpandButton.setSummary(null);
-        } else if (size == 1) {
-            mExpandButton.setSummary(mCollapsedPrefs.get(0).getTitle());
-        } else {
-            CharSequence summary = mCollapsedPrefs.get(0).getTitle();
-            for (int i = 1; i < size; i++) {
-                final CharSequence nextSummary = mCollapsedPrefs.get(i).getTitle();
-                if (!TextUtils.isEmpty(nextSummary)) {
-                    summary = mContext.getString(R.string.join_many_items_middle, summary,
-                            nextSummary);
-                }
+            return;
+        }
+        // Merge titles of both lists by order.
+        CharSequence summary = null;
+        int collapsedIndex = 0;
+        int deferredIndex = 0;
+        for (int i = 0; i < size; i++) {
+            final CharSequence nextSummary;
+            if (deferredIndex >= deferredSize || (collapsedIndex < collapsedSize
+                    && mCollapsedPrefs.get(collapsedIndex).getOrder()
+                    <= mDeferredPrefs.get(deferredIndex).order)) {
+                nextSummary = mCollapsedPrefs.get(collapsedIndex++).getTitle();
+            } else {
+                nextSummary = mDeferredPrefs.get(deferredIndex++).title;
+            }
+            if (i == 0) {
+                summary = nextSummary;
+            } else if (!TextUtils.isEmpty(nextSummary)) {
+                summary = mContext.getString(R.string.join_many_items_middle, summary,
+                        nextSummary);
             }
-            mExpandButton.setSummary(summary);
+        }
+        mExpandButton.setSummary(summary);
+    }
+
+    /**
+     * Lightweight placeholder for a collapsed preference that has not been created yet.
+     */
+    @VisibleForTesting
+    static class DeferredPreference {
+        final String key;
+        final CharSequence title;
+        final int order;
+        final PreferenceCreator creator;
+
+        DeferredPreference(String key, CharSequence title, int order,
+                PreferenceCreator creator) {
+            this.key = key;
+            this.title = title;
+            this.order = order;
+            this.creator = creator;
         }
     }
 }
@@ -21,10 +21,7 @@ import android.content.ComponentName;
 import android.content.IntentFilter;
 import android.os.Bundle;
 import android.os.Handler;
-import android.os.HandlerThread;
-import android.os.Looper;
 import android.os.Message;
-import android.os.Process;
 import android.support.annotation.VisibleForTesting;
 import android.text.TextUtils;
 import android.util.ArrayMap;
@@ -32,7 +29,9 @@ import android.util.ArraySet;
 import android.util.Log;
 
 import com.android.settings.SettingsActivity;
+import com.android.settings.core.instrumentation.StartupTracer;
 import com.android.settings.overlay.FeatureFactory;
+import com.android.settings.utils.TaskScheduler;
 import com.android.settingslib.drawer.DashboardCategory;
 import com.android.settingslib.drawer.SettingsDrawerActivity;
 import com.android.settingslib.drawer.Tile;
@@ -53,7 +52,6 @@ public class SummaryLoader {
 
     private final Worker mWorker;
     private final Handler mHandler;
-    private final HandlerThread mWorkerThread;
 
     private SummaryConsumer mSummaryConsumer;
     private boolean mListening;
@@ -65,9 +63,7 @@ public class SummaryLoader {
                 .getDashboardFeatureProvider(activity);
         mCategoryKey = null;
         mHandler = new Handler();
-        mWorkerThread = new HandlerThread("SummaryLoader", Process.THREAD_PRIORITY_BACKGROUND);
-        mWorkerThread.start();
-        mWorker = new Worker(mWorkerThread.getLooper());
+        mWorker = new Worker();
         mActivity = activity;
         for (int i = 0; i < categories.size(); i++) {
             List<Tile> tiles = categories.get(i).tiles;
@@ -83,9 +79,7 @@ public class SummaryLoader {
                 .getDashboardFeatureProvider(activity);
         mCategoryKey = categoryKey;
         mHandler = new Handler();
-        mWorkerThread = new HandlerThread("SummaryLoader", Process.THREAD_PRIORITY_BACKGROUND);
-        mWorkerThread.start();
-        mWorker = new Worker(mWorkerThread.getLooper());
+        mWorker = new Worker();
         mActivity = activity;
 
         final DashboardCategory category =
@@ -101,7 +95,8 @@ public class SummaryLoader {
     }
 
     public void release() {
-        mWorkerThread.quitSafely();
+        // The worker runs on a shared scheduler lane, drop what is left of this loader's work.
+        mWorker.removeCallbacksAndMessages(null);
         // Make sure we aren't listening.
         setListeningW(false);
     }
@@ -288,12 +283,12 @@ public class SummaryLoader {
         SummaryProvider createSummaryProvider(Activity activity, SummaryLoader summaryLoader);
     }
 
-    private class Worker extends Handler {
+    private class Worker extends TaskScheduler.LaneHandler {
         private static final int MSG_GET_PROVIDER = 1;
         private static final int MSG_SET_LISTENING = 2;
 
-        public Worker(Looper looper) {
-            super(looper);
+        public Worker() {
+            super(TaskScheduler.LANE_VISIBLE_CONTENT);
         }
 
         @Override
@@ -301,7 +296,13 @@ public class SummaryLoader {
             switch (msg.what) {
                 case MSG_GET_PROVIDER:
                     Tile tile = (Tile) msg.obj;
-                    makeProviderW(tile);
+                    final int traceToken =
+                            StartupTracer.beginSection(StartupTracer.SPAN_SUMMARY_PROVIDER);
+                    try {
+                        makeProviderW(tile);
+                    } finally {
+                        StartupTracer.endSection(traceToken);
+                    }
                     break;
                 case MSG_SET_LISTENING:
                     boolean listening = msg.arg1 != 0;
@@ -21,6 +21,7 @@ import android.os.PersistableBundle;
 import android.util.Log;
 import android.util.Xml;
 
+import com.android.settings.core.instrumentation.StartupTracer;
 import com.android.settings.core.lifecycle.LifecycleObserver;
 import com.android.settings.core.lifecycle.events.OnPause;
 import com.android.settings.core.lifecycle.events.OnResume;
@@ -249,13 +250,18 @@ public class ConditionManager implements LifecycleObserver, OnResume, OnPause {
         @Override
         protected ArrayList<Condition> doInBackground(Void... params) {
             Log.d(TAG, "loading conditions from xml");
-            ArrayList<Condition> conditions = new ArrayList<>();
-            mXmlFile = new File(mContext.getFilesDir(), FILE_NAME);
-            if (mXmlFile.exists()) {
-                readFromXml(mXmlFile, conditions);
+            final int traceToken = StartupTracer.beginSection(StartupTracer.SPAN_CONDITION_LOAD);
+            try {
+                ArrayList<Condition> conditions = new ArrayList<>();
+                mXmlFile = new File(mContext.getFilesDir(), FILE_NAME);
+                if (mXmlFile.exists()) {
+                    readFromXml(mXmlFile, conditions);
+                }
+                addMissingConditions(conditions);
+                return conditions;
+            } finally {
+                StartupTracer.endSection(traceToken);
             }
-            addMissingConditions(conditions);
-            return conditions;
         }
 
         @Override
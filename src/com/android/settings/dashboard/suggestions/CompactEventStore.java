@@ -0,0 +1,351 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.android.settings.dashboard.suggestions;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.support.annotation.VisibleForTesting;
+import android.util.ArrayMap;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import com.android.settings.utils.TaskScheduler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Process-wide store of suggestion events, kept as one fixed-size record of primitive longs per
+ * package.
+ *
+ * <p>Each record holds, for every event type, the last event time and the event count. Records
+ * live in memory and are persisted as a snapshot file plus an append-only journal: every event
+ * appends a small fixed-size entry to the journal on a background thread, and the journal is
+ * folded back into the snapshot once it grows past {@link #MAX_JOURNAL_ENTRIES}.
+ */
+public final class CompactEventStore {
+
+    private static final String TAG = "CompactEventStore";
+
+    static final int EVENT_SHOWN = 0;
+    static final int EVENT_DISMISSED = 1;
+    static final int EVENT_CLICKED = 2;
+    static final int EVENT_TYPE_COUNT = 3;
+
+    static final int METRIC_LAST_EVENT_TIME = 0;
+    static final int METRIC_COUNT = 1;
+    static final int METRIC_TYPE_COUNT = 2;
+
+    /** Number of longs stored per package. */
+    static final int RECORD_SIZE = EVENT_TYPE_COUNT * METRIC_TYPE_COUNT;
+
+    private static final String SNAPSHOT_FILE = "suggestion_events";
+    private static final String JOURNAL_FILE = "suggestion_events.journal";
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int MAX_JOURNAL_ENTRIES = 256;
+
+    private static final String LEGACY_PREF_KEY_PREFIX = "setting_suggestion_";
+
+    private static CompactEventStore sInstance;
+
+    private final Context mContext;
+    private final ArrayMap<String, long[]> mRecords = new ArrayMap<>();
+    private final File mSnapshotFile;
+    private final File mJournalFile;
+
+    private Handler mWriteHandler;
+    private boolean mLoaded;
+    private int mJournalEntries;
+    // Events applied in memory whose journal entry has not been appended yet. The snapshot is
+    // only written when this is 0, otherwise those events would be counted twice on reload.
+    private int mPendingAppends;
+    private boolean mSnapshotDirty;
+
+    public static synchronized CompactEventStore get(Context context) {
+        final Context appContext = context.getApplicationContext();
+        if (sInstance == null || sInstance.mContext != appContext) {
+            sInstance = new CompactEventStore(appContext);
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    CompactEventStore(Context context) {
+        mContext = context;
+        mSnapshotFile = new File(context.getFilesDir(), SNAPSHOT_FILE);
+        mJournalFile = new File(context.getFilesDir(), JOURNAL_FILE);
+    }
+
+    /**
+     * Records one event for the package. The in-memory record is updated immediately, the
+     * journal entry is appended in the background.
+     */
+    public void writeEvent(String pkgName, int eventType, long timeMs) {
+        synchronized (this) {
+            ensureLoadedLocked();
+            applyEventLocked(pkgName, eventType, timeMs);
+            mPendingAppends++;
+        }
+        getWriteHandler().post(() -> appendJournal(pkgName, eventType, timeMs));
+    }
+
+    /**
+     * Returns a single metric of the package, or 0 if no event was ever recorded.
+     */
+    public synchronized long readMetric(String pkgName, int eventType, int metricType) {
+        ensureLoadedLocked();
+        final long[] record = mRecords.get(pkgName);
+        return record == null ? 0 : record[index(eventType, metricType)];
+    }
+
+    /**
+     * Copies the whole record of the package into {@code out} starting at {@code offset}.
+     *
+     * @return false if no event was ever recorded for the package, in which case the range is
+     * zero filled.
+     */
+    public synchronized boolean readRecord(String pkgName, long[] out, int offset) {
+        ensureLoadedLocked();
+        final long[] record = mRecords.get(pkgName);
+        if (record == null) {
+            for (int i = 0; i < RECORD_SIZE; i++) {
+                out[offset + i] = 0;
+            }
+            return false;
+        }
+        System.arraycopy(record, 0, out, offset, RECORD_SIZE);
+        return true;
+    }
+
+    static int index(int eventType, int metricType) {
+        return eventType * METRIC_TYPE_COUNT + metricType;
+    }
+
+    private void applyEventLocked(String pkgName, int eventType, long timeMs) {
+        long[] record = mRecords.get(pkgName);
+        if (record == null) {
+            record = new long[RECORD_SIZE];
+            mRecords.put(pkgName, record);
+        }
+        record[index(eventType, METRIC_LAST_EVENT_TIME)] = timeMs;
+        record[index(eventType, METRIC_COUNT)]++;
+    }
+
+    private void ensureLoadedLocked() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+        if (!readSnapshotLocked()) {
+            migrateLegacyPrefsLocked();
+        }
+        replayJournalLocked();
+    }
+
+    private boolean readSnapshotLocked() {
+        final AtomicFile file = new AtomicFile(mSnapshotFile);
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(file.openRead()));
+            if (in.readInt() != SNAPSHOT_VERSION) {
+                Log.w(TAG, "Unknown snapshot version, dropping suggestion events");
+                return false;
+            }
+            final int size = in.readInt();
+            mRecords.ensureCapacity(size);
+            for (int i = 0; i < size; i++) {
+                final String pkgName = in.readUTF();
+                final long[] record = new long[RECORD_SIZE];
+                for (int j = 0; j < RECORD_SIZE; j++) {
+                    record[j] = in.readLong();
+                }
+                mRecords.put(pkgName, record);
+            }
+            return true;
+        } catch (FileNotFoundException e) {
+            return false;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read suggestion events", e);
+            mRecords.clear();
+            return false;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void replayJournalLocked() {
+        if (!mJournalFile.exists()) {
+            return;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mJournalFile)));
+            while (true) {
+                final String pkgName = in.readUTF();
+                final int eventType = in.readByte();
+                final long timeMs = in.readLong();
+                if (eventType >= 0 && eventType < EVENT_TYPE_COUNT) {
+                    applyEventLocked(pkgName, eventType, timeMs);
+                }
+                mJournalEntries++;
+            }
+        } catch (EOFException e) {
+            // End of journal, a truncated trailing entry is simply ignored.
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to replay suggestion event journal", e);
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Imports the per-metric SharedPreferences entries written by older versions of
+     * {@link EventStore}, then drops them.
+     */
+    private void migrateLegacyPrefsLocked() {
+        final SharedPreferences prefs =
+                mContext.getSharedPreferences(EventStore.TAG, Context.MODE_PRIVATE);
+        final Map<String, ?> all = prefs.getAll();
+        if (all.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<String, ?> entry : all.entrySet()) {
+            final String key = entry.getKey();
+            if (!key.startsWith(LEGACY_PREF_KEY_PREFIX) || !(entry.getValue() instanceof Long)) {
+                continue;
+            }
+            for (int event = 0; event < EVENT_TYPE_COUNT; event++) {
+                for (int metric = 0; metric < METRIC_TYPE_COUNT; metric++) {
+                    final String suffix = "_" + EventStore.eventName(event)
+                            + "_" + EventStore.metricName(metric);
+                    if (!key.endsWith(suffix)) {
+                        continue;
+                    }
+                    final String pkgName = key.substring(
+                            LEGACY_PREF_KEY_PREFIX.length(), key.length() - suffix.length());
+                    long[] record = mRecords.get(pkgName);
+                    if (record == null) {
+                        record = new long[RECORD_SIZE];
+                        mRecords.put(pkgName, record);
+                    }
+                    record[index(event, metric)] = (Long) entry.getValue();
+                }
+            }
+        }
+        prefs.edit().clear().apply();
+        mSnapshotDirty = true;
+        getWriteHandler().post(this::writeSnapshot);
+    }
+
+    private void appendJournal(String pkgName, int eventType, long timeMs) {
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(mJournalFile, true /* append */)));
+            out.writeUTF(pkgName);
+            out.writeByte(eventType);
+            out.writeLong(timeMs);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to append suggestion event", e);
+        } finally {
+            closeQuietly(out);
+        }
+        final boolean compact;
+        synchronized (this) {
+            mPendingAppends--;
+            compact = mSnapshotDirty || ++mJournalEntries >= MAX_JOURNAL_ENTRIES;
+        }
+        if (compact) {
+            writeSnapshot();
+        }
+    }
+
+    /**
+     * Folds the in-memory records into the snapshot file and truncates the journal. Must run on
+     * the write handler so it is serialized with journal appends.
+     */
+    private void writeSnapshot() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        synchronized (this) {
+            if (mPendingAppends > 0) {
+                // The last pending append will retry.
+                mSnapshotDirty = true;
+                return;
+            }
+            try {
+                final DataOutputStream out = new DataOutputStream(bytes);
+                final int size = mRecords.size();
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeInt(size);
+                for (int i = 0; i < size; i++) {
+                    out.writeUTF(mRecords.keyAt(i));
+                    final long[] record = mRecords.valueAt(i);
+                    for (int j = 0; j < RECORD_SIZE; j++) {
+                        out.writeLong(record[j]);
+                    }
+                }
+            } catch (IOException e) {
+                // Cannot happen with an in-memory stream.
+                return;
+            }
+            mSnapshotDirty = false;
+            mJournalEntries = 0;
+        }
+        final AtomicFile file = new AtomicFile(mSnapshotFile);
+        FileOutputStream fos = null;
+        try {
+            fos = file.startWrite();
+            bytes.writeTo(fos);
+            file.finishWrite(fos);
+            mJournalFile.delete();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write suggestion events", e);
+            if (fos != null) {
+                file.failWrite(fos);
+            }
+        }
+    }
+
+    private synchronized Handler getWriteHandler() {
+        if (mWriteHandler == null) {
+            mWriteHandler = new TaskScheduler.LaneHandler(TaskScheduler.LANE_MAINTENANCE);
+        }
+        return mWriteHandler;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+}
@@ -16,15 +16,12 @@
 package com.android.settings.dashboard.suggestions;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.util.Log;
 
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
-
 /**
  * Stores suggestion related statistics.
+ *
+ * <p>String based facade over {@link CompactEventStore}, which keeps the actual records.
  */
 public class EventStore {
 
@@ -36,67 +33,99 @@ public class EventStore {
     public static final String METRIC_LAST_EVENT_TIME = "last_event_time";
     public static final String METRIC_COUNT = "count";
 
-    private static final Set<String> EVENTS = new HashSet<String>(
-            Arrays.asList(new String[] {EVENT_SHOWN, EVENT_DISMISSED, EVENT_CLICKED}));
-    private static final Set<String> METRICS = new HashSet<String>(
-            Arrays.asList(new String[] {METRIC_LAST_EVENT_TIME, METRIC_COUNT}));
-
-    private final SharedPreferences mSharedPrefs;
+    private final CompactEventStore mStore;
 
     public EventStore(Context context) {
-        mSharedPrefs = context.getSharedPreferences(TAG, Context.MODE_PRIVATE);
+        mStore = CompactEventStore.get(context);
     }
 
     /**
      * Writes individual log events.
      * @param pkgName: Package for which this event is reported.
-     * @param eventType: Type of event (one of {@link #EVENTS}).
+     * @param eventType: Type of event (one of {@link #EVENT_SHOWN}, {@link #EVENT_DISMISSED} or
+     * {@link #EVENT_CLICKED}).
      */
     public void writeEvent(String pkgName, String eventType) {
-        if (!EVENTS.contains(eventType)) {
+        final int event = eventIndex(eventType);
+        if (event < 0) {
             Log.w(TAG, "Reported event type " + eventType + " is not a valid type!");
             return;
         }
-        final String lastTimePrefKey = getPrefKey(pkgName, eventType, METRIC_LAST_EVENT_TIME);
-        final String countPrefKey = getPrefKey(pkgName, eventType, METRIC_COUNT);
-        writePref(lastTimePrefKey, System.currentTimeMillis());
-        writePref(countPrefKey, readPref(countPrefKey, (long) 0) + 1);
+        mStore.writeEvent(pkgName, event, System.currentTimeMillis());
     }
 
     /**
      * Reads metric of the the reported events (e.g., counts).
      * @param pkgName: Package for which this metric is queried.
-     * @param eventType: Type of event (one of {@link #EVENTS}).
-     * @param metricType: Type of the queried metric (one of {@link #METRICS}).
+     * @param eventType: Type of event (one of {@link #EVENT_SHOWN}, {@link #EVENT_DISMISSED} or
+     * {@link #EVENT_CLICKED}).
+     * @param metricType: Type of the queried metric (one of {@link #METRIC_LAST_EVENT_TIME} or
+     * {@link #METRIC_COUNT}).
      * @return the corresponding metric.
      */
     public long readMetric(String pkgName, String eventType, String metricType) {
-        if (!EVENTS.contains(eventType)) {
+        final int event = eventIndex(eventType);
+        final int metric = metricIndex(metricType);
+        if (event < 0) {
             Log.w(TAG, "Reported event type " + eventType + " is not a valid event!");
             return 0;
-        } else if (!METRICS.contains(metricType)) {
+        } else if (metric < 0) {
             Log.w(TAG, "Required stat type + " + metricType + " is not a valid stat!");
             return 0;
         }
-        return readPref(getPrefKey(pkgName, eventType, metricType), (long) 0);
+        return mStore.readMetric(pkgName, event, metric);
     }
 
-    private void writePref(String prefKey, long value) {
-        mSharedPrefs.edit().putLong(prefKey, value).commit();
+    /**
+     * Copies all metrics of the package into {@code out}, laid out as described by
+     * {@link CompactEventStore#index(int, int)}, without allocating.
+     * @return false if nothing was ever recorded for the package.
+     */
+    boolean readRecord(String pkgName, long[] out, int offset) {
+        return mStore.readRecord(pkgName, out, offset);
     }
 
-    private long readPref(String prefKey, Long defaultValue) {
-        return mSharedPrefs.getLong(prefKey, defaultValue);
+    static String eventName(int event) {
+        switch (event) {
+            case CompactEventStore.EVENT_SHOWN:
+                return EVENT_SHOWN;
+            case CompactEventStore.EVENT_DISMISSED:
+                return EVENT_DISMISSED;
+            case CompactEventStore.EVENT_CLICKED:
+                return EVENT_CLICKED;
+            default:
+                return null;
+        }
     }
 
-    private String getPrefKey(String pkgName, String eventType, String statType) {
-        return new StringBuilder()
-                .append("setting_suggestion_")
-                .append(pkgName)
-                .append("_")
-                .append(eventType)
-                .append("_")
-                .append(statType)
-                .toString();
+    static String metricName(int metric) {
+        switch (metric) {
+            case CompactEventStore.METRIC_LAST_EVENT_TIME:
+                return METRIC_LAST_EVENT_TIME;
+            case CompactEventStore.METRIC_COUNT:
+                return METRIC_COUNT;
+            default:
+                return null;
+        }
+    }
+
+    private static int eventIndex(String eventType) {
+        if (EVENT_SHOWN.equals(eventType)) {
+            return CompactEventStore.EVENT_SHOWN;
+        } else if (EVENT_DISMISSED.equals(eventType)) {
+            return CompactEventStore.EVENT_DISMISSED;
+        } else if (EVENT_CLICKED.equals(eventType)) {
+            return CompactEventStore.EVENT_CLICKED;
+        }
+        return -1;
+    }
+
+    private static int metricIndex(String metricType) {
+        if (METRIC_LAST_EVENT_TIME.equals(metricType)) {
+            return CompactEventStore.METRIC_LAST_EVENT_TIME;
+        } else if (METRIC_COUNT.equals(metricType)) {
+            return CompactEventStore.METRIC_COUNT;
+        }
+        return -1;
     }
 }
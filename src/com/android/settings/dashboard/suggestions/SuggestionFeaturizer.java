@@ -38,11 +38,37 @@ public class SuggestionFeaturizer {
     public static final String FEATURE_DISMISSED_COUNT = "dismissed_count";
     public static final String FEATURE_CLICKED_COUNT = "clicked_count";
 
+    // Position of each feature inside a row of the compact feature matrix.
+    public static final int FEATURE_INDEX_IS_SHOWN = 0;
+    public static final int FEATURE_INDEX_IS_DISMISSED = 1;
+    public static final int FEATURE_INDEX_IS_CLICKED = 2;
+    public static final int FEATURE_INDEX_TIME_FROM_LAST_SHOWN = 3;
+    public static final int FEATURE_INDEX_TIME_FROM_LAST_DISMISSED = 4;
+    public static final int FEATURE_INDEX_TIME_FROM_LAST_CLICKED = 5;
+    public static final int FEATURE_INDEX_SHOWN_COUNT = 6;
+    public static final int FEATURE_INDEX_DISMISSED_COUNT = 7;
+    public static final int FEATURE_INDEX_CLICKED_COUNT = 8;
+    public static final int FEATURE_COUNT = 9;
+
+    // Feature keys, ordered by feature index.
+    private static final String[] FEATURE_KEYS = {
+            FEATURE_IS_SHOWN,
+            FEATURE_IS_DISMISSED,
+            FEATURE_IS_CLICKED,
+            FEATURE_TIME_FROM_LAST_SHOWN,
+            FEATURE_TIME_FROM_LAST_DISMISSED,
+            FEATURE_TIME_FROM_LAST_CLICKED,
+            FEATURE_SHOWN_COUNT,
+            FEATURE_DISMISSED_COUNT,
+            FEATURE_CLICKED_COUNT,
+    };
+
     // The following numbers are estimated from histograms.
     public static final double TIME_NORMALIZATION_FACTOR = 2e10;
     public static final double COUNT_NORMALIZATION_FACTOR = 500;
 
     private final EventStore mEventStore;
+    private final long[] mRecord = new long[CompactEventStore.RECORD_SIZE];
 
     /**
      * Constructor
@@ -62,36 +88,64 @@ public class SuggestionFeaturizer {
      * another map with key-value pairs of the features.
      */
     public Map<String, Map<String, Double>> featurize(List<String> pkgNames) {
-        Map<String, Map<String, Double>> features = new HashMap<>();
-        Long curTimeMs = System.currentTimeMillis();
-        for (String pkgName : pkgNames) {
-            Map<String, Double> featureMap = new HashMap<>();
-            features.put(pkgName, featureMap);
-            Long lastShownTime = mEventStore
-                    .readMetric(pkgName, EventStore.EVENT_SHOWN, EventStore.METRIC_LAST_EVENT_TIME);
-            Long lastDismissedTime = mEventStore.readMetric(pkgName, EventStore.EVENT_DISMISSED,
-                    EventStore.METRIC_LAST_EVENT_TIME);
-            Long lastClickedTime = mEventStore.readMetric(pkgName, EventStore.EVENT_CLICKED,
-                    EventStore.METRIC_LAST_EVENT_TIME);
-            featureMap.put(FEATURE_IS_SHOWN, booleanToDouble(lastShownTime > 0));
-            featureMap.put(FEATURE_IS_DISMISSED, booleanToDouble(lastDismissedTime > 0));
-            featureMap.put(FEATURE_IS_CLICKED, booleanToDouble(lastClickedTime > 0));
-            featureMap.put(FEATURE_TIME_FROM_LAST_SHOWN,
-                    normalizedTimeDiff(curTimeMs, lastShownTime));
-            featureMap.put(FEATURE_TIME_FROM_LAST_DISMISSED,
-                    normalizedTimeDiff(curTimeMs, lastDismissedTime));
-            featureMap.put(FEATURE_TIME_FROM_LAST_CLICKED,
-                    normalizedTimeDiff(curTimeMs, lastClickedTime));
-            featureMap.put(FEATURE_SHOWN_COUNT, normalizedCount(mEventStore
-                    .readMetric(pkgName, EventStore.EVENT_SHOWN, EventStore.METRIC_COUNT)));
-            featureMap.put(FEATURE_DISMISSED_COUNT, normalizedCount(mEventStore
-                    .readMetric(pkgName, EventStore.EVENT_DISMISSED, EventStore.METRIC_COUNT)));
-            featureMap.put(FEATURE_CLICKED_COUNT, normalizedCount(mEventStore
-                    .readMetric(pkgName, EventStore.EVENT_CLICKED, EventStore.METRIC_COUNT)));
+        final double[] matrix = featurize(pkgNames, null);
+        final Map<String, Map<String, Double>> features = new HashMap<>();
+        for (int i = 0; i < pkgNames.size(); i++) {
+            final Map<String, Double> featureMap = new HashMap<>();
+            for (int j = 0; j < FEATURE_COUNT; j++) {
+                featureMap.put(FEATURE_KEYS[j], matrix[i * FEATURE_COUNT + j]);
+            }
+            features.put(pkgNames.get(i), featureMap);
         }
         return features;
     }
 
+    /**
+     * Extracts the features for each package name into a flat matrix, without allocating when
+     * {@code out} is large enough.
+     *
+     * @param pkgNames: List of package names for which features are queried.
+     * @param out: Matrix to reuse, may be null or too small, in which case a new one is created.
+     * @return A matrix with one row of {@link #FEATURE_COUNT} features per package, in the order of
+     * {@code pkgNames}. Features are addressed with the {@code FEATURE_INDEX_*} constants.
+     */
+    public synchronized double[] featurize(List<String> pkgNames, double[] out) {
+        final int size = pkgNames.size();
+        if (out == null || out.length < size * FEATURE_COUNT) {
+            out = new double[size * FEATURE_COUNT];
+        }
+        final long curTimeMs = System.currentTimeMillis();
+        final long[] record = mRecord;
+        for (int i = 0; i < size; i++) {
+            mEventStore.readRecord(pkgNames.get(i), record, 0);
+            final long lastShownTime = record[CompactEventStore.index(
+                    CompactEventStore.EVENT_SHOWN, CompactEventStore.METRIC_LAST_EVENT_TIME)];
+            final long lastDismissedTime = record[CompactEventStore.index(
+                    CompactEventStore.EVENT_DISMISSED, CompactEventStore.METRIC_LAST_EVENT_TIME)];
+            final long lastClickedTime = record[CompactEventStore.index(
+                    CompactEventStore.EVENT_CLICKED, CompactEventStore.METRIC_LAST_EVENT_TIME)];
+            final int row = i * FEATURE_COUNT;
+            out[row + FEATURE_INDEX_IS_SHOWN] = booleanToDouble(lastShownTime > 0);
+            out[row + FEATURE_INDEX_IS_DISMISSED] = booleanToDouble(lastDismissedTime > 0);
+            out[row + FEATURE_INDEX_IS_CLICKED] = booleanToDouble(lastClickedTime > 0);
+            out[row + FEATURE_INDEX_TIME_FROM_LAST_SHOWN] =
+                    normalizedTimeDiff(curTimeMs, lastShownTime);
+            out[row + FEATURE_INDEX_TIME_FROM_LAST_DISMISSED] =
+                    normalizedTimeDiff(curTimeMs, lastDismissedTime);
+            out[row + FEATURE_INDEX_TIME_FROM_LAST_CLICKED] =
+                    normalizedTimeDiff(curTimeMs, lastClickedTime);
+            out[row + FEATURE_INDEX_SHOWN_COUNT] = normalizedCount(record[CompactEventStore.index(
+                    CompactEventStore.EVENT_SHOWN, CompactEventStore.METRIC_COUNT)]);
+            out[row + FEATURE_INDEX_DISMISSED_COUNT] = normalizedCount(
+                    record[CompactEventStore.index(
+                            CompactEventStore.EVENT_DISMISSED, CompactEventStore.METRIC_COUNT)]);
+            out[row + FEATURE_INDEX_CLICKED_COUNT] = normalizedCount(
+                    record[CompactEventStore.index(
+                            CompactEventStore.EVENT_CLICKED, CompactEventStore.METRIC_COUNT)]);
+        }
+        return out;
+    }
+
     private static double booleanToDouble(boolean bool) {
         return bool ? 1 : 0;
     }
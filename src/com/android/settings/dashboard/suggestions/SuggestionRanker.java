@@ -19,11 +19,7 @@ import com.android.settingslib.drawer.Tile;
 
 import android.support.annotation.VisibleForTesting;
 
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public class SuggestionRanker {
 
@@ -32,51 +28,73 @@ public class SuggestionRanker {
     // The following coefficients form a linear model, which mixes the features to obtain a
     // relevance metric for ranking the suggestion items. This model is learned with off-line data
     // by training a binary classifier to detect the clicked items. The higher the obtained
-    // relevance metric, the higher chance of getting clicked.
-    private static final Map<String, Double> WEIGHTS = new HashMap<String, Double>() {{
-        put(SuggestionFeaturizer.FEATURE_IS_SHOWN, 4.07506758256);
-        put(SuggestionFeaturizer.FEATURE_IS_DISMISSED, 2.11535473578);
-        put(SuggestionFeaturizer.FEATURE_IS_CLICKED, 1.21885461304);
-        put(SuggestionFeaturizer.FEATURE_TIME_FROM_LAST_SHOWN, 3.18832024515);
-        put(SuggestionFeaturizer.FEATURE_TIME_FROM_LAST_DISMISSED, 1.09902706645);
-        put(SuggestionFeaturizer.FEATURE_TIME_FROM_LAST_CLICKED, 0.262631082877);
-        put(SuggestionFeaturizer.FEATURE_SHOWN_COUNT, -220.4361849);
-    }};
+    // relevance metric, the higher chance of getting clicked. Indexed by feature index.
+    private static final double[] WEIGHTS = new double[SuggestionFeaturizer.FEATURE_COUNT];
 
-    private final SuggestionFeaturizer mSuggestionFeaturizer;
+    static {
+        WEIGHTS[SuggestionFeaturizer.FEATURE_INDEX_IS_SHOWN] = 4.07506758256;
+        WEIGHTS[SuggestionFeaturizer.FEATURE_INDEX_IS_DISMISSED] = 2.11535473578;
+        WEIGHTS[SuggestionFeaturizer.FEATURE_INDEX_IS_CLICKED] = 1.21885461304;
+        WEIGHTS[SuggestionFeaturizer.FEATURE_INDEX_TIME_FROM_LAST_SHOWN] = 3.18832024515;
+        WEIGHTS[SuggestionFeaturizer.FEATURE_INDEX_TIME_FROM_LAST_DISMISSED] = 1.09902706645;
+        WEIGHTS[SuggestionFeaturizer.FEATURE_INDEX_TIME_FROM_LAST_CLICKED] = 0.262631082877;
+        WEIGHTS[SuggestionFeaturizer.FEATURE_INDEX_SHOWN_COUNT] = -220.4361849;
+    }
 
-    private final Map<Tile, Double> relevanceMetrics;
+    private final SuggestionFeaturizer mSuggestionFeaturizer;
 
-    Comparator<Tile> suggestionComparator = new Comparator<Tile>() {
-        @Override
-        public int compare(Tile suggestion1, Tile suggestion2) {
-            return relevanceMetrics.get(suggestion1) < relevanceMetrics.get(suggestion2) ? 1 : -1;
-        }
-    };
+    // Scratch buffers reused across calls, grown as needed.
+    private double[] mFeatures;
+    private double[] mRelevanceMetrics = new double[0];
+    private Tile[] mSorted = new Tile[0];
 
     public SuggestionRanker(SuggestionFeaturizer suggestionFeaturizer) {
         mSuggestionFeaturizer = suggestionFeaturizer;
-        relevanceMetrics = new HashMap<Tile, Double>();
     }
 
-    public void rankSuggestions(final List<Tile> suggestions, List<String> suggestionIds) {
-        relevanceMetrics.clear();
-        Map<String, Map<String, Double>> features = mSuggestionFeaturizer.featurize(suggestionIds);
-        for (int i = 0; i < suggestionIds.size(); i++) {
-            relevanceMetrics.put(suggestions.get(i),
-                    getRelevanceMetric(features.get(suggestionIds.get(i))));
+    public synchronized void rankSuggestions(final List<Tile> suggestions,
+            List<String> suggestionIds) {
+        final int size = suggestionIds.size();
+        if (mRelevanceMetrics.length < size) {
+            mRelevanceMetrics = new double[size];
+            mSorted = new Tile[size];
+        }
+        mFeatures = mSuggestionFeaturizer.featurize(suggestionIds, mFeatures);
+        final double[] metrics = mRelevanceMetrics;
+        final Tile[] sorted = mSorted;
+        // Insertion sort by decreasing relevance on parallel arrays; there are only a few dozen
+        // suggestions, and it keeps the ranking free of boxing and comparator allocations.
+        for (int i = 0; i < size; i++) {
+            final double metric =
+                    getRelevanceMetric(mFeatures, i * SuggestionFeaturizer.FEATURE_COUNT);
+            final Tile suggestion = suggestions.get(i);
+            int j = i - 1;
+            while (j >= 0 && metrics[j] < metric) {
+                metrics[j + 1] = metrics[j];
+                sorted[j + 1] = sorted[j];
+                j--;
+            }
+            metrics[j + 1] = metric;
+            sorted[j + 1] = suggestion;
+        }
+        for (int i = 0; i < size; i++) {
+            suggestions.set(i, sorted[i]);
+            sorted[i] = null;
         }
-        Collections.sort(suggestions, suggestionComparator);
     }
 
+    /**
+     * Computes the relevance metric of one row of the feature matrix returned by
+     * {@link SuggestionFeaturizer#featurize(List, double[])}.
+     */
     @VisibleForTesting
-    double getRelevanceMetric(Map<String, Double> features) {
+    double getRelevanceMetric(double[] features, int offset) {
         double sum = 0;
         if (features == null) {
             return sum;
         }
-        for (String feature : WEIGHTS.keySet()) {
-            sum += WEIGHTS.get(feature) * features.get(feature);
+        for (int i = 0; i < SuggestionFeaturizer.FEATURE_COUNT; i++) {
+            sum += WEIGHTS[i] * features[offset + i];
         }
         return sum;
     }
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.development;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.net.wifi.WifiManager;
+import android.os.Build;
+import android.os.SystemProperties;
+import android.provider.Settings;
+import android.view.ThreadedRenderer;
+import android.view.View;
+
+/**
+ * Immutable values of the on/off developer options, read in one pass off the main thread by
+ * {@link #load(Context, WifiManager)}.
+ */
+final class DevelopmentOptionsSnapshot {
+
+    static final int OPTION_ENABLE_ADB = 0;
+    static final int OPTION_ENABLE_TERMINAL = 1;
+    static final int OPTION_KEEP_SCREEN_ON = 2;
+    static final int OPTION_BT_HCI_SNOOP_LOG = 3;
+    static final int OPTION_DEBUG_VIEW_ATTRIBUTES = 4;
+    static final int OPTION_FORCE_ALLOW_ON_EXTERNAL = 5;
+    static final int OPTION_STRICT_MODE = 6;
+    static final int OPTION_POINTER_LOCATION = 7;
+    static final int OPTION_SHOW_TOUCHES = 8;
+    static final int OPTION_FORCE_HARDWARE_UI = 9;
+    static final int OPTION_FORCE_MSAA = 10;
+    static final int OPTION_SHOW_HW_SCREEN_UPDATES = 11;
+    static final int OPTION_SHOW_HW_LAYERS_UPDATES = 12;
+    static final int OPTION_DEBUG_LAYOUT = 13;
+    static final int OPTION_IMMEDIATELY_DESTROY_ACTIVITIES = 14;
+    static final int OPTION_SHOW_ALL_ANRS = 15;
+    static final int OPTION_SHOW_NOTIFICATION_CHANNEL_WARNINGS = 16;
+    static final int OPTION_FORCE_RTL = 17;
+    static final int OPTION_WIFI_DISPLAY_CERTIFICATION = 18;
+    static final int OPTION_WIFI_VERBOSE_LOGGING = 19;
+    static final int OPTION_WIFI_AGGRESSIVE_HANDOVER = 20;
+    static final int OPTION_WIFI_ALLOW_SCANS_WITH_TRAFFIC = 21;
+    static final int OPTION_MOBILE_DATA_ALWAYS_ON = 22;
+    static final int OPTION_USB_AUDIO = 23;
+    static final int OPTION_FORCE_RESIZABLE = 24;
+    static final int OPTION_BT_DISABLE_ABS_VOLUME = 25;
+    static final int OPTION_BT_ENABLE_INBAND_RINGING = 26;
+    static final int OPTION_COUNT = 27;
+
+    private final boolean[] mValues;
+
+    private DevelopmentOptionsSnapshot(boolean[] values) {
+        mValues = values;
+    }
+
+    /**
+     * Returns whether {@code option} is turned on.
+     */
+    boolean get(int option) {
+        return mValues[option];
+    }
+
+    /**
+     * Reads the current value of every option. Does disk and binder calls, so never call it on
+     * the main thread.
+     */
+    static DevelopmentOptionsSnapshot load(Context context, WifiManager wifiManager) {
+        final ContentResolver cr = context.getContentResolver();
+        final boolean[] values = new boolean[OPTION_COUNT];
+
+        values[OPTION_ENABLE_ADB] = getGlobal(cr, Settings.Global.ADB_ENABLED, 0);
+        values[OPTION_ENABLE_TERMINAL] = isTerminalEnabled(context);
+        values[OPTION_KEEP_SCREEN_ON] = getGlobal(cr, Settings.Global.STAY_ON_WHILE_PLUGGED_IN, 0);
+        values[OPTION_DEBUG_VIEW_ATTRIBUTES] =
+                getGlobal(cr, Settings.Global.DEBUG_VIEW_ATTRIBUTES, 0);
+        values[OPTION_FORCE_ALLOW_ON_EXTERNAL] =
+                getGlobal(cr, Settings.Global.FORCE_ALLOW_ON_EXTERNAL, 0);
+        values[OPTION_IMMEDIATELY_DESTROY_ACTIVITIES] =
+                getGlobal(cr, Settings.Global.ALWAYS_FINISH_ACTIVITIES, 0);
+        values[OPTION_SHOW_NOTIFICATION_CHANNEL_WARNINGS] =
+                getGlobal(cr, Settings.Global.SHOW_NOTIFICATION_CHANNEL_WARNINGS,
+                        Build.IS_DEBUGGABLE ? 1 : 0);
+        values[OPTION_FORCE_RTL] = getGlobal(cr, Settings.Global.DEVELOPMENT_FORCE_RTL, 0);
+        values[OPTION_WIFI_DISPLAY_CERTIFICATION] =
+                getGlobal(cr, Settings.Global.WIFI_DISPLAY_CERTIFICATION_ON, 0);
+        values[OPTION_MOBILE_DATA_ALWAYS_ON] =
+                getGlobal(cr, Settings.Global.MOBILE_DATA_ALWAYS_ON, 1);
+        values[OPTION_FORCE_RESIZABLE] =
+                getGlobal(cr, Settings.Global.DEVELOPMENT_FORCE_RESIZABLE_ACTIVITIES, 0);
+
+        values[OPTION_SHOW_ALL_ANRS] =
+                Settings.Secure.getInt(cr, Settings.Secure.ANR_SHOW_BACKGROUND, 0) != 0;
+        values[OPTION_USB_AUDIO] = Settings.Secure.getInt(cr,
+                Settings.Secure.USB_AUDIO_AUTOMATIC_ROUTING_DISABLED, 0) != 0;
+        values[OPTION_POINTER_LOCATION] =
+                Settings.System.getInt(cr, Settings.System.POINTER_LOCATION, 0) != 0;
+        values[OPTION_SHOW_TOUCHES] =
+                Settings.System.getInt(cr, Settings.System.SHOW_TOUCHES, 0) != 0;
+
+        values[OPTION_BT_HCI_SNOOP_LOG] = SystemProperties.getBoolean(
+                DevelopmentSettings.BLUETOOTH_BTSNOOP_ENABLE_PROPERTY, false);
+        values[OPTION_STRICT_MODE] = DevelopmentSettings.currentStrictModeActiveIndex() == 1;
+        values[OPTION_FORCE_HARDWARE_UI] =
+                SystemProperties.getBoolean(DevelopmentSettings.HARDWARE_UI_PROPERTY, false);
+        values[OPTION_FORCE_MSAA] =
+                SystemProperties.getBoolean(DevelopmentSettings.MSAA_PROPERTY, false);
+        values[OPTION_SHOW_HW_SCREEN_UPDATES] = SystemProperties.getBoolean(
+                ThreadedRenderer.DEBUG_DIRTY_REGIONS_PROPERTY, false);
+        values[OPTION_SHOW_HW_LAYERS_UPDATES] = SystemProperties.getBoolean(
+                ThreadedRenderer.DEBUG_SHOW_LAYERS_UPDATES_PROPERTY, false);
+        values[OPTION_DEBUG_LAYOUT] =
+                SystemProperties.getBoolean(View.DEBUG_LAYOUT_PROPERTY, false);
+        values[OPTION_BT_DISABLE_ABS_VOLUME] = SystemProperties.getBoolean(
+                DevelopmentSettings.BLUETOOTH_DISABLE_ABSOLUTE_VOLUME_PROPERTY, false);
+        values[OPTION_BT_ENABLE_INBAND_RINGING] = SystemProperties.getBoolean(
+                DevelopmentSettings.BLUETOOTH_ENABLE_INBAND_RINGING_PROPERTY, false);
+
+        values[OPTION_WIFI_VERBOSE_LOGGING] = wifiManager.getVerboseLoggingLevel() > 0;
+        values[OPTION_WIFI_AGGRESSIVE_HANDOVER] = wifiManager.getAggressiveHandover() > 0;
+        values[OPTION_WIFI_ALLOW_SCANS_WITH_TRAFFIC] =
+                wifiManager.getAllowScansWithTraffic() > 0;
+
+        return new DevelopmentOptionsSnapshot(values);
+    }
+
+    private static boolean getGlobal(ContentResolver cr, String name, int def) {
+        return Settings.Global.getInt(cr, name, def) != 0;
+    }
+
+    private static boolean isTerminalEnabled(Context context) {
+        try {
+            return context.getPackageManager().getApplicationEnabledSetting(
+                    DevelopmentSettings.TERMINAL_APP_PACKAGE)
+                    == PackageManager.COMPONENT_ENABLED_STATE_ENABLED;
+        } catch (IllegalArgumentException e) {
+            // Not installed.
+            return false;
+        }
+    }
+}
@@ -51,7 +51,9 @@ import android.os.AsyncTask;
 import android.os.BatteryManager;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.os.Parcel;
 import android.os.RemoteException;
 import android.os.ServiceManager;
@@ -96,6 +98,7 @@ import com.android.settings.dashboard.DashboardFeatureProvider;
 import com.android.settings.overlay.FeatureFactory;
 import com.android.settings.search.BaseSearchIndexProvider;
 import com.android.settings.search.Indexable;
+import com.android.settings.utils.TaskScheduler;
 import com.android.settings.webview.WebViewAppPreferenceController;
 import com.android.settings.widget.SwitchBar;
 import com.android.settingslib.RestrictedLockUtils;
@@ -139,8 +142,8 @@ public class DevelopmentSettings extends RestrictedSettingsFragment
     private static final String HDCP_CHECKING_KEY = "hdcp_checking";
     private static final String HDCP_CHECKING_PROPERTY = "persist.sys.hdcp_checking";
     private static final String LOCAL_BACKUP_PASSWORD = "local_backup_password";
-    private static final String HARDWARE_UI_PROPERTY = "persist.sys.ui.hw";
-    private static final String MSAA_PROPERTY = "debug.egl.force_msaa";
+    static final String HARDWARE_UI_PROPERTY = "persist.sys.ui.hw";
+    static final String MSAA_PROPERTY = "debug.egl.force_msaa";
     private static final String OPENGL_TRACES_PROPERTY = "debug.egl.trace";
     private static final String TUNER_UI_KEY = "tuner_ui";
     private static final String COLOR_TEMPERATURE_PROPERTY = "persist.sys.debug.color_temp";
@@ -208,13 +211,13 @@ public class DevelopmentSettings extends RestrictedSettingsFragment
 
     private static final String BLUETOOTH_DISABLE_ABSOLUTE_VOLUME_KEY =
             "bluetooth_disable_absolute_volume";
-    private static final String BLUETOOTH_DISABLE_ABSOLUTE_VOLUME_PROPERTY =
+    static final String BLUETOOTH_DISABLE_ABSOLUTE_VOLUME_PROPERTY =
             "persist.bluetooth.disableabsvol";
     private static final String BLUETOOTH_AVRCP_VERSION_PROPERTY =
                                     "persist.bluetooth.avrcpversion";
-    private static final String BLUETOOTH_ENABLE_INBAND_RINGING_PROPERTY =
+    static final String BLUETOOTH_ENABLE_INBAND_RINGING_PROPERTY =
                                     "persist.bluetooth.enableinbandringing";
-    private static final String BLUETOOTH_BTSNOOP_ENABLE_PROPERTY =
+    static final String BLUETOOTH_BTSNOOP_ENABLE_PROPERTY =
                                     "persist.bluetooth.btsnoopenable";
 
     private static final String BLUETOOTH_ENABLE_INBAND_RINGING_KEY = "bluetooth_enable_inband_ringing";
@@ -237,7 +240,7 @@ public class DevelopmentSettings extends RestrictedSettingsFragment
 
     private static final String SHOW_NOTIFICATION_CHANNEL_WARNINGS_KEY = "show_notification_channel_warnings";
 
-    private static final String TERMINAL_APP_PACKAGE = "com.android.terminal";
+    static final String TERMINAL_APP_PACKAGE = "com.android.terminal";
 
     private static final String KEY_CONVERT_FBE = "convert_to_file_encryption";
 
@@ -266,6 +269,13 @@ public class DevelopmentSettings extends RestrictedSettingsFragment
     private SwitchBar mSwitchBar;
 
     private boolean mHaveDebugSettings;
+    // Number of background loads of the on/off options started, see loadOptionsSnapshot().
+    private int mOptionsLoadSeq;
+    // Last load started before the user flipped each on/off option, by option.
+    private final int[] mOptionWrittenAtLoad = new int[DevelopmentOptionsSnapshot.OPTION_COUNT];
+    private final TaskScheduler.CancellationToken mOptionsSnapshotToken =
+            new TaskScheduler.CancellationToken();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
     private boolean mDontPokeProperties;
     private SwitchPreference mEnableAdb;
     private SwitchPreference mAdbOverNetwork;
@@ -381,6 +391,7 @@ public class DevelopmentSettings extends RestrictedSettingsFragment
     public void onAttach(Context context) {
         super.onAttach(context);
         mSettingsEnabler = new DevelopmentSettingsEnabler(context, getLifecycle());
+        getLifecycle().addObserver(mOptionsSnapshotToken);
         mDashboardFeatureProvider = FeatureFactory.getFactory(context)
                 .getDashboardFeatureProvider(context);
     }
@@ -699,16 +710,7 @@ public class DevelopmentSettings extends RestrictedSettingsFragment
         final boolean lastEnabledState = mSettingsEnabler.getLastEnabledState();
         mSwitchBar.setChecked(lastEnabledState);
         setPrefsEnabledState(lastEnabledState);
-
-        if (mHaveDebugSettings && !lastEnabledState) {
-            // Overall debugging is disabled, but there are some debug
-            // settings that are enabled.  This is an invalid state.  Switch
-            // to debug settings being enabled, so the user knows there is
-            // stuff enabled and can turn it all off if they want.
-            mSettingsEnabler.enableDevelopmentSettings();
-            mSwitchBar.setChecked(lastEnabledState);
-            setPrefsEnabledState(lastEnabledState);
-        }
+        enableIfHaveDebugSettings();
         mSwitchBar.show();
 
         if (mColorModePreference != null) {
@@ -767,78 +769,171 @@ public class DevelopmentSettings extends RestrictedSettingsFragment
         }
     }
 
+    private void enableIfHaveDebugSettings() {
+        final boolean lastEnabledState = mSettingsEnabler.getLastEnabledState();
+        if (mHaveDebugSettings && !lastEnabledState) {
+            // Overall debugging is disabled, but there are some debug
+            // settings that are enabled.  This is an invalid state.  Switch
+            // to debug settings being enabled, so the user knows there is
+            // stuff enabled and can turn it all off if they want.
+            mSettingsEnabler.enableDevelopmentSettings();
+            mSwitchBar.setChecked(lastEnabledState);
+            setPrefsEnabledState(lastEnabledState);
+        }
+    }
+
     void updateSwitchPreference(SwitchPreference switchPreference, boolean value) {
         switchPreference.setChecked(value);
         mHaveDebugSettings |= value;
     }
 
     private void updateAllOptions() {
-        final Context context = getActivity();
-        final ContentResolver cr = context.getContentResolver();
-        mHaveDebugSettings = false;
-        updateSwitchPreference(mEnableAdb, Settings.Global.getInt(cr,
-                Settings.Global.ADB_ENABLED, 0) != 0);
-        if (mEnableTerminal != null) {
-            updateSwitchPreference(mEnableTerminal,
-                    context.getPackageManager().getApplicationEnabledSetting(TERMINAL_APP_PACKAGE)
-                            == PackageManager.COMPONENT_ENABLED_STATE_ENABLED);
-        }
+        // The on/off options are read in the background and applied when loaded, keep the
+        // values they show until then.
+        loadOptionsSnapshot();
+        mHaveDebugSettings = hasCheckedSnapshotOptions();
         mHaveDebugSettings |= mTelephonyMonitorController.updatePreference();
-        updateSwitchPreference(mKeepScreenOn, Settings.Global.getInt(cr,
-                Settings.Global.STAY_ON_WHILE_PLUGGED_IN, 0) != 0);
-        updateSwitchPreference(mBtHciSnoopLog, SystemProperties.getBoolean(
-                BLUETOOTH_BTSNOOP_ENABLE_PROPERTY, false));
-        updateSwitchPreference(mDebugViewAttributes, Settings.Global.getInt(cr,
-                Settings.Global.DEBUG_VIEW_ATTRIBUTES, 0) != 0);
-        updateSwitchPreference(mForceAllowOnExternal, Settings.Global.getInt(cr,
-                Settings.Global.FORCE_ALLOW_ON_EXTERNAL, 0) != 0);
         updateHdcpValues();
         updatePasswordSummary();
         updateDebuggerOptions();
         updateMockLocation();
-        updateStrictModeVisualOptions();
-        updatePointerLocationOptions();
-        updateShowTouchesOptions();
         updateFlingerOptions();
-        updateHardwareUiOptions();
-        updateMsaaOptions();
         updateTrackFrameTimeOptions();
         updateShowNonRectClipOptions();
-        updateShowHwScreenUpdatesOptions();
-        updateShowHwLayersUpdatesOptions();
         updateDebugHwOverdrawOptions();
         updateDebugHwRendererOptions();
-        updateDebugLayoutOptions();
         updateAnimationScaleOptions();
         updateOverlayDisplayDevicesOptions();
-        updateImmediatelyDestroyActivitiesOptions();
         updateAppProcessLimitOptions();
-        updateShowAllANRsOptions();
-        updateShowNotificationChannelWarningsOptions();
         mVerifyAppsOverUsbController.updatePreference();
-        updateForceRtlOptions();
         updateLogdSizeValues();
         updateLogpersistValues();
-        updateWifiDisplayCertificationOptions();
-        updateWifiVerboseLoggingOptions();
-        updateWifiAggressiveHandoverOptions();
-        updateWifiAllowScansWithTrafficOptions();
-        updateMobileDataAlwaysOnOptions();
         updateSimulateColorSpace();
-        updateUSBAudioOptions();
-        updateForceResizableOptions();
         Preference webViewAppPref = findPreference(mWebViewAppPrefController.getPreferenceKey());
         mWebViewAppPrefController.updateState(webViewAppPref);
         updateOemUnlockOptions();
         if (mColorTemperaturePreference != null) {
             updateColorTemperature();
         }
-        updateBluetoothDisableAbsVolumeOptions();
-        updateBluetoothEnableInbandRingingOptions();
         updateBluetoothA2dpConfigurationValues();
         updateAdbOverNetwork();
     }
 
+    private void loadOptionsSnapshot() {
+        final Context context = getActivity().getApplicationContext();
+        final WifiManager wifiManager = mWifiManager;
+        final int loadSeq = ++mOptionsLoadSeq;
+        TaskScheduler.get().post(TaskScheduler.LANE_VISIBLE_CONTENT, mOptionsSnapshotToken,
+                () -> {
+                    final DevelopmentOptionsSnapshot snapshot =
+                            DevelopmentOptionsSnapshot.load(context, wifiManager);
+                    mHandler.post(() -> {
+                        if (!mOptionsSnapshotToken.isCancelled()) {
+                            applyOptionsSnapshot(snapshot, loadSeq);
+                        }
+                    });
+                });
+    }
+
+    @VisibleForTesting
+    void applyOptionsSnapshot(DevelopmentOptionsSnapshot snapshot, int loadSeq) {
+        for (int option = 0; option < DevelopmentOptionsSnapshot.OPTION_COUNT; option++) {
+            final SwitchPreference preference = getSnapshotPreference(option);
+            // A load that started before the user flipped a switch may have read the old value,
+            // leave the switch as the user set it.
+            if (preference == null || mOptionWrittenAtLoad[option] >= loadSeq) {
+                continue;
+            }
+            if (preference.isChecked() != snapshot.get(option)) {
+                preference.setChecked(snapshot.get(option));
+            }
+        }
+        if (hasCheckedSnapshotOptions()) {
+            mHaveDebugSettings = true;
+            enableIfHaveDebugSettings();
+        }
+    }
+
+    private boolean hasCheckedSnapshotOptions() {
+        for (int option = 0; option < DevelopmentOptionsSnapshot.OPTION_COUNT; option++) {
+            final SwitchPreference preference = getSnapshotPreference(option);
+            if (preference != null && preference.isChecked()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void noteSnapshotOptionWritten(Preference preference) {
+        for (int option = 0; option < DevelopmentOptionsSnapshot.OPTION_COUNT; option++) {
+            if (preference == getSnapshotPreference(option)) {
+                mOptionWrittenAtLoad[option] = mOptionsLoadSeq;
+                return;
+            }
+        }
+    }
+
+    private SwitchPreference getSnapshotPreference(int option) {
+        switch (option) {
+            case DevelopmentOptionsSnapshot.OPTION_ENABLE_ADB:
+                return mEnableAdb;
+            case DevelopmentOptionsSnapshot.OPTION_ENABLE_TERMINAL:
+                return mEnableTerminal;
+            case DevelopmentOptionsSnapshot.OPTION_KEEP_SCREEN_ON:
+                return mKeepScreenOn;
+            case DevelopmentOptionsSnapshot.OPTION_BT_HCI_SNOOP_LOG:
+                return mBtHciSnoopLog;
+            case DevelopmentOptionsSnapshot.OPTION_DEBUG_VIEW_ATTRIBUTES:
+                return mDebugViewAttributes;
+            case DevelopmentOptionsSnapshot.OPTION_FORCE_ALLOW_ON_EXTERNAL:
+                return mForceAllowOnExternal;
+            case DevelopmentOptionsSnapshot.OPTION_STRICT_MODE:
+                return mStrictMode;
+            case DevelopmentOptionsSnapshot.OPTION_POINTER_LOCATION:
+                return mPointerLocation;
+            case DevelopmentOptionsSnapshot.OPTION_SHOW_TOUCHES:
+                return mShowTouches;
+            case DevelopmentOptionsSnapshot.OPTION_FORCE_HARDWARE_UI:
+                return mForceHardwareUi;
+            case DevelopmentOptionsSnapshot.OPTION_FORCE_MSAA:
+                return mForceMsaa;
+            case DevelopmentOptionsSnapshot.OPTION_SHOW_HW_SCREEN_UPDATES:
+                return mShowHwScreenUpdates;
+            case DevelopmentOptionsSnapshot.OPTION_SHOW_HW_LAYERS_UPDATES:
+                return mShowHwLayersUpdates;
+            case DevelopmentOptionsSnapshot.OPTION_DEBUG_LAYOUT:
+                return mDebugLayout;
+            case DevelopmentOptionsSnapshot.OPTION_IMMEDIATELY_DESTROY_ACTIVITIES:
+                return mImmediatelyDestroyActivities;
+            case DevelopmentOptionsSnapshot.OPTION_SHOW_ALL_ANRS:
+                return mShowAllANRs;
+            case DevelopmentOptionsSnapshot.OPTION_SHOW_NOTIFICATION_CHANNEL_WARNINGS:
+                return mShowNotificationChannelWarnings;
+            case DevelopmentOptionsSnapshot.OPTION_FORCE_RTL:
+                return mForceRtlLayout;
+            case DevelopmentOptionsSnapshot.OPTION_WIFI_DISPLAY_CERTIFICATION:
+                return mWifiDisplayCertification;
+            case DevelopmentOptionsSnapshot.OPTION_WIFI_VERBOSE_LOGGING:
+                return mWifiVerboseLogging;
+            case DevelopmentOptionsSnapshot.OPTION_WIFI_AGGRESSIVE_HANDOVER:
+                return mWifiAggressiveHandover;
+            case DevelopmentOptionsSnapshot.OPTION_WIFI_ALLOW_SCANS_WITH_TRAFFIC:
+                return mWifiAllowScansWithTraffic;
+            case DevelopmentOptionsSnapshot.OPTION_MOBILE_DATA_ALWAYS_ON:
+                return mMobileDataAlwaysOn;
+            case DevelopmentOptionsSnapshot.OPTION_USB_AUDIO:
+                return mUSBAudio;
+            case DevelopmentOptionsSnapshot.OPTION_FORCE_RESIZABLE:
+                return mForceResizable;
+            case DevelopmentOptionsSnapshot.OPTION_BT_DISABLE_ABS_VOLUME:
+                return mBluetoothDisableAbsVolume;
+            case DevelopmentOptionsSnapshot.OPTION_BT_ENABLE_INBAND_RINGING:
+                return mBluetoothEnableInbandRinging;
+            default:
+                return null;
+        }
+    }
+
     private void updateAdbOverNetwork() {
         int port = LineageSettings.Secure.getInt(getActivity().getContentResolver(),
                 LineageSettings.Secure.ADB_PORT, 0);
@@ -1081,7 +1176,7 @@ public class DevelopmentSettings extends RestrictedSettingsFragment
     //    0: not explicitly set one way or another
     //    1: on
     //    2: off
-    private static int currentStrictModeActiveIndex() {
+    static int currentStrictModeActiveIndex() {
         if (TextUtils.isEmpty(SystemProperties.get(StrictMode.VISUAL_PROPERTY))) {
             return 0;
         }
@@ -1097,32 +1192,16 @@ public class DevelopmentSettings extends RestrictedSettingsFragment
         }
     }
 
-    private void updateStrictModeVisualOptions() {
-        updateSwitchPreference(mStrictMode, currentStrictModeActiveIndex() == 1);
-    }
-
     private void writePointerLocationOptions() {
         Settings.System.putInt(getActivity().getContentResolver(),
                 Settings.System.POINTER_LOCATION, mPointerLocation.isChecked() ? 1 : 0);
     }
 
-    private void updatePointerLocationOptions() {
-        updateSwitchPreference(mPointerLocation,
-                Settings.System.getInt(getActivity().getContentResolver(),
-                        Settings.System.POINTER_LOCATION, 0) != 0);
-    }
-
     private void writeShowTouchesOptions() {
         Settings.System.putInt(getActivity().getContentResolver(),
                 Settings.System.SHOW_TOUCHES, mShowTouches.isChecked() ? 1 : 0);
     }
 
-    private void updateShowTouchesOptions() {
-        updateSwitchPreference(mShowTouches,
-                Settings.System.getInt(getActivity().getContentResolver(),
-                        Settings.System.SHOW_TOUCHES, 0) != 0);
-    }
-
     private void updateFlingerOptions() {
         // magic communication with surface flinger.
         try {
@@ -1183,20 +1262,11 @@ public class DevelopmentSettings extends RestrictedSettingsFragment
         }
     }
 
-    private void updateHardwareUiOptions() {
-        updateSwitchPreference(mForceHardwareUi,
-                SystemProperties.getBoolean(HARDWARE_UI_PROPERTY, false));
-    }
-
     private void writeHardwareUiOptions() {
         SystemProperties.set(HARDWARE_UI_PROPERTY, mForceHardwareUi.isChecked() ? "true" : "false");
         pokeSystemProperties();
     }
 
-    private void updateMsaaOptions() {
-        updateSwitchPreference(mForceMsaa, SystemProperties.getBoolean(MSAA_PROPERTY, false));
-    }
-
     private void writeMsaaOptions() {
         SystemProperties.set(MSAA_PROPERTY, mForceMsaa.isChecked() ? "true" : "false");
         pokeSystemProperties();
@@ -1253,22 +1323,12 @@ public class DevelopmentSettings extends RestrictedSettingsFragment
         updateShowNonRectClipOptions();
     }
 
-    private void updateShowHwScreenUpdatesOptions() {
-        updateSwitchPreference(mShowHwScreenUpdates,
-                SystemProperties.getBoolean(ThreadedRenderer.DEBUG_DIRTY_REGIONS_PROPERTY, false));
-    }
-
     private void writeShowHwScreenUpdatesOptions() {
         SystemProperties.set(ThreadedRenderer.DEBUG_DIRTY_REGIONS_PROPERTY,
                 mShowHwScreenUpdates.isChecked() ? "true" : null);
         pokeSystemProperties();
     }
 
-    private void updateShowHwLayersUpdatesOptions() {
-        updateSwitchPreference(mShowHwLayersUpdates, SystemProperties.getBoolean(
-                ThreadedRenderer.DEBUG_SHOW_LAYERS_UPDATES_PROPERTY, false));
-    }
-
     private void writeShowHwLayersUpdatesOptions() {
         SystemProperties.set(ThreadedRenderer.DEBUG_SHOW_LAYERS_UPDATES_PROPERTY,
                 mShowHwLayersUpdates.isChecked() ? "true" : null);
@@ -1325,11 +1385,6 @@ public class DevelopmentSettings extends RestrictedSettingsFragment
         updateDebugHwRendererOptions();
     }
 
-    private void updateDebugLayoutOptions() {
-        updateSwitchPreference(mDebugLayout,
-                SystemProperties.getBoolean(View.DEBUG_LAYOUT_PROPERTY, false));
-    }
-
     private void writeDebugLayoutOptions() {
         SystemProperties.set(View.DEBUG_LAYOUT_PROPERTY,
                 mDebugLayout.isChecked() ? "true" : "false");
@@ -1403,34 +1458,18 @@ public class DevelopmentSettings extends RestrictedSettingsFragment
         Toast.makeText(getActivity(), R.string.color_temperature_toast, Toast.LENGTH_LONG).show();
     }
 
-    private void updateUSBAudioOptions() {
-        updateSwitchPreference(mUSBAudio, Settings.Secure.getInt(getContentResolver(),
-                Settings.Secure.USB_AUDIO_AUTOMATIC_ROUTING_DISABLED, 0) != 0);
-    }
-
     private void writeUSBAudioOptions() {
         Settings.Secure.putInt(getContentResolver(),
                 Settings.Secure.USB_AUDIO_AUTOMATIC_ROUTING_DISABLED,
                 mUSBAudio.isChecked() ? 1 : 0);
     }
 
-    private void updateForceResizableOptions() {
-        updateSwitchPreference(mForceResizable, Settings.Global.getInt(getContentResolver(),
-                Settings.Global.DEVELOPMENT_FORCE_RESIZABLE_ACTIVITIES, 0) != 0);
-    }
-
     private void writeForceResizableOptions() {
         Settings.Global.putInt(getContentResolver(),
                 Settings.Global.DEVELOPMENT_FORCE_RESIZABLE_ACTIVITIES,
                 mForceResizable.isChecked() ? 1 : 0);
     }
 
-    private void updateForceRtlOptions() {
-        updateSwitchPreference(mForceRtlLayout,
-                Settings.Global.getInt(getActivity().getContentResolver(),
-                        Settings.Global.DEVELOPMENT_FORCE_RTL, 0) != 0);
-    }
-
     private void writeForceRtlOptions() {
         boolean value = mForceRtlLayout.isChecked();
         Settings.Global.putInt(getActivity().getContentResolver(),
@@ -1439,62 +1478,29 @@ public class DevelopmentSettings extends RestrictedSettingsFragment
         LocalePicker.updateLocales(getActivity().getResources().getConfiguration().getLocales());
     }
 
-    private void updateWifiDisplayCertificationOptions() {
-        updateSwitchPreference(mWifiDisplayCertification, Settings.Global.getInt(
-                getActivity().getContentResolver(),
-                Settings.Global.WIFI_DISPLAY_CERTIFICATION_ON, 0) != 0);
-    }
-
     private void writeWifiDisplayCertificationOptions() {
         Settings.Global.putInt(getActivity().getContentResolver(),
                 Settings.Global.WIFI_DISPLAY_CERTIFICATION_ON,
                 mWifiDisplayCertification.isChecked() ? 1 : 0);
     }
 
-    private void updateWifiVerboseLoggingOptions() {
-        boolean enabled = mWifiManager.getVerboseLoggingLevel() > 0;
-        updateSwitchPreference(mWifiVerboseLogging, enabled);
-    }
-
     private void writeWifiVerboseLoggingOptions() {
         mWifiManager.enableVerboseLogging(mWifiVerboseLogging.isChecked() ? 1 : 0);
     }
 
-    private void updateWifiAggressiveHandoverOptions() {
-        boolean enabled = mWifiManager.getAggressiveHandover() > 0;
-        updateSwitchPreference(mWifiAggressiveHandover, enabled);
-    }
-
     private void writeWifiAggressiveHandoverOptions() {
         mWifiManager.enableAggressiveHandover(mWifiAggressiveHandover.isChecked() ? 1 : 0);
     }
 
-    private void updateWifiAllowScansWithTrafficOptions() {
-        boolean enabled = mWifiManager.getAllowScansWithTraffic() > 0;
-        updateSwitchPreference(mWifiAllowScansWithTraffic, enabled);
-    }
-
     private void writeWifiAllowScansWithTrafficOptions() {
         mWifiManager.setAllowScansWithTraffic(mWifiAllowScansWithTraffic.isChecked() ? 1 : 0);
     }
 
-    private void updateBluetoothDisableAbsVolumeOptions() {
-        updateSwitchPreference(mBluetoothDisableAbsVolume,
-                SystemProperties.getBoolean(BLUETOOTH_DISABLE_ABSOLUTE_VOLUME_PROPERTY, false));
-    }
-
     private void writeBluetoothDisableAbsVolumeOptions() {
         SystemProperties.set(BLUETOOTH_DISABLE_ABSOLUTE_VOLUME_PROPERTY,
                 mBluetoothDisableAbsVolume.isChecked() ? "true" : "false");
     }
 
-    private void updateBluetoothEnableInbandRingingOptions() {
-        if (mBluetoothEnableInbandRinging != null) {
-            updateSwitchPreference(mBluetoothEnableInbandRinging,
-                SystemProperties.getBoolean(BLUETOOTH_ENABLE_INBAND_RINGING_PROPERTY, false));
-        }
-    }
-
     private void writeBluetoothEnableInbandRingingOptions() {
         if (mBluetoothEnableInbandRinging != null) {
             SystemProperties.set(BLUETOOTH_ENABLE_INBAND_RINGING_PROPERTY,
@@ -1502,12 +1508,6 @@ public class DevelopmentSettings extends RestrictedSettingsFragment
         }
     }
 
-    private void updateMobileDataAlwaysOnOptions() {
-        updateSwitchPreference(mMobileDataAlwaysOn, Settings.Global.getInt(
-                getActivity().getContentResolver(),
-                Settings.Global.MOBILE_DATA_ALWAYS_ON, 1) != 0);
-    }
-
     private void writeMobileDataAlwaysOnOptions() {
         Settings.Global.putInt(getActivity().getContentResolver(),
                 Settings.Global.MOBILE_DATA_ALWAYS_ON,
@@ -2200,12 +2200,6 @@ public class DevelopmentSettings extends RestrictedSettingsFragment
         }
     }
 
-    private void updateImmediatelyDestroyActivitiesOptions() {
-        updateSwitchPreference(mImmediatelyDestroyActivities, Settings.Global.getInt(
-                getActivity().getContentResolver(), Settings.Global.ALWAYS_FINISH_ACTIVITIES, 0)
-                != 0);
-    }
-
     private void updateAnimationScaleValue(int which, AnimationScalePreference pref) {
         try {
             float scale = mWindowManager.getAnimationScale(which);
@@ -2294,24 +2288,12 @@ public class DevelopmentSettings extends RestrictedSettingsFragment
                 mShowAllANRs.isChecked() ? 1 : 0);
     }
 
-    private void updateShowAllANRsOptions() {
-        updateSwitchPreference(mShowAllANRs, Settings.Secure.getInt(
-                getActivity().getContentResolver(), Settings.Secure.ANR_SHOW_BACKGROUND, 0) != 0);
-    }
-
     private void writeShowNotificationChannelWarningsOptions() {
         Settings.Global.putInt(getActivity().getContentResolver(),
                 Settings.Global.SHOW_NOTIFICATION_CHANNEL_WARNINGS,
                 mShowNotificationChannelWarnings.isChecked() ? 1 : 0);
     }
 
-    private void updateShowNotificationChannelWarningsOptions() {
-        final int defaultWarningEnabled = Build.IS_DEBUGGABLE ? 1 : 0;
-        updateSwitchPreference(mShowNotificationChannelWarnings, Settings.Global.getInt(
-                getActivity().getContentResolver(),
-                Settings.Global.SHOW_NOTIFICATION_CHANNEL_WARNINGS, defaultWarningEnabled) != 0);
-    }
-
     private void confirmEnableOemUnlock() {
         DialogInterface.OnClickListener onClickListener = new DialogInterface.OnClickListener() {
             @Override
@@ -2412,6 +2394,8 @@ public class DevelopmentSettings extends RestrictedSettingsFragment
             return false;
         }
 
+        noteSnapshotOptionWritten(preference);
+
         if (mTelephonyMonitorController.handlePreferenceTreeClick(preference)) {
             return true;
         }
@@ -24,10 +24,12 @@ import android.support.v7.preference.Preference;
 import android.text.TextUtils;
 import android.util.Log;
 
+import com.android.settings.core.AsyncStatePreferenceController;
 import com.android.settings.core.PreferenceController;
 import com.android.settingslib.DeviceInfoUtils;
 
-public class KernelVersionPreferenceController extends PreferenceController {
+public class KernelVersionPreferenceController extends PreferenceController
+        implements AsyncStatePreferenceController<String> {
 
     private static final String KEY_KERNEL_VERSION = "kernel_version";
     private static final String FILENAME_PROC_VERSION = "/proc/version";
@@ -45,7 +47,18 @@ public class KernelVersionPreferenceController extends PreferenceController {
     @Override
     public void updateState(Preference preference) {
         super.updateState(preference);
-        preference.setSummary(DeviceInfoUtils.getFormattedKernelVersion());
+        applyState(preference, loadState());
+    }
+
+    @Override
+    public String loadState() {
+        // Reads /proc/version.
+        return DeviceInfoUtils.getFormattedKernelVersion();
+    }
+
+    @Override
+    public void applyState(Preference preference, String kernelVersion) {
+        preference.setSummary(kernelVersion);
     }
 
     @Override
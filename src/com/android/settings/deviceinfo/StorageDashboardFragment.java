@@ -260,6 +260,7 @@ public class StorageDashboardFragment extends DashboardFragment
         public Loader<SparseArray<Drawable>> onCreateLoader(int id, Bundle args) {
             return new UserIconLoader(
                     getContext(),
+                    UserIconLoader.getUserIds(getContext()),
                     () -> UserIconLoader.loadUserIconsWithContext(getContext()));
         }
 
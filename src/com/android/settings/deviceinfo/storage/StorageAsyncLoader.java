@@ -22,16 +22,17 @@ import static android.content.pm.ApplicationInfo.CATEGORY_VIDEO;
 
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.pm.UserInfo;
 import android.os.UserHandle;
-import android.util.ArraySet;
 import android.util.Log;
 import android.util.SparseArray;
+import android.util.SparseBooleanArray;
 
+import com.android.settings.applications.BatchedStorageStatsSource;
+import com.android.settings.applications.BatchedStorageStatsSource.UidStats;
 import com.android.settings.applications.PackageManagerWrapper;
 import com.android.settings.applications.UserManagerWrapper;
-import com.android.settings.utils.AsyncLoader;
+import com.android.settings.utils.CachingAsyncLoader;
 import com.android.settingslib.applications.StorageStatsSource;
 
 import java.io.IOException;
@@ -44,14 +45,21 @@ import java.util.List;
  * users
  */
 public class StorageAsyncLoader
-        extends AsyncLoader<SparseArray<StorageAsyncLoader.AppsStorageResult>> {
+        extends CachingAsyncLoader<SparseArray<StorageAsyncLoader.AppsStorageResult>> {
     private UserManagerWrapper mUserManager;
     private static final String TAG = "StorageAsyncLoader";
 
+    static {
+        // Totals of a volume are loaded again once the size of one of its apps changed.
+        BatchedStorageStatsSource.addListener((volumeUuid, uid) ->
+                CachingAsyncLoader.invalidate(getCacheKey(volumeUuid)));
+    }
+
     private String mUuid;
     private StorageStatsSource mStatsManager;
     private PackageManagerWrapper mPackageManager;
-    private ArraySet<String> mSeenPackages;
+    private BatchedStorageStatsSource mBatchedSource;
+    private SparseBooleanArray mSeenAppIds;
 
     public StorageAsyncLoader(Context context, UserManagerWrapper userManager,
             String uuid, StorageStatsSource source, PackageManagerWrapper pm) {
@@ -59,16 +67,26 @@ public class StorageAsyncLoader
         mUserManager = userManager;
         mUuid = uuid;
         mStatsManager = source;
+        mBatchedSource = new BatchedStorageStatsSource(source);
         mPackageManager = pm;
     }
 
+    private static String getCacheKey(String uuid) {
+        return TAG + ":" + uuid;
+    }
+
+    @Override
+    protected String getCacheKey() {
+        return getCacheKey(mUuid);
+    }
+
     @Override
-    public SparseArray<AppsStorageResult> loadInBackground() {
+    protected SparseArray<AppsStorageResult> loadUncached() {
         return loadApps();
     }
 
     private SparseArray<AppsStorageResult> loadApps() {
-        mSeenPackages = new ArraySet<>();
+        mSeenAppIds = new SparseBooleanArray();
         SparseArray<AppsStorageResult> result = new SparseArray<>();
         List<UserInfo> infos = mUserManager.getUsers();
         // Sort the users by user id ascending.
@@ -92,22 +110,27 @@ public class StorageAsyncLoader
         List<ApplicationInfo> applicationInfos =
                 mPackageManager.getInstalledApplicationsAsUser(0, userId);
         AppsStorageResult result = new AppsStorageResult();
-        UserHandle myUser = UserHandle.of(userId);
+        // Packages sharing a uid are given the stats of the whole uid, so each uid is counted
+        // once, under the category of the first of its packages.
+        SparseArray<UidStats> uidStats = mBatchedSource.getStats(mUuid, applicationInfos);
+        SparseBooleanArray countedUids = new SparseBooleanArray();
         for (int i = 0, size = applicationInfos.size(); i < size; i++) {
             ApplicationInfo app = applicationInfos.get(i);
+            if (countedUids.get(app.uid)) {
+                continue;
+            }
+            countedUids.put(app.uid, true);
 
-            StorageStatsSource.AppStorageStats stats;
-            try {
-                stats = mStatsManager.getStatsForPackage(mUuid, app.packageName, myUser);
-            } catch (NameNotFoundException | IOException e) {
+            UidStats stats = uidStats.get(app.uid);
+            if (stats == null) {
                 // This may happen if the package was removed during our calculation.
-                Log.w(TAG, "App unexpectedly not found", e);
+                Log.w(TAG, "App unexpectedly not found: " + app.packageName);
                 continue;
             }
 
-            final long dataSize = stats.getDataBytes();
+            final long dataSize = stats.dataBytes;
             final long cacheQuota = mStatsManager.getCacheQuotaBytes(mUuid, app.uid);
-            final long cacheBytes = stats.getCacheBytes();
+            final long cacheBytes = stats.cacheBytes;
             long blamedSize = dataSize;
             // Technically, we could overages as freeable on the storage settings screen.
             // If the app is using more cache than its quota, we would accidentally subtract the
@@ -119,9 +142,10 @@ public class StorageAsyncLoader
 
             // This isn't quite right because it slams the first user by user id with the whole code
             // size, but this ensures that we count all apps seen once.
-            if (!mSeenPackages.contains(app.packageName)) {
-                blamedSize += stats.getCodeBytes();
-                mSeenPackages.add(app.packageName);
+            final int appId = UserHandle.getAppId(app.uid);
+            if (!mSeenAppIds.get(appId)) {
+                blamedSize += stats.codeBytes;
+                mSeenAppIds.put(appId, true);
             }
 
             switch (app.category) {
@@ -156,10 +180,6 @@ public class StorageAsyncLoader
         return result;
     }
 
-    @Override
-    protected void onDiscardResult(SparseArray<AppsStorageResult> result) {
-    }
-
     public static class AppsStorageResult {
         public long gamesSize;
         public long musicAppsSize;
@@ -25,12 +25,20 @@ import android.util.SparseArray;
 
 import com.android.internal.util.Preconditions;
 import com.android.settings.Utils;
-import com.android.settings.utils.AsyncLoader;
+import com.android.settings.utils.CachingAsyncLoader;
+
+import java.util.Arrays;
+import java.util.List;
 
 /**
- * Fetches a user icon as a loader using a given icon loading lambda.
+ * Fetches a user icon as a loader using a given icon loading lambda. The icons are cached under
+ * the ids of the users they are loaded for, so they are shown right away when the storage screen
+ * is opened again for the same users.
  */
-public class UserIconLoader extends AsyncLoader<SparseArray<Drawable>> {
+public class UserIconLoader extends CachingAsyncLoader<SparseArray<Drawable>> {
+    private static final String TAG = "UserIconLoader";
+
+    private final String mCacheKey;
     private FetchUserIconTask mTask;
 
     /**
@@ -47,18 +55,38 @@ public class UserIconLoader extends AsyncLoader<SparseArray<Drawable>> {
         void handleUserIcons(SparseArray<Drawable> fetchedIcons);
     }
 
-    public UserIconLoader(Context context, FetchUserIconTask task) {
+    /**
+     * @param userIds the ids of the users whose icons {@code task} loads
+     */
+    public UserIconLoader(Context context, int[] userIds, FetchUserIconTask task) {
         super(context);
         mTask = Preconditions.checkNotNull(task);
+        final int[] sortedIds = userIds.clone();
+        Arrays.sort(sortedIds);
+        mCacheKey = TAG + ":" + Arrays.toString(sortedIds);
     }
 
     @Override
-    public SparseArray<Drawable> loadInBackground() {
-        return mTask.getUserIcons();
+    protected String getCacheKey() {
+        return mCacheKey;
     }
 
     @Override
-    protected void onDiscardResult(SparseArray<Drawable> result) {}
+    protected SparseArray<Drawable> loadUncached() {
+        return mTask.getUserIcons();
+    }
+
+    /**
+     * Returns the ids of the users {@link #loadUserIconsWithContext} loads the icons of.
+     */
+    public static int[] getUserIds(Context context) {
+        final List<UserInfo> users = context.getSystemService(UserManager.class).getUsers();
+        final int[] userIds = new int[users.size()];
+        for (int i = 0; i < userIds.length; i++) {
+            userIds[i] = users.get(i).id;
+        }
+        return userIds;
+    }
 
     /**
      * Loads the user icons using a given context. This returns a {@link SparseArray} which maps
@@ -21,13 +21,13 @@ import android.content.Context;
 import android.os.storage.VolumeInfo;
 import android.support.annotation.VisibleForTesting;
 
-import com.android.settings.utils.AsyncLoader;
+import com.android.settings.utils.CachingAsyncLoader;
 import com.android.settingslib.deviceinfo.PrivateStorageInfo;
 import com.android.settingslib.deviceinfo.StorageVolumeProvider;
 
 import java.io.IOException;
 
-public class VolumeSizesLoader extends AsyncLoader<PrivateStorageInfo> {
+public class VolumeSizesLoader extends CachingAsyncLoader<PrivateStorageInfo> {
     private StorageVolumeProvider mVolumeProvider;
     private StorageStatsManager mStats;
     private VolumeInfo mVolume;
@@ -44,10 +44,12 @@ public class VolumeSizesLoader extends AsyncLoader<PrivateStorageInfo> {
     }
 
     @Override
-    protected void onDiscardResult(PrivateStorageInfo result) {}
+    protected String getCacheKey() {
+        return "VolumeSizesLoader:" + (mVolume != null ? mVolume.getId() : null);
+    }
 
     @Override
-    public PrivateStorageInfo loadInBackground() {
+    protected PrivateStorageInfo loadUncached() {
         PrivateStorageInfo volumeSizes;
         try {
             volumeSizes = getVolumeSize(mVolumeProvider, mStats, mVolume);
@@ -16,6 +16,8 @@
 
 package com.android.settings.fuelgauge;
 
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND;
+
 import android.app.AppGlobals;
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
@@ -33,6 +35,8 @@ import android.util.Log;
 
 import com.android.internal.os.BatterySipper;
 import com.android.settings.R;
+import com.android.settings.utils.CacheRegistry;
+import com.android.settings.utils.TaskScheduler;
 import com.android.settingslib.Utils;
 
 import java.util.ArrayList;
@@ -49,37 +53,59 @@ public class BatteryEntry {
     private static final String TAG = "BatteryEntry";
 
     static final HashMap<String,UidToDetail> sUidCache = new HashMap<String,UidToDetail>();
+    private static final CacheRegistry.Cache sUidCacheEntry = CacheRegistry.get().register(
+            new CacheRegistry.Cache("battery_uid_details", TRIM_MEMORY_BACKGROUND) {
+                @Override
+                public int getEntryCount() {
+                    synchronized (sUidCache) {
+                        return sUidCache.size();
+                    }
+                }
+
+                @Override
+                public long getSizeEstimateBytes() {
+                    long bytes = 0;
+                    synchronized (sUidCache) {
+                        for (UidToDetail detail : sUidCache.values()) {
+                            bytes += CacheRegistry.estimateSize(detail.icon);
+                        }
+                    }
+                    return bytes;
+                }
+
+                @Override
+                protected void clear() {
+                    clearUidCache();
+                }
+            });
 
     static final ArrayList<BatteryEntry> mRequestQueue = new ArrayList<BatteryEntry>();
     static Handler sHandler;
 
-    static private class NameAndIconLoader extends Thread {
-        private boolean mAbort = false;
-
-        public NameAndIconLoader() {
-            super("BatteryUsage Icon Loader");
-        }
+    static private class NameAndIconLoader implements Runnable {
+        private final TaskScheduler.CancellationToken mToken =
+                new TaskScheduler.CancellationToken();
 
         public void abort() {
-            mAbort = true;
+            mToken.cancel();
         }
 
         @Override
         public void run() {
-            while (true) {
-                BatteryEntry be;
-                synchronized (mRequestQueue) {
-                    if (mRequestQueue.isEmpty() || mAbort) {
-                        if (sHandler != null) {
-                            sHandler.sendEmptyMessage(MSG_REPORT_FULLY_DRAWN);
-                        }
-                        mRequestQueue.clear();
-                        return;
+            final BatteryEntry be;
+            synchronized (mRequestQueue) {
+                if (mRequestQueue.isEmpty() || mToken.isCancelled()) {
+                    if (sHandler != null) {
+                        sHandler.sendEmptyMessage(MSG_REPORT_FULLY_DRAWN);
                     }
-                    be = mRequestQueue.remove(0);
+                    mRequestQueue.clear();
+                    return;
                 }
-                be.loadNameAndIcon();
+                be = mRequestQueue.remove(0);
             }
+            be.loadNameAndIcon();
+            // One entry per task, so other work on the lane does not wait for all the icons.
+            TaskScheduler.get().post(TaskScheduler.LANE_VISIBLE_CONTENT, mToken, this);
         }
     }
 
@@ -93,9 +119,8 @@ public class BatteryEntry {
                         mRequestThread.abort();
                     }
                     mRequestThread = new NameAndIconLoader();
-                    mRequestThread.setPriority(Thread.MIN_PRIORITY);
-                    mRequestThread.start();
-                    mRequestQueue.notify();
+                    TaskScheduler.get().post(TaskScheduler.LANE_VISIBLE_CONTENT,
+                            mRequestThread.mToken, mRequestThread);
                 }
             }
         }
@@ -107,12 +132,16 @@ public class BatteryEntry {
                 mRequestThread.abort();
                 mRequestThread = null;
                 sHandler = null;
+                // A loader cancelled before it started would not clear the queue itself.
+                mRequestQueue.clear();
             }
         }
     }
 
     public static void clearUidCache() {
-        sUidCache.clear();
+        synchronized (sUidCache) {
+            sUidCache.clear();
+        }
     }
 
     public final Context context;
@@ -226,13 +255,18 @@ public class BatteryEntry {
 
     void getQuickNameIconForUid(final int uid) {
         final String uidString = Integer.toString(uid);
-        if (sUidCache.containsKey(uidString)) {
-            UidToDetail utd = sUidCache.get(uidString);
+        final UidToDetail utd;
+        synchronized (sUidCache) {
+            utd = sUidCache.get(uidString);
+        }
+        if (utd != null) {
+            sUidCacheEntry.recordHit();
             defaultPackageName = utd.packageName;
             name = utd.name;
             icon = utd.icon;
             return;
         }
+        sUidCacheEntry.recordMiss();
         PackageManager pm = context.getPackageManager();
         icon = pm.getDefaultActivityIcon();
         if (pm.getPackagesForUid(uid) == null) {
@@ -344,7 +378,9 @@ public class BatteryEntry {
         utd.name = name;
         utd.icon = icon;
         utd.packageName = defaultPackageName;
-        sUidCache.put(uidString, utd);
+        synchronized (sUidCache) {
+            sUidCache.put(uidString, utd);
+        }
         if (sHandler != null) {
             sHandler.sendMessage(sHandler.obtainMessage(MSG_UPDATE_NAME_ICON, this));
         }
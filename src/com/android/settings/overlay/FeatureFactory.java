@@ -23,6 +23,7 @@ import android.util.Log;
 import com.android.settings.R;
 import com.android.settings.applications.ApplicationFeatureProvider;
 import com.android.settings.core.instrumentation.MetricsFeatureProvider;
+import com.android.settings.core.instrumentation.StartupTracer;
 import com.android.settings.dashboard.DashboardFeatureProvider;
 import com.android.settings.dashboard.suggestions.SuggestionFeatureProvider;
 import com.android.settings.enterprise.EnterprisePrivacyFeatureProvider;
@@ -60,10 +61,13 @@ public abstract class FeatureFactory {
         if (TextUtils.isEmpty(clsName)) {
             throw new UnsupportedOperationException("No feature factory configured");
         }
+        final int traceToken = StartupTracer.beginSection(StartupTracer.SPAN_FEATURE_FACTORY_INIT);
         try {
             sFactory = (FeatureFactory) context.getClassLoader().loadClass(clsName).newInstance();
         } catch (InstantiationException | IllegalAccessException | ClassNotFoundException e) {
             throw new FactoryNotFoundException(e);
+        } finally {
+            StartupTracer.endSection(traceToken);
         }
 
         if (DEBUG) Log.d(LOG_TAG, "started " + sFactory.getClass().getSimpleName());
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.utils;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.VisibleForTesting;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Process-wide registry of the in-memory caches of Settings, clearing them when the system
+ * reports memory pressure and reporting their footprint through
+ * {@link com.android.settings.SettingsDumpService}.
+ *
+ * <p>Each {@link Cache} declares the {@link ComponentCallbacks2} trim level from which it is
+ * cleared. Caches are held weakly, so per-screen caches go away with their screen.
+ */
+public class CacheRegistry implements ComponentCallbacks2 {
+
+    private static CacheRegistry sInstance;
+
+    private final List<WeakReference<Cache>> mCaches = new ArrayList<>();
+    private boolean mAttached;
+
+    public static synchronized CacheRegistry get() {
+        if (sInstance == null) {
+            sInstance = new CacheRegistry();
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    CacheRegistry() {
+    }
+
+    /**
+     * Starts listening to memory pressure callbacks of the application, if not done yet.
+     */
+    public synchronized void attach(Context context) {
+        if (!mAttached) {
+            context.getApplicationContext().registerComponentCallbacks(this);
+            mAttached = true;
+        }
+    }
+
+    /**
+     * Registers {@code cache} for trimming and dumps, and returns it.
+     */
+    public <C extends Cache> C register(C cache) {
+        synchronized (mCaches) {
+            mCaches.add(new WeakReference<>(cache));
+        }
+        return cache;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        // Running critically low on memory while in the foreground warrants dropping everything.
+        if (level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            level = TRIM_MEMORY_COMPLETE;
+        }
+        for (Cache cache : getCaches()) {
+            if (level >= cache.mTrimLevel) {
+                cache.trim();
+            }
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    /**
+     * Returns the footprint and hit rates of the registered caches, keyed by cache name.
+     * Instances sharing a name are summed up.
+     */
+    public JSONObject dumpJson() throws JSONException {
+        final JSONObject caches = new JSONObject();
+        for (Cache cache : getCaches()) {
+            JSONObject json = caches.optJSONObject(cache.mName);
+            if (json == null) {
+                json = new JSONObject();
+                caches.put(cache.mName, json);
+            }
+            cache.addTo(json);
+        }
+        return caches;
+    }
+
+    private List<Cache> getCaches() {
+        final List<Cache> caches = new ArrayList<>();
+        synchronized (mCaches) {
+            for (int i = mCaches.size() - 1; i >= 0; i--) {
+                final Cache cache = mCaches.get(i).get();
+                if (cache == null) {
+                    mCaches.remove(i);
+                } else {
+                    caches.add(cache);
+                }
+            }
+        }
+        return caches;
+    }
+
+    /**
+     * Returns the approximate number of bytes held by {@code bitmap}.
+     */
+    public static long estimateSize(Bitmap bitmap) {
+        return bitmap != null ? bitmap.getAllocationByteCount() : 0;
+    }
+
+    /**
+     * Returns the approximate number of bytes held by {@code drawable}.
+     */
+    public static long estimateSize(Drawable drawable) {
+        if (drawable instanceof BitmapDrawable) {
+            return estimateSize(((BitmapDrawable) drawable).getBitmap());
+        }
+        if (drawable == null) {
+            return 0;
+        }
+        // Assume other drawables end up rendered at their intrinsic size in ARGB_8888.
+        return 4L * Math.max(drawable.getIntrinsicWidth(), 0)
+                * Math.max(drawable.getIntrinsicHeight(), 0);
+    }
+
+    /**
+     * Adapter between a cache and the registry. Owners report lookups with {@link #recordHit()}
+     * and {@link #recordMiss()}, and implement clearing and size estimation.
+     */
+    public abstract static class Cache {
+        private final String mName;
+        private final int mTrimLevel;
+        private long mHits;
+        private long mMisses;
+        private long mTrims;
+
+        /**
+         * @param name name of the cache in dumps.
+         * @param trimLevel lowest {@link ComponentCallbacks2} trim level clearing the cache.
+         */
+        protected Cache(String name, int trimLevel) {
+            mName = name;
+            mTrimLevel = trimLevel;
+        }
+
+        public final synchronized void recordHit() {
+            mHits++;
+        }
+
+        public final synchronized void recordMiss() {
+            mMisses++;
+        }
+
+        /**
+         * Returns the number of cached entries.
+         */
+        public abstract int getEntryCount();
+
+        /**
+         * Returns the approximate number of bytes held by the cached entries, or -1 if unknown.
+         */
+        public long getSizeEstimateBytes() {
+            return -1;
+        }
+
+        /**
+         * Drops all cached entries. Called on the main thread.
+         */
+        protected abstract void clear();
+
+        @VisibleForTesting
+        synchronized long getHits() {
+            return mHits;
+        }
+
+        @VisibleForTesting
+        synchronized long getMisses() {
+            return mMisses;
+        }
+
+        private void trim() {
+            clear();
+            synchronized (this) {
+                mTrims++;
+            }
+        }
+
+        private void addTo(JSONObject json) throws JSONException {
+            final long bytes = getSizeEstimateBytes();
+            json.put("instances", json.optLong("instances") + 1);
+            json.put("entries", json.optLong("entries") + getEntryCount());
+            if (bytes >= 0) {
+                json.put("bytes", json.optLong("bytes") + bytes);
+            }
+            synchronized (this) {
+                json.put("hits", json.optLong("hits") + mHits);
+                json.put("misses", json.optLong("misses") + mMisses);
+                json.put("trims", json.optLong("trims") + mTrims);
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.utils;
+
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
+import android.util.ArrayMap;
+
+/**
+ * {@link AsyncLoader} whose results are kept in a process-wide cache, so a new loader for the
+ * same data (after a configuration change, or from another fragment) shows the last result right
+ * away while it reloads in the background.
+ *
+ * <p>Results are cached under {@link #getCacheKey()} and served for up to
+ * {@link #getCacheTtlMs()}, and dropped under memory pressure through {@link CacheRegistry}.
+ * Since cached results are shared between loaders, they are never discarded through
+ * {@link #onDiscardResult}. Call {@link #invalidate(String)} when the data is known to have
+ * changed.
+ */
+public abstract class CachingAsyncLoader<T> extends AsyncLoader<T> {
+
+    @VisibleForTesting
+    static final long DEFAULT_CACHE_TTL_MS = 5 * 60 * 1000;
+
+    // Cache key -> last loaded result.
+    private static final ArrayMap<String, CachedResult> sCache = new ArrayMap<>();
+    private static final CacheRegistry.Cache sCacheEntry = CacheRegistry.get().register(
+            new CacheRegistry.Cache("async_loader_results", TRIM_MEMORY_BACKGROUND) {
+                @Override
+                public int getEntryCount() {
+                    synchronized (sCache) {
+                        return sCache.size();
+                    }
+                }
+
+                @Override
+                protected void clear() {
+                    invalidateAll();
+                }
+            });
+
+    // Whether this loader loaded a result of its own, rather than only showing a cached one.
+    private volatile boolean mLoaded;
+
+    public CachingAsyncLoader(Context context) {
+        super(context);
+    }
+
+    /**
+     * Returns the key identifying the data this loader loads, equal for loaders that would
+     * load the same result.
+     */
+    protected abstract String getCacheKey();
+
+    /**
+     * Loads the result, like {@link #loadInBackground()} of an uncached loader.
+     */
+    protected abstract T loadUncached();
+
+    /**
+     * Returns how long a cached result may be shown before a fresh one is loaded.
+     */
+    protected long getCacheTtlMs() {
+        return DEFAULT_CACHE_TTL_MS;
+    }
+
+    @Override
+    public final T loadInBackground() {
+        final T result = loadUncached();
+        if (result != null) {
+            synchronized (sCache) {
+                sCache.put(getCacheKey(), new CachedResult(result, SystemClock.elapsedRealtime()));
+            }
+        }
+        mLoaded = true;
+        return result;
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mLoaded) {
+            // Show the cached result, if any, while the first load of this loader runs.
+            final T cached = getCachedResult(getCacheKey(), getCacheTtlMs());
+            if (cached != null) {
+                deliverResult(cached);
+            }
+            forceLoad();
+            return;
+        }
+        super.onStartLoading();
+    }
+
+    @Override
+    public void onCanceled(T data) {
+        super.onCanceled(data);
+        mLoaded = false;
+    }
+
+    @Override
+    protected final void onDiscardResult(T result) {
+        // Results may be shared with other loaders through the cache, nothing to release.
+    }
+
+    /**
+     * Drops the cached result for {@code key}. Loaders started afterwards load from scratch.
+     */
+    public static void invalidate(String key) {
+        synchronized (sCache) {
+            sCache.remove(key);
+        }
+    }
+
+    /**
+     * Drops all cached results.
+     */
+    public static void invalidateAll() {
+        synchronized (sCache) {
+            sCache.clear();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T getCachedResult(String key, long ttlMs) {
+        synchronized (sCache) {
+            final CachedResult cached = sCache.get(key);
+            if (cached == null) {
+                sCacheEntry.recordMiss();
+                return null;
+            }
+            if (SystemClock.elapsedRealtime() - cached.loadTimeMs > ttlMs) {
+                sCache.remove(key);
+                sCacheEntry.recordMiss();
+                return null;
+            }
+            sCacheEntry.recordHit();
+            return (T) cached.result;
+        }
+    }
+
+    private static class CachedResult {
+        final Object result;
+        final long loadTimeMs;
+
+        CachedResult(Object result, long loadTimeMs) {
+            this.result = result;
+            this.loadTimeMs = loadTimeMs;
+        }
+    }
+}
@@ -0,0 +1,484 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.utils;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
+import android.util.SparseIntArray;
+
+import com.android.settings.core.lifecycle.LifecycleObserver;
+import com.android.settings.core.lifecycle.events.OnDestroy;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Process-wide background work scheduler with a few worker threads per priority lane, shared by
+ * all Settings components instead of each starting its own threads.
+ *
+ * <p>Work is either posted as tasks, optionally tied to a {@link CancellationToken}, or handled
+ * by a {@link LaneHandler} for components built around {@link Handler} messages. Tasks go to the
+ * least busy worker of their lane, so a slow task does not hold up the others. Handlers all run
+ * on the first worker of their lane, as they rely on the order of their messages. Each lane keeps
+ * queue depth and latency stats, dumped through {@link com.android.settings.SettingsDumpService}.
+ */
+public class TaskScheduler {
+
+    /** Work the user is waiting on to interact with the current screen. */
+    public static final int LANE_UI_CRITICAL = 0;
+    /** Content of the current screen that can show up after it is drawn. */
+    public static final int LANE_VISIBLE_CONTENT = 1;
+    /** Work for screens the user is likely to open next. */
+    public static final int LANE_PREFETCH = 2;
+    /** Logging, persistence and other work nobody waits on. */
+    public static final int LANE_MAINTENANCE = 3;
+    private static final int LANE_COUNT = 4;
+
+    private static final String[] LANE_NAMES = {
+            "ui_critical",
+            "visible_content",
+            "prefetch",
+            "maintenance",
+    };
+    private static final int[] LANE_PRIORITIES = {
+            Process.THREAD_PRIORITY_DEFAULT,
+            Process.THREAD_PRIORITY_BACKGROUND + Process.THREAD_PRIORITY_MORE_FAVORABLE,
+            Process.THREAD_PRIORITY_BACKGROUND,
+            Process.THREAD_PRIORITY_LOWEST,
+    };
+    // Most screens load their visible content from several independent sources at once.
+    private static final int[] LANE_WORKERS = {
+            1,
+            3,
+            1,
+            1,
+    };
+
+    private static TaskScheduler sInstance;
+
+    private final Worker[][] mWorkers = new Worker[LANE_COUNT][];
+    private final LaneStats[] mStats = new LaneStats[LANE_COUNT];
+
+    public static synchronized TaskScheduler get() {
+        if (sInstance == null) {
+            sInstance = new TaskScheduler();
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    TaskScheduler() {
+        for (int lane = 0; lane < LANE_COUNT; lane++) {
+            mStats[lane] = new LaneStats();
+            mWorkers[lane] = new Worker[LANE_WORKERS[lane]];
+        }
+    }
+
+    /**
+     * Returns the looper of the first worker of {@code lane}, the one {@link LaneHandler}s run
+     * on, starting its thread on first use. Callers must never quit it, remove their own messages
+     * instead.
+     */
+    public Looper getLooper(int lane) {
+        return getWorker(lane, 0).mLooper;
+    }
+
+    /**
+     * Returns the loopers of all the workers of {@code lane}, starting their threads.
+     */
+    @VisibleForTesting
+    public List<Looper> getWorkerLoopers(int lane) {
+        final List<Looper> loopers = new ArrayList<>(LANE_WORKERS[lane]);
+        for (int i = 0; i < LANE_WORKERS[lane]; i++) {
+            loopers.add(getWorker(lane, i).mLooper);
+        }
+        return loopers;
+    }
+
+    private synchronized Worker getWorker(int lane, int index) {
+        if (mWorkers[lane][index] == null) {
+            final String name = "TaskScheduler:" + LANE_NAMES[lane]
+                    + (index > 0 ? ":" + index : "");
+            final HandlerThread thread = new HandlerThread(name, LANE_PRIORITIES[lane]);
+            thread.start();
+            mWorkers[lane][index] = new Worker(thread.getLooper());
+        }
+        return mWorkers[lane][index];
+    }
+
+    /*
+     * Returns the worker of lane with the fewest tasks queued or running, the first one on a tie
+     * so a lane only starts more threads when it is busy.
+     */
+    private synchronized Worker getLeastBusyWorker(int lane) {
+        Worker leastBusy = getWorker(lane, 0);
+        for (int i = 1; i < LANE_WORKERS[lane] && leastBusy.mTaskCount > 0; i++) {
+            final Worker worker = getWorker(lane, i);
+            if (worker.mTaskCount < leastBusy.mTaskCount) {
+                leastBusy = worker;
+            }
+        }
+        return leastBusy;
+    }
+
+    /**
+     * Runs {@code task} on {@code lane}, unless {@code token} is cancelled first.
+     *
+     * @param token optional token to cancel the task with, may be null.
+     */
+    public void post(int lane, CancellationToken token, Runnable task) {
+        postDelayed(lane, token, task, 0 /* delayMs */);
+    }
+
+    /**
+     * Runs {@code task} on {@code lane} after {@code delayMs}, unless {@code token} is cancelled
+     * first.
+     *
+     * @param token optional token to cancel the task with, may be null.
+     */
+    public void postDelayed(int lane, CancellationToken token, Runnable task, long delayMs) {
+        final Worker worker;
+        synchronized (this) {
+            worker = getLeastBusyWorker(lane);
+            worker.mTaskCount++;
+        }
+        final Task scheduled = new Task(this, lane, worker, token, task,
+                SystemClock.uptimeMillis() + delayMs);
+        if (token != null && !token.add(scheduled)) {
+            onTaskDone(worker);
+            return;
+        }
+        mStats[lane].onQueued();
+        worker.mHandler.postAtTime(scheduled, scheduled.mRunAtMs);
+    }
+
+    private synchronized void onTaskDone(Worker worker) {
+        worker.mTaskCount--;
+    }
+
+    /**
+     * Returns the stats of every lane, keyed by lane name.
+     */
+    public JSONObject dumpJson() throws JSONException {
+        final JSONObject lanes = new JSONObject();
+        for (int lane = 0; lane < LANE_COUNT; lane++) {
+            mStats[lane].forgetRemovedMessages();
+            final JSONObject stats = mStats[lane].toJson();
+            stats.put("workers", LANE_WORKERS[lane]);
+            lanes.put(LANE_NAMES[lane], stats);
+        }
+        return lanes;
+    }
+
+    @VisibleForTesting
+    LaneStats getStats(int lane) {
+        return mStats[lane];
+    }
+
+    /**
+     * Cancels the tasks posted with it that have not started yet. Tasks already running can poll
+     * {@link #isCancelled()} to stop early.
+     *
+     * <p>Add the token to a {@link com.android.settings.core.lifecycle.Lifecycle} to cancel it when
+     * the owning screen is destroyed, or call {@link #cancel()} directly.
+     */
+    public static class CancellationToken implements LifecycleObserver, OnDestroy {
+
+        private final List<Task> mPending = new ArrayList<>();
+        private volatile boolean mCancelled;
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        public void cancel() {
+            final Task[] pending;
+            synchronized (mPending) {
+                mCancelled = true;
+                pending = mPending.toArray(new Task[mPending.size()]);
+                mPending.clear();
+            }
+            for (Task task : pending) {
+                task.unschedule();
+            }
+        }
+
+        @Override
+        public void onDestroy() {
+            cancel();
+        }
+
+        private boolean add(Task task) {
+            synchronized (mPending) {
+                if (mCancelled) {
+                    return false;
+                }
+                mPending.add(task);
+                return true;
+            }
+        }
+
+        private boolean remove(Task task) {
+            synchronized (mPending) {
+                return mPending.remove(task);
+            }
+        }
+    }
+
+    /**
+     * {@link Handler} running on the first worker of a lane of the shared scheduler, recording
+     * the latency of its messages in the lane stats. Its pending messages are counted in the
+     * queue depth of the lane.
+     */
+    public static class LaneHandler extends Handler {
+
+        private final LaneStats mStats;
+        // what -> messages sent and not dispatched yet.
+        private final SparseIntArray mPending = new SparseIntArray();
+
+        public LaneHandler(int lane) {
+            this(lane, null /* callback */);
+        }
+
+        public LaneHandler(int lane, Callback callback) {
+            super(get().getLooper(lane), callback);
+            mStats = get().mStats[lane];
+            mStats.addHandler(this, mPending);
+        }
+
+        @Override
+        public boolean sendMessageAtTime(Message msg, long uptimeMillis) {
+            final int what = msg.what;
+            synchronized (mPending) {
+                mPending.put(what, mPending.get(what) + 1);
+            }
+            mStats.onQueued();
+            final boolean sent = super.sendMessageAtTime(msg, uptimeMillis);
+            if (!sent) {
+                onDequeued(what);
+            }
+            return sent;
+        }
+
+        @Override
+        public void dispatchMessage(Message msg) {
+            onDequeued(msg.what);
+            final long start = SystemClock.uptimeMillis();
+            // Messages sent to the front of the queue have no target time.
+            final long latency = msg.getWhen() > 0 ? start - msg.getWhen() : 0;
+            super.dispatchMessage(msg);
+            mStats.onRun(latency, SystemClock.uptimeMillis() - start);
+        }
+
+        private void onDequeued(int what) {
+            synchronized (mPending) {
+                final int pending = mPending.get(what);
+                if (pending == 0) {
+                    // Sent to the front of the queue, which is not counted.
+                    return;
+                }
+                mPending.put(what, pending - 1);
+            }
+            mStats.onDequeued();
+        }
+
+        /*
+         * Returns how many of the messages counted as pending were removed from the queue since,
+         * and stops counting them. Messages of a what are only known to be removed once none is
+         * left.
+         */
+        private int forgetRemovedMessages() {
+            int removed = 0;
+            synchronized (mPending) {
+                for (int i = 0; i < mPending.size(); i++) {
+                    if (mPending.valueAt(i) > 0 && !hasMessages(mPending.keyAt(i))) {
+                        removed += mPending.valueAt(i);
+                        mPending.setValueAt(i, 0);
+                    }
+                }
+            }
+            return removed;
+        }
+
+        /*
+         * Returns how many messages were still counted as pending when the handler was garbage
+         * collected, all of them removed since queued messages keep their handler alive.
+         */
+        private static int forgetAllMessages(SparseIntArray pending) {
+            int removed = 0;
+            synchronized (pending) {
+                for (int i = 0; i < pending.size(); i++) {
+                    removed += pending.valueAt(i);
+                }
+                pending.clear();
+            }
+            return removed;
+        }
+    }
+
+    private static final class Worker {
+        final Looper mLooper;
+        final Handler mHandler;
+        // Tasks queued or running on the worker, guarded by the scheduler.
+        int mTaskCount;
+
+        Worker(Looper looper) {
+            mLooper = looper;
+            mHandler = new Handler(looper);
+        }
+    }
+
+    private static final class Task implements Runnable {
+        private final TaskScheduler mScheduler;
+        private final int mLane;
+        private final Worker mWorker;
+        private final CancellationToken mToken;
+        private final Runnable mRunnable;
+        private final long mRunAtMs;
+
+        Task(TaskScheduler scheduler, int lane, Worker worker, CancellationToken token,
+                Runnable runnable, long runAtMs) {
+            mScheduler = scheduler;
+            mLane = lane;
+            mWorker = worker;
+            mToken = token;
+            mRunnable = runnable;
+            mRunAtMs = runAtMs;
+        }
+
+        @Override
+        public void run() {
+            // A task removed from its token is being cancelled concurrently, let it go.
+            if (mToken != null && !mToken.remove(this)) {
+                return;
+            }
+            final LaneStats stats = mScheduler.mStats[mLane];
+            stats.onDequeued();
+            final long start = SystemClock.uptimeMillis();
+            try {
+                mRunnable.run();
+            } finally {
+                mScheduler.onTaskDone(mWorker);
+            }
+            stats.onRun(start - mRunAtMs, SystemClock.uptimeMillis() - start);
+        }
+
+        void unschedule() {
+            mWorker.mHandler.removeCallbacks(this);
+            mScheduler.mStats[mLane].onDequeued();
+            mScheduler.onTaskDone(mWorker);
+        }
+    }
+
+    @VisibleForTesting
+    static final class LaneStats {
+        private final List<WeakReference<LaneHandler>> mHandlers = new ArrayList<>();
+        // Pending counts of the handlers, kept to forget them once their handler is collected.
+        private final List<SparseIntArray> mHandlerPending = new ArrayList<>();
+        private int mQueued;
+        private int mMaxQueued;
+        private long mRunCount;
+        private long mTotalLatencyMs;
+        private long mMaxLatencyMs;
+        private long mTotalRunMs;
+        private long mMaxRunMs;
+
+        synchronized void onQueued() {
+            mQueued++;
+            mMaxQueued = Math.max(mMaxQueued, mQueued);
+        }
+
+        synchronized void onDequeued() {
+            mQueued--;
+        }
+
+        synchronized void addHandler(LaneHandler handler, SparseIntArray pending) {
+            mHandlers.add(new WeakReference<>(handler));
+            mHandlerPending.add(pending);
+        }
+
+        /**
+         * Stops counting the messages removed from the handlers of the lane before they ran, so
+         * the queue depth is up to date.
+         */
+        void forgetRemovedMessages() {
+            final List<LaneHandler> handlers = new ArrayList<>();
+            final List<SparseIntArray> collected = new ArrayList<>();
+            synchronized (this) {
+                for (int i = mHandlers.size() - 1; i >= 0; i--) {
+                    final LaneHandler handler = mHandlers.get(i).get();
+                    if (handler == null) {
+                        mHandlers.remove(i);
+                        collected.add(mHandlerPending.remove(i));
+                    } else {
+                        handlers.add(handler);
+                    }
+                }
+            }
+            // Not under the stats lock, handlers take it while holding their own.
+            int removed = 0;
+            for (int i = 0; i < handlers.size(); i++) {
+                removed += handlers.get(i).forgetRemovedMessages();
+            }
+            for (int i = 0; i < collected.size(); i++) {
+                removed += LaneHandler.forgetAllMessages(collected.get(i));
+            }
+            synchronized (this) {
+                mQueued -= removed;
+            }
+        }
+
+        synchronized void onRun(long latencyMs, long runMs) {
+            mRunCount++;
+            mTotalLatencyMs += latencyMs;
+            mMaxLatencyMs = Math.max(mMaxLatencyMs, latencyMs);
+            mTotalRunMs += runMs;
+            mMaxRunMs = Math.max(mMaxRunMs, runMs);
+        }
+
+        @VisibleForTesting
+        synchronized int getQueued() {
+            return mQueued;
+        }
+
+        @VisibleForTesting
+        synchronized long getRunCount() {
+            return mRunCount;
+        }
+
+        synchronized JSONObject toJson() throws JSONException {
+            final JSONObject json = new JSONObject();
+            json.put("queued", mQueued);
+            json.put("max_queued", mMaxQueued);
+            json.put("run", mRunCount);
+            json.put("avg_latency_ms", mRunCount == 0 ? 0 : mTotalLatencyMs / mRunCount);
+            json.put("max_latency_ms", mMaxLatencyMs);
+            json.put("avg_run_ms", mRunCount == 0 ? 0 : mTotalRunMs / mRunCount);
+            json.put("max_run_ms", mMaxRunMs);
+            return json;
+        }
+    }
+}
@@ -32,7 +32,6 @@ import android.net.NetworkCapabilities;
 import android.net.NetworkRequest;
 import android.os.Bundle;
 import android.os.Handler;
-import android.os.HandlerThread;
 import android.os.Message;
 import android.os.RemoteException;
 import android.os.ServiceManager;
@@ -58,6 +57,7 @@ import com.android.internal.net.VpnProfile;
 import com.android.internal.util.ArrayUtils;
 import com.android.settings.R;
 import com.android.settings.RestrictedSettingsFragment;
+import com.android.settings.utils.TaskScheduler;
 import com.android.settings.widget.GearPreference;
 import com.android.settings.widget.GearPreference.OnGearClickListener;
 import com.android.settingslib.RestrictedLockUtils;
@@ -102,7 +102,6 @@ public class VpnSettings extends RestrictedSettingsFragment implements
 
     @GuardedBy("this")
     private Handler mUpdater;
-    private HandlerThread mUpdaterThread;
     private LegacyVpnInfo mConnectedLegacyVpn;
 
     private boolean mUnavailable;
@@ -188,9 +187,7 @@ public class VpnSettings extends RestrictedSettingsFragment implements
         mConnectivityManager.registerNetworkCallback(VPN_REQUEST, mNetworkCallback);
 
         // Trigger a refresh
-        mUpdaterThread = new HandlerThread("Refresh VPN list in background");
-        mUpdaterThread.start();
-        mUpdater = new Handler(mUpdaterThread.getLooper(), this);
+        mUpdater = new TaskScheduler.LaneHandler(TaskScheduler.LANE_VISIBLE_CONTENT, this);
         mUpdater.sendEmptyMessage(RESCAN_MESSAGE);
     }
 
@@ -207,8 +204,6 @@ public class VpnSettings extends RestrictedSettingsFragment implements
         synchronized (this) {
             mUpdater.removeCallbacksAndMessages(null);
             mUpdater = null;
-            mUpdaterThread.quit();
-            mUpdaterThread = null;
         }
 
         super.onPause();
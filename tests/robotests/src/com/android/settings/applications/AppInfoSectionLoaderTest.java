@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.settings.SettingsRobolectricTestRunner;
+import com.android.settings.TestConfig;
+import com.android.settings.testutils.TaskSchedulerTestUtils;
+import com.android.settings.utils.TaskScheduler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+@Config(manifest = TestConfig.MANIFEST_PATH, sdk = TestConfig.SDK_VERSION)
+public class AppInfoSectionLoaderTest {
+
+    private static final String PACKAGE_NAME = "com.test.package";
+    private static final String SECTION = "section";
+
+    private AppInfoSectionLoader mLoader;
+    private AtomicInteger mFetchCount;
+    private List<String> mLoaded;
+
+    @Before
+    public void setUp() {
+        AppInfoSectionLoader.clearCache();
+        mLoader = new AppInfoSectionLoader(PACKAGE_NAME, 0 /* userId */);
+        mFetchCount = new AtomicInteger();
+        mLoaded = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        mLoader.release();
+        AppInfoSectionLoader.clearCache();
+    }
+
+    @Test
+    public void load_shouldDeliverFetchedSection() {
+        load(mLoader);
+        runFetches();
+
+        assertThat(mFetchCount.get()).isEqualTo(1);
+        assertThat(mLoaded).containsExactly("summary");
+    }
+
+    @Test
+    public void load_whileFetching_shouldFetchOnceAndDeliverToAll() {
+        load(mLoader);
+        load(mLoader);
+        runFetches();
+
+        assertThat(mFetchCount.get()).isEqualTo(1);
+        assertThat(mLoaded).containsExactly("summary", "summary");
+    }
+
+    @Test
+    public void load_fetchedForOtherPage_shouldDeliverCachedRightAway() {
+        load(mLoader);
+        runFetches();
+
+        final AppInfoSectionLoader loader = new AppInfoSectionLoader(PACKAGE_NAME, 0);
+        load(loader);
+        loader.release();
+
+        assertThat(mFetchCount.get()).isEqualTo(1);
+        assertThat(mLoaded).containsExactly("summary", "summary");
+    }
+
+    @Test
+    public void load_afterInvalidate_shouldFetchAgain() {
+        load(mLoader);
+        runFetches();
+
+        mLoader.invalidate();
+        load(mLoader);
+        runFetches();
+
+        assertThat(mFetchCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void invalidate_whileFetching_shouldNotCacheFetchedSection() {
+        load(mLoader);
+        mLoader.invalidate();
+        runFetches();
+
+        assertThat(mLoaded).containsExactly("summary");
+
+        load(mLoader);
+        runFetches();
+
+        assertThat(mFetchCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void load_afterInvalidateWhileFetching_shouldFetchAgain() {
+        load(mLoader);
+        mLoader.invalidate();
+        load(mLoader);
+        runFetches();
+
+        assertThat(mFetchCount.get()).isEqualTo(2);
+        assertThat(mLoaded).containsExactly("summary", "summary");
+    }
+
+    @Test
+    public void load_otherUser_shouldNotShareSection() {
+        load(mLoader);
+        runFetches();
+
+        final AppInfoSectionLoader loader = new AppInfoSectionLoader(PACKAGE_NAME, 10);
+        load(loader);
+        runFetches();
+        loader.release();
+
+        assertThat(mFetchCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void release_shouldDropPendingSections() {
+        load(mLoader);
+        mLoader.release();
+        runFetches();
+
+        assertThat(mFetchCount.get()).isEqualTo(0);
+        assertThat(mLoaded).isEmpty();
+    }
+
+    private void load(AppInfoSectionLoader loader) {
+        loader.load(SECTION, () -> {
+            mFetchCount.incrementAndGet();
+            return "summary";
+        }, mLoaded::add);
+    }
+
+    private static void runFetches() {
+        TaskSchedulerTestUtils.runLane(TaskScheduler.LANE_VISIBLE_CONTENT);
+        ShadowLooper.runUiThreadTasks();
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.widget.SectionIndexer;
+
+import com.android.settings.SettingsRobolectricTestRunner;
+import com.android.settings.TestConfig;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+@Config(manifest = TestConfig.MANIFEST_PATH, sdk = TestConfig.SDK_VERSION)
+public class AppListFastScrollerTest {
+
+    @Mock
+    private RecyclerView mRecyclerView;
+    @Mock
+    private LinearLayoutManager mLayoutManager;
+    @Mock
+    private RecyclerView.Adapter mAdapter;
+    @Mock
+    private SectionIndexer mSectionIndexer;
+
+    private AppListFastScroller mFastScroller;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(mRecyclerView.getContext()).thenReturn(RuntimeEnvironment.application);
+        when(mRecyclerView.getLayoutManager()).thenReturn(mLayoutManager);
+        when(mRecyclerView.getAdapter()).thenReturn(mAdapter);
+        when(mRecyclerView.getHeight()).thenReturn(1000);
+        when(mAdapter.getItemCount()).thenReturn(30);
+        when(mSectionIndexer.getSections()).thenReturn(new Object[] {"A", "B", "C", "D"});
+        when(mSectionIndexer.getPositionForSection(2)).thenReturn(20);
+        when(mSectionIndexer.getPositionForSection(3)).thenReturn(40);
+        mFastScroller = new AppListFastScroller(mRecyclerView, mSectionIndexer);
+    }
+
+    @Test
+    public void scrollToY_shouldScrollToSectionUnderFinger() {
+        mFastScroller.scrollToY(600);
+
+        verify(mLayoutManager).scrollToPositionWithOffset(20, 0);
+    }
+
+    @Test
+    public void scrollToY_sectionPastRows_shouldScrollToLastRow() {
+        mFastScroller.scrollToY(1200);
+
+        verify(mLayoutManager).scrollToPositionWithOffset(29, 0);
+    }
+
+    @Test
+    public void scrollToY_noSections_shouldNotScroll() {
+        when(mSectionIndexer.getSections()).thenReturn(new Object[0]);
+
+        mFastScroller.scrollToY(600);
+
+        verify(mLayoutManager, never()).scrollToPositionWithOffset(anyInt(), anyInt());
+    }
+}
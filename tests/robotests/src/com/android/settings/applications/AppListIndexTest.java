@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.mock;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+
+import com.android.settings.SettingsRobolectricTestRunner;
+import com.android.settings.TestConfig;
+import com.android.settingslib.applications.ApplicationsState.AppEntry;
+import com.android.settingslib.applications.ApplicationsState.AppFilter;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+@Config(manifest = TestConfig.MANIFEST_PATH, sdk = TestConfig.SDK_VERSION)
+public class AppListIndexTest {
+
+    private AppListIndex mIndex;
+    private CountingFilter mFilter;
+    private AppEntry mAlpha;
+    private AppEntry mBeta;
+    private AppEntry mGamma;
+
+    @Before
+    public void setUp() {
+        mIndex = new AppListIndex(mock(Context.class));
+        mFilter = new CountingFilter();
+        mAlpha = createEntry("Alpha", "com.alpha", 300);
+        mBeta = createEntry("beta", "com.beta", 100);
+        mGamma = createEntry("Gamma", "com.gamma", 200);
+        mIndex.update(Arrays.asList(mGamma, mAlpha, mBeta));
+    }
+
+    @Test
+    public void query_byLabel_shouldSortLikeAlphaComparator() {
+        final AppEntry betaWork = createEntry("beta", "com.beta", 100);
+        betaWork.info.uid = 1010001;
+        mIndex.update(Arrays.asList(mGamma, betaWork, mAlpha, mBeta));
+
+        assertThat(mIndex.query(new AppFilter[0], AppListIndex.ORDER_LABEL))
+                .containsExactly(mAlpha, mBeta, betaWork, mGamma).inOrder();
+    }
+
+    @Test
+    public void query_bySize_shouldSortLargestFirst() {
+        assertThat(mIndex.query(new AppFilter[0], AppListIndex.ORDER_SIZE_TOTAL))
+                .containsExactly(mAlpha, mGamma, mBeta).inOrder();
+    }
+
+    @Test
+    public void update_relabeledAndResizedEntries_shouldMoveThem() {
+        mIndex.query(new AppFilter[0], AppListIndex.ORDER_SIZE_TOTAL);
+        mAlpha.label = "Zeta";
+        mBeta.size = 1000;
+
+        mIndex.update(Arrays.asList(mGamma, mAlpha, mBeta));
+
+        assertThat(mIndex.query(new AppFilter[0], AppListIndex.ORDER_LABEL))
+                .containsExactly(mBeta, mGamma, mAlpha).inOrder();
+        assertThat(mIndex.query(new AppFilter[0], AppListIndex.ORDER_SIZE_TOTAL))
+                .containsExactly(mBeta, mAlpha, mGamma).inOrder();
+    }
+
+    @Test
+    public void update_removedEntry_shouldDropItFromResults() {
+        mIndex.query(new AppFilter[] {mFilter}, AppListIndex.ORDER_LABEL);
+
+        mIndex.update(Arrays.asList(mGamma, mAlpha));
+
+        assertThat(mIndex.query(new AppFilter[] {mFilter}, AppListIndex.ORDER_LABEL))
+                .containsExactly(mAlpha, mGamma).inOrder();
+    }
+
+    @Test
+    public void query_sameFilterAgain_shouldNotReevaluateIt() {
+        mIndex.query(new AppFilter[] {mFilter}, AppListIndex.ORDER_LABEL);
+        mIndex.query(new AppFilter[] {mFilter}, AppListIndex.ORDER_SIZE_TOTAL);
+
+        assertThat(mFilter.mInits).isEqualTo(1);
+        assertThat(mFilter.mCalls).isEqualTo(3);
+    }
+
+    @Test
+    public void query_multipleFilters_shouldIntersectResults() {
+        final AppFilter notGamma = new CountingFilter() {
+            @Override
+            public boolean filterApp(AppEntry info) {
+                super.filterApp(info);
+                return info != mGamma;
+            }
+        };
+        mFilter.mRejected = mAlpha;
+
+        assertThat(mIndex.query(new AppFilter[] {mFilter, null, notGamma},
+                AppListIndex.ORDER_LABEL)).containsExactly(mBeta);
+    }
+
+    @Test
+    public void update_changedExtraInfo_shouldOnlyReevaluateThatEntry() {
+        mIndex.query(new AppFilter[] {mFilter}, AppListIndex.ORDER_LABEL);
+        mFilter.mRejected = mBeta;
+        mBeta.extraInfo = new Object();
+
+        mIndex.update(Arrays.asList(mGamma, mAlpha, mBeta));
+
+        assertThat(mIndex.query(new AppFilter[] {mFilter}, AppListIndex.ORDER_LABEL))
+                .containsExactly(mAlpha, mGamma).inOrder();
+        assertThat(mFilter.mInits).isEqualTo(2);
+        assertThat(mFilter.mCalls).isEqualTo(4);
+    }
+
+    @Test
+    public void update_unchangedEntries_shouldNotReevaluateFilters() {
+        mIndex.query(new AppFilter[] {mFilter}, AppListIndex.ORDER_LABEL);
+
+        mIndex.update(Arrays.asList(mGamma, mAlpha, mBeta));
+
+        assertThat(mFilter.mInits).isEqualTo(1);
+        assertThat(mFilter.mCalls).isEqualTo(3);
+    }
+
+    @Test
+    public void query_tooManyFilters_shouldDropLeastRecentlyQueried() {
+        mIndex.query(new AppFilter[] {mFilter}, AppListIndex.ORDER_LABEL);
+        for (int i = 0; i < AppListIndex.MAX_CACHED_FILTERS; i++) {
+            mIndex.query(new AppFilter[] {new CountingFilter()}, AppListIndex.ORDER_LABEL);
+        }
+
+        mIndex.query(new AppFilter[] {mFilter}, AppListIndex.ORDER_LABEL);
+
+        assertThat(mFilter.mInits).isEqualTo(2);
+    }
+
+    @Test
+    public void invalidateFilters_shouldReevaluateFilters() {
+        mIndex.query(new AppFilter[] {mFilter}, AppListIndex.ORDER_LABEL);
+
+        mIndex.invalidateFilters();
+        mIndex.query(new AppFilter[] {mFilter}, AppListIndex.ORDER_LABEL);
+
+        assertThat(mFilter.mInits).isEqualTo(2);
+        assertThat(mFilter.mCalls).isEqualTo(6);
+    }
+
+    private static AppEntry createEntry(String label, String packageName, long size) {
+        final AppEntry entry = mock(AppEntry.class);
+        entry.label = label;
+        entry.size = size;
+        entry.info = new ApplicationInfo();
+        entry.info.packageName = packageName;
+        entry.info.uid = 10001;
+        return entry;
+    }
+
+    private static class CountingFilter implements AppFilter {
+        int mInits;
+        int mCalls;
+        AppEntry mRejected;
+
+        @Override
+        public void init() {
+            mInits++;
+        }
+
+        @Override
+        public boolean filterApp(AppEntry info) {
+            mCalls++;
+            return info != mRejected;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.graphics.drawable.Drawable;
+import android.os.Looper;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+
+import com.android.settings.SettingsRobolectricTestRunner;
+import com.android.settings.TestConfig;
+import com.android.settingslib.applications.ApplicationsState;
+import com.android.settingslib.applications.ApplicationsState.AppEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+@Config(manifest = TestConfig.MANIFEST_PATH, sdk = TestConfig.SDK_VERSION)
+public class AppListRecyclerAdapterTest {
+
+    @Mock
+    private ManageApplications mManageApplications;
+    @Mock
+    private ManageApplications.ApplicationsAdapter mApplications;
+    @Mock
+    private ApplicationsState mState;
+
+    private View mEmptyView;
+    private AppListRecyclerAdapter mAdapter;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(mState.getBackgroundLooper()).thenReturn(Looper.myLooper());
+        mEmptyView = new View(RuntimeEnvironment.application);
+        mAdapter = new AppListRecyclerAdapter(mManageApplications, mApplications, mState,
+                mEmptyView);
+    }
+
+    @Test
+    public void setEntries_shouldShowEntriesFollowedByExtraView() {
+        mAdapter.setEntries(createEntries(2), true);
+        ShadowLooper.runUiThreadTasks();
+
+        assertThat(mAdapter.getItemCount()).isEqualTo(3);
+        assertThat(mAdapter.getItemId(2)).isEqualTo(-1L);
+        assertThat(mAdapter.hasStableIds()).isTrue();
+        assertThat(mEmptyView.getVisibility()).isEqualTo(View.GONE);
+    }
+
+    @Test
+    public void setEntries_empty_shouldShowEmptyView() {
+        mAdapter.setEntries(new ArrayList<>(), false);
+        ShadowLooper.runUiThreadTasks();
+
+        assertThat(mAdapter.getItemCount()).isEqualTo(0);
+        assertThat(mEmptyView.getVisibility()).isEqualTo(View.VISIBLE);
+    }
+
+    @Test
+    public void setEntries_beforePreviousDiffApplied_shouldOnlyApplyLatest() {
+        ShadowLooper.pauseMainLooper();
+        mAdapter.setEntries(createEntries(5), false);
+        mAdapter.setEntries(createEntries(2), false);
+        ShadowLooper.unPauseMainLooper();
+        ShadowLooper.runUiThreadTasks();
+
+        assertThat(mAdapter.getItemCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void prefetchIcons_shouldLoadMissingIconsInRange() {
+        final List<AppEntry> entries = createEntries(3);
+        entries.get(1).icon = mock(Drawable.class);
+        mAdapter.setEntries(entries, false);
+        ShadowLooper.runUiThreadTasks();
+
+        mAdapter.prefetchIcons(1, 1 + AppListRecyclerAdapter.PREFETCH_ROWS);
+        ShadowLooper.runUiThreadTasks();
+
+        verify(mState, never()).ensureIcon(entries.get(0));
+        verify(mState, never()).ensureIcon(entries.get(1));
+        verify(mState).ensureIcon(entries.get(2));
+    }
+
+    @Test
+    public void setEntries_unchangedRows_shouldNotRebindThem() {
+        final List<AppEntry> entries = createEntries(3);
+        mAdapter.setEntries(entries, false);
+        ShadowLooper.runUiThreadTasks();
+        final List<Integer> changed = observeChangedRows();
+
+        mAdapter.setEntries(entries, false);
+        ShadowLooper.runUiThreadTasks();
+
+        assertThat(changed).isEmpty();
+    }
+
+    @Test
+    public void setEntries_entryUpdatedInPlace_shouldRebindOnlyItsRow() {
+        final List<AppEntry> entries = createEntries(3);
+        mAdapter.setEntries(entries, true);
+        ShadowLooper.runUiThreadTasks();
+        final List<Integer> changed = observeChangedRows();
+
+        entries.get(1).sizeStr = "1.00 MB";
+        mAdapter.setEntries(entries, true);
+        ShadowLooper.runUiThreadTasks();
+
+        // The extra view is rebound with every list.
+        assertThat(changed).containsExactly(1, 3);
+    }
+
+    private List<Integer> observeChangedRows() {
+        final List<Integer> changed = new ArrayList<>();
+        mAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
+                assertThat(payload).isNotNull();
+                for (int i = positionStart; i < positionStart + itemCount; i++) {
+                    changed.add(i);
+                }
+            }
+        });
+        return changed;
+    }
+
+    private static List<AppEntry> createEntries(int count) {
+        final AppEntry[] entries = new AppEntry[count];
+        for (int i = 0; i < count; i++) {
+            entries[i] = mock(AppEntry.class);
+        }
+        return Arrays.asList(entries);
+    }
+}
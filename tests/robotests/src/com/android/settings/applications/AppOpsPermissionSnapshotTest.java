@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.Manifest;
+import android.app.AppOpsManager;
+import android.app.AppOpsManager.OpEntry;
+import android.app.AppOpsManager.PackageOps;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ParceledListSlice;
+import android.os.UserHandle;
+
+import com.android.settings.SettingsRobolectricTestRunner;
+import com.android.settings.TestConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+@Config(manifest = TestConfig.MANIFEST_PATH, sdk = TestConfig.SDK_VERSION)
+public class AppOpsPermissionSnapshotTest {
+
+    private static final int UID = UserHandle.getUid(UserHandle.USER_SYSTEM, 10001);
+    private static final int WORK_UID = UserHandle.getUid(10, 10001);
+
+    @Mock
+    private IPackageManagerWrapper mPackageManager;
+    @Mock
+    private AppOpsManager mAppOpsManager;
+
+    private List<UserHandle> mProfiles;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        AppOpsPermissionSnapshot.invalidate();
+        mProfiles = Arrays.asList(UserHandle.SYSTEM, UserHandle.of(10));
+        when(mPackageManager.getInstalledPackages(PackageManager.GET_PERMISSIONS,
+                UserHandle.USER_SYSTEM)).thenReturn(new ParceledListSlice<>(Arrays.asList(
+                        createPackageInfo("com.overlay", UID,
+                                Manifest.permission.SYSTEM_ALERT_WINDOW, true),
+                        createPackageInfo("com.other", UID + 1,
+                                Manifest.permission.INTERNET, true))));
+        when(mPackageManager.getInstalledPackages(PackageManager.GET_PERMISSIONS, 10))
+                .thenReturn(new ParceledListSlice<>(Collections.singletonList(
+                        createPackageInfo("com.overlay", WORK_UID,
+                                Manifest.permission.SYSTEM_ALERT_WINDOW, false))));
+        final List<PackageOps> packageOps = Arrays.asList(
+                createPackageOps("com.overlay", WORK_UID, AppOpsManager.OP_SYSTEM_ALERT_WINDOW,
+                        AppOpsManager.MODE_ALLOWED),
+                createPackageOps("com.installer", UID + 2,
+                        AppOpsManager.OP_REQUEST_INSTALL_PACKAGES, AppOpsManager.MODE_ERRORED),
+                createPackageOps("com.stranger", UserHandle.getUid(11, 10001),
+                        AppOpsManager.OP_SYSTEM_ALERT_WINDOW, AppOpsManager.MODE_ALLOWED));
+        when(mAppOpsManager.getPackagesForOps(any(int[].class))).thenReturn(packageOps);
+    }
+
+    @After
+    public void tearDown() {
+        AppOpsPermissionSnapshot.invalidate();
+    }
+
+    @Test
+    public void get_shouldCombinePermissionsAndAppOpsOfAllProfiles() {
+        final AppOpsPermissionSnapshot snapshot =
+                AppOpsPermissionSnapshot.get(mPackageManager, mAppOpsManager, mProfiles);
+        final int op = AppOpsManager.OP_SYSTEM_ALERT_WINDOW;
+
+        assertThat(snapshot.isRequested(UID, "com.overlay", op)).isTrue();
+        assertThat(snapshot.isGranted(UID, "com.overlay", op)).isTrue();
+        assertThat(snapshot.getMode(UID, "com.overlay", op))
+                .isEqualTo(AppOpsManager.MODE_DEFAULT);
+        assertThat(snapshot.isRequested(WORK_UID, "com.overlay", op)).isTrue();
+        assertThat(snapshot.isGranted(WORK_UID, "com.overlay", op)).isFalse();
+        assertThat(snapshot.getMode(WORK_UID, "com.overlay", op))
+                .isEqualTo(AppOpsManager.MODE_ALLOWED);
+        assertThat(snapshot.isRequested(UID + 1, "com.other", op)).isFalse();
+        assertThat(snapshot.getMode(UID + 2, "com.installer",
+                AppOpsManager.OP_REQUEST_INSTALL_PACKAGES)).isEqualTo(AppOpsManager.MODE_ERRORED);
+        assertThat(snapshot.getMode(UserHandle.getUid(11, 10001), "com.stranger", op))
+                .isEqualTo(AppOpsManager.MODE_DEFAULT);
+    }
+
+    @Test
+    public void getRequestingPackages_shouldOnlyReturnPackagesOfUser() {
+        final AppOpsPermissionSnapshot snapshot =
+                AppOpsPermissionSnapshot.get(mPackageManager, mAppOpsManager, mProfiles);
+
+        final List<PackageInfo> packages = snapshot.getRequestingPackages(
+                UserHandle.USER_SYSTEM, AppOpsManager.OP_SYSTEM_ALERT_WINDOW);
+
+        assertThat(packages).hasSize(1);
+        assertThat(packages.get(0).applicationInfo.uid).isEqualTo(UID);
+    }
+
+    @Test
+    public void get_twiceWithinTtl_shouldShareSnapshot() throws Exception {
+        final AppOpsPermissionSnapshot snapshot =
+                AppOpsPermissionSnapshot.get(mPackageManager, mAppOpsManager, mProfiles);
+
+        assertThat(AppOpsPermissionSnapshot.get(mPackageManager, mAppOpsManager, mProfiles))
+                .isSameAs(snapshot);
+        verify(mPackageManager).getInstalledPackages(anyInt(), eq(UserHandle.USER_SYSTEM));
+        verify(mAppOpsManager).getPackagesForOps(any(int[].class));
+    }
+
+    @Test
+    public void get_afterInvalidate_shouldFetchAgain() throws Exception {
+        final AppOpsPermissionSnapshot snapshot =
+                AppOpsPermissionSnapshot.get(mPackageManager, mAppOpsManager, mProfiles);
+
+        AppOpsPermissionSnapshot.invalidate();
+
+        assertThat(AppOpsPermissionSnapshot.get(mPackageManager, mAppOpsManager, mProfiles))
+                .isNotSameAs(snapshot);
+        verify(mAppOpsManager, times(2)).getPackagesForOps(any(int[].class));
+    }
+
+    @Test
+    public void get_otherProfiles_shouldFetchAgain() {
+        final AppOpsPermissionSnapshot snapshot =
+                AppOpsPermissionSnapshot.get(mPackageManager, mAppOpsManager, mProfiles);
+
+        assertThat(AppOpsPermissionSnapshot.get(mPackageManager, mAppOpsManager,
+                Collections.singletonList(UserHandle.SYSTEM))).isNotSameAs(snapshot);
+    }
+
+    @Test
+    public void isSupported_shouldRequireMatchingPermission() {
+        assertThat(AppOpsPermissionSnapshot.isSupported(AppOpsManager.OP_WRITE_SETTINGS,
+                new String[] {Manifest.permission.WRITE_SETTINGS})).isTrue();
+        assertThat(AppOpsPermissionSnapshot.isSupported(AppOpsManager.OP_WRITE_SETTINGS,
+                new String[] {Manifest.permission.SYSTEM_ALERT_WINDOW})).isFalse();
+        assertThat(AppOpsPermissionSnapshot.isSupported(AppOpsManager.OP_CAMERA,
+                new String[] {Manifest.permission.CAMERA})).isFalse();
+    }
+
+    private static PackageInfo createPackageInfo(String packageName, int uid, String permission,
+            boolean granted) {
+        final PackageInfo packageInfo = new PackageInfo();
+        packageInfo.packageName = packageName;
+        packageInfo.applicationInfo = new ApplicationInfo();
+        packageInfo.applicationInfo.packageName = packageName;
+        packageInfo.applicationInfo.uid = uid;
+        packageInfo.requestedPermissions = new String[] {permission};
+        packageInfo.requestedPermissionsFlags =
+                new int[] {granted ? PackageInfo.REQUESTED_PERMISSION_GRANTED : 0};
+        return packageInfo;
+    }
+
+    private static PackageOps createPackageOps(String packageName, int uid, int op, int mode) {
+        final OpEntry entry = mock(OpEntry.class);
+        when(entry.getOp()).thenReturn(op);
+        when(entry.getMode()).thenReturn(mode);
+        final PackageOps packageOps = mock(PackageOps.class);
+        when(packageOps.getPackageName()).thenReturn(packageName);
+        when(packageOps.getUid()).thenReturn(uid);
+        when(packageOps.getOps()).thenReturn(Collections.singletonList(entry));
+        return packageOps;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.Manifest;
+import android.app.AppOpsManager;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+
+import com.android.settings.SettingsRobolectricTestRunner;
+import com.android.settings.TestConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.ReflectionHelpers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+@Config(manifest = TestConfig.MANIFEST_PATH, sdk = TestConfig.SDK_VERSION)
+public class AppOpsStateTest {
+
+    @Mock
+    private AppOpsManager mAppOps;
+    @Mock
+    private PackageManager mPm;
+
+    private AppOpsState mState;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        AppOpsState.invalidateIndex();
+        when(mAppOps.getPackagesForOps(any(int[].class)))
+                .thenReturn(new ArrayList<AppOpsManager.PackageOps>());
+        when(mPm.getPackagesHoldingPermissions(any(String[].class), anyInt()))
+                .thenReturn(new ArrayList<PackageInfo>());
+        mState = buildState();
+    }
+
+    @After
+    public void tearDown() {
+        AppOpsState.invalidateIndex();
+    }
+
+    @Test
+    public void buildState_severalTemplates_shouldFetchOnce() {
+        mState.buildState(AppOpsState.LOCATION_TEMPLATE);
+        mState.buildState(AppOpsState.PERSONAL_TEMPLATE);
+        buildState().buildState(AppOpsState.DEVICE_TEMPLATE);
+
+        verify(mAppOps).getPackagesForOps(any(int[].class));
+        verify(mPm).getPackagesHoldingPermissions(any(String[].class), anyInt());
+    }
+
+    @Test
+    public void buildState_afterInvalidate_shouldFetchAgain() {
+        mState.buildState(AppOpsState.LOCATION_TEMPLATE);
+        AppOpsState.invalidateIndex();
+        mState.buildState(AppOpsState.PERSONAL_TEMPLATE);
+
+        verify(mAppOps, times(2)).getPackagesForOps(any(int[].class));
+    }
+
+    @Test
+    public void buildState_invalidatedWhileFetching_shouldNotShareFetchedOps() {
+        when(mAppOps.getPackagesForOps(any(int[].class))).thenAnswer(invocation -> {
+            // A mode changed while the ops were being read.
+            AppOpsState.invalidateIndex();
+            return new ArrayList<AppOpsManager.PackageOps>();
+        });
+
+        mState.buildState(AppOpsState.LOCATION_TEMPLATE);
+        mState.buildState(AppOpsState.PERSONAL_TEMPLATE);
+
+        verify(mAppOps, times(2)).getPackagesForOps(any(int[].class));
+    }
+
+    @Test
+    public void buildState_sharedIndex_shouldOnlyReturnOpsAndHoldersOfTemplate()
+            throws Exception {
+        final ArrayList<AppOpsManager.PackageOps> pkgs = new ArrayList<>();
+        pkgs.add(buildPackageOps("com.location", AppOpsManager.OP_COARSE_LOCATION));
+        pkgs.add(buildPackageOps("com.contacts", AppOpsManager.OP_READ_CONTACTS));
+        pkgs.add(buildPackageOps("com.both",
+                AppOpsManager.OP_FINE_LOCATION, AppOpsManager.OP_WRITE_CONTACTS));
+        when(mAppOps.getPackagesForOps(any(int[].class))).thenReturn(pkgs);
+        final ArrayList<PackageInfo> holders = new ArrayList<>();
+        holders.add(buildPackageInfo("com.calendar", Manifest.permission.READ_CALENDAR));
+        holders.add(buildPackageInfo("com.sms", Manifest.permission.READ_SMS));
+        // Requests a personal permission, but already has an op for it.
+        holders.add(buildPackageInfo("com.contacts", Manifest.permission.READ_CONTACTS));
+        when(mPm.getPackagesHoldingPermissions(any(String[].class), anyInt()))
+                .thenReturn(holders);
+        when(mPm.getApplicationInfo(anyString(), anyInt())).thenAnswer(invocation ->
+                buildApplicationInfo((String) invocation.getArguments()[0]));
+
+        assertThat(getOps(mState.buildState(AppOpsState.LOCATION_TEMPLATE))).containsExactly(
+                "com.location:" + AppOpsManager.OP_COARSE_LOCATION,
+                "com.both:" + AppOpsManager.OP_FINE_LOCATION);
+        assertThat(getOps(mState.buildState(AppOpsState.PERSONAL_TEMPLATE))).containsExactly(
+                "com.contacts:" + AppOpsManager.OP_READ_CONTACTS,
+                "com.both:" + AppOpsManager.OP_WRITE_CONTACTS,
+                "com.calendar:" + AppOpsManager.OP_READ_CALENDAR);
+        assertThat(getOps(mState.buildState(AppOpsState.MESSAGING_TEMPLATE))).containsExactly(
+                "com.sms:" + AppOpsManager.OP_READ_SMS);
+        verify(mAppOps).getPackagesForOps(any(int[].class));
+    }
+
+    private AppOpsState buildState() {
+        final AppOpsState state = new AppOpsState(RuntimeEnvironment.application);
+        ReflectionHelpers.setField(state, "mAppOps", mAppOps);
+        ReflectionHelpers.setField(state, "mPm", mPm);
+        return state;
+    }
+
+    private static AppOpsManager.PackageOps buildPackageOps(String packageName, int... ops) {
+        final ArrayList<AppOpsManager.OpEntry> entries = new ArrayList<>();
+        for (int op : ops) {
+            entries.add(new AppOpsManager.OpEntry(op, AppOpsManager.MODE_ALLOWED,
+                    1000 /* time */, 0 /* rejectTime */, 0 /* duration */, -1 /* proxyUid */,
+                    null /* proxyPackage */));
+        }
+        return new AppOpsManager.PackageOps(packageName, 0 /* uid */, entries);
+    }
+
+    private static PackageInfo buildPackageInfo(String packageName, String permission) {
+        final PackageInfo info = new PackageInfo();
+        info.packageName = packageName;
+        info.applicationInfo = buildApplicationInfo(packageName);
+        info.requestedPermissions = new String[] { permission };
+        return info;
+    }
+
+    private static ApplicationInfo buildApplicationInfo(String packageName) {
+        final ApplicationInfo info = new ApplicationInfo();
+        info.packageName = packageName;
+        info.sourceDir = "/data/app/" + packageName;
+        return info;
+    }
+
+    /*
+     * Returns the ops of entries as "package:op", one for each op of each entry.
+     */
+    private static List<String> getOps(List<AppOpsState.AppOpEntry> entries) {
+        final ArrayList<String> ops = new ArrayList<>();
+        for (AppOpsState.AppOpEntry entry : entries) {
+            for (int i = 0; i < entry.getNumOpEntry(); i++) {
+                ops.add(entry.getPackageOps().getPackageName() + ":"
+                        + entry.getOpEntry(i).getOp());
+            }
+        }
+        return ops;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.content.pm.ApplicationInfo;
+import android.os.Looper;
+import android.os.UserHandle;
+
+import com.android.settings.SettingsRobolectricTestRunner;
+import com.android.settings.TestConfig;
+import com.android.settingslib.applications.ApplicationsState;
+import com.android.settingslib.applications.ApplicationsState.AppEntry;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+@Config(manifest = TestConfig.MANIFEST_PATH, sdk = TestConfig.SDK_VERSION)
+public class AppStateBaseBridgeTest {
+
+    @Mock
+    private ApplicationsState mState;
+    @Mock
+    private ApplicationsState.Session mSession;
+    @Mock
+    private AppStateBaseBridge.Callback mCallback;
+
+    private ArrayList<AppEntry> mApps;
+    private TestBridge mBridge;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(mState.newSession(any())).thenReturn(mSession);
+        when(mState.getBackgroundLooper()).thenReturn(Looper.myLooper());
+        mApps = new ArrayList<>();
+        mApps.add(createEntry("com.one", UserHandle.USER_SYSTEM));
+        mApps.add(createEntry("com.two", UserHandle.USER_SYSTEM));
+        when(mSession.getAllApps()).thenAnswer(invocation -> new ArrayList<>(mApps));
+        AppStateBaseBridge.clearLoadStats();
+        mBridge = new TestBridge(mState, mCallback);
+    }
+
+    @Test
+    public void loadChanged_nothingLoadedYet_shouldLoadAll() {
+        mBridge.loadChanged();
+
+        assertThat(mBridge.mFullLoads).isEqualTo(1);
+        assertThat(mBridge.mUpdated).isEmpty();
+    }
+
+    @Test
+    public void loadChanged_newEntry_shouldOnlyUpdateIt() {
+        mBridge.loadAll();
+        final AppEntry added = createEntry("com.three", UserHandle.USER_SYSTEM);
+        mApps.add(added);
+        mApps.remove(0);
+
+        mBridge.loadChanged();
+
+        assertThat(mBridge.mFullLoads).isEqualTo(1);
+        assertThat(mBridge.mUpdated).containsExactly(added);
+    }
+
+    @Test
+    public void loadChanged_noNewEntry_shouldNotUpdate() {
+        mBridge.loadAll();
+        mApps.remove(0);
+
+        mBridge.loadChanged();
+        mBridge.loadChanged();
+
+        assertThat(mBridge.mFullLoads).isEqualTo(1);
+        assertThat(mBridge.mUpdated).isEmpty();
+    }
+
+    @Test
+    public void loadChanged_newUser_shouldLoadAll() {
+        mBridge.loadAll();
+        mApps.add(createEntry("com.one", 10));
+
+        mBridge.loadChanged();
+
+        assertThat(mBridge.mFullLoads).isEqualTo(2);
+        assertThat(mBridge.mUpdated).isEmpty();
+    }
+
+    @Test
+    public void loadChanged_manyNewEntries_shouldLoadAll() {
+        mBridge.loadAll();
+        for (int i = 0; i <= AppStateBaseBridge.MAX_ENTRY_UPDATES; i++) {
+            mApps.add(createEntry("com.new" + i, UserHandle.USER_SYSTEM));
+        }
+
+        mBridge.loadChanged();
+
+        assertThat(mBridge.mFullLoads).isEqualTo(2);
+        assertThat(mBridge.mUpdated).isEmpty();
+    }
+
+    @Test
+    public void dumpLoadStatsJson_shouldReportLoadsOfBridge() throws Exception {
+        mBridge.loadAll();
+        mApps.add(createEntry("com.three", UserHandle.USER_SYSTEM));
+        mBridge.loadChanged();
+
+        final JSONObject stats = AppStateBaseBridge.dumpLoadStatsJson()
+                .getJSONObject(TestBridge.class.getName());
+
+        assertThat(stats.getInt("full_loads")).isEqualTo(1);
+        assertThat(stats.getInt("updates")).isEqualTo(1);
+        assertThat(stats.getInt("updated_entries")).isEqualTo(1);
+    }
+
+    private static AppEntry createEntry(String packageName, int userId) {
+        final AppEntry entry = mock(AppEntry.class);
+        entry.info = new ApplicationInfo();
+        entry.info.packageName = packageName;
+        entry.info.uid = UserHandle.getUid(userId, 10001);
+        return entry;
+    }
+
+    private static class TestBridge extends AppStateBaseBridge {
+        int mFullLoads;
+        final ArrayList<AppEntry> mUpdated = new ArrayList<>();
+
+        TestBridge(ApplicationsState appState, Callback callback) {
+            super(appState, callback);
+        }
+
+        @Override
+        protected void loadAllExtraInfo() {
+            mFullLoads++;
+        }
+
+        @Override
+        protected void updateExtraInfo(AppEntry app, String pkg, int uid) {
+            mUpdated.add(app);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.pm.ApplicationInfo;
+import android.os.SystemClock;
+import android.util.SparseArray;
+
+import com.android.settings.SettingsRobolectricTestRunner;
+import com.android.settings.TestConfig;
+import com.android.settings.applications.BatchedStorageStatsSource.UidStats;
+import com.android.settingslib.applications.StorageStatsSource;
+import com.android.settingslib.applications.StorageStatsSource.AppStorageStats;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+@Config(manifest = TestConfig.MANIFEST_PATH, sdk = TestConfig.SDK_VERSION)
+public class BatchedStorageStatsSourceTest {
+
+    private static final String VOLUME_UUID = "volume";
+    private static final int UID = 10001;
+    private static final int SHARED_UID = 10002;
+
+    @Mock
+    private StorageStatsSource mSource;
+
+    private BatchedStorageStatsSource mBatchedSource;
+    private List<ApplicationInfo> mApps;
+    private List<Integer> mChangedUids;
+    private BatchedStorageStatsSource.Listener mListener;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        BatchedStorageStatsSource.clearCache();
+        mBatchedSource = new BatchedStorageStatsSource(mSource);
+        mApps = Arrays.asList(
+                buildApp("app", UID),
+                buildApp("shared1", SHARED_UID),
+                buildApp("shared2", SHARED_UID));
+        final AppStorageStats stats = buildStats(1L, 2L, 3L);
+        when(mSource.getStatsForUid(anyString(), anyInt())).thenReturn(stats);
+        mChangedUids = new ArrayList<>();
+        mListener = (volumeUuid, uid) -> mChangedUids.add(uid);
+        BatchedStorageStatsSource.addListener(mListener);
+    }
+
+    @After
+    public void tearDown() {
+        BatchedStorageStatsSource.removeListener(mListener);
+        BatchedStorageStatsSource.clearCache();
+    }
+
+    @Test
+    public void getStats_shouldQueryEachUidOnce() throws Exception {
+        final SparseArray<UidStats> stats = mBatchedSource.getStats(VOLUME_UUID, mApps);
+
+        assertThat(stats.size()).isEqualTo(2);
+        assertThat(stats.get(SHARED_UID).codeBytes).isEqualTo(1L);
+        assertThat(stats.get(SHARED_UID).getTotalBytes()).isEqualTo(3L);
+        verify(mSource).getStatsForUid(VOLUME_UUID, UID);
+        verify(mSource).getStatsForUid(VOLUME_UUID, SHARED_UID);
+    }
+
+    @Test
+    public void getStats_fetchedRecently_shouldNotQueryAgain() throws Exception {
+        mBatchedSource.getStats(VOLUME_UUID, mApps);
+        final SparseArray<UidStats> stats = mBatchedSource.getStats(VOLUME_UUID, mApps);
+
+        assertThat(stats.size()).isEqualTo(2);
+        verify(mSource).getStatsForUid(VOLUME_UUID, UID);
+    }
+
+    @Test
+    public void getStats_expired_shouldQueryAgain() throws Exception {
+        mBatchedSource.getStats(VOLUME_UUID, mApps);
+        SystemClock.sleep(BatchedStorageStatsSource.STATS_TTL_MS + 1);
+        mBatchedSource.getStats(VOLUME_UUID, mApps);
+
+        verify(mSource, times(2)).getStatsForUid(VOLUME_UUID, UID);
+    }
+
+    @Test
+    public void getStats_queryFailed_shouldLeaveUidOut() throws Exception {
+        when(mSource.getStatsForUid(anyString(), eq(UID)))
+                .thenThrow(new IOException("intentional failure"));
+
+        final SparseArray<UidStats> stats = mBatchedSource.getStats(VOLUME_UUID, mApps);
+
+        assertThat(stats.size()).isEqualTo(1);
+        assertThat(stats.get(UID)).isNull();
+    }
+
+    @Test
+    public void updateStats_shouldReplaceCachedStatsAndNotify() throws Exception {
+        mBatchedSource.getStats(VOLUME_UUID, mApps);
+
+        BatchedStorageStatsSource.updateStats(VOLUME_UUID, UID, buildStats(10L, 20L, 0L));
+        final SparseArray<UidStats> stats = mBatchedSource.getStats(VOLUME_UUID, mApps);
+
+        assertThat(stats.get(UID).getTotalBytes()).isEqualTo(30L);
+        assertThat(mChangedUids).containsExactly(UID);
+        verify(mSource).getStatsForUid(VOLUME_UUID, UID);
+    }
+
+    @Test
+    public void invalidate_shouldQueryAgainAndNotify() throws Exception {
+        mBatchedSource.getStats(VOLUME_UUID, mApps);
+
+        BatchedStorageStatsSource.invalidate(VOLUME_UUID, UID);
+        mBatchedSource.getStats(VOLUME_UUID, mApps);
+
+        assertThat(mChangedUids).containsExactly(UID);
+        verify(mSource, times(2)).getStatsForUid(VOLUME_UUID, UID);
+        verify(mSource).getStatsForUid(VOLUME_UUID, SHARED_UID);
+    }
+
+    @Test
+    public void getStats_otherVolume_shouldNotShareStats() throws Exception {
+        mBatchedSource.getStats(VOLUME_UUID, mApps);
+        mBatchedSource.getStats("other_volume", mApps);
+
+        verify(mSource).getStatsForUid("other_volume", UID);
+        assertThat(BatchedStorageStatsSource.getCachedStats("other_volume", UID)).isNotNull();
+    }
+
+    private static ApplicationInfo buildApp(String packageName, int uid) {
+        final ApplicationInfo info = new ApplicationInfo();
+        info.packageName = packageName;
+        info.uid = uid;
+        return info;
+    }
+
+    private static AppStorageStats buildStats(long code, long data, long cache) {
+        final AppStorageStats stats = mock(AppStorageStats.class);
+        when(stats.getCodeBytes()).thenReturn(code);
+        when(stats.getDataBytes()).thenReturn(data);
+        when(stats.getCacheBytes()).thenReturn(cache);
+        return stats;
+    }
+}
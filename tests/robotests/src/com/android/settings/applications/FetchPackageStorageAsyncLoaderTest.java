@@ -19,6 +19,7 @@ package com.android.settings.applications;
 import static com.google.common.truth.Truth.assertThat;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -32,6 +33,7 @@ import com.android.settings.TestConfig;
 import com.android.settingslib.applications.StorageStatsSource;
 import com.android.settingslib.applications.StorageStatsSource.AppStorageStats;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -46,6 +48,7 @@ import java.io.IOException;
 @Config(manifest = TestConfig.MANIFEST_PATH, sdk = TestConfig.SDK_VERSION)
 public class FetchPackageStorageAsyncLoaderTest {
     private static final String PACKAGE_NAME = "com.test.package";
+    private static final int UID = 10001;
     @Mock(answer = Answers.RETURNS_DEEP_STUBS)
     private Context mContext;
     @Mock
@@ -55,6 +58,12 @@ public class FetchPackageStorageAsyncLoaderTest {
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
+        BatchedStorageStatsSource.clearCache();
+    }
+
+    @After
+    public void tearDown() {
+        BatchedStorageStatsSource.clearCache();
     }
 
     @Test
@@ -84,4 +93,40 @@ public class FetchPackageStorageAsyncLoaderTest {
 
         assertThat(task.loadInBackground()).isNull();
     }
+
+    @Test
+    public void loadInBackground_onlyPackageOfUid_shouldUpdateUidStats() throws Exception {
+        when(mContext.getApplicationContext().getPackageManager().getPackagesForUid(anyInt()))
+                .thenReturn(new String[] {PACKAGE_NAME});
+
+        loadStats();
+
+        assertThat(BatchedStorageStatsSource.getCachedStats(null, UID).getTotalBytes())
+                .isEqualTo(3L);
+    }
+
+    @Test
+    public void loadInBackground_sharedUid_shouldNotUpdateUidStats() throws Exception {
+        when(mContext.getApplicationContext().getPackageManager().getPackagesForUid(anyInt()))
+                .thenReturn(new String[] {PACKAGE_NAME, "com.test.other"});
+
+        loadStats();
+
+        // The stats of one package don't cover the other packages of the uid.
+        assertThat(BatchedStorageStatsSource.getCachedStats(null, UID)).isNull();
+    }
+
+    private void loadStats() throws Exception {
+        AppStorageStats stats = mock(AppStorageStats.class);
+        when(stats.getCodeBytes()).thenReturn(1L);
+        when(stats.getDataBytes()).thenReturn(2L);
+        when(mSource.getStatsForPackage(anyString(), anyString(), any(UserHandle.class)))
+                .thenReturn(stats);
+        ApplicationInfo info = new ApplicationInfo();
+        info.packageName = PACKAGE_NAME;
+        info.uid = UID;
+
+        new FetchPackageStorageAsyncLoader(mContext, mSource, info, new UserHandle(0))
+                .loadInBackground();
+    }
 }
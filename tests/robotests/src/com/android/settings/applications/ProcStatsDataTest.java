@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import android.os.SystemClock;
+
+import com.android.internal.app.procstats.IProcessStats;
+import com.android.internal.app.procstats.ProcessStats;
+import com.android.settings.SettingsRobolectricTestRunner;
+import com.android.settings.TestConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.annotation.Config;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+@Config(manifest = TestConfig.MANIFEST_PATH, sdk = TestConfig.SDK_VERSION)
+public class ProcStatsDataTest {
+
+    private static final long DURATION = 3 * 60 * 60 * 1000;
+    private static final long OTHER_DURATION = 6 * 60 * 60 * 1000;
+
+    @Mock
+    private IProcessStats mService;
+
+    private ProcessStats mStats;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mStats = mock(ProcessStats.class);
+        putCachedStats(DURATION, mStats, SystemClock.elapsedRealtime());
+    }
+
+    @After
+    public void tearDown() {
+        synchronized (ProcStatsData.sStatsCache) {
+            ProcStatsData.sStatsCache.clear();
+        }
+    }
+
+    @Test
+    public void getStats_cachedRecently_shouldNotFetch() throws Exception {
+        assertThat(ProcStatsData.getStats(mService, DURATION, false)).isSameAs(mStats);
+
+        verify(mService, never()).getStatsOverTime(anyLong());
+    }
+
+    @Test
+    public void getStats_expired_shouldFetch() throws Exception {
+        SystemClock.sleep(ProcStatsData.STATS_CACHE_TTL_MS + 1);
+
+        ProcStatsData.getStats(mService, DURATION, false);
+
+        verify(mService).getStatsOverTime(DURATION);
+    }
+
+    @Test
+    public void getStats_forceLoad_shouldBypassCache() throws Exception {
+        ProcStatsData.getStats(mService, DURATION, true);
+
+        verify(mService).getStatsOverTime(DURATION);
+    }
+
+    @Test
+    public void getStats_otherDuration_shouldFetchItsOwnStats() throws Exception {
+        final ProcessStats otherStats = mock(ProcessStats.class);
+        putCachedStats(OTHER_DURATION, otherStats, SystemClock.elapsedRealtime());
+
+        assertThat(ProcStatsData.getStats(mService, OTHER_DURATION, false)).isSameAs(otherStats);
+        assertThat(ProcStatsData.getStats(mService, DURATION, false)).isSameAs(mStats);
+
+        ProcStatsData.sStatsCache.remove(OTHER_DURATION);
+        ProcStatsData.getStats(mService, OTHER_DURATION, false);
+
+        verify(mService).getStatsOverTime(OTHER_DURATION);
+        verify(mService, never()).getStatsOverTime(DURATION);
+    }
+
+    private static void putCachedStats(long duration, ProcessStats stats, long loadTimeMs) {
+        synchronized (ProcStatsData.sStatsCache) {
+            ProcStatsData.sStatsCache.put(duration,
+                    new ProcStatsData.CachedStats(stats, loadTimeMs));
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.app.ActivityManager;
+import android.content.ComponentName;
+
+import com.android.settings.SettingsRobolectricTestRunner;
+import com.android.settings.TestConfig;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+@Config(manifest = TestConfig.MANIFEST_PATH, sdk = TestConfig.SDK_VERSION)
+public class RunningStateTest {
+
+    private static final int UID = 10001;
+
+    @Test
+    public void isSameProcesses_sameState_shouldReturnTrue() {
+        final List<ActivityManager.RunningAppProcessInfo> last = Arrays.asList(
+                createProcess("com.app", 100), createProcess("com.other", 101));
+
+        assertThat(RunningState.isSameProcesses(last, Arrays.asList(
+                createProcess("com.app", 100), createProcess("com.other", 101)))).isTrue();
+    }
+
+    @Test
+    public void isSameProcesses_changedImportance_shouldReturnFalse() {
+        final List<ActivityManager.RunningAppProcessInfo> last =
+                Arrays.asList(createProcess("com.app", 100));
+        final ActivityManager.RunningAppProcessInfo process = createProcess("com.app", 100);
+        process.importance = ActivityManager.RunningAppProcessInfo.IMPORTANCE_CACHED;
+
+        assertThat(RunningState.isSameProcesses(last, Arrays.asList(process))).isFalse();
+    }
+
+    @Test
+    public void isSameProcesses_newPid_shouldReturnFalse() {
+        final List<ActivityManager.RunningAppProcessInfo> last =
+                Arrays.asList(createProcess("com.app", 100));
+
+        assertThat(RunningState.isSameProcesses(last,
+                Arrays.asList(createProcess("com.app", 102)))).isFalse();
+        assertThat(RunningState.isSameProcesses(last, Arrays.asList(
+                createProcess("com.app", 100), createProcess("com.app:remote", 102))))
+                .isFalse();
+    }
+
+    @Test
+    public void isSameServices_sameState_shouldReturnTrue() {
+        final List<ActivityManager.RunningServiceInfo> last =
+                Arrays.asList(createService("com.app", 100));
+
+        assertThat(RunningState.isSameServices(last,
+                Arrays.asList(createService("com.app", 100)))).isTrue();
+        assertThat(RunningState.isSameServices(new ArrayList<>(), null)).isTrue();
+    }
+
+    @Test
+    public void isSameServices_restarting_shouldReturnFalse() {
+        final List<ActivityManager.RunningServiceInfo> last =
+                Arrays.asList(createService("com.app", 100));
+        final ActivityManager.RunningServiceInfo service = createService("com.app", 100);
+        service.restarting = 1;
+
+        assertThat(RunningState.isSameServices(last, Arrays.asList(service))).isFalse();
+    }
+
+    @Test
+    public void obtainProcessMergedItem_shouldKeepOneItemPerList() {
+        final RunningState.ProcessItem proc =
+                new RunningState.ProcessItem(RuntimeEnvironment.application, UID, "com.app");
+
+        final RunningState.MergedItem interesting =
+                RunningState.obtainProcessMergedItem(proc, false);
+        final RunningState.MergedItem background =
+                RunningState.obtainProcessMergedItem(proc, true);
+
+        assertThat(background).isNotSameAs(interesting);
+        assertThat(background.mProcess).isSameAs(proc);
+        assertThat(interesting.mProcess).isSameAs(proc);
+        assertThat(RunningState.obtainProcessMergedItem(proc, false)).isSameAs(interesting);
+        assertThat(RunningState.obtainProcessMergedItem(proc, true)).isSameAs(background);
+    }
+
+    private static ActivityManager.RunningAppProcessInfo createProcess(String name, int pid) {
+        final ActivityManager.RunningAppProcessInfo info =
+                new ActivityManager.RunningAppProcessInfo(name, pid, new String[] {name});
+        info.uid = UID;
+        info.importance = ActivityManager.RunningAppProcessInfo.IMPORTANCE_SERVICE;
+        return info;
+    }
+
+    private static ActivityManager.RunningServiceInfo createService(String process, int pid) {
+        final ActivityManager.RunningServiceInfo info = new ActivityManager.RunningServiceInfo();
+        info.service = new ComponentName(process, process + ".Service");
+        info.process = process;
+        info.pid = pid;
+        info.uid = UID;
+        info.started = true;
+        return info;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.android.settings.testutils.ApplicationTestUtils.buildInfo;
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.UserInfo;
+import android.os.UserHandle;
+
+import com.android.settings.SettingsRobolectricTestRunner;
+import com.android.settings.TestConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+@Config(manifest = TestConfig.MANIFEST_PATH, sdk = TestConfig.SDK_VERSION)
+public class UserAppsCacheTest {
+
+    private static final int MAIN_USER_ID = 0;
+    private static final int MANAGED_PROFILE_ID = 10;
+
+    @Mock
+    private Context mContext;
+    @Mock
+    private PackageManagerWrapper mPackageManager;
+
+    private UserAppsCache mCache;
+    private List<UserInfo> mProfiles;
+    private AtomicInteger mFilterCount;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(mContext.getApplicationContext()).thenReturn(mContext);
+        mCache = UserAppsCache.get(mContext);
+        UserAppsCache.clear();
+        mProfiles = Arrays.asList(
+                new UserInfo(MAIN_USER_ID, "main", UserInfo.FLAG_ADMIN),
+                new UserInfo(MANAGED_PROFILE_ID, "managed profile", 0));
+        when(mPackageManager.getInstalledApplicationsAsUser(anyInt(), eq(MAIN_USER_ID)))
+                .thenReturn(Arrays.asList(
+                        buildInfo(UserHandle.getUid(MAIN_USER_ID, 10001), "app1", 0, 0),
+                        buildInfo(UserHandle.getUid(MAIN_USER_ID, 10002), "app2", 0, 0)));
+        when(mPackageManager.getInstalledApplicationsAsUser(anyInt(), eq(MANAGED_PROFILE_ID)))
+                .thenReturn(Arrays.asList(
+                        buildInfo(UserHandle.getUid(MANAGED_PROFILE_ID, 10001), "app1", 0, 0)));
+        mFilterCount = new AtomicInteger();
+    }
+
+    @After
+    public void tearDown() {
+        UserAppsCache.clear();
+    }
+
+    @Test
+    public void get_noApplicationContext_shouldNotCache() {
+        when(mContext.getApplicationContext()).thenReturn(null);
+
+        assertThat(UserAppsCache.get(mContext)).isNull();
+    }
+
+    @Test
+    public void filterApps_shouldReturnIncludedAppsPerProfile() {
+        final List<List<ApplicationInfo>> apps = filterApps("key", "app1");
+
+        assertThat(apps).hasSize(2);
+        assertThat(apps.get(0)).hasSize(1);
+        assertThat(apps.get(0).get(0).packageName).isEqualTo("app1");
+        assertThat(apps.get(1)).hasSize(1);
+    }
+
+    @Test
+    public void filterApps_sameKey_shouldReuseIncludedApps() {
+        filterApps("key", "app1");
+        filterApps("key", "app1");
+
+        assertThat(mFilterCount.get()).isEqualTo(3);
+        verify(mPackageManager).getInstalledApplicationsAsUser(anyInt(), eq(MAIN_USER_ID));
+    }
+
+    @Test
+    public void filterApps_otherKey_shouldShareInstalledApps() {
+        filterApps("key", "app1");
+        final List<List<ApplicationInfo>> apps = filterApps("other_key", "app2");
+
+        assertThat(apps.get(0)).hasSize(1);
+        assertThat(apps.get(0).get(0).packageName).isEqualTo("app2");
+        assertThat(apps.get(1)).isEmpty();
+        verify(mPackageManager).getInstalledApplicationsAsUser(anyInt(), eq(MAIN_USER_ID));
+        verify(mPackageManager).getInstalledApplicationsAsUser(anyInt(), eq(MANAGED_PROFILE_ID));
+    }
+
+    @Test
+    public void filterApps_noKey_shouldFilterEveryTime() {
+        filterApps(null, "app1");
+        filterApps(null, "app1");
+
+        assertThat(mFilterCount.get()).isEqualTo(6);
+        verify(mPackageManager).getInstalledApplicationsAsUser(anyInt(), eq(MAIN_USER_ID));
+    }
+
+    @Test
+    public void filterApps_afterInvalidate_shouldFetchAgain() {
+        filterApps("key", "app1");
+        mCache.invalidate();
+        filterApps("key", "app1");
+
+        verify(mPackageManager, times(2))
+                .getInstalledApplicationsAsUser(anyInt(), eq(MAIN_USER_ID));
+    }
+
+    @Test
+    public void filterApps_noCache_shouldFetchEveryTime() {
+        UserAppsCache.filterApps(null, mPackageManager, mProfiles, "key", info -> true);
+        UserAppsCache.filterApps(null, mPackageManager, mProfiles, "key", info -> true);
+
+        verify(mPackageManager, times(2))
+                .getInstalledApplicationsAsUser(anyInt(), eq(MAIN_USER_ID));
+    }
+
+    private List<List<ApplicationInfo>> filterApps(String key, String packageName) {
+        return UserAppsCache.filterApps(mCache, mPackageManager, mProfiles, key, info -> {
+            mFilterCount.incrementAndGet();
+            return packageName.equals(info.packageName);
+        });
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.settings.core;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import android.content.Context;
+import android.support.v7.preference.Preference;
+
+import com.android.settings.SettingsRobolectricTestRunner;
+import com.android.settings.TestConfig;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+@Config(manifest = TestConfig.MANIFEST_PATH, sdk = TestConfig.SDK_VERSION)
+public class PreferenceStateUpdaterTest {
+
+    @Mock
+    private Context mContext;
+    @Mock
+    private Preference mPreference;
+    private List<Runnable> mPendingLoads;
+    private PreferenceStateUpdater mUpdater;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mPendingLoads = new ArrayList<>();
+        mUpdater = new PreferenceStateUpdater("test", mPendingLoads::add);
+    }
+
+    @Test
+    public void update_shouldApplyLoadedStateOnMainThread() {
+        final TestController controller = new TestController(mContext);
+        mUpdater.startRound();
+
+        mUpdater.update(controller, mPreference);
+        runPendingLoads();
+
+        verify(mPreference).setSummary("loaded");
+    }
+
+    @Test
+    public void update_newRoundStarted_shouldDropStaleResult() {
+        final TestController controller = new TestController(mContext);
+        mUpdater.startRound();
+        mUpdater.update(controller, mPreference);
+
+        mUpdater.startRound();
+        runPendingLoads();
+
+        verify(mPreference, never()).setSummary(any(CharSequence.class));
+    }
+
+    @Test
+    public void update_cancelled_shouldDropResult() {
+        final TestController controller = new TestController(mContext);
+        mUpdater.startRound();
+        mUpdater.update(controller, mPreference);
+
+        mUpdater.cancel();
+        runPendingLoads();
+
+        verify(mPreference, never()).setSummary(any(CharSequence.class));
+    }
+
+    @Test
+    public void updateIfAsync_syncController_shouldNotSchedule() {
+        final PreferenceController controller = new SyncController(mContext);
+
+        assertThat(mUpdater.updateIfAsync(controller, mPreference)).isFalse();
+        assertThat(mPendingLoads).isEmpty();
+    }
+
+    @Test
+    public void updateIfAsync_asyncController_shouldSchedule() {
+        final PreferenceController controller = new TestController(mContext);
+
+        assertThat(mUpdater.updateIfAsync(controller, mPreference)).isTrue();
+        assertThat(mPendingLoads).hasSize(1);
+    }
+
+    private void runPendingLoads() {
+        for (Runnable load : mPendingLoads) {
+            load.run();
+        }
+        mPendingLoads.clear();
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+    }
+
+    private static class SyncController extends PreferenceController {
+
+        SyncController(Context context) {
+            super(context);
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public String getPreferenceKey() {
+            return "key";
+        }
+    }
+
+    private static class TestController extends SyncController
+            implements AsyncStatePreferenceController<String> {
+
+        TestController(Context context) {
+            super(context);
+        }
+
+        @Override
+        public String loadState() {
+            return "loaded";
+        }
+
+        @Override
+        public void applyState(Preference preference, String state) {
+            preference.setSummary(state);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.support.v7.preference.Preference;
+import android.support.v7.preference.PreferenceManager;
+import android.support.v7.preference.PreferenceScreen;
+
+import com.android.settings.R;
+import com.android.settings.SettingsRobolectricTestRunner;
+import com.android.settings.TestConfig;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+@Config(manifest = TestConfig.MANIFEST_PATH, sdk = TestConfig.SDK_VERSION)
+public class PreferenceTreeInflaterTest {
+
+    private Context mContext;
+    private PreferenceManager mPreferenceManager;
+    private PreferenceTreeInflater mInflater;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mPreferenceManager = new PreferenceManager(mContext);
+        mInflater = new PreferenceTreeInflater();
+    }
+
+    @Test
+    public void inflate_shouldMatchXmlInflation() {
+        final PreferenceScreen compiled = mInflater.inflate(mContext, mPreferenceManager,
+                R.xml.system_dashboard_fragment, null /* rootPreferences */);
+        final PreferenceScreen inflated = mPreferenceManager.inflateFromResource(mContext,
+                R.xml.system_dashboard_fragment, null /* rootPreferences */);
+
+        assertThat(compiled).isNotNull();
+        assertThat(compiled.getTitle()).isEqualTo(inflated.getTitle());
+        assertThat(compiled.getPreferenceCount()).isEqualTo(inflated.getPreferenceCount());
+        for (int i = 0; i < inflated.getPreferenceCount(); i++) {
+            final Preference expected = inflated.getPreference(i);
+            final Preference actual = compiled.getPreference(i);
+            assertThat(actual.getClass()).isEqualTo(expected.getClass());
+            assertThat(actual.getKey()).isEqualTo(expected.getKey());
+            assertThat(actual.getTitle()).isEqualTo(expected.getTitle());
+            assertThat(actual.getSummary()).isEqualTo(expected.getSummary());
+            assertThat(actual.getOrder()).isEqualTo(expected.getOrder());
+            assertThat(actual.getFragment()).isEqualTo(expected.getFragment());
+            if (expected.getIntent() == null) {
+                assertThat(actual.getIntent()).isNull();
+            } else {
+                assertThat(actual.getIntent().filterEquals(expected.getIntent())).isTrue();
+            }
+        }
+    }
+
+    @Test
+    public void inflate_shouldAttachAllPreferences() {
+        final PreferenceScreen compiled = mInflater.inflate(mContext, mPreferenceManager,
+                R.xml.system_dashboard_fragment, null /* rootPreferences */);
+
+        assertThat(compiled.getPreferenceManager()).isSameAs(mPreferenceManager);
+        for (int i = 0; i < compiled.getPreferenceCount(); i++) {
+            assertThat(compiled.getPreference(i).getPreferenceManager())
+                    .isSameAs(mPreferenceManager);
+        }
+    }
+
+    @Test
+    public void inflate_existingRoot_shouldAddToRoot() {
+        final PreferenceScreen root = mPreferenceManager.createPreferenceScreen(mContext);
+
+        final PreferenceScreen result = mInflater.inflate(mContext, mPreferenceManager,
+                R.xml.system_dashboard_fragment, root);
+
+        assertThat(result).isSameAs(root);
+        assertThat(root.getTitle()).isNull();
+        assertThat(root.findPreference("reset_dashboard")).isNotNull();
+    }
+
+    @Test
+    public void inflate_unsupportedPreference_shouldReturnNull() {
+        assertThat(mInflater.precompile(mContext, R.xml.accessibility_daltonizer_settings))
+                .isFalse();
+        assertThat(mInflater.inflate(mContext, mPreferenceManager,
+                R.xml.accessibility_daltonizer_settings, null /* rootPreferences */)).isNull();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core.gateway;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.app.Fragment;
+import android.content.Context;
+import android.os.Bundle;
+
+import com.android.settings.SettingsRobolectricTestRunner;
+import com.android.settings.TestConfig;
+import com.android.settings.deviceinfo.StorageDashboardFragment;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+@Config(manifest = TestConfig.MANIFEST_PATH, sdk = TestConfig.SDK_VERSION)
+public class SettingsGatewayTest {
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+    }
+
+    @Test
+    public void isEntryFragment_shouldMatchEntryFragments() {
+        for (String fragment : SettingsGateway.ENTRY_FRAGMENTS) {
+            assertThat(SettingsGateway.isEntryFragment(fragment)).isTrue();
+        }
+        assertThat(SettingsGateway.isEntryFragment("com.android.settings.NotAFragment"))
+                .isFalse();
+        assertThat(SettingsGateway.isEntryFragment(null)).isFalse();
+    }
+
+    @Test
+    public void instantiateFragment_shouldReturnNewInstanceWithArguments() {
+        final Bundle args = new Bundle();
+        final String name = StorageDashboardFragment.class.getName();
+
+        final Fragment first = SettingsGateway.instantiateFragment(mContext, name, args);
+        final Fragment second = SettingsGateway.instantiateFragment(mContext, name,
+                null /* args */);
+
+        assertThat(first).isInstanceOf(StorageDashboardFragment.class);
+        assertThat(first.getArguments()).isSameAs(args);
+        assertThat(second).isNotSameAs(first);
+        assertThat(second.getArguments()).isNull();
+    }
+
+    @Test(expected = Fragment.InstantiationException.class)
+    public void instantiateFragment_notAFragment_shouldThrow() {
+        SettingsGateway.instantiateFragment(mContext, String.class.getName(), null /* args */);
+    }
+
+    @Test(expected = Fragment.InstantiationException.class)
+    public void instantiateFragment_missingClass_shouldThrow() {
+        SettingsGateway.instantiateFragment(mContext, "com.android.settings.NotAFragment",
+                null /* args */);
+    }
+}
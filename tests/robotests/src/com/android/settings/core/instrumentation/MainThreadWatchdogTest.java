@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core.instrumentation;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.settings.SettingsRobolectricTestRunner;
+import com.android.settings.TestConfig;
+
+import dalvik.system.BlockGuard;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+@Config(manifest = TestConfig.MANIFEST_PATH, sdk = TestConfig.SDK_VERSION)
+public class MainThreadWatchdogTest {
+
+    @Test
+    public void end_diskRead_shouldRecordOffenderAndRestorePolicy() throws Exception {
+        final MainThreadWatchdog watchdog = new MainThreadWatchdog(true /* enabled */);
+        final BlockGuard.Policy policy = BlockGuard.getThreadPolicy();
+
+        watchdog.begin();
+        BlockGuard.getThreadPolicy().onReadFromDisk();
+        watchdog.end(this, "onResume");
+
+        final JSONObject offender = getOffenders(watchdog).getJSONObject(getClass().getName());
+        assertThat(offender.getInt("calls")).isEqualTo(1);
+        assertThat(offender.getInt("disk_reads")).isEqualTo(1);
+        assertThat(offender.getString("worst_callback")).isEqualTo("onResume");
+        assertThat(BlockGuard.getThreadPolicy()).isSameAs(policy);
+    }
+
+    @Test
+    public void end_nestedCalls_shouldRecordBoth() throws Exception {
+        final MainThreadWatchdog watchdog = new MainThreadWatchdog(true /* enabled */);
+        final Object inner = new Object();
+
+        watchdog.begin();
+        watchdog.begin();
+        BlockGuard.getThreadPolicy().onWriteToDisk();
+        watchdog.end(inner, "updateState");
+        watchdog.end(this, "onResume");
+
+        final JSONObject offenders = getOffenders(watchdog);
+        assertThat(offenders.getJSONObject(Object.class.getName()).getInt("disk_writes"))
+                .isEqualTo(1);
+        assertThat(offenders.getJSONObject(getClass().getName()).getInt("disk_writes"))
+                .isEqualTo(1);
+    }
+
+    @Test
+    public void end_fastCallWithoutIo_shouldNotRecord() throws Exception {
+        final MainThreadWatchdog watchdog = new MainThreadWatchdog(true /* enabled */);
+
+        watchdog.begin();
+        watchdog.end(this, "onResume");
+
+        assertThat(getOffenders(watchdog).length()).isEqualTo(0);
+    }
+
+    @Test
+    public void begin_disabled_shouldNotRecord() throws Exception {
+        final MainThreadWatchdog watchdog = new MainThreadWatchdog(false /* enabled */);
+
+        watchdog.begin();
+        BlockGuard.getThreadPolicy().onReadFromDisk();
+        watchdog.end(this, "onResume");
+
+        assertThat(getOffenders(watchdog).length()).isEqualTo(0);
+    }
+
+    private static JSONObject getOffenders(MainThreadWatchdog watchdog) throws Exception {
+        return watchdog.dumpJson().getJSONObject("offenders");
+    }
+}
@@ -18,6 +18,7 @@ package com.android.settings.core.instrumentation;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.os.Looper;
 import android.util.Pair;
 
 import com.android.internal.logging.nano.MetricsProto.MetricsEvent;
@@ -28,10 +29,12 @@ import com.android.settings.overlay.FeatureFactory;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
 import org.robolectric.util.ReflectionHelpers;
 
 import java.util.ArrayList;
@@ -40,8 +43,11 @@ import java.util.List;
 import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
 
 @RunWith(SettingsRobolectricTestRunner.class)
 @Config(manifest = TestConfig.MANIFEST_PATH, sdk = TestConfig.SDK_VERSION)
@@ -76,6 +82,7 @@ public class MetricsFeatureProviderTest {
     public void logDashboardStartIntent_intentEmpty_shouldNotLog() {
         mProvider.logDashboardStartIntent(mContext, null /* intent */,
                 MetricsEvent.SETTINGS_GESTURES);
+        mProvider.flush();
 
         verifyNoMoreInteractions(mLogWriter);
     }
@@ -85,6 +92,7 @@ public class MetricsFeatureProviderTest {
         final Intent intent = new Intent(Intent.ACTION_ASSIST);
 
         mProvider.logDashboardStartIntent(mContext, intent, MetricsEvent.SETTINGS_GESTURES);
+        mProvider.flush();
 
         verify(mLogWriter).action(
                 eq(mContext),
@@ -98,6 +106,7 @@ public class MetricsFeatureProviderTest {
         final Intent intent = new Intent().setComponent(new ComponentName("pkg", "cls"));
 
         mProvider.logDashboardStartIntent(mContext, intent, MetricsEvent.SETTINGS_GESTURES);
+        mProvider.flush();
 
         verify(mLogWriter).action(
                 eq(mContext),
@@ -105,4 +114,51 @@ public class MetricsFeatureProviderTest {
                 anyString(),
                 eq(Pair.create(MetricsEvent.FIELD_CONTEXT, MetricsEvent.SETTINGS_GESTURES)));
     }
+
+    @Test
+    public void action_shouldReachWritersInOrderAfterFlush() {
+        mProvider.action(mContext, MetricsEvent.ACTION_SETTINGS_TILE_CLICK, true);
+        mProvider.count(mContext, "count", 3);
+
+        verifyNoMoreInteractions(mLogWriter);
+
+        mProvider.flush();
+
+        final InOrder inOrder = inOrder(mLogWriter);
+        inOrder.verify(mLogWriter).action(mContext, MetricsEvent.ACTION_SETTINGS_TILE_CLICK, true);
+        inOrder.verify(mLogWriter).count(mContext, "count", 3);
+    }
+
+    @Test
+    public void enqueue_bufferFull_shouldDropAndCount() {
+        final List<Integer> categories = new ArrayList<>();
+        final MetricsDispatcher dispatcher = new MetricsDispatcher(
+                (type, context, category, arg, text, taggedData) -> categories.add(category),
+                2 /* capacity */, Looper.getMainLooper());
+        ShadowLooper.pauseMainLooper();
+
+        for (int i = 1; i <= 3; i++) {
+            dispatcher.enqueue(MetricsDispatcher.EVENT_HIDDEN, mContext, i, 0 /* arg */,
+                    null /* text */, null /* taggedData */);
+        }
+        ShadowLooper.unPauseMainLooper();
+
+        assertThat(dispatcher.getDroppedCount()).isEqualTo(1L);
+        assertThat(categories).containsExactly(1, 2).inOrder();
+    }
+
+    @Test
+    public void enqueue_shouldKeepApplicationContextOnly() {
+        final Context activityContext = mock(Context.class);
+        when(activityContext.getApplicationContext()).thenReturn(mContext);
+        final List<Context> contexts = new ArrayList<>();
+        final MetricsDispatcher dispatcher = new MetricsDispatcher(
+                (type, context, category, arg, text, taggedData) -> contexts.add(context),
+                2 /* capacity */, Looper.getMainLooper());
+
+        dispatcher.enqueue(MetricsDispatcher.EVENT_HIDDEN, activityContext, 1 /* category */,
+                0 /* arg */, null /* text */, null /* taggedData */);
+
+        assertThat(contexts).containsExactly(mContext);
+    }
 }
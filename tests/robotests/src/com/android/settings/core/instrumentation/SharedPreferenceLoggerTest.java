@@ -17,8 +17,10 @@ package com.android.settings.core.instrumentation;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.Looper;
 import android.util.Pair;
 
+import com.android.internal.logging.nano.MetricsProto.MetricsEvent;
 import com.android.settings.SettingsRobolectricTestRunner;
 import com.android.settings.TestConfig;
 import com.android.settings.testutils.FakeFeatureFactory;
@@ -30,9 +32,13 @@ import org.mockito.Answers;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -114,4 +120,25 @@ public class SharedPreferenceLoggerTest {
                 any(Pair.class), any(Pair.class));
     }
 
+    @Test
+    public void putString_shouldBatchPackageChecks() throws Exception {
+        mSharedPrefLogger = new SharedPreferencesLogger(mContext, TEST_TAG,
+                new PackageCheckWorker(Looper.getMainLooper()));
+        final SharedPreferences.Editor editor = mSharedPrefLogger.edit();
+        editor.putString(TEST_KEY, "com.pkg.a");
+        editor.putString(TEST_KEY, "com.pkg.a");
+        editor.putString(TEST_KEY, "com.pkg.b/.Activity");
+        editor.putString("other_key", "com.pkg.b");
+
+        verify(mMetricsFeature, never()).action(any(Context.class), anyInt(), anyString());
+
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        // Only the last value of each key is checked, and the package lookup is cached.
+        verify(mContext.getPackageManager(), times(1)).getPackageInfo(anyString(), anyInt());
+        verify(mMetricsFeature).action(any(Context.class),
+                eq(MetricsEvent.ACTION_GENERIC_PACKAGE), eq("tag/key|com.pkg.b"));
+        verify(mMetricsFeature).action(any(Context.class),
+                eq(MetricsEvent.ACTION_GENERIC_PACKAGE), eq("tag/other_key|com.pkg.b"));
+    }
 }
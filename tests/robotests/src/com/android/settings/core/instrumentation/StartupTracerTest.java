@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core.instrumentation;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.settings.SettingsRobolectricTestRunner;
+import com.android.settings.TestConfig;
+
+import org.json.JSONArray;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+@Config(manifest = TestConfig.MANIFEST_PATH, sdk = TestConfig.SDK_VERSION)
+public class StartupTracerTest {
+
+    @Before
+    public void setUp() {
+        StartupTracer.reset();
+    }
+
+    @Test
+    public void dumpJson_shouldContainEndedSpansOnly() throws Exception {
+        final int ended = StartupTracer.beginSection("ended");
+        StartupTracer.beginSection("open");
+        StartupTracer.endSection(ended);
+
+        final JSONArray spans = StartupTracer.dumpJson();
+
+        assertThat(spans.length()).isEqualTo(1);
+        assertThat(spans.getJSONObject(0).getString("name")).isEqualTo("ended");
+    }
+
+    @Test
+    public void recordSpan_shouldReportDuration() throws Exception {
+        StartupTracer.recordSpan("span", 1000L, 5000L);
+
+        final JSONArray spans = StartupTracer.dumpJson();
+
+        assertThat(spans.getJSONObject(0).getLong("start_us")).isEqualTo(1L);
+        assertThat(spans.getJSONObject(0).getLong("duration_us")).isEqualTo(4L);
+    }
+
+    @Test
+    public void ringBuffer_shouldKeepMostRecentSpans() throws Exception {
+        final int overwritten = StartupTracer.beginSection("first");
+        for (int i = 0; i < StartupTracer.CAPACITY; i++) {
+            StartupTracer.recordSpan("span" + i, 1000L, 2000L);
+        }
+        // Ending a span whose slot was reused must not corrupt the newer span.
+        StartupTracer.endSection(overwritten);
+
+        final JSONArray spans = StartupTracer.dumpJson();
+
+        assertThat(spans.length()).isEqualTo(StartupTracer.CAPACITY);
+        assertThat(spans.getJSONObject(0).getString("name")).isEqualTo("span0");
+        assertThat(spans.getJSONObject(0).getLong("duration_us")).isEqualTo(1L);
+    }
+}
@@ -39,6 +39,9 @@ import org.robolectric.annotation.Config;
 import org.robolectric.util.ActivityController;
 import org.robolectric.util.FragmentController;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static com.google.common.truth.Truth.assertThat;
 
 @RunWith(SettingsRobolectricTestRunner.class)
@@ -236,4 +239,43 @@ public class LifecycleTest {
 
         assertThat(accepter.wasCalled).isFalse();
     }
+
+    private static class OrderObserver implements LifecycleObserver, OnStart, OnStop {
+        private final List<String> mEvents;
+        private final String mName;
+
+        OrderObserver(List<String> events, String name) {
+            mEvents = events;
+            mName = name;
+        }
+
+        @Override
+        public void onStart() {
+            mEvents.add(mName + ".onStart");
+        }
+
+        @Override
+        public void onStop() {
+            mEvents.add(mName + ".onStop");
+        }
+    }
+
+    @Test
+    public void dispatch_shouldNotifyObserversOfEventInRegistrationOrder() {
+        final List<String> events = new ArrayList<>();
+        final Lifecycle lifecycle = new Lifecycle();
+        lifecycle.setTimingEnabled(true);
+        for (int i = 0; i < 6; i++) {
+            lifecycle.addObserver(new OrderObserver(events, "o" + i));
+            lifecycle.addObserver(new TestObserver());
+        }
+
+        lifecycle.onStart();
+        lifecycle.onResume();
+        lifecycle.onStop();
+
+        assertThat(events).containsExactly("o0.onStart", "o1.onStart", "o2.onStart",
+                "o3.onStart", "o4.onStart", "o5.onStart", "o0.onStop", "o1.onStop", "o2.onStop",
+                "o3.onStop", "o4.onStop", "o5.onStop").inOrder();
+    }
 }
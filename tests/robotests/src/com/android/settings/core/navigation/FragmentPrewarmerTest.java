@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core.navigation;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.app.Fragment;
+import android.content.Context;
+import android.os.Bundle;
+
+import com.android.settings.SettingsRobolectricTestRunner;
+import com.android.settings.TestConfig;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+@Config(manifest = TestConfig.MANIFEST_PATH, sdk = TestConfig.SDK_VERSION)
+public class FragmentPrewarmerTest {
+
+    private static final String FRAGMENT_NAME = TestFragment.class.getName();
+
+    private Context mContext;
+    private FragmentPrewarmer mPrewarmer;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mPrewarmer = new FragmentPrewarmer(mContext, new NavigationHistory(mContext),
+                true /* enabled */);
+    }
+
+    @Test
+    public void obtainFragment_prewarmed_shouldReuseInstanceWithArgs() {
+        mPrewarmer.prewarm(FRAGMENT_NAME);
+        assertThat(mPrewarmer.isPrewarmed(FRAGMENT_NAME)).isTrue();
+        final Bundle args = new Bundle();
+
+        final Fragment fragment = mPrewarmer.obtainFragment(mContext, FRAGMENT_NAME, args);
+
+        assertThat(fragment).isInstanceOf(TestFragment.class);
+        assertThat(fragment.getArguments()).isSameAs(args);
+        assertThat(mPrewarmer.isPrewarmed(FRAGMENT_NAME)).isFalse();
+    }
+
+    @Test
+    public void obtainFragment_notPrewarmed_shouldInstantiate() {
+        final Fragment fragment = mPrewarmer.obtainFragment(mContext, FRAGMENT_NAME, null);
+
+        assertThat(fragment).isInstanceOf(TestFragment.class);
+    }
+
+    @Test
+    public void prewarm_notAFragment_shouldSkip() {
+        mPrewarmer.prewarm(String.class.getName());
+
+        assertThat(mPrewarmer.isPrewarmed(String.class.getName())).isFalse();
+    }
+
+    @Test
+    public void onFragmentLaunched_unpredictedInstance_shouldBeDropped() {
+        mPrewarmer.prewarm(FRAGMENT_NAME);
+
+        mPrewarmer.onFragmentLaunched("some.other.Fragment");
+
+        assertThat(mPrewarmer.isPrewarmed(FRAGMENT_NAME)).isFalse();
+    }
+
+    public static class TestFragment extends Fragment {
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core.navigation;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+
+import com.android.settings.SettingsRobolectricTestRunner;
+import com.android.settings.TestConfig;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+@Config(manifest = TestConfig.MANIFEST_PATH, sdk = TestConfig.SDK_VERSION)
+public class NavigationHistoryTest {
+
+    private Context mContext;
+    private NavigationHistory mHistory;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mHistory = new NavigationHistory(mContext);
+    }
+
+    @Test
+    public void getLikelyNext_shouldOrderByTransitionCount() {
+        navigate("home", "network");
+        navigate("home", "network");
+        navigate("home", "network");
+        navigate("home", "display");
+        navigate("home", "display");
+
+        final List<String> next = new ArrayList<>();
+        mHistory.getLikelyNext("home", 2, next);
+
+        assertThat(next).containsExactly("network", "display").inOrder();
+    }
+
+    @Test
+    public void getLikelyNext_rareTransition_shouldBeIgnored() {
+        navigate("home", "network");
+
+        final List<String> next = new ArrayList<>();
+        mHistory.getLikelyNext("home", 2, next);
+
+        assertThat(next).isEmpty();
+    }
+
+    @Test
+    public void recordLaunch_shouldPersistTransitions() {
+        navigate("network", "wifi");
+        navigate("network", "wifi");
+
+        final List<String> next = new ArrayList<>();
+        new NavigationHistory(mContext).getLikelyNext("network", 1, next);
+
+        assertThat(next).containsExactly("wifi");
+    }
+
+    @Test
+    public void recordLaunch_tooManySuccessors_shouldEvictLeastUsed() {
+        navigate("home", "frequent");
+        navigate("home", "frequent");
+        for (int i = 0; i < NavigationHistory.MAX_SUCCESSORS; i++) {
+            navigate("home", "page" + i);
+        }
+
+        final List<String> next = new ArrayList<>();
+        mHistory.getLikelyNext("home", 1, next);
+
+        assertThat(next).containsExactly("frequent");
+    }
+
+    private void navigate(String from, String to) {
+        mHistory.recordLaunch(from);
+        mHistory.recordLaunch(to);
+    }
+}
@@ -354,4 +354,111 @@ public class ProgressiveDisclosureTest {
         verify(mExpandButton)
                 .setSummary(mAppContext.getString(R.string.join_many_items_middle, TEST1, TEST2));
     }
+
+    @Test
+    public void addDeferredPreference_notCollapsed_shouldCreateAndAddToScreen() {
+        final ProgressiveDisclosureMixin.PreferenceCreator creator =
+                mock(ProgressiveDisclosureMixin.PreferenceCreator.class);
+        when(creator.createPreference()).thenReturn(mPreference);
+
+        mMixin.addDeferredPreference(mScreen, "test", "title", 10, creator);
+
+        verify(creator).createPreference();
+        verify(mScreen).addPreference(mPreference);
+        assertThat(mMixin.getDeferredPrefs()).isEmpty();
+    }
+
+    @Test
+    public void addDeferredPreferenceWhenCollapsed_shouldNotCreatePreference() {
+        final Preference collapsedPref = new Preference(mAppContext);
+        collapsedPref.setTitle("1");
+        collapsedPref.setOrder(10);
+        mMixin.addToCollapsedList(collapsedPref);
+        // Just 1 preference on screen: the more button
+        when(mScreen.getPreferenceCount()).thenReturn(1);
+        final ProgressiveDisclosureMixin.PreferenceCreator creator =
+                mock(ProgressiveDisclosureMixin.PreferenceCreator.class);
+
+        mMixin.addDeferredPreference(mScreen, "deferred", "2", 20, creator);
+
+        verify(creator, never()).createPreference();
+        assertThat(mMixin.isDeferred("deferred")).isTrue();
+        assertThat(mMixin.isPreferenceCollapsed(mScreen, "deferred")).isTrue();
+        verify(mExpandButton)
+                .setSummary(mAppContext.getString(R.string.join_many_items_middle, "1", "2"));
+    }
+
+    @Test
+    public void addDeferredPreferenceWhenCollapsed_expandButtonNotLast_shouldFindLastPref() {
+        final Preference firstPref = new Preference(mAppContext);
+        firstPref.setOrder(10);
+        final Preference lastPref = new Preference(mAppContext);
+        lastPref.setOrder(100);
+        mMixin.addToCollapsedList(new Preference(mAppContext));
+        // The more button is not the last preference on screen, a preference follows it.
+        when(mScreen.getPreferenceCount()).thenReturn(3);
+        when(mScreen.getPreference(0)).thenReturn(firstPref);
+        when(mScreen.getPreference(1)).thenReturn(mExpandButton);
+        when(mScreen.getPreference(2)).thenReturn(lastPref);
+        final ProgressiveDisclosureMixin.PreferenceCreator creator =
+                mock(ProgressiveDisclosureMixin.PreferenceCreator.class);
+        when(creator.createPreference()).thenReturn(mPreference);
+
+        mMixin.addDeferredPreference(mScreen, "test", "title", 50, creator);
+
+        verify(creator).createPreference();
+        verify(mScreen).removePreference(lastPref);
+        verify(mScreen).addPreference(mPreference);
+        assertThat(mMixin.getCollapsedPrefs()).contains(lastPref);
+    }
+
+    @Test
+    public void addDeferredPreference_sameKey_shouldReplace() {
+        mMixin.addToCollapsedList(new Preference(mAppContext));
+        when(mScreen.getPreferenceCount()).thenReturn(1);
+
+        mMixin.addDeferredPreference(mScreen, "deferred", "old", 20,
+                mock(ProgressiveDisclosureMixin.PreferenceCreator.class));
+        mMixin.addDeferredPreference(mScreen, "deferred", "new", 20,
+                mock(ProgressiveDisclosureMixin.PreferenceCreator.class));
+
+        assertThat(mMixin.getDeferredPrefs().size()).isEqualTo(1);
+        assertThat(mMixin.getDeferredPrefs().get(0).title).isEqualTo("new");
+    }
+
+    @Test
+    public void clickExpand_shouldCreateDeferredPrefsAndNotifyListener() {
+        mMixin.addToCollapsedList(new Preference(mAppContext));
+        when(mScreen.getPreferenceCount()).thenReturn(1);
+        final ProgressiveDisclosureMixin.PreferenceCreator creator =
+                mock(ProgressiveDisclosureMixin.PreferenceCreator.class);
+        when(creator.createPreference()).thenReturn(mPreference);
+        final ProgressiveDisclosureMixin.OnExpandListener listener =
+                mock(ProgressiveDisclosureMixin.OnExpandListener.class);
+        mMixin.setOnExpandListener(listener);
+        mMixin.addDeferredPreference(mScreen, "test", "title", 10, creator);
+
+        mMixin.onPreferenceClick(mExpandButton);
+
+        verify(creator).createPreference();
+        verify(mScreen).addPreference(mPreference);
+        verify(listener).onExpanded(any(List.class));
+        assertThat(mMixin.isCollapsed()).isFalse();
+    }
+
+    @Test
+    public void removeLastDeferredPreference_shouldRemoveExpandButton() {
+        mMixin.addToCollapsedList(mPreference);
+        when(mScreen.getPreferenceCount()).thenReturn(1);
+        when(mScreen.findPreference(anyString())).thenReturn(null);
+        mMixin.addDeferredPreference(mScreen, "deferred", "title", 10,
+                mock(ProgressiveDisclosureMixin.PreferenceCreator.class));
+
+        mMixin.removePreference(mScreen, mPreference.getKey());
+        assertThat(mMixin.isCollapsed()).isTrue();
+        mMixin.removePreference(mScreen, "deferred");
+
+        verify(mScreen).removePreference(mExpandButton);
+        assertThat(mMixin.isCollapsed()).isFalse();
+    }
 }
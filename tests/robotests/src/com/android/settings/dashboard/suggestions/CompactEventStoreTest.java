@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.settings.dashboard.suggestions;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+
+import com.android.settings.SettingsRobolectricTestRunner;
+import com.android.settings.TestConfig;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+@Config(manifest = TestConfig.MANIFEST_PATH, sdk = TestConfig.SDK_VERSION)
+public class CompactEventStoreTest {
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+    }
+
+    @Test
+    public void readRecord_shouldCopyAllMetrics() {
+        final CompactEventStore store = new CompactEventStore(mContext);
+        store.writeEvent("pkg", CompactEventStore.EVENT_SHOWN, 100L);
+        store.writeEvent("pkg", CompactEventStore.EVENT_SHOWN, 200L);
+        store.writeEvent("pkg", CompactEventStore.EVENT_CLICKED, 300L);
+
+        final long[] record = new long[CompactEventStore.RECORD_SIZE + 1];
+        assertThat(store.readRecord("pkg", record, 1)).isTrue();
+
+        assertThat(record[1 + CompactEventStore.index(CompactEventStore.EVENT_SHOWN,
+                CompactEventStore.METRIC_COUNT)]).isEqualTo(2L);
+        assertThat(record[1 + CompactEventStore.index(CompactEventStore.EVENT_SHOWN,
+                CompactEventStore.METRIC_LAST_EVENT_TIME)]).isEqualTo(200L);
+        assertThat(record[1 + CompactEventStore.index(CompactEventStore.EVENT_CLICKED,
+                CompactEventStore.METRIC_COUNT)]).isEqualTo(1L);
+        assertThat(record[1 + CompactEventStore.index(CompactEventStore.EVENT_DISMISSED,
+                CompactEventStore.METRIC_COUNT)]).isEqualTo(0L);
+    }
+
+    @Test
+    public void readRecord_unknownPackage_shouldZeroFill() {
+        final CompactEventStore store = new CompactEventStore(mContext);
+        final long[] record = new long[CompactEventStore.RECORD_SIZE];
+        record[0] = 42L;
+
+        assertThat(store.readRecord("unknown", record, 0)).isFalse();
+        assertThat(record[0]).isEqualTo(0L);
+    }
+
+    @Test
+    public void load_shouldMigrateLegacyPrefs() {
+        mContext.getSharedPreferences(EventStore.TAG, Context.MODE_PRIVATE).edit()
+                .putLong("setting_suggestion_com.foo_bar_dismissed_count", 3L)
+                .putLong("setting_suggestion_com.foo_bar_dismissed_last_event_time", 1234L)
+                .commit();
+
+        final CompactEventStore store = new CompactEventStore(mContext);
+
+        assertThat(store.readMetric("com.foo_bar", CompactEventStore.EVENT_DISMISSED,
+                CompactEventStore.METRIC_COUNT)).isEqualTo(3L);
+        assertThat(store.readMetric("com.foo_bar", CompactEventStore.EVENT_DISMISSED,
+                CompactEventStore.METRIC_LAST_EVENT_TIME)).isEqualTo(1234L);
+        assertThat(mContext.getSharedPreferences(EventStore.TAG, Context.MODE_PRIVATE).getAll())
+                .isEmpty();
+    }
+}
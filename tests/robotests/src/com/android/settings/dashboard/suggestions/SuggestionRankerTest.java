@@ -18,9 +18,7 @@ package com.android.settings.dashboard.suggestions;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import com.android.settings.SettingsRobolectricTestRunner;
 import com.android.settings.TestConfig;
@@ -37,6 +35,8 @@ import static com.google.common.truth.Truth.assertThat;
 
 import org.robolectric.RuntimeEnvironment;
 
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.same;
@@ -50,7 +50,7 @@ public class SuggestionRankerTest {
     private SuggestionRanker mSuggestionRanker;
     @Mock
     private SuggestionFeaturizer mSuggestionFeaturizer;
-    private Map<String, Map<String, Double>> mFeatures;
+    private double[] mFeatures;
     private List<String> mPkgNames;
     private List<Tile> mSuggestions;
 
@@ -58,10 +58,7 @@ public class SuggestionRankerTest {
     public void setUp() {
         MockitoAnnotations.initMocks(this);
         mPkgNames = Arrays.asList("pkg1", "pkg2", "pkg3");
-        mFeatures = new HashMap<String, Map<String, Double>>();
-        mFeatures.put("pkg1", new HashMap<String, Double>());
-        mFeatures.put("pkg2", new HashMap<String, Double>());
-        mFeatures.put("pkg3", new HashMap<String, Double>());
+        mFeatures = new double[mPkgNames.size() * SuggestionFeaturizer.FEATURE_COUNT];
         mSuggestions = new ArrayList<Tile>() {
             {
                 add(new Tile());
@@ -71,11 +68,14 @@ public class SuggestionRankerTest {
         };
         mSuggestionFeaturizer = mock(SuggestionFeaturizer.class);
         mSuggestionRanker = new SuggestionRanker(mSuggestionFeaturizer);
-        when(mSuggestionFeaturizer.featurize(mPkgNames)).thenReturn(mFeatures);
+        when(mSuggestionFeaturizer.featurize(same(mPkgNames), any())).thenReturn(mFeatures);
         mSuggestionRanker = spy(mSuggestionRanker);
-        when(mSuggestionRanker.getRelevanceMetric(same(mFeatures.get("pkg1")))).thenReturn(0.9);
-        when(mSuggestionRanker.getRelevanceMetric(same(mFeatures.get("pkg2")))).thenReturn(0.1);
-        when(mSuggestionRanker.getRelevanceMetric(same(mFeatures.get("pkg3")))).thenReturn(0.5);
+        when(mSuggestionRanker.getRelevanceMetric(same(mFeatures),
+                eq(0 * SuggestionFeaturizer.FEATURE_COUNT))).thenReturn(0.9);
+        when(mSuggestionRanker.getRelevanceMetric(same(mFeatures),
+                eq(1 * SuggestionFeaturizer.FEATURE_COUNT))).thenReturn(0.1);
+        when(mSuggestionRanker.getRelevanceMetric(same(mFeatures),
+                eq(2 * SuggestionFeaturizer.FEATURE_COUNT))).thenReturn(0.5);
     }
 
     @Test
@@ -90,5 +90,17 @@ public class SuggestionRankerTest {
         mSuggestionRanker.rankSuggestions(mSuggestions, mPkgNames);
         assertThat(mSuggestions).isEqualTo(expectedOrderdList);
     }
+
+    @Test
+    public void testGetRelevanceMetric_usesFeatureRowAtOffset() {
+        final SuggestionRanker ranker = new SuggestionRanker(mSuggestionFeaturizer);
+        final double[] features = new double[2 * SuggestionFeaturizer.FEATURE_COUNT];
+        features[SuggestionFeaturizer.FEATURE_COUNT
+                + SuggestionFeaturizer.FEATURE_INDEX_IS_SHOWN] = 1.0;
+
+        assertThat(ranker.getRelevanceMetric(features, 0)).isEqualTo(0.0);
+        assertThat(ranker.getRelevanceMetric(features, SuggestionFeaturizer.FEATURE_COUNT))
+                .isGreaterThan(0.0);
+    }
 }
 
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.development;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.when;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.wifi.WifiManager;
+import android.provider.Settings;
+
+import com.android.settings.SettingsRobolectricTestRunner;
+import com.android.settings.TestConfig;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+@Config(manifest = TestConfig.MANIFEST_PATH, sdk = TestConfig.SDK_VERSION)
+public class DevelopmentOptionsSnapshotTest {
+
+    @Mock
+    private WifiManager mWifiManager;
+
+    private Context mContext;
+    private ContentResolver mContentResolver;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mContext = RuntimeEnvironment.application;
+        mContentResolver = mContext.getContentResolver();
+    }
+
+    @Test
+    public void load_shouldReadSettings() {
+        Settings.Global.putInt(mContentResolver, Settings.Global.ADB_ENABLED, 1);
+        Settings.Global.putInt(mContentResolver, Settings.Global.DEVELOPMENT_FORCE_RTL, 0);
+        Settings.Secure.putInt(mContentResolver, Settings.Secure.ANR_SHOW_BACKGROUND, 1);
+        Settings.System.putInt(mContentResolver, Settings.System.SHOW_TOUCHES, 1);
+
+        final DevelopmentOptionsSnapshot snapshot =
+                DevelopmentOptionsSnapshot.load(mContext, mWifiManager);
+
+        assertThat(snapshot.get(DevelopmentOptionsSnapshot.OPTION_ENABLE_ADB)).isTrue();
+        assertThat(snapshot.get(DevelopmentOptionsSnapshot.OPTION_FORCE_RTL)).isFalse();
+        assertThat(snapshot.get(DevelopmentOptionsSnapshot.OPTION_SHOW_ALL_ANRS)).isTrue();
+        assertThat(snapshot.get(DevelopmentOptionsSnapshot.OPTION_SHOW_TOUCHES)).isTrue();
+    }
+
+    @Test
+    public void load_shouldReadWifiOptions() {
+        when(mWifiManager.getVerboseLoggingLevel()).thenReturn(1);
+        when(mWifiManager.getAggressiveHandover()).thenReturn(0);
+
+        final DevelopmentOptionsSnapshot snapshot =
+                DevelopmentOptionsSnapshot.load(mContext, mWifiManager);
+
+        assertThat(snapshot.get(DevelopmentOptionsSnapshot.OPTION_WIFI_VERBOSE_LOGGING))
+                .isTrue();
+        assertThat(snapshot.get(DevelopmentOptionsSnapshot.OPTION_WIFI_AGGRESSIVE_HANDOVER))
+                .isFalse();
+    }
+
+    @Test
+    public void load_terminalNotInstalled_shouldBeOff() {
+        final DevelopmentOptionsSnapshot snapshot =
+                DevelopmentOptionsSnapshot.load(mContext, mWifiManager);
+
+        assertThat(snapshot.get(DevelopmentOptionsSnapshot.OPTION_ENABLE_TERMINAL)).isFalse();
+    }
+}
@@ -18,6 +18,9 @@ package com.android.settings.development;
 
 import android.app.Activity;
 import android.content.Context;
+import android.net.wifi.WifiManager;
+import android.provider.Settings;
+import android.support.v14.preference.SwitchPreference;
 import android.support.v7.preference.Preference;
 import android.support.v7.preference.PreferenceManager;
 import android.support.v7.preference.PreferenceScreen;
@@ -33,15 +36,20 @@ import org.junit.runner.RunWith;
 import org.mockito.Answers;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
 import org.robolectric.shadows.ShadowApplication;
+import org.robolectric.util.ReflectionHelpers;
+import org.robolectric.util.ReflectionHelpers.ClassParameter;
 
 import java.util.ArrayList;
 import java.util.List;
 
+import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.Answers.RETURNS_DEEP_STUBS;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -90,4 +98,53 @@ public class DevelopmentSettingsTest {
 
         verify(mScreen, times(2)).addPreference(any(Preference.class));
     }
+
+    @Test
+    public void applyOptionsSnapshot_shouldMatchShownState() {
+        final SwitchPreference showTouches = setUpShowTouches();
+        Settings.System.putInt(RuntimeEnvironment.application.getContentResolver(),
+                Settings.System.SHOW_TOUCHES, 1);
+        final DevelopmentOptionsSnapshot snapshot = loadSnapshot();
+
+        mSettings.applyOptionsSnapshot(snapshot, 1);
+        showTouches.setChecked(false);
+        mSettings.applyOptionsSnapshot(snapshot, 2);
+
+        assertThat(showTouches.isChecked()).isTrue();
+    }
+
+    @Test
+    public void applyOptionsSnapshot_flippedWhileLoading_shouldKeepUserValue() {
+        final SwitchPreference showTouches = setUpShowTouches();
+        Settings.System.putInt(RuntimeEnvironment.application.getContentResolver(),
+                Settings.System.SHOW_TOUCHES, 0);
+        final DevelopmentOptionsSnapshot snapshot = loadSnapshot();
+        ReflectionHelpers.setField(mSettings, "mOptionsLoadSeq", 1);
+
+        showTouches.setChecked(true);
+        ReflectionHelpers.callInstanceMethod(mSettings, "noteSnapshotOptionWritten",
+                ClassParameter.from(Preference.class, showTouches));
+        mSettings.applyOptionsSnapshot(snapshot, 1);
+
+        assertThat(showTouches.isChecked()).isTrue();
+
+        mSettings.applyOptionsSnapshot(snapshot, 2);
+
+        assertThat(showTouches.isChecked()).isFalse();
+    }
+
+    private SwitchPreference setUpShowTouches() {
+        final DevelopmentSettingsEnabler enabler = mock(DevelopmentSettingsEnabler.class);
+        when(enabler.getLastEnabledState()).thenReturn(true);
+        ReflectionHelpers.setField(mSettings, "mSettingsEnabler", enabler);
+        final SwitchPreference showTouches =
+                new SwitchPreference(RuntimeEnvironment.application);
+        ReflectionHelpers.setField(mSettings, "mShowTouches", showTouches);
+        return showTouches;
+    }
+
+    private DevelopmentOptionsSnapshot loadSnapshot() {
+        return DevelopmentOptionsSnapshot.load(RuntimeEnvironment.application,
+                mock(WifiManager.class));
+    }
 }
@@ -26,6 +26,8 @@ import android.os.UserManager;
 import com.android.internal.os.BatterySipper;
 import com.android.internal.os.BatterySipper.DrainType;
 import com.android.settings.TestConfig;
+import com.android.settings.testutils.TaskSchedulerTestUtils;
+import com.android.settings.utils.TaskScheduler;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -35,10 +37,14 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoRule;
 import org.mockito.junit.MockitoJUnit;
 import org.robolectric.RobolectricTestRunner;
+import org.robolectric.Shadows;
 import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
 
 import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(RobolectricTestRunner.class)
@@ -121,4 +127,31 @@ public class BatteryEntryTest {
         
         assertThat(entry.getLabel()).isEqualTo(HIGH_DRAIN_PACKAGE);
     }
+
+    @Test
+    public void startRequestQueue_shouldLoadOneEntryPerTask() {
+        final BatteryEntry first = mock(BatteryEntry.class);
+        final BatteryEntry second = mock(BatteryEntry.class);
+        BatteryEntry.sHandler = mockHandler;
+        synchronized (BatteryEntry.mRequestQueue) {
+            BatteryEntry.mRequestQueue.clear();
+            BatteryEntry.mRequestQueue.add(first);
+            BatteryEntry.mRequestQueue.add(second);
+        }
+        final ShadowLooper lane = Shadows.shadowOf(
+                TaskScheduler.get().getLooper(TaskScheduler.LANE_VISIBLE_CONTENT));
+
+        BatteryEntry.startRequestQueue();
+        lane.runOneTask();
+
+        verify(first).loadNameAndIcon();
+        verify(second, never()).loadNameAndIcon();
+
+        // The next entry may be loaded on another worker of the lane.
+        TaskSchedulerTestUtils.runLane(TaskScheduler.LANE_VISIBLE_CONTENT);
+
+        verify(second).loadNameAndIcon();
+        verify(mockHandler).sendEmptyMessage(BatteryEntry.MSG_REPORT_FULLY_DRAWN);
+        BatteryEntry.stopRequestQueue();
+    }
 }
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.testutils;
+
+import android.os.Looper;
+
+import com.android.settings.utils.TaskScheduler;
+
+import org.robolectric.Shadows;
+import org.robolectric.shadows.ShadowLooper;
+
+public class TaskSchedulerTestUtils {
+
+    /**
+     * Runs the tasks of all the workers of {@code lane} of the shared scheduler, including the
+     * ones they post to other workers, until none is left.
+     */
+    public static void runLane(int lane) {
+        boolean ran;
+        do {
+            ran = false;
+            for (Looper looper : TaskScheduler.get().getWorkerLoopers(lane)) {
+                final ShadowLooper shadowLooper = Shadows.shadowOf(looper);
+                if (shadowLooper.getScheduler().size() > 0) {
+                    shadowLooper.runToEndOfTasks();
+                    ran = true;
+                }
+            }
+        } while (ran);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.utils;
+
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.settings.SettingsRobolectricTestRunner;
+import com.android.settings.TestConfig;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+@Config(manifest = TestConfig.MANIFEST_PATH, sdk = TestConfig.SDK_VERSION)
+public class CacheRegistryTest {
+
+    private CacheRegistry mRegistry;
+    private TestCache mUiCache;
+    private TestCache mBackgroundCache;
+
+    @Before
+    public void setUp() {
+        mRegistry = new CacheRegistry();
+        mUiCache = mRegistry.register(new TestCache("ui", TRIM_MEMORY_UI_HIDDEN));
+        mBackgroundCache = mRegistry.register(
+                new TestCache("background", TRIM_MEMORY_BACKGROUND));
+    }
+
+    @Test
+    public void onTrimMemory_shouldOnlyClearCachesAtOrBelowLevel() {
+        mRegistry.onTrimMemory(TRIM_MEMORY_UI_HIDDEN);
+
+        assertThat(mUiCache.mEntries).isEqualTo(0);
+        assertThat(mBackgroundCache.mEntries).isEqualTo(1);
+
+        mRegistry.onTrimMemory(TRIM_MEMORY_BACKGROUND);
+
+        assertThat(mBackgroundCache.mEntries).isEqualTo(0);
+    }
+
+    @Test
+    public void onTrimMemory_runningCritical_shouldClearAllCaches() {
+        mRegistry.onTrimMemory(TRIM_MEMORY_RUNNING_CRITICAL);
+
+        assertThat(mUiCache.mEntries).isEqualTo(0);
+        assertThat(mBackgroundCache.mEntries).isEqualTo(0);
+    }
+
+    @Test
+    public void dumpJson_shouldSumInstancesWithSameName() throws Exception {
+        mRegistry.register(new TestCache("ui", TRIM_MEMORY_UI_HIDDEN)).recordMiss();
+        mUiCache.recordHit();
+        mUiCache.recordHit();
+
+        final JSONObject ui = mRegistry.dumpJson().getJSONObject("ui");
+
+        assertThat(ui.getLong("instances")).isEqualTo(2L);
+        assertThat(ui.getLong("entries")).isEqualTo(2L);
+        assertThat(ui.getLong("bytes")).isEqualTo(200L);
+        assertThat(ui.getLong("hits")).isEqualTo(2L);
+        assertThat(ui.getLong("misses")).isEqualTo(1L);
+    }
+
+    private static class TestCache extends CacheRegistry.Cache {
+        int mEntries = 1;
+
+        TestCache(String name, int trimLevel) {
+            super(name, trimLevel);
+        }
+
+        @Override
+        public int getEntryCount() {
+            return mEntries;
+        }
+
+        @Override
+        public long getSizeEstimateBytes() {
+            return mEntries * 100;
+        }
+
+        @Override
+        protected void clear() {
+            mEntries = 0;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.utils;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.content.Loader;
+
+import com.android.settings.SettingsRobolectricTestRunner;
+import com.android.settings.TestConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+@Config(manifest = TestConfig.MANIFEST_PATH, sdk = TestConfig.SDK_VERSION)
+public class CachingAsyncLoaderTest {
+
+    private static final String KEY = "key";
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        CachingAsyncLoader.invalidateAll();
+    }
+
+    @After
+    public void tearDown() {
+        CachingAsyncLoader.invalidateAll();
+    }
+
+    @Test
+    public void startLoading_cachedResult_shouldDeliverCachedResultFirst() {
+        final Object cached = new TestLoader(mContext, KEY).loadInBackground();
+        final TestLoader loader = new TestLoader(mContext, KEY);
+        final List<Object> results = registerListener(loader);
+
+        loader.startLoading();
+
+        assertThat(results).isNotEmpty();
+        assertThat(results.get(0)).isSameAs(cached);
+    }
+
+    @Test
+    public void startLoading_invalidated_shouldNotDeliverCachedResult() {
+        final Object cached = new TestLoader(mContext, KEY).loadInBackground();
+        CachingAsyncLoader.invalidate(KEY);
+        final TestLoader loader = new TestLoader(mContext, KEY);
+        final List<Object> results = registerListener(loader);
+
+        loader.startLoading();
+
+        assertThat(results).doesNotContain(cached);
+    }
+
+    @Test
+    public void startLoading_otherKey_shouldNotDeliverCachedResult() {
+        final Object cached = new TestLoader(mContext, KEY).loadInBackground();
+        final TestLoader loader = new TestLoader(mContext, "other");
+        final List<Object> results = registerListener(loader);
+
+        loader.startLoading();
+
+        assertThat(results).doesNotContain(cached);
+    }
+
+    private static List<Object> registerListener(Loader<Object> loader) {
+        final List<Object> results = new ArrayList<>();
+        loader.registerListener(0 /* id */, (l, data) -> results.add(data));
+        return results;
+    }
+
+    private static class TestLoader extends CachingAsyncLoader<Object> {
+        private final String mKey;
+
+        TestLoader(Context context, String key) {
+            super(context);
+            mKey = key;
+        }
+
+        @Override
+        protected String getCacheKey() {
+            return mKey;
+        }
+
+        @Override
+        protected Object loadUncached() {
+            return new Object();
+        }
+    }
+}
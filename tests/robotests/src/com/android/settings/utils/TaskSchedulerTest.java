@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.utils;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.os.Looper;
+
+import com.android.settings.SettingsRobolectricTestRunner;
+import com.android.settings.TestConfig;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+@Config(manifest = TestConfig.MANIFEST_PATH, sdk = TestConfig.SDK_VERSION)
+public class TaskSchedulerTest {
+
+    private static final int LANE = TaskScheduler.LANE_PREFETCH;
+
+    private TaskScheduler mScheduler;
+    private AtomicInteger mRunCount;
+
+    @Before
+    public void setUp() {
+        mScheduler = new TaskScheduler();
+        mRunCount = new AtomicInteger();
+    }
+
+    @Test
+    public void post_shouldRunTaskAndRecordStats() {
+        mScheduler.post(LANE, null /* token */, mRunCount::incrementAndGet);
+        runLane();
+
+        assertThat(mRunCount.get()).isEqualTo(1);
+        assertThat(mScheduler.getStats(LANE).getRunCount()).isEqualTo(1L);
+        assertThat(mScheduler.getStats(LANE).getQueued()).isEqualTo(0);
+    }
+
+    @Test
+    public void cancel_shouldDropPendingAndLaterTasks() {
+        final TaskScheduler.CancellationToken token = new TaskScheduler.CancellationToken();
+        mScheduler.postDelayed(LANE, token, mRunCount::incrementAndGet, 1000 /* delayMs */);
+
+        token.onDestroy();
+        mScheduler.post(LANE, token, mRunCount::incrementAndGet);
+        runLane();
+
+        assertThat(token.isCancelled()).isTrue();
+        assertThat(mRunCount.get()).isEqualTo(0);
+        assertThat(mScheduler.getStats(LANE).getQueued()).isEqualTo(0);
+    }
+
+    @Test
+    public void post_visibleContentBusy_shouldRunOnAnotherWorker() {
+        final int lane = TaskScheduler.LANE_VISIBLE_CONTENT;
+        final AtomicInteger secondRunCount = new AtomicInteger();
+        mScheduler.post(lane, null /* token */, mRunCount::incrementAndGet);
+        mScheduler.post(lane, null /* token */, secondRunCount::incrementAndGet);
+
+        final List<Looper> loopers = mScheduler.getWorkerLoopers(lane);
+        assertThat(loopers.size()).isGreaterThan(1);
+        Shadows.shadowOf(loopers.get(1)).runToEndOfTasks();
+
+        // The second task does not wait for the first one.
+        assertThat(mRunCount.get()).isEqualTo(0);
+        assertThat(secondRunCount.get()).isEqualTo(1);
+        Shadows.shadowOf(loopers.get(0)).runToEndOfTasks();
+        assertThat(mRunCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void laneHandler_shouldCountPendingMessages() throws Exception {
+        final int lane = TaskScheduler.LANE_MAINTENANCE;
+        final TaskScheduler scheduler = TaskScheduler.get();
+        final int queued = scheduler.getStats(lane).getQueued();
+        final TaskScheduler.LaneHandler handler = new TaskScheduler.LaneHandler(lane,
+                msg -> {
+                    mRunCount.incrementAndGet();
+                    return true;
+                });
+
+        handler.sendEmptyMessage(1);
+        handler.sendEmptyMessage(2);
+        assertThat(scheduler.getStats(lane).getQueued()).isEqualTo(queued + 2);
+
+        handler.removeMessages(2);
+        scheduler.dumpJson();
+        assertThat(scheduler.getStats(lane).getQueued()).isEqualTo(queued + 1);
+
+        Shadows.shadowOf(scheduler.getLooper(lane)).runToEndOfTasks();
+        assertThat(mRunCount.get()).isEqualTo(1);
+        assertThat(scheduler.getStats(lane).getQueued()).isEqualTo(queued);
+    }
+
+    private void runLane() {
+        Shadows.shadowOf(mScheduler.getLooper(LANE)).runToEndOfTasks();
+    }
+}
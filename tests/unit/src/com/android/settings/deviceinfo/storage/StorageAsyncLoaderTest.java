@@ -18,27 +18,30 @@ package com.android.settings.deviceinfo.storage;
 
 import static com.google.common.truth.Truth.assertThat;
 
-import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.pm.UserInfo;
 import android.net.TrafficStats;
+import android.os.Process;
 import android.os.UserHandle;
 import android.support.test.filters.SmallTest;
 import android.support.test.runner.AndroidJUnit4;
 import android.util.SparseArray;
 
+import com.android.settings.applications.BatchedStorageStatsSource;
 import com.android.settings.applications.PackageManagerWrapper;
 import com.android.settings.applications.UserManagerWrapper;
+import com.android.settings.utils.CachingAsyncLoader;
 import com.android.settingslib.applications.StorageStatsSource;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -46,6 +49,7 @@ import org.mockito.Answers;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -56,6 +60,10 @@ public class StorageAsyncLoaderTest {
     private static final int SECONDARY_USER_ID = 10;
     private static final String PACKAGE_NAME_1 = "com.blah.test";
     private static final String PACKAGE_NAME_2 = "com.blah.test2";
+    private static final int APP_ID_1 = Process.FIRST_APPLICATION_UID;
+    private static final int APP_ID_2 = Process.FIRST_APPLICATION_UID + 1;
+    private static final int UID_1 = UserHandle.getUid(PRIMARY_USER_ID, APP_ID_1);
+    private static final int UID_2 = UserHandle.getUid(PRIMARY_USER_ID, APP_ID_2);
     private static final long DEFAULT_QUOTA = 64 * TrafficStats.MB_IN_BYTES;
 
     @Mock
@@ -75,6 +83,9 @@ public class StorageAsyncLoaderTest {
     @Before
     public void setUp() throws Exception {
         MockitoAnnotations.initMocks(this);
+        // Both the totals and the stats of the uids are cached process-wide.
+        CachingAsyncLoader.invalidateAll();
+        BatchedStorageStatsSource.clearCache();
         mInfo = new ArrayList<>();
         mLoader = new StorageAsyncLoader(mContext, mUserManager, "id", mSource, mPackageManager);
         when(mPackageManager.getInstalledApplicationsAsUser(eq(PRIMARY_USER_ID), anyInt()))
@@ -86,10 +97,16 @@ public class StorageAsyncLoaderTest {
         when(mSource.getCacheQuotaBytes(anyString(), anyInt())).thenReturn(DEFAULT_QUOTA);
     }
 
+    @After
+    public void tearDown() {
+        CachingAsyncLoader.invalidateAll();
+        BatchedStorageStatsSource.clearCache();
+    }
+
     @Test
     public void testLoadingApps() throws Exception {
-        addPackage(PACKAGE_NAME_1, 0, 1, 10, ApplicationInfo.CATEGORY_UNDEFINED);
-        addPackage(PACKAGE_NAME_2, 0, 100, 1000, ApplicationInfo.CATEGORY_UNDEFINED);
+        addPackage(PACKAGE_NAME_1, UID_1, 0, 1, 10, ApplicationInfo.CATEGORY_UNDEFINED);
+        addPackage(PACKAGE_NAME_2, UID_2, 0, 100, 1000, ApplicationInfo.CATEGORY_UNDEFINED);
 
         SparseArray<StorageAsyncLoader.AppsStorageResult> result = mLoader.loadInBackground();
 
@@ -98,9 +115,25 @@ public class StorageAsyncLoaderTest {
         assertThat(result.get(PRIMARY_USER_ID).otherAppsSize).isEqualTo(1111L);
     }
 
+    @Test
+    public void testSharedUidIsCountedOnce() throws Exception {
+        // The stats of a uid cover all of its packages.
+        addPackage(PACKAGE_NAME_1, UID_1, 0, 1, 10, ApplicationInfo.CATEGORY_GAME);
+        addPackage(PACKAGE_NAME_2, UID_1, 0, 1, 10, ApplicationInfo.CATEGORY_UNDEFINED);
+
+        SparseArray<StorageAsyncLoader.AppsStorageResult> result = mLoader.loadInBackground();
+
+        assertThat(result.size()).isEqualTo(1);
+        // Counted under the category of its first package.
+        assertThat(result.get(PRIMARY_USER_ID).gamesSize).isEqualTo(11L);
+        assertThat(result.get(PRIMARY_USER_ID).otherAppsSize).isEqualTo(0L);
+        verify(mSource).getStatsForUid(anyString(), eq(UID_1));
+        verify(mSource).getCacheQuotaBytes(anyString(), eq(UID_1));
+    }
+
     @Test
     public void testGamesAreFiltered() throws Exception {
-        addPackage(PACKAGE_NAME_1, 0, 1, 10, ApplicationInfo.CATEGORY_GAME);
+        addPackage(PACKAGE_NAME_1, UID_1, 0, 1, 10, ApplicationInfo.CATEGORY_GAME);
 
         SparseArray<StorageAsyncLoader.AppsStorageResult> result = mLoader.loadInBackground();
 
@@ -112,7 +145,7 @@ public class StorageAsyncLoaderTest {
     @Test
     public void testLegacyGamesAreFiltered() throws Exception {
         ApplicationInfo info =
-                addPackage(PACKAGE_NAME_1, 0, 1, 10, ApplicationInfo.CATEGORY_UNDEFINED);
+                addPackage(PACKAGE_NAME_1, UID_1, 0, 1, 10, ApplicationInfo.CATEGORY_UNDEFINED);
         info.flags = ApplicationInfo.FLAG_IS_GAME;
 
         SparseArray<StorageAsyncLoader.AppsStorageResult> result = mLoader.loadInBackground();
@@ -124,7 +157,7 @@ public class StorageAsyncLoaderTest {
 
     @Test
     public void testCacheIsNotIgnored() throws Exception {
-        addPackage(PACKAGE_NAME_1, 100, 1, 10, ApplicationInfo.CATEGORY_UNDEFINED);
+        addPackage(PACKAGE_NAME_1, UID_1, 100, 1, 10, ApplicationInfo.CATEGORY_UNDEFINED);
 
         SparseArray<StorageAsyncLoader.AppsStorageResult> result = mLoader.loadInBackground();
 
@@ -152,7 +185,7 @@ public class StorageAsyncLoaderTest {
     @Test
     public void testUpdatedSystemAppCodeSizeIsCounted() throws Exception {
         ApplicationInfo systemApp =
-                addPackage(PACKAGE_NAME_1, 100, 1, 10, ApplicationInfo.CATEGORY_UNDEFINED);
+                addPackage(PACKAGE_NAME_1, UID_1, 100, 1, 10, ApplicationInfo.CATEGORY_UNDEFINED);
         systemApp.flags = ApplicationInfo.FLAG_SYSTEM & ApplicationInfo.FLAG_UPDATED_SYSTEM_APP;
 
         SparseArray<StorageAsyncLoader.AppsStorageResult> result = mLoader.loadInBackground();
@@ -163,7 +196,7 @@ public class StorageAsyncLoaderTest {
 
     @Test
     public void testVideoAppsAreFiltered() throws Exception {
-        addPackage(PACKAGE_NAME_1, 0, 1, 10, ApplicationInfo.CATEGORY_VIDEO);
+        addPackage(PACKAGE_NAME_1, UID_1, 0, 1, 10, ApplicationInfo.CATEGORY_VIDEO);
 
         SparseArray<StorageAsyncLoader.AppsStorageResult> result = mLoader.loadInBackground();
 
@@ -176,10 +209,11 @@ public class StorageAsyncLoaderTest {
     public void testRemovedPackageDoesNotCrash() throws Exception {
         ApplicationInfo info = new ApplicationInfo();
         info.packageName = PACKAGE_NAME_1;
+        info.uid = UID_1;
         info.category = ApplicationInfo.CATEGORY_UNDEFINED;
         mInfo.add(info);
-        when(mSource.getStatsForPackage(anyString(), anyString(), any(UserHandle.class)))
-                .thenThrow(new NameNotFoundException());
+        when(mSource.getStatsForUid(anyString(), anyInt()))
+                .thenThrow(new IOException("intentional failure"));
 
         SparseArray<StorageAsyncLoader.AppsStorageResult> result = mLoader.loadInBackground();
 
@@ -195,12 +229,17 @@ public class StorageAsyncLoaderTest {
                 .thenReturn(new StorageStatsSource.ExternalStorageStats(9, 2, 3, 4, 0));
         when(mSource.getExternalStorageStats(anyString(), eq(new UserHandle(SECONDARY_USER_ID))))
                 .thenReturn(new StorageStatsSource.ExternalStorageStats(10, 3, 3, 4, 0));
-        addPackage(PACKAGE_NAME_1, 0, 1, 10, ApplicationInfo.CATEGORY_VIDEO);
+        addPackage(PACKAGE_NAME_1, UID_1, 0, 1, 10, ApplicationInfo.CATEGORY_VIDEO);
         ArrayList<ApplicationInfo> secondaryUserApps = new ArrayList<>();
         ApplicationInfo appInfo = new ApplicationInfo();
         appInfo.packageName = PACKAGE_NAME_1;
+        appInfo.uid = UserHandle.getUid(SECONDARY_USER_ID, APP_ID_1);
         appInfo.category = ApplicationInfo.CATEGORY_VIDEO;
         secondaryUserApps.add(appInfo);
+        when(mPackageManager.getInstalledApplicationsAsUser(eq(SECONDARY_USER_ID), anyInt()))
+                .thenReturn(secondaryUserApps);
+        StorageStatsSource.AppStorageStats stats = buildStats(0, 1, 10);
+        when(mSource.getStatsForUid(anyString(), eq(appInfo.uid))).thenReturn(stats);
 
         SparseArray<StorageAsyncLoader.AppsStorageResult> result = mLoader.loadInBackground();
 
@@ -212,7 +251,8 @@ public class StorageAsyncLoaderTest {
 
     @Test
     public void testCacheOveragesAreCountedAsFree() throws Exception {
-        addPackage(PACKAGE_NAME_1, DEFAULT_QUOTA + 100, 1, 10, ApplicationInfo.CATEGORY_UNDEFINED);
+        addPackage(PACKAGE_NAME_1, UID_1, DEFAULT_QUOTA + 100, 1, 10,
+                ApplicationInfo.CATEGORY_UNDEFINED);
 
         SparseArray<StorageAsyncLoader.AppsStorageResult> result = mLoader.loadInBackground();
 
@@ -220,21 +260,28 @@ public class StorageAsyncLoaderTest {
         assertThat(result.get(PRIMARY_USER_ID).otherAppsSize).isEqualTo(DEFAULT_QUOTA + 11);
     }
 
-    private ApplicationInfo addPackage(String packageName, long cacheSize, long codeSize,
-            long dataSize, int category) throws Exception {
+    private ApplicationInfo addPackage(String packageName, int uid, long cacheSize,
+            long codeSize, long dataSize, int category) throws Exception {
         StorageStatsSource.AppStorageStats storageStats =
-                mock(StorageStatsSource.AppStorageStats.class);
-        when(storageStats.getCodeBytes()).thenReturn(codeSize);
-        when(storageStats.getDataBytes()).thenReturn(dataSize + cacheSize);
-        when(storageStats.getCacheBytes()).thenReturn(cacheSize);
-        when(mSource.getStatsForPackage(anyString(), eq(packageName), any(UserHandle.class)))
-                .thenReturn(storageStats);
+                buildStats(cacheSize, codeSize, dataSize);
+        when(mSource.getStatsForUid(anyString(), eq(uid))).thenReturn(storageStats);
 
         ApplicationInfo info = new ApplicationInfo();
         info.packageName = packageName;
+        info.uid = uid;
         info.category = category;
         mInfo.add(info);
         return info;
     }
 
+    private static StorageStatsSource.AppStorageStats buildStats(long cacheSize, long codeSize,
+            long dataSize) {
+        StorageStatsSource.AppStorageStats storageStats =
+                mock(StorageStatsSource.AppStorageStats.class);
+        when(storageStats.getCodeBytes()).thenReturn(codeSize);
+        when(storageStats.getDataBytes()).thenReturn(dataSize + cacheSize);
+        when(storageStats.getCacheBytes()).thenReturn(cacheSize);
+        return storageStats;
+    }
+
 }